@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.jfr;
+
+import jdk.jfr.EventType;
+import net.reallifegames.sdeconomy.Money;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Creates and commits the flight recorder events. This class references the jdk.jfr api directly and is only loaded
+ * by {@link EconomyEvents} once it has found the api to be available. Events are only created while their type is
+ * enabled in a recording, so nothing is allocated per trade when nothing is recording.
+ *
+ * @author Tyler Bucher
+ */
+public final class JfrEvents implements EventRecorder {
+
+    /**
+     * The type of the {@link TradeEvent}.
+     */
+    @Nonnull
+    private static final EventType TRADE_TYPE = EventType.getEventType(TradeEvent.class);
+
+    /**
+     * The type of the {@link SqlEvent}.
+     */
+    @Nonnull
+    private static final EventType SQL_TYPE = EventType.getEventType(SqlEvent.class);
+
+    /**
+     * The type of the {@link SaveEvent}.
+     */
+    @Nonnull
+    private static final EventType SAVE_TYPE = EventType.getEventType(SaveEvent.class);
+
+    /**
+     * The type of the {@link DecayEvent}.
+     */
+    @Nonnull
+    private static final EventType DECAY_TYPE = EventType.getEventType(DecayEvent.class);
+
+    /**
+     * Creates the flight recorder, called by name from {@link EconomyEvents}.
+     */
+    public JfrEvents() {
+    }
+
+    /**
+     * @return a started {@link TradeEvent} or null if the event is not being recorded.
+     */
+    @Nullable
+    @Override
+    public Object beginTrade() {
+        if (!TRADE_TYPE.isEnabled()) {
+            return null;
+        }
+        final TradeEvent event = new TradeEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits a {@link TradeEvent}.
+     *
+     * @param trade          the event returned by {@link #beginTrade()}.
+     * @param action         the action preformed.
+     * @param alias          the name of the product.
+     * @param amount         the amount bought or sold.
+     * @param moneyExchanged the money in micros exchanged for the items.
+     */
+    @Override
+    public void commitTrade(@Nonnull final Object trade, @Nonnull final String action, @Nonnull final String alias,
+                            final int amount, final long moneyExchanged) {
+        final TradeEvent event = (TradeEvent) trade;
+        event.end();
+        if (event.shouldCommit()) {
+            event.action = action;
+            event.alias = alias;
+            event.amount = amount;
+            event.moneyExchanged = Money.toDouble(moneyExchanged);
+            event.commit();
+        }
+    }
+
+    /**
+     * @return a started {@link SqlEvent} or null if the event is not being recorded.
+     */
+    @Nullable
+    @Override
+    public Object beginSql() {
+        if (!SQL_TYPE.isEnabled()) {
+            return null;
+        }
+        final SqlEvent event = new SqlEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits a {@link SqlEvent}.
+     *
+     * @param sql         the event returned by {@link #beginSql()}.
+     * @param operation   the name of the database operation.
+     * @param rowsWritten the amount of rows written by the operation.
+     */
+    @Override
+    public void commitSql(@Nonnull final Object sql, @Nonnull final String operation, final int rowsWritten) {
+        final SqlEvent event = (SqlEvent) sql;
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.rowsWritten = rowsWritten;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return a started {@link SaveEvent} or null if the event is not being recorded.
+     */
+    @Nullable
+    @Override
+    public Object beginSave() {
+        if (!SAVE_TYPE.isEnabled()) {
+            return null;
+        }
+        final SaveEvent event = new SaveEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits a {@link SaveEvent}.
+     *
+     * @param save     the event returned by {@link #beginSave()}.
+     * @param products the amount of products saved.
+     */
+    @Override
+    public void commitSave(@Nonnull final Object save, final int products) {
+        final SaveEvent event = (SaveEvent) save;
+        event.end();
+        if (event.shouldCommit()) {
+            event.products = products;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return a started {@link DecayEvent} or null if the event is not being recorded.
+     */
+    @Nullable
+    @Override
+    public Object beginDecay() {
+        if (!DECAY_TYPE.isEnabled()) {
+            return null;
+        }
+        final DecayEvent event = new DecayEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits a {@link DecayEvent}.
+     *
+     * @param decay         the event returned by {@link #beginDecay()}.
+     * @param products      the amount of products in the decay group.
+     * @param demandRemoved the total demand removed from all products.
+     * @param rowsWritten   the amount of transaction rows written.
+     */
+    @Override
+    public void commitDecay(@Nonnull final Object decay, final int products, final long demandRemoved, final int rowsWritten) {
+        final DecayEvent event = (DecayEvent) decay;
+        event.end();
+        if (event.shouldCommit()) {
+            event.products = products;
+            event.demandRemoved = demandRemoved;
+            event.rowsWritten = rowsWritten;
+            event.commit();
+        }
+    }
+}
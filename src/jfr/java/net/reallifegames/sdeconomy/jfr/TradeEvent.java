@@ -0,0 +1,68 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a buy or sell of a product.
+ *
+ * @author Tyler Bucher
+ */
+@Name("net.reallifegames.sdeconomy.Trade")
+@Label("Trade")
+@Category("SdEconomy")
+@Description("A product was bought from or sold to the server.")
+@StackTrace(false)
+final class TradeEvent extends Event {
+
+    /**
+     * The action preformed.
+     */
+    @Label("Action")
+    String action;
+
+    /**
+     * The name of the product.
+     */
+    @Label("Product Alias")
+    String alias;
+
+    /**
+     * The amount bought or sold.
+     */
+    @Label("Amount")
+    int amount;
+
+    /**
+     * The money exchanged for the items.
+     */
+    @Label("Money Exchanged")
+    double moneyExchanged;
+}
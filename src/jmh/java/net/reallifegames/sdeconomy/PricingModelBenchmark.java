@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of quoting trades of growing size with the {@link DefaultPricingModel default model}, which prices
+ * every unit in a loop, and the {@link LmsrPricingModel} and {@link AmmPricingModel}, which price a trade in closed
+ * form. Run it with {@code
+ * gradle runJmh}.
+ *
+ * @author Tyler Bucher
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class PricingModelBenchmark {
+
+    /**
+     * The name of the {@link PricingModel} to benchmark.
+     */
+    @Param ({"default", "lmsr", "amm"})
+    public String model;
+
+    /**
+     * The amount of units in each trade.
+     */
+    @Param ({"1", "64", "4096", "262144"})
+    public int amount;
+
+    /**
+     * The product quoted by the benchmarks.
+     */
+    private DefaultProduct defaultProduct;
+
+    /**
+     * Creates a product of the benchmarked model with some market history.
+     */
+    @Setup
+    public void setUp() {
+        final PricingModel pricingModel = Economies.getPricingModel(model);
+        if (pricingModel == null) {
+            throw new IllegalArgumentException("Unknown pricing model " + model);
+        }
+        defaultProduct = new DefaultProduct("benchmark", "STONE", (byte) 0, 0.1f, 5, 1000000, 500000, 64,
+                43200000, SqlService.DECAY_CONST_TYPE);
+        defaultProduct.pricingModel = pricingModel;
+    }
+
+    /**
+     * @return the cost in micros of buying {@link #amount} units.
+     */
+    @Benchmark
+    public long quoteBuy() {
+        return DefaultEconomy.checkBuyCost(defaultProduct, amount);
+    }
+
+    /**
+     * @return the returns in micros of selling {@link #amount} units.
+     */
+    @Benchmark
+    public long quoteSell() {
+        return DefaultEconomy.checkSellReturns(defaultProduct, amount);
+    }
+
+    /**
+     * @return the cost in micros of buying {@link #amount} units and selling them back, which leaves the market as it was.
+     */
+    @Benchmark
+    public long roundTrip() {
+        return DefaultEconomy.buyNoSql(defaultProduct, amount) - DefaultEconomy.sellNoSql(defaultProduct, amount);
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A constant product automated market maker for bulk commodities. The market holds a reserve of {@code x} items, the
+ * supply, and a reserve of {@code y = demand * price / DEMAND_SCALE} money and keeps {@code x * y} constant on every
+ * trade. A trade of any size is priced in closed form, the unit price {@code y / x} rises as the item reserve is bought
+ * out and no buy can empty it. Demand is rounded up after every trade and {@link Money} values are rounded up for
+ * buys and down for sells, so rounding always leaves the money with the market.
+ * <p>
+ * An optional fee is added to buys and taken from sells. It is collected by the model and paid to the server by the
+ * caller of {@link #drainFees()}. The reserves are not decayed.
+ *
+ * @author Tyler Bucher
+ */
+public final class AmmPricingModel implements PricingModel {
+
+    /**
+     * The amount of demand worth the price of the product. Demand counts the money reserve in steps of {@code price /
+     * DEMAND_SCALE}, so rounding changes a trade by at most one such step.
+     */
+    public static final int DEMAND_SCALE = 64;
+
+    /**
+     * The fee rate is kept in millionths of the trade value.
+     */
+    private static final long FEE_SCALE = 1000000;
+
+    /**
+     * The part of the trade value taken as a fee.
+     */
+    private final double feeRate;
+
+    /**
+     * The part of the trade value taken as a fee in millionths.
+     */
+    private final long feeMillionths;
+
+    /**
+     * The fees collected in micros since they were last drained.
+     */
+    @Nonnull
+    private final LongAdder collectedFees = new LongAdder();
+
+    /**
+     * Creates a constant product pricing model.
+     *
+     * @param feeRate the part of the trade value taken as a fee, from 0 up to but excluding 1.
+     */
+    public AmmPricingModel(final double feeRate) {
+        if (!(feeRate >= 0 && feeRate < 1)) {
+            throw new IllegalArgumentException("The fee rate must be at least 0 and less than 1");
+        }
+        this.feeRate = feeRate;
+        this.feeMillionths = Math.round(feeRate * FEE_SCALE);
+    }
+
+    /**
+     * @return {@link Economies#AMM_TYPE}.
+     */
+    @Override
+    public byte getType() {
+        return Economies.AMM_TYPE;
+    }
+
+    /**
+     * @return the name of this model used by commands.
+     */
+    @Nonnull
+    @Override
+    public String getName() {
+        return "amm";
+    }
+
+    /**
+     * @return the part of the trade value taken as a fee.
+     */
+    public double getFeeRate() {
+        return feeRate;
+    }
+
+    /**
+     * Takes the fees collected since the last call.
+     *
+     * @return the collected fees in micros.
+     */
+    public long drainFees() {
+        return collectedFees.sumThenReset();
+    }
+
+    /**
+     * Gets the item reserve of a product. An empty reserve is treated as 1 item so the product never becomes free.
+     *
+     * @param supply the supply of the product.
+     * @return the item reserve, at least 1.
+     */
+    private static long reserve(final int supply) {
+        return Math.max(1, supply);
+    }
+
+    /**
+     * Gets the demand of a product after buying from its reserves.
+     *
+     * @param supply the supply of the product.
+     * @param demand the demand of the product.
+     * @param amount the amount bought, more than 0.
+     * @return the demand after the buy or -1 if the reserve does not hold enough items or the demand would overflow.
+     */
+    public static long demandAfterBuy(final int supply, final int demand, final int amount) {
+        final long reserve = reserve(supply);
+        // The last item of the reserve is never sold
+        if (demand < 1 || amount >= reserve) {
+            return -1;
+        }
+        final long newDemand = ceilDiv((long) demand * reserve, reserve - amount);
+        return newDemand > Integer.MAX_VALUE ? -1 : newDemand;
+    }
+
+    /**
+     * Gets the demand of a product after selling to its reserves.
+     *
+     * @param supply the supply of the product.
+     * @param demand the demand of the product.
+     * @param amount the amount sold, more than 0.
+     * @return the demand after the sell.
+     */
+    public static long demandAfterSell(final int supply, final int demand, final int amount) {
+        if (demand < 1) {
+            return demand;
+        }
+        final long reserve = reserve(supply);
+        return ceilDiv((long) demand * reserve, supplyAfterSell(supply, amount));
+    }
+
+    /**
+     * Gets the supply of a product after selling to its reserves, which stops at {@link Integer#MAX_VALUE}. Items past
+     * it are taken without paying for them.
+     *
+     * @param supply the supply of the product.
+     * @param amount the amount sold.
+     * @return the supply after the sell.
+     */
+    private static long supplyAfterSell(final int supply, final int amount) {
+        return Math.min(Integer.MAX_VALUE, reserve(supply) + amount);
+    }
+
+    /**
+     * Gets the money an amount of bought demand is worth.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} of the demand.
+     * @param demand         the amount of demand.
+     * @return the money in micros the demand is worth, rounded up, or {@link Money#INFINITE} if it is too large.
+     */
+    private static long buyValue(@Nonnull final DefaultProduct defaultProduct, final long demand) {
+        final long price = Money.roundOrInfinite(defaultProduct.price);
+        return price == Money.INFINITE ? price : Money.mulDivCeilOrInfinite(demand, price, DEMAND_SCALE);
+    }
+
+    /**
+     * Gets the money an amount of sold demand is worth.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} of the demand.
+     * @param demand         the amount of demand.
+     * @return the money in micros the demand is worth, rounded down, or {@link Money#INFINITE} if it is too large.
+     */
+    private static long sellValue(@Nonnull final DefaultProduct defaultProduct, final long demand) {
+        final long price = Money.roundOrInfinite(defaultProduct.price);
+        return price == Money.INFINITE ? price : Money.mulDivFloorOrInfinite(demand, price, DEMAND_SCALE);
+    }
+
+    /**
+     * Gets the fee of a trade, rounded up.
+     *
+     * @param value the money in micros the trade is worth.
+     * @return the fee in micros or {@link Money#INFINITE} if it is too large.
+     */
+    private long fee(final long value) {
+        return feeMillionths == 0 ? 0 : Money.mulDivCeilOrInfinite(value, feeMillionths, FEE_SCALE);
+    }
+
+    /**
+     * Divides two positive numbers rounding up.
+     *
+     * @param dividend the dividend.
+     * @param divisor  the divisor.
+     * @return the rounded up quotient.
+     */
+    private static long ceilDiv(final long dividend, final long divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    /**
+     * Gets the amount of money it would cost to buy some amount of a {@link DefaultProduct product} at this instant.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to check.
+     * @param amount         the amount bought.
+     * @return the cost of the products in micros or {@link Money#INFINITE} if the reserve can not sell that many or the
+     * cost is too large to pay.
+     */
+    @Override
+    public long quoteBuy(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        if (amount <= 0) {
+            return 0;
+        }
+        final long newDemand = demandAfterBuy(defaultProduct.supply, defaultProduct.demand, amount);
+        if (newDemand < 0) {
+            return Money.INFINITE;
+        }
+        final long value = buyValue(defaultProduct, newDemand - defaultProduct.demand);
+        return Money.addCost(value, fee(value));
+    }
+
+    /**
+     * Gets the amount of money you would receive if you sold some amount of a {@link DefaultProduct product} at this
+     * instant.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to check.
+     * @param amount         the amount sold.
+     * @return the returns of the products in micros or {@link Money#INFINITE} if they are too large to pay.
+     */
+    @Override
+    public long quoteSell(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        if (amount <= 0) {
+            return 0;
+        }
+        final long newDemand = demandAfterSell(defaultProduct.supply, defaultProduct.demand, amount);
+        final long value = sellValue(defaultProduct, defaultProduct.demand - newDemand);
+        final long fee = fee(value);
+        return value == Money.INFINITE || fee == Money.INFINITE ? Money.INFINITE : value - fee;
+    }
+
+    /**
+     * Buys from the reserves. A buy the reserve can not fill leaves the product as it is.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return the amount of money in micros to take from the player or {@link Money#INFINITE} if the reserve can not
+     * sell that many or the cost is too large to pay, in which case the product is unchanged.
+     */
+    @Override
+    public long buy(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        if (amount <= 0) {
+            return 0;
+        }
+        final long newDemand = demandAfterBuy(defaultProduct.supply, defaultProduct.demand, amount);
+        if (newDemand < 0) {
+            return Money.INFINITE;
+        }
+        final long value = buyValue(defaultProduct, newDemand - defaultProduct.demand);
+        final long fee = fee(value);
+        final long cost = Money.addCost(value, fee);
+        if (cost == Money.INFINITE) {
+            return cost;
+        }
+        defaultProduct.supply = (int) (reserve(defaultProduct.supply) - amount);
+        defaultProduct.demand = (int) newDemand;
+        if (fee != 0) {
+            collectedFees.add(fee);
+        }
+        return cost;
+    }
+
+    /**
+     * Buys from the reserves without returning the cost. The fee is still collected.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return true if the buy was applied, false if the reserves can not fill it, in which case the product is
+     * unchanged.
+     */
+    @Override
+    public boolean applyBuy(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        return buy(defaultProduct, amount) != Money.INFINITE;
+    }
+
+    /**
+     * Sells to the reserves. A sell the model can not pay for leaves the product as it is.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to sell.
+     * @param amount         the amount sold.
+     * @return the amount of money in micros to give to the player or {@link Money#INFINITE} if the returns are too
+     * large to pay, in which case the product is unchanged.
+     */
+    @Override
+    public long sell(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        if (amount <= 0) {
+            return 0;
+        }
+        final long newDemand = demandAfterSell(defaultProduct.supply, defaultProduct.demand, amount);
+        final long value = sellValue(defaultProduct, defaultProduct.demand - newDemand);
+        final long fee = fee(value);
+        if (value == Money.INFINITE || fee == Money.INFINITE) {
+            return Money.INFINITE;
+        }
+        defaultProduct.supply = (int) supplyAfterSell(defaultProduct.supply, amount);
+        defaultProduct.demand = (int) newDemand;
+        if (fee != 0) {
+            collectedFees.add(fee);
+        }
+        return value - fee;
+    }
+
+    /**
+     * The reserves are not decayed, removing demand would take money out of the market.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to decay.
+     * @param amount         the amount of demand to remove.
+     * @return 0.
+     */
+    @Override
+    public int decay(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        return 0;
+    }
+
+    /**
+     * Sets the money reserve so the unit price of the product stays what the previous model would charge for the next
+     * unit, {@code demand = ceil(unitPrice * supply * DEMAND_SCALE / price)}.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to convert.
+     * @param previous       the model which priced the product until now.
+     */
+    @Override
+    public void adopt(@Nonnull final DefaultProduct defaultProduct, @Nonnull final PricingModel previous) {
+        final long unitPrice = previous.quoteBuy(defaultProduct, 1);
+        final long price = Money.round(defaultProduct.price);
+        if (unitPrice <= 0 || unitPrice == Money.INFINITE || price <= 0) {
+            return;
+        }
+        final double demand = Math.ceil((double) unitPrice * reserve(defaultProduct.supply) * DEMAND_SCALE / price);
+        defaultProduct.supply = (int) reserve(defaultProduct.supply);
+        defaultProduct.demand = (int) Math.max(1, Math.min(Integer.MAX_VALUE, demand));
+    }
+}
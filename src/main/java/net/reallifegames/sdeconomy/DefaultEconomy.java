@@ -23,22 +23,53 @@
  */
 package net.reallifegames.sdeconomy;
 
+import net.reallifegames.sdeconomy.jfr.EconomyEvents;
+import net.reallifegames.sdeconomy.pipeline.MarketEvent;
+import net.reallifegames.sdeconomy.pipeline.MarketPipeline;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 public class DefaultEconomy {
 
+    /**
+     * The total amount of units a bulk quote must cover before it is computed in parallel.
+     */
+    private static final long PARALLEL_QUOTE_UNITS = 1 << 16;
+
+    /**
+     * The quote of a product which does not exist in {@link #checkQuotes}.
+     */
+    public static final long NO_QUOTE = Long.MIN_VALUE;
+
     /**
      * The list of {@link DefaultProduct products}.
      */
     @Nonnull
     public static final ConcurrentHashMap<String, DefaultProduct> stockPrices = new ConcurrentHashMap<>();
 
+    /**
+     * The {@link MarketRegion} shared with other servers on this host or null if the market is not shared.
+     */
+    @Nullable
+    private static volatile MarketRegion marketRegion;
+
+    /**
+     * The {@link MarketPipeline} market changes are published to or null if they are written inline.
+     */
+    @Nullable
+    private static volatile MarketPipeline marketPipeline;
+
     /**
      * @return a map of {@link DefaultProduct products} grouped by their decay interval time.
      */
@@ -61,55 +92,160 @@ public class DefaultEconomy {
      *
      * @param defaultProduct the {@link DefaultProduct product} to check.
      * @param amount         the amount sold.
-     * @return the amount of money you would receive.
+     * @return the amount of money in micros you would receive or {@link Money#INFINITE} if the market can not buy that
+     * many.
      */
-    public static double checkSellReturns(@Nonnull final DefaultProduct defaultProduct, final int amount) {
-        double returnValue = 0;
-        int tSupply = defaultProduct.supply;
-        for (int i = 0; i < amount; i++) {
-            if (tSupply < Integer.MAX_VALUE) {
-                tSupply++;
-            }
-            returnValue += defaultProduct.modFactor * ((double) defaultProduct.demand / (double) tSupply) + defaultProduct.price;
-        }
-        return returnValue;
+    public static long checkSellReturns(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        // Call the default model directly so the common case is inlined no matter how many models are loaded
+        final PricingModel pricingModel = defaultProduct.pricingModel;
+        return pricingModel == DefaultPricingModel.INSTANCE ? DefaultPricingModel.INSTANCE.quoteSell(defaultProduct, amount) :
+                pricingModel.quoteSell(defaultProduct, amount);
     }
 
     /**
-     * Sell an amount of a {@link DefaultProduct product} to the server.
+     * Gets the amount of money you would receive if you sold a product of the {@link DefaultPricingModel default model}
+     * in the given state.
+     *
+     * @param modFactor the mod factor of the product.
+     * @param price     the price of the product.
+     * @param supply    the supply of the product.
+     * @param demand    the demand of the product.
+     * @param amount    the amount sold.
+     * @return the amount of money in micros you would receive or {@link Money#INFINITE} if the market can not buy that
+     * many.
+     */
+    public static long checkSellReturns(final float modFactor, final float price, final int supply, final int demand,
+                                        final int amount) {
+        return DefaultPricingModel.quoteSell(modFactor, price, supply, demand, amount);
+    }
+
+    /**
+     * Sells an amount of a {@link DefaultProduct product} to the server.
      *
      * @param defaultProduct the {@link DefaultProduct product} to sell.
      * @param jdbcUrl        the url of the database.
-     * @param uuid           the uuid of the player setting the price.
+     * @param uuid           the uuid of the player selling.
      * @param amount         the amount sold.
-     * @return the amount of money to give to the player.
+     * @return the amount of money in micros to give to the player or {@link Money#INFINITE} if the market can not buy
+     * that many, in which case nothing was sold.
      *
      * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
      *                      argument is supplied to this method. If a database access error occurs or the url is null.
      */
-    public static double sell(@Nonnull DefaultProduct defaultProduct, @Nonnull final String jdbcUrl, @Nonnull final String uuid,
-                              final int amount) throws SQLException {
-        double returnValue = sellNoSql(defaultProduct, amount);
-        SqlService.insertDefaultTransaction(jdbcUrl, uuid, SqlService.SELL_ACTION, defaultProduct.alias, amount, returnValue);
+    public static long sell(@Nonnull DefaultProduct defaultProduct, @Nonnull final String jdbcUrl, @Nonnull final String uuid,
+                            final int amount) throws SQLException {
+        final Object event = EconomyEvents.beginTrade();
+        long returnValue = sellNoSql(defaultProduct, amount);
+        if (returnValue == Money.INFINITE) {
+            return returnValue;
+        }
+        logTransaction(jdbcUrl, uuid, SqlService.SELL_ACTION, defaultProduct, amount, returnValue);
+        EconomyEvents.commitTrade(event, "sell", defaultProduct.alias, amount, returnValue);
         return returnValue;
     }
 
     /**
-     * Sell an amount of a {@link DefaultProduct product} to the server without sql.
+     * Sells several {@link DefaultProduct products} to the server at once. Every product is applied once and all
+     * transactions are logged in a single batch. If the market can not buy one of the products or the transactions can
+     * not be logged the supply and demand change of every product is reverted.
+     *
+     * @param defaultProducts the {@link DefaultProduct products} to sell, each product may only be listed once.
+     * @param amounts         the amount sold of each product.
+     * @param returns         receives the money in micros to give to the player for each product.
+     * @param length          the amount of products to read from the arrays.
+     * @param jdbcUrl         the url of the database.
+     * @param uuid            the uuid of the player selling.
+     * @return the total amount of money in micros to give to the player or {@link Money#INFINITE} if the market can
+     * not buy one of the products, in which case nothing was sold.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static long sellAll(@Nonnull final DefaultProduct[] defaultProducts, @Nonnull final int[] amounts,
+                               @Nonnull final long[] returns, final int length, @Nonnull final String jdbcUrl,
+                               @Nonnull final String uuid) throws SQLException {
+        final String[] aliases = new String[length];
+        final float[] journalAmounts = new float[length];
+        final int[] supplyChanges = new int[length];
+        final int[] demandChanges = new int[length];
+        final Object[] events = new Object[length];
+        long totalReturns = 0;
+        for (int i = 0; i < length; i++) {
+            final DefaultProduct defaultProduct = defaultProducts[i];
+            events[i] = EconomyEvents.beginTrade();
+            final MarketRegion region = beginRegionUpdate(defaultProduct);
+            try {
+                final int supply = defaultProduct.supply;
+                final int demand = defaultProduct.demand;
+                returns[i] = sellLocked(defaultProduct, amounts[i]);
+                supplyChanges[i] = defaultProduct.supply - supply;
+                demandChanges[i] = defaultProduct.demand - demand;
+            } finally {
+                endRegionUpdate(region, defaultProduct);
+            }
+            aliases[i] = defaultProduct.alias;
+            journalAmounts[i] = amounts[i];
+            totalReturns = Money.addCost(totalReturns, returns[i]);
+        }
+        if (totalReturns == Money.INFINITE) {
+            revertBasket(defaultProducts, supplyChanges, demandChanges, length);
+            return totalReturns;
+        }
+        final MarketPipeline pipeline = marketPipeline;
+        try {
+            if (pipeline != null) {
+                // The journal stage retries until the rows are written, nothing has to be undone
+                for (int i = 0; i < length; i++) {
+                    pipeline.publish(SqlService.SELL_ACTION, defaultProducts[i], uuid, amounts[i], returns[i]);
+                }
+            } else {
+                SqlService.insertDefaultTransactions(jdbcUrl, uuid, SqlService.SELL_ACTION, aliases, journalAmounts,
+                        returns, length);
+            }
+        } catch (SQLException e) {
+            // Undo the whole sale so the market matches the journal
+            revertBasket(defaultProducts, supplyChanges, demandChanges, length);
+            throw e;
+        }
+        for (int i = 0; i < length; i++) {
+            EconomyEvents.commitTrade(events[i], "sell", aliases[i], amounts[i], returns[i]);
+        }
+        return totalReturns;
+    }
+
+    /**
+     * Sells an amount of a {@link DefaultProduct product} to the server without sql.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to sell.
+     * @param amount         the amount sold.
+     * @return the amount of money in micros to give to the player or {@link Money#INFINITE} if the market can not buy
+     * that many.
+     */
+    public static long sellNoSql(@Nonnull DefaultProduct defaultProduct, final int amount) {
+        final MarketRegion region = beginRegionUpdate(defaultProduct);
+        try {
+            return sellLocked(defaultProduct, amount);
+        } finally {
+            endRegionUpdate(region, defaultProduct);
+        }
+    }
+
+    /**
+     * Sells an amount of a {@link DefaultProduct product} to the server. The caller must hold the region lock of the
+     * product.
      *
      * @param defaultProduct the {@link DefaultProduct product} to sell.
      * @param amount         the amount sold.
-     * @return the amount of money to give to the player.
+     * @return the amount of money in micros to give to the player or {@link Money#INFINITE} if the market can not buy
+     * that many.
      */
     @SuppressWarnings ("Duplicates")
-    public static double sellNoSql(@Nonnull DefaultProduct defaultProduct, final int amount) {
-        double returnValue = 0;
-        for (int i = 0; i < amount; i++) {
-            if (defaultProduct.supply < Integer.MAX_VALUE) {
-                defaultProduct.supply++;
-            }
-            defaultProduct.demand -= defaultProduct.demand == 1 ? 0 : 1;
-            returnValue += defaultProduct.modFactor * ((double) defaultProduct.demand / (double) defaultProduct.supply) + defaultProduct.price;
+    static long sellLocked(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        final PricingModel pricingModel = defaultProduct.pricingModel;
+        final long returnValue = pricingModel == DefaultPricingModel.INSTANCE ?
+                DefaultPricingModel.INSTANCE.sell(defaultProduct, amount) : pricingModel.sell(defaultProduct, amount);
+        if (returnValue != Money.INFINITE) {
+            defaultProduct.version++;
         }
         return returnValue;
     }
@@ -120,61 +256,415 @@ public class DefaultEconomy {
      *
      * @param defaultProduct the {@link DefaultProduct product} to check.
      * @param amount         the amount bought.
-     * @return the amount of money it would cost to buy some amount of {@link DefaultProduct products}.
+     * @return the amount of money in micros it would cost to buy some amount of {@link DefaultProduct products} or
+     * {@link Money#INFINITE} if the market can not sell that many.
      */
-    public static double checkBuyCost(@Nonnull final DefaultProduct defaultProduct, final int amount) {
-        double cost = 0;
-        int tDemand = defaultProduct.demand;
-        int tSupply = defaultProduct.supply;
-        for (int i = 0; i < amount; i++) {
-            tSupply -= tSupply == 1 ? 0 : 1;
-            if (tDemand < Integer.MAX_VALUE) {
-                tDemand++;
+    public static long checkBuyCost(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        final PricingModel pricingModel = defaultProduct.pricingModel;
+        return pricingModel == DefaultPricingModel.INSTANCE ? DefaultPricingModel.INSTANCE.quoteBuy(defaultProduct, amount) :
+                pricingModel.quoteBuy(defaultProduct, amount);
+    }
+
+    /**
+     * Gets the amount of money it would cost to buy some amount of a product of the {@link DefaultPricingModel default
+     * model} in the given state.
+     *
+     * @param modFactor the mod factor of the product.
+     * @param price     the price of the product.
+     * @param supply    the supply of the product.
+     * @param demand    the demand of the product.
+     * @param amount    the amount bought.
+     * @return the amount of money in micros it would cost to buy the products or {@link Money#INFINITE} if the market
+     * can not sell that many.
+     */
+    public static long checkBuyCost(final float modFactor, final float price, final int supply, final int demand,
+                                    final int amount) {
+        return DefaultPricingModel.quoteBuy(modFactor, price, supply, demand, amount);
+    }
+
+    /**
+     * Gets buy and sell quotes for many {@link DefaultProduct products} and amounts at once. Every product is read once
+     * into a snapshot before any quote is computed, which is consistent across products when called from the thread
+     * which trades. Large requests are computed in parallel. Quotes for products which do not exist are {@link
+     * #NO_QUOTE}.
+     *
+     * @param aliases    the names of the products to quote.
+     * @param amounts    the amount to quote for each product.
+     * @param buyQuotes  receives the cost in micros of buying each amount.
+     * @param sellQuotes receives the returns in micros of selling each amount.
+     * @param length     the amount of quotes to read from the arrays.
+     */
+    public static void checkQuotes(@Nonnull final String[] aliases, @Nonnull final int[] amounts,
+                                   @Nonnull final long[] buyQuotes, @Nonnull final long[] sellQuotes, final int length) {
+        // Take the market snapshot
+        final float[] modFactors = new float[length];
+        final float[] prices = new float[length];
+        final int[] supplies = new int[length];
+        final int[] demands = new int[length];
+        final boolean[] missing = new boolean[length];
+        // Products of other models are copied whole since their state is not known here
+        final DefaultProduct[] copies = new DefaultProduct[length];
+        long totalUnits = 0;
+        for (int i = 0; i < length; i++) {
+            final DefaultProduct defaultProduct = stockPrices.get(aliases[i]);
+            if (defaultProduct == null) {
+                missing[i] = true;
+                continue;
+            }
+            if (defaultProduct.pricingModel != DefaultPricingModel.INSTANCE) {
+                copies[i] = defaultProduct.copyPricingState();
+            }
+            modFactors[i] = defaultProduct.modFactor;
+            prices[i] = defaultProduct.price;
+            supplies[i] = defaultProduct.supply;
+            demands[i] = defaultProduct.demand;
+            totalUnits += Math.max(0, amounts[i]);
+        }
+        // Compute the quotes
+        final IntConsumer quote = i->{
+            if (missing[i]) {
+                buyQuotes[i] = NO_QUOTE;
+                sellQuotes[i] = NO_QUOTE;
+            } else if (copies[i] != null) {
+                buyQuotes[i] = copies[i].pricingModel.quoteBuy(copies[i], amounts[i]);
+                sellQuotes[i] = copies[i].pricingModel.quoteSell(copies[i], amounts[i]);
+            } else {
+                buyQuotes[i] = checkBuyCost(modFactors[i], prices[i], supplies[i], demands[i], amounts[i]);
+                sellQuotes[i] = checkSellReturns(modFactors[i], prices[i], supplies[i], demands[i], amounts[i]);
+            }
+        };
+        if (totalUnits >= PARALLEL_QUOTE_UNITS) {
+            IntStream.range(0, length).parallel().forEach(quote);
+        } else {
+            for (int i = 0; i < length; i++) {
+                quote.accept(i);
             }
-            cost += defaultProduct.modFactor * ((double) tDemand / (double) tSupply) + defaultProduct.price;
         }
-        return cost;
     }
 
     /**
-     * Sell an amount of a {@link DefaultProduct product} to the server.
+     * Buys an amount of a {@link DefaultProduct product} from the server.
      *
-     * @param defaultProduct the {@link DefaultProduct product} to sell.
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
      * @param jdbcUrl        the url of the database.
-     * @param uuid           the uuid of the player setting the price.
-     * @param amount         the amount sold.
-     * @return the amount of money to take from the player.
+     * @param uuid           the uuid of the player buying.
+     * @param amount         the amount bought.
+     * @return the amount of money in micros to take from the player or {@link Money#INFINITE} if the market can not
+     * sell that many, in which case nothing was bought.
      *
      * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
      *                      argument is supplied to this method. If a database access error occurs or the url is null.
      */
-    public static double buy(@Nonnull DefaultProduct defaultProduct, @Nonnull final String jdbcUrl, @Nonnull final String uuid,
-                             final int amount) throws SQLException {
-        double returnValue = buyNoSql(defaultProduct, amount);
-        SqlService.insertDefaultTransaction(jdbcUrl, uuid, SqlService.BUY_ACTION, defaultProduct.alias, amount, returnValue);
+    public static long buy(@Nonnull DefaultProduct defaultProduct, @Nonnull final String jdbcUrl, @Nonnull final String uuid,
+                           final int amount) throws SQLException {
+        final Object event = EconomyEvents.beginTrade();
+        long returnValue = buyNoSql(defaultProduct, amount);
+        if (returnValue == Money.INFINITE) {
+            return returnValue;
+        }
+        logTransaction(jdbcUrl, uuid, SqlService.BUY_ACTION, defaultProduct, amount, returnValue);
+        EconomyEvents.commitTrade(event, "buy", defaultProduct.alias, amount, returnValue);
         return returnValue;
     }
 
     /**
-     * Sell an amount of a {@link DefaultProduct product} to the server without sql logging.
+     * Buys an amount of a {@link DefaultProduct product} from the server if it costs no more than a limit. The cost is
+     * checked against the limit after the shared state of the product was loaded, so trades made by other servers in
+     * the meantime are included.
      *
-     * @param defaultProduct the {@link DefaultProduct product} to sell.
-     * @param amount         the amount sold.
-     * @return the amount of money to take from the player.
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param jdbcUrl        the url of the database.
+     * @param uuid           the uuid of the player buying.
+     * @param amount         the amount bought.
+     * @param limit          the most money in micros the buy may cost.
+     * @param changes        receives the supply change of the buy at index 0 and its demand change at index 1, to
+     *                       pass to {@link #revertTrade} if the player can not pay.
+     * @return the amount of money in micros to take from the player. If it is {@link Money#INFINITE} or more than the
+     * limit nothing was bought.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
      */
-    @SuppressWarnings ("Duplicates")
-    public static double buyNoSql(@Nonnull DefaultProduct defaultProduct, final int amount) {
-        double returnValue = 0;
-        for (int i = 0; i < amount; i++) {
-            if (defaultProduct.demand < Integer.MAX_VALUE) {
-                defaultProduct.demand++;
+    public static long buy(@Nonnull DefaultProduct defaultProduct, @Nonnull final String jdbcUrl, @Nonnull final String uuid,
+                           final int amount, final long limit, @Nonnull final int[] changes) throws SQLException {
+        final Object event = EconomyEvents.beginTrade();
+        final long returnValue;
+        final MarketRegion region = beginRegionUpdate(defaultProduct);
+        try {
+            final long cost = checkBuyCost(defaultProduct, amount);
+            if (cost == Money.INFINITE || cost > limit) {
+                return cost;
             }
-            defaultProduct.supply -= defaultProduct.supply == 1 ? 0 : 1;
-            returnValue += defaultProduct.modFactor * ((double) defaultProduct.demand / (double) defaultProduct.supply) + defaultProduct.price;
+            final int supply = defaultProduct.supply;
+            final int demand = defaultProduct.demand;
+            returnValue = buyLocked(defaultProduct, amount);
+            changes[0] = defaultProduct.supply - supply;
+            changes[1] = defaultProduct.demand - demand;
+        } finally {
+            endRegionUpdate(region, defaultProduct);
         }
+        logTransaction(jdbcUrl, uuid, SqlService.BUY_ACTION, defaultProduct, amount, returnValue);
+        EconomyEvents.commitTrade(event, "buy", defaultProduct.alias, amount, returnValue);
         return returnValue;
     }
 
+    /**
+     * Gets the amount of money it would cost to buy several {@link DefaultProduct products} at this instant.
+     *
+     * @param defaultProducts the {@link DefaultProduct products} to check, each product may only be listed once.
+     * @param amounts         the amount bought of each product.
+     * @param costs           receives the cost of each product.
+     * @param length          the amount of products to read from the arrays.
+     * @return the total cost of all products in micros or {@link Money#INFINITE} if the market can not sell one of
+     * them.
+     */
+    public static long checkBasketCost(@Nonnull final DefaultProduct[] defaultProducts, @Nonnull final int[] amounts,
+                                       @Nonnull final long[] costs, final int length) {
+        long totalCost = 0;
+        for (int i = 0; i < length; i++) {
+            costs[i] = checkBuyCost(defaultProducts[i], amounts[i]);
+            totalCost = Money.addCost(totalCost, costs[i]);
+        }
+        return totalCost;
+    }
+
+    /**
+     * Buys several {@link DefaultProduct products} from the server at once. Every product is applied once and all
+     * transactions are logged in a single batch. If the transactions can not be logged the supply and demand change of
+     * every product is reverted.
+     *
+     * @param defaultProducts the {@link DefaultProduct products} to buy, each product may only be listed once.
+     * @param amounts         the amount bought of each product.
+     * @param costs           receives the money in micros to take from the player for each product.
+     * @param length          the amount of products to read from the arrays.
+     * @param jdbcUrl         the url of the database.
+     * @param uuid            the uuid of the player buying.
+     * @return the total amount of money in micros to take from the player or {@link Money#INFINITE} if the market can
+     * not sell one of the products, in which case nothing was bought.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static long buyBasket(@Nonnull final DefaultProduct[] defaultProducts, @Nonnull final int[] amounts,
+                                 @Nonnull final long[] costs, final int length, @Nonnull final String jdbcUrl,
+                                 @Nonnull final String uuid) throws SQLException {
+        final String[] aliases = new String[length];
+        final float[] journalAmounts = new float[length];
+        final int[] supplyChanges = new int[length];
+        final int[] demandChanges = new int[length];
+        final Object[] events = new Object[length];
+        long totalCost = 0;
+        for (int i = 0; i < length; i++) {
+            final DefaultProduct defaultProduct = defaultProducts[i];
+            events[i] = EconomyEvents.beginTrade();
+            final MarketRegion region = beginRegionUpdate(defaultProduct);
+            try {
+                final int supply = defaultProduct.supply;
+                final int demand = defaultProduct.demand;
+                costs[i] = buyLocked(defaultProduct, amounts[i]);
+                supplyChanges[i] = defaultProduct.supply - supply;
+                demandChanges[i] = defaultProduct.demand - demand;
+            } finally {
+                endRegionUpdate(region, defaultProduct);
+            }
+            aliases[i] = defaultProduct.alias;
+            journalAmounts[i] = amounts[i];
+            totalCost = Money.addCost(totalCost, costs[i]);
+        }
+        if (totalCost == Money.INFINITE) {
+            revertBasket(defaultProducts, supplyChanges, demandChanges, length);
+            return totalCost;
+        }
+        final MarketPipeline pipeline = marketPipeline;
+        try {
+            if (pipeline != null) {
+                // The journal stage retries until the rows are written, nothing has to be undone
+                for (int i = 0; i < length; i++) {
+                    pipeline.publish(SqlService.BUY_ACTION, defaultProducts[i], uuid, amounts[i], costs[i]);
+                }
+            } else {
+                SqlService.insertDefaultTransactions(jdbcUrl, uuid, SqlService.BUY_ACTION, aliases, journalAmounts, costs,
+                        length);
+            }
+        } catch (SQLException e) {
+            // Undo the whole basket so the market matches the journal
+            revertBasket(defaultProducts, supplyChanges, demandChanges, length);
+            throw e;
+        }
+        for (int i = 0; i < length; i++) {
+            EconomyEvents.commitTrade(events[i], "buy", aliases[i], amounts[i], costs[i]);
+        }
+        return totalCost;
+    }
+
+    /**
+     * Reverts the supply and demand change of a basket. Only the change of the basket is reverted so trades made by
+     * other servers in the meantime are kept.
+     *
+     * @param defaultProducts the {@link DefaultProduct products} of the basket.
+     * @param supplyChanges   the supply change of each product.
+     * @param demandChanges   the demand change of each product.
+     * @param length          the amount of products to read from the arrays.
+     */
+    private static void revertBasket(@Nonnull final DefaultProduct[] defaultProducts, @Nonnull final int[] supplyChanges,
+                                     @Nonnull final int[] demandChanges, final int length) {
+        for (int i = 0; i < length; i++) {
+            final DefaultProduct defaultProduct = defaultProducts[i];
+            final MarketRegion region = beginRegionUpdate(defaultProduct);
+            try {
+                defaultProduct.supply = clampMarketValue((long) defaultProduct.supply - supplyChanges[i]);
+                defaultProduct.demand = clampMarketValue((long) defaultProduct.demand - demandChanges[i]);
+                defaultProduct.version++;
+            } finally {
+                endRegionUpdate(region, defaultProduct);
+            }
+        }
+    }
+
+    /**
+     * Buys an amount of a {@link DefaultProduct product} from the server without sql logging.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return the amount of money in micros to take from the player or {@link Money#INFINITE} if the market can not
+     * sell that many.
+     */
+    public static long buyNoSql(@Nonnull DefaultProduct defaultProduct, final int amount) {
+        final MarketRegion region = beginRegionUpdate(defaultProduct);
+        try {
+            return buyLocked(defaultProduct, amount);
+        } finally {
+            endRegionUpdate(region, defaultProduct);
+        }
+    }
+
+    /**
+     * Buys an amount of a {@link DefaultProduct product} from the server. The caller must hold the region lock of the
+     * product.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return the amount of money in micros to take from the player or {@link Money#INFINITE} if the market can not
+     * sell that many.
+     */
+    @SuppressWarnings ("Duplicates")
+    static long buyLocked(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        final PricingModel pricingModel = defaultProduct.pricingModel;
+        final long returnValue = pricingModel == DefaultPricingModel.INSTANCE ?
+                DefaultPricingModel.INSTANCE.buy(defaultProduct, amount) : pricingModel.buy(defaultProduct, amount);
+        if (returnValue != Money.INFINITE) {
+            defaultProduct.version++;
+        }
+        return returnValue;
+    }
+
+    /**
+     * Buys an amount of a {@link DefaultProduct product} from the server at a previously quoted cost.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param jdbcUrl        the url of the database.
+     * @param uuid           the uuid of the player buying.
+     * @param quoteToken     the redeemed quote of the purchase.
+     * @param changes        receives the supply change of the buy at index 0 and its demand change at index 1, to
+     *                       pass to {@link #revertTrade} if the player can not pay.
+     * @return the amount of money in micros to take from the player or {@link Money#INFINITE} if the market can no
+     * longer sell that many, in which case nothing was bought.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static long buy(@Nonnull DefaultProduct defaultProduct, @Nonnull final String jdbcUrl, @Nonnull final String uuid,
+                           @Nonnull final QuoteToken quoteToken, @Nonnull final int[] changes) throws SQLException {
+        final Object event = EconomyEvents.beginTrade();
+        final MarketRegion region = beginRegionUpdate(defaultProduct);
+        try {
+            final int supply = defaultProduct.supply;
+            final int demand = defaultProduct.demand;
+            if (!applyBuyLocked(defaultProduct, quoteToken.amount)) {
+                return Money.INFINITE;
+            }
+            changes[0] = defaultProduct.supply - supply;
+            changes[1] = defaultProduct.demand - demand;
+        } finally {
+            endRegionUpdate(region, defaultProduct);
+        }
+        logTransaction(jdbcUrl, uuid, SqlService.BUY_ACTION, defaultProduct, quoteToken.amount, quoteToken.cost);
+        EconomyEvents.commitTrade(event, "buy", defaultProduct.alias, quoteToken.amount, quoteToken.cost);
+        return quoteToken.cost;
+    }
+
+    /**
+     * Applies the supply and demand change of buying an amount of a {@link DefaultProduct product} without computing
+     * its cost. The resulting state is the same as after {@link #buyNoSql(DefaultProduct, int)}.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return true if the buy was applied, false if the market can not sell that many, in which case the product was
+     * not changed.
+     */
+    public static boolean applyBuyNoSql(@Nonnull DefaultProduct defaultProduct, final int amount) {
+        final MarketRegion region = beginRegionUpdate(defaultProduct);
+        try {
+            return applyBuyLocked(defaultProduct, amount);
+        } finally {
+            endRegionUpdate(region, defaultProduct);
+        }
+    }
+
+    /**
+     * Applies the supply and demand change of buying an amount of a {@link DefaultProduct product} without computing
+     * its cost. The caller must hold the region lock of the product.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return true if the buy was applied, false if the market can not sell that many, in which case the product was
+     * not changed.
+     */
+    private static boolean applyBuyLocked(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        if (amount <= 0) {
+            return true;
+        }
+        final PricingModel pricingModel = defaultProduct.pricingModel;
+        final boolean applied = pricingModel == DefaultPricingModel.INSTANCE ?
+                DefaultPricingModel.INSTANCE.applyBuy(defaultProduct, amount) :
+                pricingModel.applyBuy(defaultProduct, amount);
+        if (applied) {
+            defaultProduct.version++;
+        }
+        return applied;
+    }
+
+    /**
+     * Reverts a logged trade the player could not pay for or be paid for. Only the change of the trade is reverted so
+     * trades made in the meantime are kept. The trade is logged again with a negated amount and money so the journal
+     * of the player adds up to nothing.
+     *
+     * @param defaultProduct the traded {@link DefaultProduct product}.
+     * @param jdbcUrl        the url of the database.
+     * @param uuid           the uuid of the player who traded.
+     * @param action         {@link SqlService#BUY_ACTION} or {@link SqlService#SELL_ACTION}.
+     * @param amount         the amount traded.
+     * @param moneyExchanged the money in micros exchanged by the trade.
+     * @param supplyChange   the supply change of the trade.
+     * @param demandChange   the demand change of the trade.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void revertTrade(@Nonnull final DefaultProduct defaultProduct, @Nonnull final String jdbcUrl,
+                                   @Nonnull final String uuid, final byte action, final int amount,
+                                   final long moneyExchanged, final int supplyChange, final int demandChange)
+            throws SQLException {
+        final MarketRegion region = beginRegionUpdate(defaultProduct);
+        try {
+            defaultProduct.supply = clampMarketValue((long) defaultProduct.supply - supplyChange);
+            defaultProduct.demand = clampMarketValue((long) defaultProduct.demand - demandChange);
+            defaultProduct.version++;
+        } finally {
+            endRegionUpdate(region, defaultProduct);
+        }
+        logTransaction(jdbcUrl, uuid, action, defaultProduct, -amount, -moneyExchanged);
+    }
+
     /**
      * Sets the price of a {@link DefaultProduct product}.
      *
@@ -188,7 +678,7 @@ public class DefaultEconomy {
     public static void setPrice(@Nonnull DefaultProduct defaultProduct, @Nonnull final String jdbcUrl, @Nonnull final String uuid,
                                 final float price) throws SQLException {
         setPriceNoSql(defaultProduct, price);
-        SqlService.insertDefaultTransaction(jdbcUrl, uuid, SqlService.SET_PRICE_ACTION, defaultProduct.alias, price, 0);
+        logTransaction(jdbcUrl, uuid, SqlService.SET_PRICE_ACTION, defaultProduct, price, 0);
     }
 
     /**
@@ -199,7 +689,13 @@ public class DefaultEconomy {
      * @return the price set.
      */
     public static float setPriceNoSql(@Nonnull DefaultProduct defaultProduct, final float price) {
-        return defaultProduct.price = price;
+        final MarketRegion region = beginRegionUpdate(defaultProduct);
+        try {
+            defaultProduct.version++;
+            return defaultProduct.price = price;
+        } finally {
+            endRegionUpdate(region, defaultProduct);
+        }
     }
 
     /**
@@ -215,7 +711,7 @@ public class DefaultEconomy {
     public static void setModFactor(@Nonnull DefaultProduct defaultProduct, @Nonnull final String jdbcUrl, @Nonnull final String uuid,
                                     final float modFactor) throws SQLException {
         setModFactorNoSql(defaultProduct, modFactor);
-        SqlService.insertDefaultTransaction(jdbcUrl, uuid, SqlService.SET_MOD_FACTOR_ACTION, defaultProduct.alias, modFactor, 0);
+        logTransaction(jdbcUrl, uuid, SqlService.SET_MOD_FACTOR_ACTION, defaultProduct, modFactor, 0);
     }
 
     /**
@@ -226,7 +722,49 @@ public class DefaultEconomy {
      * @return the mod factor set.
      */
     public static float setModFactorNoSql(@Nonnull DefaultProduct defaultProduct, final float modFactor) {
-        return defaultProduct.modFactor = modFactor;
+        final MarketRegion region = beginRegionUpdate(defaultProduct);
+        try {
+            defaultProduct.version++;
+            return defaultProduct.modFactor = modFactor;
+        } finally {
+            endRegionUpdate(region, defaultProduct);
+        }
+    }
+
+    /**
+     * Sets the {@link PricingModel} of a {@link DefaultProduct product} without sql. The new model converts the market
+     * state priced by the old one.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to alter.
+     * @param pricingModel   the model to be set.
+     */
+    public static void setPricingModelNoSql(@Nonnull DefaultProduct defaultProduct, @Nonnull final PricingModel pricingModel) {
+        final MarketRegion region = beginRegionUpdate(defaultProduct);
+        try {
+            if (defaultProduct.pricingModel != pricingModel) {
+                pricingModel.adopt(defaultProduct, defaultProduct.pricingModel);
+            }
+            defaultProduct.version++;
+            defaultProduct.pricingModel = pricingModel;
+        } finally {
+            endRegionUpdate(region, defaultProduct);
+        }
+    }
+
+    /**
+     * Sets the liquidity of a {@link DefaultProduct product} without sql.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to alter.
+     * @param liquidity      the liquidity to be set.
+     */
+    public static void setLiquidityNoSql(@Nonnull DefaultProduct defaultProduct, final float liquidity) {
+        final MarketRegion region = beginRegionUpdate(defaultProduct);
+        try {
+            defaultProduct.version++;
+            defaultProduct.liquidity = liquidity;
+        } finally {
+            endRegionUpdate(region, defaultProduct);
+        }
     }
 
     /**
@@ -236,14 +774,283 @@ public class DefaultEconomy {
      * @param amount         the amount to decay.
      */
     public static int decayDemand(@Nonnull DefaultProduct defaultProduct, final int amount) {
-        int decayAmount = 0;
-        for (; decayAmount < amount; decayAmount++) {
-            if (defaultProduct.demand > 1) {
-                defaultProduct.demand--;
-            } else {
-                break;
+        final MarketRegion region = beginRegionUpdate(defaultProduct);
+        try {
+            final int decayAmount = defaultProduct.pricingModel.decay(defaultProduct, amount);
+            if (decayAmount > 0) {
+                defaultProduct.version++;
+            }
+            return decayAmount > 0 ? decayAmount : 0;
+        } finally {
+            endRegionUpdate(region, defaultProduct);
+        }
+    }
+
+    /**
+     * Decays the demand of a {@link DefaultProduct product} by its configured decay amount and type.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to alter.
+     * @return the amount of demand removed.
+     */
+    public static int decayProduct(@Nonnull DefaultProduct defaultProduct) {
+        if (defaultProduct.decayType == SqlService.DECAY_PERCENTAGE_TYPE) {
+            return decayDemand(defaultProduct, (int) Math.ceil(((double) defaultProduct.demand * (double) defaultProduct.decayAmount) / 100.0));
+        } else {
+            return decayDemand(defaultProduct, defaultProduct.decayAmount);
+        }
+    }
+
+    /**
+     * Decays the demand of a list of {@link DefaultProduct products} and logs every decay in one batch.
+     *
+     * @param productList the list of {@link DefaultProduct products} to decay.
+     * @param jdbcUrl     the url of the database.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void decayProducts(@Nonnull final List<DefaultProduct> productList, @Nonnull final String jdbcUrl)
+            throws SQLException {
+        final Object event = EconomyEvents.beginDecay();
+        final String[] aliases = new String[productList.size()];
+        final float[] amounts = new float[productList.size()];
+        final MarketPipeline pipeline = marketPipeline;
+        int length = 0;
+        long demandRemoved = 0;
+        for (final DefaultProduct defaultProduct : productList) {
+            final int amount = decayProduct(defaultProduct);
+            if (amount > 0) {
+                if (pipeline != null) {
+                    pipeline.publish(SqlService.DECAY_ACTION, defaultProduct, SqlService.SYSTEM_UUID, amount, 0);
+                }
+                aliases[length] = defaultProduct.alias;
+                amounts[length++] = amount;
+                demandRemoved += amount;
             }
         }
-        return decayAmount > 0 ? decayAmount : 0;
+        if (pipeline == null) {
+            SqlService.insertDefaultTransactions(jdbcUrl, SqlService.SYSTEM_UUID, SqlService.DECAY_ACTION, aliases,
+                    amounts, new long[length], length);
+        }
+        EconomyEvents.commitDecay(event, productList.size(), demandRemoved, length);
+    }
+
+    /**
+     * Snapshots the supply and demand changes made to a collection of {@link DefaultProduct products} since they were
+     * last persisted. Must be called on the thread which mutates the products, and only once the previous snapshot of
+     * the same products was merged or failed to write.
+     *
+     * @param productCollection the {@link DefaultProduct products} to snapshot.
+     * @return the snapshot to pass to {@link SqlService#updateDefaultProductDeltas(String, ProductDeltas)}.
+     */
+    public static ProductDeltas takeDeltas(@Nonnull final Collection<DefaultProduct> productCollection) {
+        return new ProductDeltas(productCollection);
+    }
+
+    /**
+     * Rebases the {@link DefaultProduct products} of a snapshot onto the authoritative database values. Changes made
+     * after the snapshot was taken are kept on top of the merged values. Products which were not written are left
+     * untouched. Must be called on the thread which mutates the products, even if writing the snapshot failed.
+     *
+     * @param productDeltas the snapshot passed to {@link SqlService}.
+     */
+    public static void applyMergedValues(@Nonnull final ProductDeltas productDeltas) {
+        for (int i = 0; i < productDeltas.products.length; i++) {
+            // Deltas which were not written stay in memory for the next snapshot
+            if (!productDeltas.written[i]) {
+                continue;
+            }
+            final DefaultProduct defaultProduct = productDeltas.products[i];
+            // Rebase onto the latest shared state
+            final MarketRegion region = beginRegionUpdate(defaultProduct);
+            try {
+                final int mergedSupply = productDeltas.mergedSupplies[i];
+                final int mergedDemand = productDeltas.mergedDemands[i];
+                // Keep the trades made while the snapshot was being written
+                final int supply = clampMarketValue((long) mergedSupply + defaultProduct.supply - productDeltas.supplySnapshots[i]);
+                final int demand = clampMarketValue((long) mergedDemand + defaultProduct.demand - productDeltas.demandSnapshots[i]);
+                defaultProduct.persistedSupply = mergedSupply;
+                defaultProduct.persistedDemand = mergedDemand;
+                defaultProduct.rowVersion = productDeltas.mergedRowVersions[i];
+                if (supply != defaultProduct.supply || demand != defaultProduct.demand) {
+                    defaultProduct.supply = supply;
+                    defaultProduct.demand = demand;
+                    defaultProduct.version++;
+                }
+            } finally {
+                endRegionUpdate(region, defaultProduct);
+            }
+        }
+    }
+
+    /**
+     * Writes the supply and demand deltas of a collection of {@link DefaultProduct products} and merges the
+     * authoritative values back into memory in one call.
+     *
+     * @param productCollection the {@link DefaultProduct products} to persist.
+     * @param jdbcUrl           the url of the database.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void saveDeltas(@Nonnull final Collection<DefaultProduct> productCollection, @Nonnull final String jdbcUrl)
+            throws SQLException {
+        final ProductDeltas productDeltas = takeDeltas(productCollection);
+        try {
+            SqlService.updateDefaultProductDeltas(jdbcUrl, productDeltas);
+        } finally {
+            applyMergedValues(productDeltas);
+        }
+    }
+
+    /**
+     * Writes the supply and demand of a collection of {@link DefaultProduct products} with versioned updates and
+     * merges the authoritative values back into memory in one call.
+     *
+     * @param productCollection the {@link DefaultProduct products} to persist.
+     * @param jdbcUrl           the url of the database.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void saveProducts(@Nonnull final Collection<DefaultProduct> productCollection, @Nonnull final String jdbcUrl)
+            throws SQLException {
+        final ProductDeltas productDeltas = takeDeltas(productCollection);
+        try {
+            SqlService.updateDefaultProductTable(jdbcUrl, productDeltas);
+        } finally {
+            applyMergedValues(productDeltas);
+        }
+    }
+
+    /**
+     * Writes the settings, supply and demand of a {@link DefaultProduct product} with a versioned update and merges the
+     * authoritative values back into memory in one call.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to persist.
+     * @param jdbcUrl        the url of the database.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void saveProduct(@Nonnull final DefaultProduct defaultProduct, @Nonnull final String jdbcUrl)
+            throws SQLException {
+        final ProductDeltas productDeltas = takeDeltas(Collections.singletonList(defaultProduct));
+        try {
+            SqlService.updateDefaultProduct(jdbcUrl, productDeltas);
+        } finally {
+            applyMergedValues(productDeltas);
+        }
+    }
+
+    /**
+     * Rebases the persisted values of {@link DefaultProduct products} onto the stored rows, so the next save writes
+     * every change which is in memory but not yet in the database. Used when a server takes over persisting a shared
+     * {@link MarketRegion}.
+     *
+     * @param productCollection the {@link DefaultProduct products} in memory.
+     * @param storedProducts    the stored {@link DefaultProduct products} by alias.
+     */
+    public static void rebasePersistedValues(@Nonnull final Collection<DefaultProduct> productCollection,
+                                             @Nonnull final Map<String, DefaultProduct> storedProducts) {
+        for (final DefaultProduct defaultProduct : productCollection) {
+            final DefaultProduct storedProduct = storedProducts.get(defaultProduct.alias);
+            if (storedProduct != null) {
+                defaultProduct.persistedSupply = storedProduct.supply;
+                defaultProduct.persistedDemand = storedProduct.demand;
+                defaultProduct.rowVersion = storedProduct.rowVersion;
+            }
+        }
+    }
+
+    /**
+     * Clamps a supply or demand value to the range the market functions keep them in.
+     *
+     * @param value the value to clamp.
+     * @return the clamped value.
+     */
+    static int clampMarketValue(final long value) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    /**
+     * Sets the {@link MarketRegion} every market change is published to.
+     *
+     * @param region the shared region or null to stop sharing the market.
+     */
+    public static void setMarketRegion(@Nullable final MarketRegion region) {
+        marketRegion = region;
+    }
+
+    /**
+     * @return the {@link MarketRegion} shared with other servers on this host or null if the market is not shared.
+     */
+    @Nullable
+    public static MarketRegion getMarketRegion() {
+        return marketRegion;
+    }
+
+    /**
+     * Sets the {@link MarketPipeline} market changes are published to. Must be called on the thread which trades.
+     *
+     * @param pipeline the running pipeline or null to write market changes inline.
+     */
+    public static void setMarketPipeline(@Nullable final MarketPipeline pipeline) {
+        marketPipeline = pipeline;
+    }
+
+    /**
+     * @return the {@link MarketPipeline} market changes are published to or null if they are written inline.
+     */
+    @Nullable
+    public static MarketPipeline getMarketPipeline() {
+        return marketPipeline;
+    }
+
+    /**
+     * Logs a change of a {@link DefaultProduct product}. The change is published to the {@link MarketPipeline} if one
+     * is running, otherwise it is written to the transaction journal before returning. Removals are only published.
+     *
+     * @param jdbcUrl        the url of the database.
+     * @param uuid           the uuid of the player who made the change.
+     * @param action         the {@link SqlService} transaction action or {@link MarketEvent#REMOVE_ACTION}.
+     * @param defaultProduct the changed {@link DefaultProduct product}.
+     * @param amount         the amount journaled for the change.
+     * @param moneyExchanged the money in micros exchanged by the change.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void logTransaction(@Nonnull final String jdbcUrl, @Nonnull final String uuid, final byte action,
+                                      @Nonnull final DefaultProduct defaultProduct, final float amount,
+                                      final long moneyExchanged) throws SQLException {
+        final MarketPipeline pipeline = marketPipeline;
+        if (pipeline != null) {
+            pipeline.publish(action, defaultProduct, uuid, amount, moneyExchanged);
+        } else if (action != MarketEvent.REMOVE_ACTION) {
+            SqlService.insertDefaultTransaction(jdbcUrl, uuid, action, defaultProduct.alias, amount, moneyExchanged);
+        }
+    }
+
+    /**
+     * Locks the shared record of a {@link DefaultProduct product} and loads its latest state if the market is shared.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} about to change.
+     * @return the region to pass to {@link #endRegionUpdate(MarketRegion, DefaultProduct)}.
+     */
+    @Nullable
+    static MarketRegion beginRegionUpdate(@Nonnull final DefaultProduct defaultProduct) {
+        final MarketRegion region = marketRegion;
+        if (region != null) {
+            region.beginUpdate(defaultProduct);
+        }
+        return region;
+    }
+
+    /**
+     * Publishes the state of a {@link DefaultProduct product} and unlocks its shared record if the market is shared.
+     *
+     * @param region         the region returned by {@link #beginRegionUpdate(DefaultProduct)}.
+     * @param defaultProduct the {@link DefaultProduct product} which changed.
+     */
+    static void endRegionUpdate(@Nullable final MarketRegion region, @Nonnull final DefaultProduct defaultProduct) {
+        if (region != null) {
+            region.endUpdate(defaultProduct);
+        }
     }
 }
@@ -0,0 +1,266 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The original SdEconomy pricing model. Every unit is priced at {@code modFactor * demand / supply + price} after the
+ * unit moved supply and demand by one, so the price rises as demand outgrows supply. Unit prices are computed in
+ * {@link Money} micros, rounded up for buys and down for sells.
+ *
+ * @author Tyler Bucher
+ */
+public final class DefaultPricingModel implements PricingModel {
+
+    /**
+     * The only instance of this model. Compared by identity so hot paths can call it directly.
+     */
+    @Nonnull
+    public static final DefaultPricingModel INSTANCE = new DefaultPricingModel();
+
+    /**
+     * Creates the default pricing model.
+     */
+    private DefaultPricingModel() {
+    }
+
+    /**
+     * @return {@link Economies#DEFAULT_TYPE}.
+     */
+    @Override
+    public byte getType() {
+        return Economies.DEFAULT_TYPE;
+    }
+
+    /**
+     * @return the name of this model used by commands.
+     */
+    @Nonnull
+    @Override
+    public String getName() {
+        return "default";
+    }
+
+    /**
+     * Gets the price of buying one unit of a product in the given state.
+     *
+     * @param modFactor the mod factor of the product in micros.
+     * @param price     the price of the product in micros.
+     * @param supply    the supply of the product.
+     * @param demand    the demand of the product.
+     * @return the price of one unit in micros, rounded up, or {@link Money#INFINITE} if it is too large.
+     */
+    private static long buyUnitPrice(final long modFactor, final long price, final int supply, final int demand) {
+        return Money.addCost(Money.mulDivCeilOrInfinite(modFactor, demand, supply), price);
+    }
+
+    /**
+     * Gets the price of selling one unit of a product in the given state.
+     *
+     * @param modFactor the mod factor of the product in micros.
+     * @param price     the price of the product in micros.
+     * @param supply    the supply of the product.
+     * @param demand    the demand of the product.
+     * @return the price of one unit in micros, rounded down, or {@link Money#INFINITE} if it is too large.
+     */
+    private static long sellUnitPrice(final long modFactor, final long price, final int supply, final int demand) {
+        return Money.addCost(Money.mulDivFloorOrInfinite(modFactor, demand, supply), price);
+    }
+
+    /**
+     * Gets the amount of money it would cost to buy some amount of a product in the given state.
+     *
+     * @param modFactor the mod factor of the product.
+     * @param price     the price of the product.
+     * @param supply    the supply of the product.
+     * @param demand    the demand of the product.
+     * @param amount    the amount bought.
+     * @return the amount of money in micros it would cost to buy the products or {@link Money#INFINITE} if the cost
+     * is too large to pay.
+     */
+    public static long quoteBuy(final float modFactor, final float price, final int supply, final int demand,
+                                final int amount) {
+        final long modFactorMicros = Money.roundOrInfinite(modFactor);
+        final long priceMicros = Money.roundOrInfinite(price);
+        if (modFactorMicros == Money.INFINITE || priceMicros == Money.INFINITE) {
+            return amount > 0 ? Money.INFINITE : 0;
+        }
+        long cost = 0;
+        int tDemand = demand;
+        int tSupply = supply;
+        for (int i = 0; i < amount && cost != Money.INFINITE; i++) {
+            if (tSupply != 1 && tSupply > Integer.MIN_VALUE) {
+                tSupply--;
+            }
+            if (tDemand < Integer.MAX_VALUE) {
+                tDemand++;
+            }
+            cost = Money.addCost(cost, buyUnitPrice(modFactorMicros, priceMicros, tSupply, tDemand));
+        }
+        return cost;
+    }
+
+    /**
+     * Gets the amount of money you would receive if you sold a product in the given state. Units are priced the same
+     * way {@link #sell(DefaultProduct, int)} prices them, so the quote is the amount a sale would pay.
+     *
+     * @param modFactor the mod factor of the product.
+     * @param price     the price of the product.
+     * @param supply    the supply of the product.
+     * @param demand    the demand of the product.
+     * @param amount    the amount sold.
+     * @return the amount of money in micros you would receive or {@link Money#INFINITE} if the returns are too large
+     * to pay.
+     */
+    public static long quoteSell(final float modFactor, final float price, final int supply, final int demand,
+                                 final int amount) {
+        final long modFactorMicros = Money.roundOrInfinite(modFactor);
+        final long priceMicros = Money.roundOrInfinite(price);
+        if (modFactorMicros == Money.INFINITE || priceMicros == Money.INFINITE) {
+            return amount > 0 ? Money.INFINITE : 0;
+        }
+        long returnValue = 0;
+        int tSupply = supply;
+        int tDemand = demand;
+        for (int i = 0; i < amount && returnValue != Money.INFINITE; i++) {
+            if (tSupply < Integer.MAX_VALUE) {
+                tSupply++;
+            }
+            if (tDemand != 1 && tDemand > Integer.MIN_VALUE) {
+                tDemand--;
+            }
+            returnValue = Money.addCost(returnValue, sellUnitPrice(modFactorMicros, priceMicros, tSupply, tDemand));
+        }
+        return returnValue;
+    }
+
+    /**
+     * Gets the amount of money it would cost to buy some amount of a {@link DefaultProduct product} at this instant.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to check.
+     * @param amount         the amount bought.
+     * @return the cost of the products in micros or {@link Money#INFINITE} if it is too large to pay.
+     */
+    @Override
+    public long quoteBuy(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        return quoteBuy(defaultProduct.modFactor, defaultProduct.price, defaultProduct.supply, defaultProduct.demand, amount);
+    }
+
+    /**
+     * Gets the amount of money you would receive if you sold some amount of a {@link DefaultProduct product} at this
+     * instant.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to check.
+     * @param amount         the amount sold.
+     * @return the returns of the products in micros or {@link Money#INFINITE} if they are too large to pay.
+     */
+    @Override
+    public long quoteSell(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        return quoteSell(defaultProduct.modFactor, defaultProduct.price, defaultProduct.supply, defaultProduct.demand, amount);
+    }
+
+    /**
+     * Prices a buy one unit at a time, each unit after it moved supply and demand, and then applies it at once.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return the amount of money in micros to take from the player or {@link Money#INFINITE} if the cost is too large
+     * to pay, in which case the product is unchanged.
+     */
+    @Override
+    public long buy(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        final long cost = quoteBuy(defaultProduct, amount);
+        if (cost != Money.INFINITE) {
+            applyBuy(defaultProduct, amount);
+        }
+        return cost;
+    }
+
+    /**
+     * Moves supply and demand by a whole buy at once. Supply and demand are clamped, so the buy is always applied.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return true.
+     */
+    @Override
+    public boolean applyBuy(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        if (amount <= 0) {
+            return true;
+        }
+        defaultProduct.demand = (int) Math.min(Integer.MAX_VALUE, (long) defaultProduct.demand + amount);
+        // Supply stops decreasing once it reaches 1
+        if (defaultProduct.supply >= 1) {
+            defaultProduct.supply = (int) Math.max(1, (long) defaultProduct.supply - amount);
+        } else {
+            defaultProduct.supply = (int) Math.max(Integer.MIN_VALUE, (long) defaultProduct.supply - amount);
+        }
+        return true;
+    }
+
+    /**
+     * Prices a sell one unit at a time, each unit after it moved supply and demand, and then applies it at once.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to sell.
+     * @param amount         the amount sold.
+     * @return the amount of money in micros to give to the player or {@link Money#INFINITE} if the returns are too
+     * large to pay, in which case the product is unchanged.
+     */
+    @Override
+    public long sell(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        final long returnValue = quoteSell(defaultProduct, amount);
+        if (returnValue == Money.INFINITE || amount <= 0) {
+            return returnValue;
+        }
+        defaultProduct.supply = (int) Math.min(Integer.MAX_VALUE, (long) defaultProduct.supply + amount);
+        // Demand stops decreasing once it reaches 1
+        if (defaultProduct.demand >= 1) {
+            defaultProduct.demand = (int) Math.max(1, (long) defaultProduct.demand - amount);
+        } else {
+            defaultProduct.demand = (int) Math.max(Integer.MIN_VALUE, (long) defaultProduct.demand - amount);
+        }
+        return returnValue;
+    }
+
+    /**
+     * Removes demand one unit at a time without going below 1.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to decay.
+     * @param amount         the amount of demand to remove.
+     * @return the amount of demand removed.
+     */
+    @Override
+    public int decay(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        int decayAmount = 0;
+        for (; decayAmount < amount; decayAmount++) {
+            if (defaultProduct.demand > 1) {
+                defaultProduct.demand--;
+            } else {
+                break;
+            }
+        }
+        return decayAmount;
+    }
+}
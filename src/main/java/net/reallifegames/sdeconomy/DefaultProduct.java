@@ -54,6 +54,12 @@ public class DefaultProduct {
      */
     protected float modFactor;
 
+    /**
+     * The liquidity of this item used by the {@link LmsrPricingModel}. The larger it is, the more units it takes to
+     * move the price.
+     */
+    public float liquidity = LmsrPricingModel.DEFAULT_LIQUIDITY;
+
     /**
      * The current price of this item.
      */
@@ -84,6 +90,36 @@ public class DefaultProduct {
      */
     public byte decayType;
 
+    /**
+     * The {@link PricingModel} which prices the trades of this item.
+     */
+    @Nonnull
+    public PricingModel pricingModel = DefaultPricingModel.INSTANCE;
+
+    /**
+     * The version of the market state of this item. Incremented by every {@link DefaultEconomy} function which changes
+     * the price, mod factor, supply or demand of this item.
+     */
+    public long version;
+
+    /**
+     * The supply of this item as last read from or merged with the database. Used to compute the supply delta written
+     * when this item is persisted.
+     */
+    public int persistedSupply;
+
+    /**
+     * The demand of this item as last read from or merged with the database. Used to compute the demand delta written
+     * when this item is persisted.
+     */
+    public int persistedDemand;
+
+    /**
+     * The version of the database row of this item as last read or written. Versioned updates only succeed if the row
+     * still has this version.
+     */
+    public long rowVersion;
+
     /**
      * Creates a new {@link DefaultProduct} with the price, supply and demand set to 1.
      *
@@ -98,6 +134,8 @@ public class DefaultProduct {
         this.price = 1;
         this.supply = 1;
         this.demand = 1;
+        this.persistedSupply = 1;
+        this.persistedDemand = 1;
         this.decayAmount = 64;
         this.decayInterval = 43200000;
         this.decayType = SqlService.DECAY_CONST_TYPE;
@@ -122,10 +160,26 @@ public class DefaultProduct {
         this.price = price;
         this.supply = supply;
         this.demand = demand;
+        this.persistedSupply = supply;
+        this.persistedDemand = demand;
         this.decayAmount = decayAmount;
         this.decayInterval = decayInterval;
         this.decayType = decayType;
+    }
 
+    /**
+     * Copies the pricing state of this {@link DefaultProduct product} so it can be quoted while this product keeps
+     * trading.
+     *
+     * @return a new product with the alias, model, price, mod factor, liquidity, supply and demand of this product.
+     */
+    @Nonnull
+    DefaultProduct copyPricingState() {
+        final DefaultProduct copy = new DefaultProduct(alias, type, unsafeData, modFactor, price, supply, demand,
+                decayAmount, decayInterval, decayType);
+        copy.liquidity = liquidity;
+        copy.pricingModel = pricingModel;
+        return copy;
     }
 
     /**
@@ -23,6 +23,10 @@
  */
 package net.reallifegames.sdeconomy;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
 /**
  * A class for global information and functions for all economies.
  *
@@ -33,5 +37,71 @@ public class Economies {
     /**
      * The default economy type.
      */
-    public static byte DEFAULT_TYPE = 0;
+    public static final byte DEFAULT_TYPE = 0;
+
+    /**
+     * The logarithmic market scoring rule economy type.
+     */
+    public static final byte LMSR_TYPE = 1;
+
+    /**
+     * The constant product automated market maker economy type.
+     */
+    public static final byte AMM_TYPE = 2;
+
+    /**
+     * The registered {@link PricingModel pricing models} indexed by their economy type.
+     */
+    @Nonnull
+    private static volatile PricingModel[] pricingModels = new PricingModel[0];
+
+    static {
+        registerPricingModel(DefaultPricingModel.INSTANCE);
+        registerPricingModel(LmsrPricingModel.INSTANCE);
+        registerPricingModel(new AmmPricingModel(0));
+    }
+
+    /**
+     * Registers a {@link PricingModel} so products of its economy type use it. A model registered for a type which
+     * already has one replaces it for products read afterwards.
+     *
+     * @param pricingModel the model to register.
+     */
+    public static synchronized void registerPricingModel(@Nonnull final PricingModel pricingModel) {
+        final int type = pricingModel.getType();
+        if (type < 0) {
+            throw new IllegalArgumentException("Pricing model types may not be negative");
+        }
+        final PricingModel[] models = Arrays.copyOf(pricingModels, Math.max(pricingModels.length, type + 1));
+        models[type] = pricingModel;
+        pricingModels = models;
+    }
+
+    /**
+     * Gets the {@link PricingModel} of an economy type.
+     *
+     * @param type the economy type.
+     * @return the model of the type or null if no model is registered for it.
+     */
+    @Nullable
+    public static PricingModel getPricingModel(final byte type) {
+        final PricingModel[] models = pricingModels;
+        return type >= 0 && type < models.length ? models[type] : null;
+    }
+
+    /**
+     * Gets a {@link PricingModel} by name.
+     *
+     * @param name the name of the model, case insensitive.
+     * @return the model with the name or null if no model has the name.
+     */
+    @Nullable
+    public static PricingModel getPricingModel(@Nonnull final String name) {
+        for (final PricingModel pricingModel : pricingModels) {
+            if (pricingModel != null && pricingModel.getName().equalsIgnoreCase(name)) {
+                return pricingModel;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,312 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A pricing model based on the logarithmic market scoring rule. The market maker keeps the cost function {@code
+ * C(q) = price * (1 - m) * q + 2 * price * m * b * ln(1 + e^(q / b))} of the demand {@code q}, where {@code m} is the
+ * mod factor and {@code b} the liquidity of the product. A trade costs the change of {@code C}, so the price of a unit
+ * rises from {@code price} towards {@code price * (1 + m)} as demand grows and every cost is computed in constant time
+ * however large the trade is. Since the cost only depends on where demand starts and ends, buying and selling the same
+ * amount back never creates money. The cost function is evaluated with {@link StrictMath} so every server prices the
+ * same trade to the same {@link Money} micro, with buys rounded up and sells rounded down.
+ *
+ * @author Tyler Bucher
+ */
+public final class LmsrPricingModel implements PricingModel {
+
+    /**
+     * The liquidity of products which never had theirs set.
+     */
+    public static final float DEFAULT_LIQUIDITY = 1000;
+
+    /**
+     * The smallest liquidity used, so a stored liquidity of 0 or less does not divide by 0.
+     */
+    private static final double MIN_LIQUIDITY = 1e-3;
+
+    /**
+     * The only instance of this model.
+     */
+    @Nonnull
+    public static final LmsrPricingModel INSTANCE = new LmsrPricingModel();
+
+    /**
+     * Creates the logarithmic market scoring rule pricing model.
+     */
+    private LmsrPricingModel() {
+    }
+
+    /**
+     * @return {@link Economies#LMSR_TYPE}.
+     */
+    @Override
+    public byte getType() {
+        return Economies.LMSR_TYPE;
+    }
+
+    /**
+     * @return the name of this model used by commands.
+     */
+    @Nonnull
+    @Override
+    public String getName() {
+        return "lmsr";
+    }
+
+    /**
+     * Gets {@code ln(1 + e^-|x|)}, the part of {@code softplus(x) = ln(e^x + e^0)} left after taking out {@code
+     * max(x, 0)}. Splitting the log-sum-exp this way never overflows and keeps the large part exact.
+     *
+     * @param x the argument of the softplus.
+     * @return the correction added to {@code max(x, 0)}.
+     */
+    private static double softplusCorrection(final double x) {
+        return StrictMath.log1p(StrictMath.exp(-Math.abs(x)));
+    }
+
+    /**
+     * Gets the change of the cost function when demand moves from one value to a larger one.
+     *
+     * @param modFactor the mod factor of the product.
+     * @param price     the price of the product.
+     * @param liquidity the liquidity of the product.
+     * @param from      the smaller demand.
+     * @param to        the larger demand.
+     * @return {@code C(to) - C(from)}.
+     */
+    private static double cost(final double modFactor, final float price, final double liquidity, final long from,
+                               final long to) {
+        final double softplusDelta = (Math.max(to, 0) - Math.max(from, 0)) +
+                liquidity * (softplusCorrection(to / liquidity) - softplusCorrection(from / liquidity));
+        return price * (1 - modFactor) * (to - from) + 2 * price * modFactor * softplusDelta;
+    }
+
+    /**
+     * Gets the mod factor used for a product. A negative mod factor would make the price fall as demand grows, so it is
+     * treated as 0.
+     *
+     * @param modFactor the stored mod factor of the product.
+     * @return the mod factor, at least 0.
+     */
+    private static double modFactor(final float modFactor) {
+        return Math.max(0, modFactor);
+    }
+
+    /**
+     * Gets the liquidity used for a product.
+     *
+     * @param liquidity the stored liquidity of the product.
+     * @return the liquidity, at least {@link #MIN_LIQUIDITY}.
+     */
+    private static double liquidity(final float liquidity) {
+        return Math.max(MIN_LIQUIDITY, liquidity);
+    }
+
+    /**
+     * Gets the demand this model prices at. Demand below 1 is treated as 1, so every trade starts and ends inside the
+     * range the cost function is money safe in.
+     *
+     * @param demand the demand of the product.
+     * @return the demand, at least 1.
+     */
+    private static long demand(final int demand) {
+        return Math.max(1, demand);
+    }
+
+    /**
+     * Gets the demand of a product after a buy, which stops at {@link Integer#MAX_VALUE}.
+     *
+     * @param demand the demand before the buy, at least 1.
+     * @param amount the amount bought.
+     * @return the demand after the buy.
+     */
+    private static long demandAfterBuy(final long demand, final int amount) {
+        return Math.min(Integer.MAX_VALUE, demand + amount);
+    }
+
+    /**
+     * Gets the demand of a product after a sell, which stops decreasing at 1.
+     *
+     * @param demand the demand before the sell, at least 1.
+     * @param amount the amount sold.
+     * @return the demand after the sell.
+     */
+    private static long demandAfterSell(final long demand, final int amount) {
+        return Math.max(1, demand - amount);
+    }
+
+    /**
+     * Gets the amount of money it would cost to buy some amount of a product in the given state.
+     *
+     * @param modFactor the mod factor of the product.
+     * @param price     the price of the product.
+     * @param liquidity the liquidity of the product.
+     * @param demand    the demand of the product.
+     * @param amount    the amount bought.
+     * @return the amount of money in micros it would cost to buy the products or {@link Money#INFINITE} if the cost
+     * is too large to pay.
+     */
+    public static long quoteBuy(final float modFactor, final float price, final float liquidity, final int demand,
+                                final int amount) {
+        if (amount <= 0) {
+            return 0;
+        }
+        final double b = liquidity(liquidity);
+        final long oldDemand = demand(demand);
+        final long newDemand = demandAfterBuy(oldDemand, amount);
+        final double m = modFactor(modFactor);
+        // Units demand can no longer count are priced at the highest price of the curve
+        final long unmoved = amount - (newDemand - oldDemand);
+        return Money.ceilOrInfinite(cost(m, price, b, oldDemand, newDemand) + unmoved * price * (1 + m));
+    }
+
+    /**
+     * Gets the amount of money you would receive if you sold some amount of a product in the given state.
+     *
+     * @param modFactor the mod factor of the product.
+     * @param price     the price of the product.
+     * @param liquidity the liquidity of the product.
+     * @param demand    the demand of the product.
+     * @param amount    the amount sold.
+     * @return the amount of money in micros you would receive or {@link Money#INFINITE} if the returns are too large
+     * to pay.
+     */
+    public static long quoteSell(final float modFactor, final float price, final float liquidity, final int demand,
+                                 final int amount) {
+        if (amount <= 0) {
+            return 0;
+        }
+        final double b = liquidity(liquidity);
+        final long oldDemand = demand(demand);
+        final long newDemand = demandAfterSell(oldDemand, amount);
+        final double m = modFactor(modFactor);
+        // Units demand can no longer count are priced at the price of demand 0, below any price demand can reach
+        final long unmoved = amount - (oldDemand - newDemand);
+        return Money.floorOrInfinite(cost(m, price, b, newDemand, oldDemand) + unmoved * (double) price);
+    }
+
+    /**
+     * Gets the amount of money it would cost to buy some amount of a {@link DefaultProduct product} at this instant.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to check.
+     * @param amount         the amount bought.
+     * @return the cost of the products in micros or {@link Money#INFINITE} if it is too large to pay.
+     */
+    @Override
+    public long quoteBuy(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        return quoteBuy(defaultProduct.modFactor, defaultProduct.price, defaultProduct.liquidity, defaultProduct.demand,
+                amount);
+    }
+
+    /**
+     * Gets the amount of money you would receive if you sold some amount of a {@link DefaultProduct product} at this
+     * instant.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to check.
+     * @param amount         the amount sold.
+     * @return the returns of the products in micros or {@link Money#INFINITE} if they are too large to pay.
+     */
+    @Override
+    public long quoteSell(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        return quoteSell(defaultProduct.modFactor, defaultProduct.price, defaultProduct.liquidity, defaultProduct.demand,
+                amount);
+    }
+
+    /**
+     * Prices a buy from the cost function and then applies it.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return the amount of money in micros to take from the player or {@link Money#INFINITE} if the cost is too large
+     * to pay, in which case the product is unchanged.
+     */
+    @Override
+    public long buy(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        final long cost = quoteBuy(defaultProduct, amount);
+        if (cost != Money.INFINITE) {
+            applyBuy(defaultProduct, amount);
+        }
+        return cost;
+    }
+
+    /**
+     * Moves supply and demand by a whole buy at once. Supply and demand are clamped, so the buy is always applied.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return true.
+     */
+    @Override
+    public boolean applyBuy(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        if (amount <= 0) {
+            return true;
+        }
+        defaultProduct.demand = (int) demandAfterBuy(demand(defaultProduct.demand), amount);
+        // Supply stops decreasing once it reaches 1
+        if (defaultProduct.supply >= 1) {
+            defaultProduct.supply = (int) Math.max(1, (long) defaultProduct.supply - amount);
+        } else {
+            defaultProduct.supply = (int) Math.max(Integer.MIN_VALUE, (long) defaultProduct.supply - amount);
+        }
+        return true;
+    }
+
+    /**
+     * Prices a sell from the cost function and then applies it.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to sell.
+     * @param amount         the amount sold.
+     * @return the amount of money in micros to give to the player or {@link Money#INFINITE} if the returns are too
+     * large to pay, in which case the product is unchanged.
+     */
+    @Override
+    public long sell(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        final long returnValue = quoteSell(defaultProduct, amount);
+        if (amount > 0 && returnValue != Money.INFINITE) {
+            defaultProduct.demand = (int) demandAfterSell(demand(defaultProduct.demand), amount);
+            defaultProduct.supply = (int) Math.min(Integer.MAX_VALUE, (long) defaultProduct.supply + amount);
+        }
+        return returnValue;
+    }
+
+    /**
+     * Removes demand without going below 1.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to decay.
+     * @param amount         the amount of demand to remove.
+     * @return the amount of demand removed.
+     */
+    @Override
+    public int decay(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        final int demand = defaultProduct.demand;
+        if (amount <= 0 || demand <= 1) {
+            return 0;
+        }
+        defaultProduct.demand = (int) demandAfterSell(demand, amount);
+        return demand - defaultProduct.demand;
+    }
+}
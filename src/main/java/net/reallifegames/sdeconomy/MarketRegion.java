@@ -0,0 +1,524 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A memory mapped file which holds the market state of every {@link DefaultProduct product} in a fixed size record so
+ * several servers on one host share one market. Updates hold an exclusive file lock on the record, which also orders
+ * the writes for the other processes. Every record carries a version which is bumped by each update, so reading an
+ * unchanged record costs one load and no lock. One server holds the leader lock and is the only one which persists
+ * and decays the market.
+ *
+ * @author Tyler Bucher
+ */
+public final class MarketRegion {
+
+    /**
+     * The magic number at the start of a region file.
+     */
+    private static final int MAGIC = 0x53444d52;
+
+    /**
+     * The layout version of the region file.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The size in bytes of the file header.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * The size in bytes of the header range locked while records are added.
+     */
+    private static final int HEADER_LOCK_SIZE = 32;
+
+    /**
+     * The position of the byte locked by the leader.
+     */
+    private static final int LEADER_LOCK_POSITION = 32;
+
+    /**
+     * The size in bytes of one product record.
+     */
+    private static final int RECORD_SIZE = 96;
+
+    /**
+     * The maximum length in bytes of a product alias.
+     */
+    private static final int MAX_ALIAS_LENGTH = RECORD_SIZE - 26;
+
+    /**
+     * Header offset of the magic number.
+     */
+    private static final int MAGIC_OFFSET = 0;
+
+    /**
+     * Header offset of the layout version.
+     */
+    private static final int FORMAT_VERSION_OFFSET = 4;
+
+    /**
+     * Header offset of the record size.
+     */
+    private static final int RECORD_SIZE_OFFSET = 8;
+
+    /**
+     * Header offset of the record capacity.
+     */
+    private static final int CAPACITY_OFFSET = 12;
+
+    /**
+     * Header offset of the amount of records in use.
+     */
+    private static final int RECORD_COUNT_OFFSET = 16;
+
+    /**
+     * Record offset of the version.
+     */
+    private static final int VERSION_OFFSET = 0;
+
+    /**
+     * Record offset of the supply.
+     */
+    private static final int SUPPLY_OFFSET = 8;
+
+    /**
+     * Record offset of the demand.
+     */
+    private static final int DEMAND_OFFSET = 12;
+
+    /**
+     * Record offset of the price.
+     */
+    private static final int PRICE_OFFSET = 16;
+
+    /**
+     * Record offset of the mod factor.
+     */
+    private static final int MOD_FACTOR_OFFSET = 20;
+
+    /**
+     * Record offset of the alias length.
+     */
+    private static final int ALIAS_LENGTH_OFFSET = 24;
+
+    /**
+     * Record offset of the alias bytes.
+     */
+    private static final int ALIAS_OFFSET = 26;
+
+    /**
+     * The open region file.
+     */
+    @Nonnull
+    private final RandomAccessFile file;
+
+    /**
+     * The channel of the region file.
+     */
+    @Nonnull
+    private final FileChannel channel;
+
+    /**
+     * The mapped region file.
+     */
+    @Nonnull
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The maximum amount of records.
+     */
+    private final int capacity;
+
+    /**
+     * Guards this region within the process, file locks may only be held once per process.
+     */
+    @Nonnull
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The record index of every known product alias.
+     */
+    @Nonnull
+    private final HashMap<String, Integer> recordIndexes = new HashMap<>();
+
+    /**
+     * The version of every record last loaded into memory.
+     */
+    @Nonnull
+    private final long[] seenVersions;
+
+    /**
+     * The amount of records which have been indexed.
+     */
+    private int indexedRecords = 0;
+
+    /**
+     * The lock of the record being updated.
+     */
+    @Nullable
+    private FileLock recordLock;
+
+    /**
+     * The position of the record being updated.
+     */
+    private int recordPosition;
+
+    /**
+     * The index of the record being updated.
+     */
+    private int recordIndex;
+
+    /**
+     * The leader lock if this server is the leader.
+     */
+    @Nullable
+    private FileLock leaderLock;
+
+    /**
+     * Maps an open region file.
+     *
+     * @param file     the open region file.
+     * @param channel  the channel of the region file.
+     * @param buffer   the mapped region file.
+     * @param capacity the maximum amount of records.
+     */
+    private MarketRegion(@Nonnull final RandomAccessFile file, @Nonnull final FileChannel channel,
+                         @Nonnull final MappedByteBuffer buffer, final int capacity) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.seenVersions = new long[capacity];
+    }
+
+    /**
+     * Opens or creates a region file.
+     *
+     * @param regionFile the region file shared by all servers of the host.
+     * @param capacity   the maximum amount of records of a new region file.
+     * @return the mapped region.
+     *
+     * @throws IOException if the file could not be mapped or has a different layout.
+     */
+    public static MarketRegion open(@Nonnull final File regionFile, final int capacity) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(regionFile, "rw");
+        try {
+            final FileChannel channel = file.getChannel();
+            final MappedByteBuffer buffer;
+            final int regionCapacity;
+            // Only one server may create the header
+            final FileLock headerLock = channel.lock(0, HEADER_LOCK_SIZE, false);
+            try {
+                if (file.length() < HEADER_SIZE) {
+                    file.setLength(HEADER_SIZE + (long) capacity * RECORD_SIZE);
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+                    buffer.putInt(FORMAT_VERSION_OFFSET, FORMAT_VERSION);
+                    buffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+                    buffer.putInt(CAPACITY_OFFSET, capacity);
+                    buffer.putInt(RECORD_COUNT_OFFSET, 0);
+                    buffer.putInt(MAGIC_OFFSET, MAGIC);
+                    regionCapacity = capacity;
+                } else {
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+                    regionCapacity = buffer.getInt(CAPACITY_OFFSET);
+                    if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(FORMAT_VERSION_OFFSET) != FORMAT_VERSION ||
+                            buffer.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE ||
+                            file.length() < HEADER_SIZE + (long) regionCapacity * RECORD_SIZE) {
+                        throw new IOException("Invalid market region file " + regionFile);
+                    }
+                }
+            } finally {
+                headerLock.release();
+            }
+            return new MarketRegion(file, channel, buffer, regionCapacity);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a {@link DefaultProduct product} to this region. If another server already added it the product is loaded
+     * from its record, otherwise a record is created from the product.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to add.
+     */
+    public void attach(@Nonnull final DefaultProduct defaultProduct) {
+        beginUpdate(defaultProduct);
+        endUpdate(defaultProduct);
+    }
+
+    /**
+     * Loads the record of a {@link DefaultProduct product} if another server changed it since it was last loaded.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to refresh.
+     * @return true if the product was changed.
+     */
+    public boolean refresh(@Nonnull final DefaultProduct defaultProduct) {
+        lock.lock();
+        try {
+            final Integer index = findRecord(defaultProduct.alias);
+            if (index == null) {
+                return false;
+            }
+            final int position = HEADER_SIZE + index * RECORD_SIZE;
+            // An unchanged record is the common case and needs no lock
+            if (buffer.getLong(position + VERSION_OFFSET) == seenVersions[index]) {
+                return false;
+            }
+            final FileLock fileLock = channel.lock(position, RECORD_SIZE, true);
+            try {
+                load(defaultProduct, position, index);
+            } finally {
+                fileLock.release();
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Locks the record of a {@link DefaultProduct product} and loads its latest state. Every call must be followed by
+     * {@link #endUpdate(DefaultProduct)} on the same thread. Updates may not be nested, a second file lock on the
+     * same range would be refused by the jvm.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to update.
+     * @throws IllegalStateException if this thread is already updating a record.
+     */
+    public void beginUpdate(@Nonnull final DefaultProduct defaultProduct) {
+        if (lock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("A market region update is already in progress on this thread.");
+        }
+        lock.lock();
+        try {
+            final Integer index = findOrCreateRecord(defaultProduct);
+            recordIndex = index;
+            recordPosition = HEADER_SIZE + index * RECORD_SIZE;
+            recordLock = channel.lock(recordPosition, RECORD_SIZE, false);
+            if (buffer.getLong(recordPosition + VERSION_OFFSET) != seenVersions[index]) {
+                load(defaultProduct, recordPosition, index);
+            }
+        } catch (IOException | RuntimeException e) {
+            lock.unlock();
+            throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+        }
+    }
+
+    /**
+     * Writes the state of a {@link DefaultProduct product} to its record and releases the lock taken by {@link
+     * #beginUpdate(DefaultProduct)}.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} which was updated.
+     */
+    public void endUpdate(@Nonnull final DefaultProduct defaultProduct) {
+        try {
+            if (recordLock != null) {
+                // Unchanged records keep their version so the other servers skip them
+                if (buffer.getInt(recordPosition + SUPPLY_OFFSET) != defaultProduct.supply ||
+                        buffer.getInt(recordPosition + DEMAND_OFFSET) != defaultProduct.demand ||
+                        buffer.getFloat(recordPosition + PRICE_OFFSET) != defaultProduct.price ||
+                        buffer.getFloat(recordPosition + MOD_FACTOR_OFFSET) != defaultProduct.modFactor) {
+                    buffer.putInt(recordPosition + SUPPLY_OFFSET, defaultProduct.supply);
+                    buffer.putInt(recordPosition + DEMAND_OFFSET, defaultProduct.demand);
+                    buffer.putFloat(recordPosition + PRICE_OFFSET, defaultProduct.price);
+                    buffer.putFloat(recordPosition + MOD_FACTOR_OFFSET, defaultProduct.modFactor);
+                    final long version = buffer.getLong(recordPosition + VERSION_OFFSET) + 1;
+                    buffer.putLong(recordPosition + VERSION_OFFSET, version);
+                    seenVersions[recordIndex] = version;
+                }
+                // Releasing the lock publishes the record to the other servers
+                recordLock.release();
+                recordLock = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Attempts to become the leader of this region. The lock is released by the operating system if the leader process
+     * exits, so another server takes over on its next attempt.
+     *
+     * @return true if this server is the leader.
+     */
+    public boolean tryLead() {
+        lock.lock();
+        try {
+            if (leaderLock == null) {
+                leaderLock = channel.tryLock(LEADER_LOCK_POSITION, 1, false);
+            }
+            return leaderLock != null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if this server is the leader of this region.
+     */
+    public boolean isLeader() {
+        return leaderLock != null;
+    }
+
+    /**
+     * Releases the leader lock and closes the region file.
+     *
+     * @throws IOException if the file could not be closed.
+     */
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            leaderLock = null;
+            // Closing the file releases every lock held on it
+            file.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads a record into a {@link DefaultProduct product}.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to load into.
+     * @param position       the position of the record.
+     * @param index          the index of the record.
+     */
+    private void load(@Nonnull final DefaultProduct defaultProduct, final int position, final int index) {
+        defaultProduct.supply = buffer.getInt(position + SUPPLY_OFFSET);
+        defaultProduct.demand = buffer.getInt(position + DEMAND_OFFSET);
+        defaultProduct.price = buffer.getFloat(position + PRICE_OFFSET);
+        defaultProduct.modFactor = buffer.getFloat(position + MOD_FACTOR_OFFSET);
+        defaultProduct.version++;
+        seenVersions[index] = buffer.getLong(position + VERSION_OFFSET);
+    }
+
+    /**
+     * Finds the record of an alias, indexing records added by other servers if needed.
+     *
+     * @param alias the alias of the product.
+     * @return the record index or null if the alias has no record.
+     *
+     * @throws IOException if the header could not be locked.
+     */
+    @Nullable
+    private Integer findRecord(@Nonnull final String alias) throws IOException {
+        final Integer index = recordIndexes.get(alias);
+        if (index != null || buffer.getInt(RECORD_COUNT_OFFSET) == indexedRecords) {
+            return index;
+        }
+        final FileLock headerLock = channel.lock(0, HEADER_LOCK_SIZE, true);
+        try {
+            indexNewRecords();
+        } finally {
+            headerLock.release();
+        }
+        return recordIndexes.get(alias);
+    }
+
+    /**
+     * Finds the record of a {@link DefaultProduct product} or creates it from the product.
+     *
+     * @param defaultProduct the {@link DefaultProduct product}.
+     * @return the record index.
+     *
+     * @throws IOException if the header could not be locked or the region is full.
+     */
+    private int findOrCreateRecord(@Nonnull final DefaultProduct defaultProduct) throws IOException {
+        final Integer index = findRecord(defaultProduct.alias);
+        if (index != null) {
+            return index;
+        }
+        final byte[] alias = defaultProduct.alias.getBytes(StandardCharsets.UTF_8);
+        if (alias.length > MAX_ALIAS_LENGTH) {
+            throw new IOException("Alias " + defaultProduct.alias + " is too long for the market region");
+        }
+        final FileLock headerLock = channel.lock(0, HEADER_LOCK_SIZE, false);
+        try {
+            // Another server may have added the record since it was looked up
+            indexNewRecords();
+            final Integer createdIndex = recordIndexes.get(defaultProduct.alias);
+            if (createdIndex != null) {
+                return createdIndex;
+            }
+            final int recordCount = buffer.getInt(RECORD_COUNT_OFFSET);
+            if (recordCount >= capacity) {
+                throw new IOException("The market region is full");
+            }
+            final int position = HEADER_SIZE + recordCount * RECORD_SIZE;
+            buffer.putInt(position + SUPPLY_OFFSET, defaultProduct.supply);
+            buffer.putInt(position + DEMAND_OFFSET, defaultProduct.demand);
+            buffer.putFloat(position + PRICE_OFFSET, defaultProduct.price);
+            buffer.putFloat(position + MOD_FACTOR_OFFSET, defaultProduct.modFactor);
+            buffer.putShort(position + ALIAS_LENGTH_OFFSET, (short) alias.length);
+            for (int i = 0; i < alias.length; i++) {
+                buffer.put(position + ALIAS_OFFSET + i, alias[i]);
+            }
+            buffer.putLong(position + VERSION_OFFSET, 1);
+            buffer.putInt(RECORD_COUNT_OFFSET, recordCount + 1);
+            recordIndexes.put(defaultProduct.alias, recordCount);
+            seenVersions[recordCount] = 1;
+            indexedRecords = recordCount + 1;
+            return recordCount;
+        } finally {
+            headerLock.release();
+        }
+    }
+
+    /**
+     * Indexes the aliases of records added since the last call. The header lock must be held.
+     */
+    private void indexNewRecords() {
+        final int recordCount = buffer.getInt(RECORD_COUNT_OFFSET);
+        for (; indexedRecords < recordCount; indexedRecords++) {
+            final int position = HEADER_SIZE + indexedRecords * RECORD_SIZE;
+            final byte[] alias = new byte[buffer.getShort(position + ALIAS_LENGTH_OFFSET)];
+            for (int i = 0; i < alias.length; i++) {
+                alias[i] = buffer.get(position + ALIAS_OFFSET + i);
+            }
+            recordIndexes.put(new String(alias, StandardCharsets.UTF_8), indexedRecords);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+/**
+ * Fixed point money arithmetic. All market amounts are longs counting millionths of a currency unit, so every server
+ * computes the same amount for the same trade and long trades do not drift. Amounts only become doubles where they
+ * leave the market, at the economy service, in messages and in the transaction journal, which stores them as doubles
+ * that convert back to the same micros.
+ *
+ * @author Tyler Bucher
+ */
+public final class Money {
+
+    /**
+     * The amount of micros in one currency unit.
+     */
+    public static final long MICROS_PER_UNIT = 1000000;
+
+    /**
+     * A cost which can never be paid, used for trades the market can not make.
+     */
+    public static final long INFINITE = Long.MAX_VALUE;
+
+    /**
+     * The largest amount of currency units which can be converted to micros.
+     */
+    private static final double MAX_UNITS = (double) (Long.MAX_VALUE / MICROS_PER_UNIT);
+
+    /**
+     * Money is only used through its static functions.
+     */
+    private Money() {
+    }
+
+    /**
+     * Converts an amount of currency units to micros, rounding to the nearest micro.
+     *
+     * @param units the amount of currency units.
+     * @return the amount in micros.
+     *
+     * @throws ArithmeticException if the amount is not a number or too large.
+     */
+    public static long round(final double units) {
+        return Math.round(checkUnits(units) * MICROS_PER_UNIT);
+    }
+
+    /**
+     * Converts an amount of currency units to micros, rounding down. Used for amounts which must not be overstated,
+     * like balances and returns.
+     *
+     * @param units the amount of currency units.
+     * @return the amount in micros.
+     *
+     * @throws ArithmeticException if the amount is not a number or too large.
+     */
+    public static long floor(final double units) {
+        return (long) Math.floor(checkUnits(units) * MICROS_PER_UNIT);
+    }
+
+    /**
+     * Converts an amount of currency units to micros, rounding up. Used for costs.
+     *
+     * @param units the amount of currency units.
+     * @return the amount in micros.
+     *
+     * @throws ArithmeticException if the amount is not a number or too large.
+     */
+    public static long ceil(final double units) {
+        return (long) Math.ceil(checkUnits(units) * MICROS_PER_UNIT);
+    }
+
+    /**
+     * Converts an amount of currency units to micros like {@link #round(double)}, for prices which may be too large to
+     * trade at.
+     *
+     * @param units the amount of currency units.
+     * @return the amount in micros or {@link #INFINITE} if the amount is not a number or too large.
+     */
+    public static long roundOrInfinite(final double units) {
+        return Math.abs(units) < MAX_UNITS ? Math.round(units * MICROS_PER_UNIT) : INFINITE;
+    }
+
+    /**
+     * Converts an amount of currency units to micros like {@link #floor(double)}, for returns which may be too large
+     * to pay.
+     *
+     * @param units the amount of currency units.
+     * @return the amount in micros or {@link #INFINITE} if the amount is not a number or too large.
+     */
+    public static long floorOrInfinite(final double units) {
+        return Math.abs(units) < MAX_UNITS ? (long) Math.floor(units * MICROS_PER_UNIT) : INFINITE;
+    }
+
+    /**
+     * Converts an amount of currency units to micros like {@link #ceil(double)}, for costs which may be too large to
+     * pay.
+     *
+     * @param units the amount of currency units.
+     * @return the amount in micros or {@link #INFINITE} if the amount is not a number or too large.
+     */
+    public static long ceilOrInfinite(final double units) {
+        return Math.abs(units) < MAX_UNITS ? (long) Math.ceil(units * MICROS_PER_UNIT) : INFINITE;
+    }
+
+    /**
+     * Checks if an amount of currency units can be converted to micros.
+     *
+     * @param units the amount of currency units.
+     * @return the amount of currency units.
+     *
+     * @throws ArithmeticException if the amount is not a number or too large.
+     */
+    private static double checkUnits(final double units) {
+        if (!(Math.abs(units) < MAX_UNITS)) {
+            throw new ArithmeticException("Money out of range: " + units);
+        }
+        return units;
+    }
+
+    /**
+     * Converts an amount of micros to currency units.
+     *
+     * @param micros the amount in micros.
+     * @return the amount of currency units or {@link Double#POSITIVE_INFINITY} for {@link #INFINITE}.
+     */
+    public static double toDouble(final long micros) {
+        return micros == INFINITE ? Double.POSITIVE_INFINITY : micros / (double) MICROS_PER_UNIT;
+    }
+
+    /**
+     * Adds two amounts.
+     *
+     * @param a the first amount in micros.
+     * @param b the second amount in micros.
+     * @return the sum in micros.
+     *
+     * @throws ArithmeticException if the sum overflows.
+     */
+    public static long add(final long a, final long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * Adds two costs. A cost which can not be paid stays one and a sum too large to pay becomes one.
+     *
+     * @param a the first cost in micros.
+     * @param b the second cost in micros.
+     * @return the sum in micros or {@link #INFINITE}.
+     */
+    public static long addCost(final long a, final long b) {
+        if (a == INFINITE || b == INFINITE) {
+            return INFINITE;
+        }
+        final long sum = a + b;
+        // The sum overflowed if both amounts have a sign the sum does not have
+        return ((a ^ sum) & (b ^ sum)) < 0 ? INFINITE : sum;
+    }
+
+    /**
+     * Multiplies an amount.
+     *
+     * @param micros the amount in micros.
+     * @param factor the factor.
+     * @return the product in micros.
+     *
+     * @throws ArithmeticException if the product overflows.
+     */
+    public static long multiply(final long micros, final long factor) {
+        return Math.multiplyExact(micros, factor);
+    }
+
+    /**
+     * Computes {@code a * b / c} rounding down.
+     *
+     * @param a the first factor.
+     * @param b the second factor.
+     * @param c the divisor.
+     * @return the rounded down quotient.
+     *
+     * @throws ArithmeticException if the product overflows or the divisor is 0.
+     */
+    public static long mulDivFloor(final long a, final long b, final long c) {
+        return Math.floorDiv(Math.multiplyExact(a, b), c);
+    }
+
+    /**
+     * Computes {@code a * b / c} rounding up.
+     *
+     * @param a the first factor.
+     * @param b the second factor.
+     * @param c the divisor.
+     * @return the rounded up quotient.
+     *
+     * @throws ArithmeticException if the product overflows or the divisor is 0.
+     */
+    public static long mulDivCeil(final long a, final long b, final long c) {
+        return -Math.floorDiv(Math.negateExact(Math.multiplyExact(a, b)), c);
+    }
+
+    /**
+     * Computes {@code a * b / c} rounding down like {@link #mulDivFloor(long, long, long)}, for amounts which may be
+     * too large to trade.
+     *
+     * @param a the first factor.
+     * @param b the second factor.
+     * @param c the divisor.
+     * @return the rounded down quotient or {@link #INFINITE} if the product overflows or the divisor is 0.
+     */
+    public static long mulDivFloorOrInfinite(final long a, final long b, final long c) {
+        try {
+            return mulDivFloor(a, b, c);
+        } catch (ArithmeticException e) {
+            return INFINITE;
+        }
+    }
+
+    /**
+     * Computes {@code a * b / c} rounding up like {@link #mulDivCeil(long, long, long)}, for amounts which may be too
+     * large to trade.
+     *
+     * @param a the first factor.
+     * @param b the second factor.
+     * @param c the divisor.
+     * @return the rounded up quotient or {@link #INFINITE} if the product overflows or the divisor is 0.
+     */
+    public static long mulDivCeilOrInfinite(final long a, final long b, final long c) {
+        try {
+            return mulDivCeil(a, b, c);
+        } catch (ArithmeticException e) {
+            return INFINITE;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Prices the trades of a {@link DefaultProduct product} in {@link Money} micros and applies them to its market state.
+ * Every product has one model, chosen by its {@link Economies} type. Models only read and change the market fields of
+ * a product, locking, versioning and logging are done by {@link DefaultEconomy}. A quote is always the amount the same
+ * trade would exchange if it was applied to the product as it is.
+ *
+ * @author Tyler Bucher
+ */
+public interface PricingModel {
+
+    /**
+     * @return the {@link Economies} type of this model, stored in the product table.
+     */
+    byte getType();
+
+    /**
+     * @return the name of this model used by commands.
+     */
+    @Nonnull
+    String getName();
+
+    /**
+     * Gets the amount of money it would cost to buy some amount of a {@link DefaultProduct product} at this instant.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to check.
+     * @param amount         the amount bought.
+     * @return the cost of the products in micros or {@link Money#INFINITE} if the model can not sell that many or the
+     * cost is too large to pay. Never throws for a large amount.
+     */
+    long quoteBuy(@Nonnull DefaultProduct defaultProduct, int amount);
+
+    /**
+     * Gets the amount of money you would receive if you sold some amount of a {@link DefaultProduct product} at this
+     * instant.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to check.
+     * @param amount         the amount sold.
+     * @return the returns of the products in micros or {@link Money#INFINITE} if the model can not buy that many or
+     * the returns are too large to pay. Never throws for a large amount.
+     */
+    long quoteSell(@Nonnull DefaultProduct defaultProduct, int amount);
+
+    /**
+     * Applies a buy to the market state of a {@link DefaultProduct product}.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return the amount of money in micros to take from the player, the same as {@link #quoteBuy} before the call. If
+     * it is {@link Money#INFINITE} the market state was not changed.
+     */
+    long buy(@Nonnull DefaultProduct defaultProduct, int amount);
+
+    /**
+     * Applies a buy to the market state of a {@link DefaultProduct product} without computing its cost. The resulting
+     * state is the same as after {@link #buy(DefaultProduct, int)}.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param amount         the amount bought.
+     * @return true if the buy was applied, false if the market can not sell that many, in which case the market state
+     * was not changed.
+     */
+    boolean applyBuy(@Nonnull DefaultProduct defaultProduct, int amount);
+
+    /**
+     * Applies a sale to the market state of a {@link DefaultProduct product}.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to sell.
+     * @param amount         the amount sold.
+     * @return the amount of money in micros to give to the player, the same as {@link #quoteSell} before the call. If
+     * it is {@link Money#INFINITE} the market state was not changed.
+     */
+    long sell(@Nonnull DefaultProduct defaultProduct, int amount);
+
+    /**
+     * Decays the demand of a {@link DefaultProduct product}.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to decay.
+     * @param amount         the amount of demand to remove.
+     * @return the amount of demand removed.
+     */
+    int decay(@Nonnull DefaultProduct defaultProduct, int amount);
+
+    /**
+     * Converts the market state of a {@link DefaultProduct product} which was priced by another model, before this
+     * model starts pricing it. Models which read supply and demand the same way as the previous one keep the state.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to convert.
+     * @param previous       the model which priced the product until now.
+     */
+    default void adopt(@Nonnull DefaultProduct defaultProduct, @Nonnull PricingModel previous) {
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A change of a {@link DefaultProduct product} read from the product change feed.
+ *
+ * @author Tyler Bucher
+ */
+public final class ProductChange {
+
+    /**
+     * The sequence number of this change in the feed.
+     */
+    public final long sequence;
+
+    /**
+     * The id of the server which made this change.
+     */
+    @Nonnull
+    public final String nodeId;
+
+    /**
+     * The kind of change, {@link SqlService#PRODUCT_CHANGED_ACTION} or {@link SqlService#PRODUCT_REMOVED_ACTION}.
+     */
+    public final byte action;
+
+    /**
+     * The alias of the changed {@link DefaultProduct product}.
+     */
+    @Nonnull
+    public final String alias;
+
+    /**
+     * Creates a new product change.
+     *
+     * @param sequence the sequence number of this change in the feed.
+     * @param nodeId   the id of the server which made this change.
+     * @param action   the kind of change.
+     * @param alias    the alias of the changed product.
+     */
+    ProductChange(final long sequence, @Nonnull final String nodeId, final byte action, @Nonnull final String alias) {
+        this.sequence = sequence;
+        this.nodeId = nodeId;
+        this.action = action;
+        this.alias = alias;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Publishes {@link DefaultProduct product} changes to the shared change feed table and tails the changes made by other
+ * servers so their settings reach this server without a restart.
+ *
+ * @author Tyler Bucher
+ */
+public class ProductChangeFeed {
+
+    /**
+     * The id of this server in the change feed.
+     */
+    @Nonnull
+    private final String nodeId;
+
+    /**
+     * The maximum amount of changes read by one poll.
+     */
+    private final int batchSize;
+
+    /**
+     * The sequence number of the last change read from the feed.
+     */
+    private volatile long lastSequence;
+
+    /**
+     * Creates a new product change feed.
+     *
+     * @param nodeId    the id of this server in the change feed.
+     * @param batchSize the maximum amount of changes read by one poll.
+     */
+    public ProductChangeFeed(@Nonnull final String nodeId, final int batchSize) {
+        this.nodeId = nodeId;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Moves this feed to the last change in the database. Call before reading the product table so no change made in
+     * between is missed.
+     *
+     * @param jdbcUrl the url of the database.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public void seekToEnd(@Nonnull final String jdbcUrl) throws SQLException {
+        lastSequence = SqlService.readLastProductChange(jdbcUrl);
+    }
+
+    /**
+     * Publishes a change of a {@link DefaultProduct product} to the other servers. The product table must already hold
+     * the changed row.
+     *
+     * @param jdbcUrl the url of the database.
+     * @param action  {@link SqlService#PRODUCT_CHANGED_ACTION} or {@link SqlService#PRODUCT_REMOVED_ACTION}.
+     * @param alias   the alias of the changed {@link DefaultProduct product}.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public void publish(@Nonnull final String jdbcUrl, final byte action, @Nonnull final String alias) throws SQLException {
+        SqlService.insertProductChange(jdbcUrl, nodeId, action, alias);
+    }
+
+    /**
+     * Reads the next batch of changes made by other servers along with the stored rows of the changed {@link
+     * DefaultProduct products}. Only one poll may run at a time, but it may run on any thread.
+     *
+     * @param jdbcUrl the url of the database.
+     * @return the stored product of every changed alias in feed order, or null if the product was removed.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public Map<String, DefaultProduct> poll(@Nonnull final String jdbcUrl) throws SQLException {
+        final List<ProductChange> changes = SqlService.readProductChanges(jdbcUrl, lastSequence, batchSize);
+        final Set<String> aliases = new LinkedHashSet<>();
+        for (final ProductChange productChange : changes) {
+            // Changes made by this server are already in memory
+            if (!nodeId.equals(productChange.nodeId)) {
+                aliases.remove(productChange.alias);
+                aliases.add(productChange.alias);
+            }
+        }
+        // The stored row is the result of every change in the batch, so each alias is read once
+        final Map<String, DefaultProduct> storedProducts = new LinkedHashMap<>();
+        for (final String alias : aliases) {
+            storedProducts.put(alias, SqlService.readDefaultProduct(jdbcUrl, alias));
+        }
+        if (!changes.isEmpty()) {
+            lastSequence = changes.get(changes.size() - 1).sequence;
+        }
+        return storedProducts;
+    }
+
+    /**
+     * Applies a stored {@link DefaultProduct product} read by {@link #poll(String)} to the products in memory. Supply
+     * and demand of a known product are kept since they are not part of a product change, a new {@link PricingModel}
+     * converts them like /setmodel does. Must be called on the thread which mutates the products.
+     *
+     * @param productMap    the list of {@link DefaultProduct products} which live in memory.
+     * @param alias         the alias of the changed product.
+     * @param storedProduct the stored product, or null if it was removed.
+     * @return the product in memory after the change, or null if it was removed.
+     */
+    @Nullable
+    public static DefaultProduct apply(@Nonnull final ConcurrentMap<String, DefaultProduct> productMap,
+                                       @Nonnull final String alias, @Nullable final DefaultProduct storedProduct) {
+        if (storedProduct == null) {
+            productMap.remove(alias);
+            return null;
+        }
+        final DefaultProduct defaultProduct = productMap.putIfAbsent(alias, storedProduct);
+        if (defaultProduct == null) {
+            return storedProduct;
+        }
+        defaultProduct.type = storedProduct.type;
+        defaultProduct.unsafeData = storedProduct.unsafeData;
+        if (defaultProduct.getPrice() != storedProduct.getPrice()) {
+            DefaultEconomy.setPriceNoSql(defaultProduct, storedProduct.getPrice());
+        }
+        if (defaultProduct.getModFactor() != storedProduct.getModFactor()) {
+            DefaultEconomy.setModFactorNoSql(defaultProduct, storedProduct.getModFactor());
+        }
+        defaultProduct.decayAmount = storedProduct.decayAmount;
+        defaultProduct.decayInterval = storedProduct.decayInterval;
+        defaultProduct.decayType = storedProduct.decayType;
+        if (defaultProduct.pricingModel != storedProduct.pricingModel) {
+            DefaultEconomy.setPricingModelNoSql(defaultProduct, storedProduct.pricingModel);
+        }
+        if (defaultProduct.liquidity != storedProduct.liquidity) {
+            DefaultEconomy.setLiquidityNoSql(defaultProduct, storedProduct.liquidity);
+        }
+        return defaultProduct;
+    }
+
+    /**
+     * @return the id of this server in the change feed.
+     */
+    @Nonnull
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the sequence number of the last change read from the feed.
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+}
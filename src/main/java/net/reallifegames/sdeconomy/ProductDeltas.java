@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+
+/**
+ * A snapshot of the supply and demand changes made to a set of {@link DefaultProduct products} since they were last
+ * persisted. Taken on the main thread by {@link DefaultEconomy#takeDeltas(Collection)}, written by {@link
+ * SqlService#updateDefaultProductDeltas(String, ProductDeltas)} or one of the versioned {@link SqlService} updates on
+ * any thread and merged back into memory by {@link DefaultEconomy#applyMergedValues(ProductDeltas)} on the main
+ * thread.
+ *
+ * @author Tyler Bucher
+ */
+public final class ProductDeltas {
+
+    /**
+     * The {@link DefaultProduct products} this snapshot was taken from.
+     */
+    @Nonnull
+    final DefaultProduct[] products;
+
+    /**
+     * The supply of each product when the snapshot was taken.
+     */
+    @Nonnull
+    final int[] supplySnapshots;
+
+    /**
+     * The demand of each product when the snapshot was taken.
+     */
+    @Nonnull
+    final int[] demandSnapshots;
+
+    /**
+     * The supply change of each product since it was last persisted.
+     */
+    @Nonnull
+    final int[] supplyDeltas;
+
+    /**
+     * The demand change of each product since it was last persisted.
+     */
+    @Nonnull
+    final int[] demandDeltas;
+
+    /**
+     * The row version of each product when the snapshot was taken.
+     */
+    @Nonnull
+    final long[] rowVersions;
+
+    /**
+     * States if the deltas of each product were written.
+     */
+    @Nonnull
+    final boolean[] written;
+
+    /**
+     * The authoritative supply of each product after the deltas were written.
+     */
+    @Nonnull
+    final int[] mergedSupplies;
+
+    /**
+     * The authoritative demand of each product after the deltas were written.
+     */
+    @Nonnull
+    final int[] mergedDemands;
+
+    /**
+     * The row version of each product after the deltas were written.
+     */
+    @Nonnull
+    final long[] mergedRowVersions;
+
+    /**
+     * Snapshots the supply and demand deltas of a collection of {@link DefaultProduct products}.
+     *
+     * @param productCollection the {@link DefaultProduct products} to snapshot.
+     */
+    ProductDeltas(@Nonnull final Collection<DefaultProduct> productCollection) {
+        this.products = productCollection.toArray(new DefaultProduct[0]);
+        this.supplySnapshots = new int[products.length];
+        this.demandSnapshots = new int[products.length];
+        this.supplyDeltas = new int[products.length];
+        this.demandDeltas = new int[products.length];
+        this.mergedSupplies = new int[products.length];
+        this.mergedDemands = new int[products.length];
+        this.rowVersions = new long[products.length];
+        this.written = new boolean[products.length];
+        this.mergedRowVersions = new long[products.length];
+        for (int i = 0; i < products.length; i++) {
+            final DefaultProduct defaultProduct = products[i];
+            supplySnapshots[i] = defaultProduct.supply;
+            demandSnapshots[i] = defaultProduct.demand;
+            supplyDeltas[i] = defaultProduct.supply - defaultProduct.persistedSupply;
+            demandDeltas[i] = defaultProduct.demand - defaultProduct.persistedDemand;
+            // Until the database answers the snapshot is the best known value
+            mergedSupplies[i] = defaultProduct.supply;
+            mergedDemands[i] = defaultProduct.demand;
+            rowVersions[i] = defaultProduct.rowVersion;
+            mergedRowVersions[i] = defaultProduct.rowVersion;
+        }
+    }
+
+    /**
+     * @return the amount of {@link DefaultProduct products} in this snapshot.
+     */
+    public int getLength() {
+        return products.length;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import net.reallifegames.sdeconomy.metrics.Metrics;
+
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded least recently used cache of buy and sell quotes. Quotes are keyed by product instance, product version, amount
+ * and side, so any change to a product makes its old quotes unreachable and they are evicted as the cache fills. A
+ * product which is removed and created again under the same alias starts a new set of quotes.
+ *
+ * @author Tyler Bucher
+ */
+public final class QuoteCache {
+
+    /**
+     * The maximum amount of quotes held by the cache.
+     */
+    private static final int MAX_ENTRIES = 4096;
+
+    /**
+     * The buy side of a quote.
+     */
+    private static final boolean BUY_SIDE = true;
+
+    /**
+     * The sell side of a quote.
+     */
+    private static final boolean SELL_SIDE = false;
+
+    /**
+     * The cached quotes in access order.
+     */
+    @Nonnull
+    private static final LinkedHashMap<QuoteKey, Long> quotes = new LinkedHashMap<QuoteKey, Long>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<QuoteKey, Long> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Counts the quotes served from the cache.
+     */
+    @Nonnull
+    private static final LongAdder hits = Metrics.counter("quote.cache.hit");
+
+    /**
+     * Counts the quotes which had to be computed.
+     */
+    @Nonnull
+    private static final LongAdder misses = Metrics.counter("quote.cache.miss");
+
+    /**
+     * Gets the amount of money it would cost to buy some amount of a {@link DefaultProduct product}, using a cached
+     * quote when the product has not changed since it was computed.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to check.
+     * @param amount         the amount bought.
+     * @return the amount of money in micros it would cost or {@link Money#INFINITE} if the market can not sell that
+     * many.
+     */
+    public static long checkBuyCost(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        final QuoteKey key = new QuoteKey(defaultProduct, defaultProduct.version, amount, BUY_SIDE);
+        final Long cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final long cost = DefaultEconomy.checkBuyCost(defaultProduct, amount);
+        put(key, cost);
+        return cost;
+    }
+
+    /**
+     * Gets the amount of money you would receive if you sold some amount of a {@link DefaultProduct product}, using a
+     * cached quote when the product has not changed since it was computed.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to check.
+     * @param amount         the amount sold.
+     * @return the amount of money in micros you would receive or {@link Money#INFINITE} if the market can not buy that
+     * many.
+     */
+    public static long checkSellReturns(@Nonnull final DefaultProduct defaultProduct, final int amount) {
+        final QuoteKey key = new QuoteKey(defaultProduct, defaultProduct.version, amount, SELL_SIDE);
+        final Long cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final long returns = DefaultEconomy.checkSellReturns(defaultProduct, amount);
+        put(key, returns);
+        return returns;
+    }
+
+    /**
+     * Gets a cached quote and counts the hit or miss.
+     *
+     * @param key the key of the quote.
+     * @return the cached quote or null.
+     */
+    private static Long get(@Nonnull final QuoteKey key) {
+        final Long quote;
+        synchronized (quotes) {
+            quote = quotes.get(key);
+        }
+        if (quote == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return quote;
+    }
+
+    /**
+     * Caches a quote.
+     *
+     * @param key   the key of the quote.
+     * @param quote the quote to cache.
+     */
+    private static void put(@Nonnull final QuoteKey key, final long quote) {
+        synchronized (quotes) {
+            quotes.put(key, quote);
+        }
+    }
+
+    /**
+     * Identifies a quote.
+     */
+    private static final class QuoteKey {
+
+        /**
+         * The quoted product, compared by identity since its version only counts changes of this instance.
+         */
+        @Nonnull
+        private final DefaultProduct product;
+
+        /**
+         * The version of the quoted product.
+         */
+        private final long version;
+
+        /**
+         * The quoted amount.
+         */
+        private final int amount;
+
+        /**
+         * True for a buy quote, false for a sell quote.
+         */
+        private final boolean buySide;
+
+        /**
+         * Creates a new quote key.
+         *
+         * @param product the quoted product.
+         * @param version the version of the quoted product.
+         * @param amount  the quoted amount.
+         * @param buySide true for a buy quote, false for a sell quote.
+         */
+        private QuoteKey(@Nonnull final DefaultProduct product, final long version, final int amount,
+                         final boolean buySide) {
+            this.product = product;
+            this.version = version;
+            this.amount = amount;
+            this.buySide = buySide;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QuoteKey)) {
+                return false;
+            }
+            final QuoteKey other = (QuoteKey) o;
+            return product == other.product && version == other.version && amount == other.amount && buySide == other.buySide;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(product);
+            result = 31 * result + Long.hashCode(version);
+            result = 31 * result + amount;
+            result = 31 * result + (buySide ? 1 : 0);
+            return result;
+        }
+    }
+}
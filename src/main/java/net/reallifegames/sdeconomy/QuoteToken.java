@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A buy quote which holds its price until it expires or is redeemed.
+ *
+ * @author Tyler Bucher
+ */
+public final class QuoteToken {
+
+    /**
+     * The id of this token.
+     */
+    public final long id;
+
+    /**
+     * The uuid of the player the quote was issued to.
+     */
+    @Nonnull
+    public final String uuid;
+
+    /**
+     * The alias of the quoted {@link DefaultProduct product}.
+     */
+    @Nonnull
+    public final String alias;
+
+    /**
+     * The quoted amount.
+     */
+    public final int amount;
+
+    /**
+     * The quoted cost of the amount in micros.
+     */
+    public final long cost;
+
+    /**
+     * The time in milliseconds at which this token expires.
+     */
+    public final long expiresAt;
+
+    /**
+     * Creates a new quote token.
+     *
+     * @param id        the id of this token.
+     * @param uuid      the uuid of the player the quote was issued to.
+     * @param alias     the alias of the quoted product.
+     * @param amount    the quoted amount.
+     * @param cost      the quoted cost of the amount in micros.
+     * @param expiresAt the time in milliseconds at which this token expires.
+     */
+    QuoteToken(final long id, @Nonnull final String uuid, @Nonnull final String alias, final int amount, final long cost,
+               final long expiresAt) {
+        this.id = id;
+        this.uuid = uuid;
+        this.alias = alias;
+        this.amount = amount;
+        this.cost = cost;
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Issues and redeems {@link QuoteToken quote tokens}. Every player holds at most one token, a new quote replaces the
+ * previous one. All tokens share the same time to live, so they expire in the order they were issued and expiry only
+ * looks at the oldest tokens instead of scanning every outstanding quote.
+ *
+ * @author Tyler Bucher
+ */
+public final class QuoteTokens {
+
+    /**
+     * The current token of every player by uuid.
+     */
+    @Nonnull
+    private static final HashMap<String, QuoteToken> tokens = new HashMap<>();
+
+    /**
+     * The issued tokens in expiry order, including tokens which have already been redeemed or replaced.
+     */
+    @Nonnull
+    private static final ArrayDeque<QuoteToken> expiryQueue = new ArrayDeque<>();
+
+    /**
+     * The time in milliseconds a token is valid for.
+     */
+    private static long timeToLive = 0;
+
+    /**
+     * The id of the next token.
+     */
+    private static long nextId = 0;
+
+    /**
+     * Sets the time to live of new tokens. A time of 0 or less disables tokens.
+     *
+     * @param timeToLiveMillis the time in milliseconds a token is valid for.
+     */
+    public static synchronized void setTimeToLive(final long timeToLiveMillis) {
+        timeToLive = timeToLiveMillis;
+        // Tokens issued with the old time to live would break the expiry order
+        tokens.clear();
+        expiryQueue.clear();
+    }
+
+    /**
+     * @return the time in milliseconds a token is valid for, 0 or less if tokens are disabled.
+     */
+    public static synchronized long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Issues a token holding a buy quote for a player.
+     *
+     * @param uuid   the uuid of the player.
+     * @param alias  the alias of the quoted {@link DefaultProduct product}.
+     * @param amount the quoted amount.
+     * @param cost   the quoted cost of the amount in micros.
+     * @return the issued token or null if tokens are disabled.
+     */
+    @Nullable
+    public static synchronized QuoteToken issue(@Nonnull final String uuid, @Nonnull final String alias, final int amount,
+                                                final long cost) {
+        if (timeToLive <= 0) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        expire(now);
+        final QuoteToken quoteToken = new QuoteToken(nextId++, uuid, alias, amount, cost, now + timeToLive);
+        tokens.put(uuid, quoteToken);
+        expiryQueue.addLast(quoteToken);
+        return quoteToken;
+    }
+
+    /**
+     * Gets the token of a player if it quotes the given product and amount and has not expired. The token stays valid
+     * until it is {@link #redeem(QuoteToken) redeemed}, so a buy which is not made does not use it up.
+     *
+     * @param uuid   the uuid of the player.
+     * @param alias  the alias of the {@link DefaultProduct product} being bought.
+     * @param amount the amount being bought.
+     * @return the matching token or null if the player has no matching token.
+     */
+    @Nullable
+    public static synchronized QuoteToken peek(@Nonnull final String uuid, @Nonnull final String alias, final int amount) {
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        expire(System.currentTimeMillis());
+        final QuoteToken quoteToken = tokens.get(uuid);
+        if (quoteToken == null || quoteToken.amount != amount || !quoteToken.alias.equals(alias)) {
+            return null;
+        }
+        return quoteToken;
+    }
+
+    /**
+     * Redeems a token returned by {@link #peek(String, String, int)} once the buy it quoted was made.
+     *
+     * @param quoteToken the token to redeem.
+     * @return true if the token was still held by its player, false if it was already redeemed or replaced.
+     */
+    public static synchronized boolean redeem(@Nonnull final QuoteToken quoteToken) {
+        return tokens.remove(quoteToken.uuid, quoteToken);
+    }
+
+    /**
+     * Removes every token which expired at or before the given time.
+     *
+     * @param now the current time in milliseconds.
+     */
+    private static void expire(final long now) {
+        QuoteToken oldest;
+        while ((oldest = expiryQueue.peekFirst()) != null && oldest.expiresAt <= now) {
+            expiryQueue.pollFirst();
+            // Only remove the token if it was not replaced by a newer one
+            tokens.remove(oldest.uuid, oldest);
+        }
+    }
+}
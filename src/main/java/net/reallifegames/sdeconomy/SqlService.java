@@ -23,11 +23,19 @@
  */
 package net.reallifegames.sdeconomy;
 
+import net.reallifegames.sdeconomy.jfr.EconomyEvents;
+import net.reallifegames.sdeconomy.metrics.Metrics;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -40,7 +48,7 @@ public final class SqlService {
     /**
      * The current sql version of this plugin.
      */
-    public static final int SQL_VERSION = 6;
+    public static final int SQL_VERSION = 9;
 
     /**
      * Checks to see if a table exists.
@@ -68,19 +76,65 @@ public final class SqlService {
     @Nonnull
     private static final String DEFAULT_PRODUCT_TABLE_SQL = "CREATE TABLE IF NOT EXISTS `sd_products` (`id` int(11) NOT NULL " +
             "AUTO_INCREMENT, `alias` VARCHAR(255) NOT NULL, `type` VARCHAR(255) NOT NULL, `unsafe_data` TINYINT(4) " +
-            "DEFAULT '0', `mod_factor` FLOAT NOT NULL DEFAULT '0.1', `price` FLOAT NOT NULL, `supply` INT NOT NULL, " +
+            "DEFAULT '0', `mod_factor` FLOAT NOT NULL DEFAULT '0.1', `liquidity` FLOAT NOT NULL DEFAULT '1000', `price` FLOAT NOT NULL, `supply` INT NOT NULL, " +
             "`demand` INT NOT NULL, `decay_amount` INT NOT NULL DEFAULT '64', PRIMARY KEY (`id`), `decay_interval` " +
-            "BIGINT NOT NULL DEFAULT '43200000', `decay_type` TINYINT NOT NULL DEFAULT '0', UNIQUE KEY `alias_2` " +
+            "BIGINT NOT NULL DEFAULT '43200000', `decay_type` TINYINT NOT NULL DEFAULT '0', `row_version` BIGINT NOT NULL " +
+            "DEFAULT '0', `pricing_model` TINYINT NOT NULL DEFAULT '0', UNIQUE KEY `alias_2` " +
             "(`alias`), KEY `alias` (`alias`)) ENGINE = InnoDB;";
 
     /**
-     * The {@link DefaultProduct product} table insert and update sql query string.
+     * The {@link DefaultProduct product} table insert sql query string.
+     */
+    @Nonnull
+    private static final String INSERT_DEFAULT_PRODUCT_SQL = "INSERT INTO `sd_products`(`alias`, `type`, `unsafe_data`, " +
+            "`mod_factor`, `price`, `supply`, `demand`, `decay_amount`, `decay_interval`, `decay_type`, `row_version`, " +
+            "`pricing_model`, `liquidity`) VALUES (?,?,?,?,?,?,?,?,?,?,0,?,?);";
+
+    /**
+     * The {@link DefaultProduct product} table versioned settings, supply and demand update sql query string.
+     */
+    @Nonnull
+    private static final String VERSIONED_UPDATE_DEFAULT_PRODUCT_SQL = "UPDATE `sd_products` SET `type`=?,`unsafe_data`=?," +
+            "`mod_factor`=?,`price`=?,`supply`=?,`demand`=?,`decay_amount`=?,`decay_interval`=?,`decay_type`=?," +
+            "`pricing_model`=?,`liquidity`=?,`row_version`=`row_version`+1 WHERE `alias`=? AND `row_version`=?;";
+
+    /**
+     * The {@link DefaultProduct product} table versioned supply and demand update sql query string.
+     */
+    @Nonnull
+    private static final String VERSIONED_UPDATE_DEFAULT_PRODUCT_MARKET_SQL = "UPDATE `sd_products` SET `supply`=?," +
+            "`demand`=?,`row_version`=`row_version`+1 WHERE `alias`=? AND `row_version`=?;";
+
+    /**
+     * The {@link DefaultProduct product} table single row supply, demand and version select sql query string.
+     */
+    @Nonnull
+    private static final String READ_DEFAULT_PRODUCT_VERSION_SQL = "SELECT `supply`, `demand`, `row_version` FROM " +
+            "`sd_products` WHERE `alias`=?;";
+
+    /**
+     * The maximum amount of times a versioned update of one {@link DefaultProduct product} is attempted.
+     */
+    private static final int MAX_VERSIONED_UPDATE_ATTEMPTS = 8;
+
+    /**
+     * The {@link DefaultProduct product} table insert and delta update sql query string. Supply and demand are
+     * incremented by the change made in memory and clamped to the range the market functions keep them in.
+     */
+    @Nonnull
+    private static final String INSERT_UPDATE_DEFAULT_PRODUCT_DELTA_SQL = "INSERT INTO `sd_products`(`alias`, `type`, " +
+            "`unsafe_data`, `mod_factor`, `price`, `supply`, `demand`, `decay_amount`, `decay_interval`, `decay_type`, " +
+            "`pricing_model`, `liquidity`) VALUES (?,?,?,?,?,?,?,?,?,?,?,?) ON DUPLICATE KEY UPDATE `type`=?," +
+            "`unsafe_data`=?,`mod_factor`=?,`price`=?,`decay_amount`=?,`decay_interval`=?,`decay_type`=?,`pricing_model`=?," +
+            "`liquidity`=?,`supply`=GREATEST(1, LEAST(2147483647, `supply` + ?))," +
+            "`demand`=GREATEST(1, LEAST(2147483647, `demand` + ?)),`row_version`=`row_version`+1;";
+
+    /**
+     * The {@link DefaultProduct product} table supply, demand and version select sql query string.
      */
     @Nonnull
-    private static final String INSERT_UPDATE_DEFAULT_PRODUCT_TABLE_SQL = "INSERT INTO `sd_products`(`alias`, `type`, " +
-            "`unsafe_data`, `mod_factor`, `price`, `supply`, `demand`, `decay_amount`, `decay_interval`, `decay_type`) " +
-            "VALUES (?,?,?,?,?,?,?,?,?,?) ON DUPLICATE KEY UPDATE `type`=?,`unsafe_data`=?,`mod_factor`=?,`price`=?," +
-            "`supply`=?,`demand`=?,`decay_amount`=?,`decay_interval`=?,`decay_type`=?;";
+    private static final String READ_DEFAULT_PRODUCT_MARKET_SQL = "SELECT `alias`, `supply`, `demand`, `row_version` FROM " +
+            "`sd_products`;";
 
     /**
      * The {@link DefaultProduct product} table select sql query string.
@@ -193,6 +247,32 @@ public final class SqlService {
     private static final String INSERT_UPDATE_SQL_VERSION = "INSERT INTO `sd_constants`(`kkey`, `value`) VALUES (?,?) " +
             "ON DUPLICATE KEY UPDATE `kkey` = `kkey`;";
 
+    /**
+     * The prefix of the constants holding the last decay period claimed for each decay interval.
+     */
+    @Nonnull
+    public static final String DECAY_PERIOD_CONSTANT = "decay_period_";
+
+    /**
+     * Inserts a constant if it does not exist yet.
+     */
+    @Nonnull
+    private static final String INSERT_MISSING_CONSTANT = "INSERT INTO `sd_constants`(`kkey`, `value`) VALUES (?,?) " +
+            "ON DUPLICATE KEY UPDATE `kkey` = `kkey`;";
+
+    /**
+     * Selects the last decay period claimed for a decay interval.
+     */
+    @Nonnull
+    private static final String SELECT_DECAY_PERIOD = "SELECT `value` FROM `sd_constants` WHERE `kkey`=?;";
+
+    /**
+     * Moves the claimed decay period of an interval forward. Updates no row if another server moved it since it was
+     * read.
+     */
+    @Nonnull
+    private static final String CLAIM_DECAY_PERIOD = "UPDATE `sd_constants` SET `value`=? WHERE `kkey`=? AND `value`=?;";
+
     /**
      * Searches for keys in an array.
      */
@@ -212,6 +292,50 @@ public final class SqlService {
     private static final String UUID_TABLE_SQL = "CREATE TABLE IF NOT EXISTS `sd_uuid` ( `id` INT NOT NULL AUTO_INCREMENT " +
             ", `uuid` CHAR(36) NOT NULL , PRIMARY KEY (`id`), UNIQUE KEY `uuid` (`uuid`)) ENGINE = InnoDB;";
 
+    /**
+     * The product change feed table creation sql query string.
+     */
+    @Nonnull
+    private static final String PRODUCT_CHANGE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS `sd_product_changes` (`seq` " +
+            "BIGINT NOT NULL AUTO_INCREMENT, `node_id` VARCHAR(36) NOT NULL, `action` TINYINT NOT NULL, `alias` " +
+            "VARCHAR(255) NOT NULL, `date` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (`seq`)) ENGINE = InnoDB;";
+
+    /**
+     * The product change feed table insert sql query string.
+     */
+    @Nonnull
+    private static final String INSERT_PRODUCT_CHANGE_SQL = "INSERT INTO `sd_product_changes`(`node_id`, `action`, " +
+            "`alias`) VALUES (?,?,?);";
+
+    /**
+     * The product change feed table select sql query string.
+     */
+    @Nonnull
+    private static final String READ_PRODUCT_CHANGES_SQL = "SELECT `seq`, `node_id`, `action`, `alias` FROM " +
+            "`sd_product_changes` WHERE `seq` > ? ORDER BY `seq` LIMIT ?;";
+
+    /**
+     * The product change feed table last sequence number sql query string.
+     */
+    @Nonnull
+    private static final String READ_LAST_PRODUCT_CHANGE_SQL = "SELECT COALESCE(MAX(`seq`), 0) FROM `sd_product_changes`;";
+
+    /**
+     * The {@link DefaultProduct product} table single row select sql query string.
+     */
+    @Nonnull
+    private static final String READ_DEFAULT_PRODUCT_SQL = "SELECT * FROM `sd_products` WHERE `alias` = ?;";
+
+    /**
+     * Product change feed action for a product which was added or had its settings changed.
+     */
+    public static final byte PRODUCT_CHANGED_ACTION = 0;
+
+    /**
+     * Product change feed action for a product which was removed.
+     */
+    public static final byte PRODUCT_REMOVED_ACTION = 1;
+
     /**
      * Checks to see if all of the tables passed exist in the database.
      *
@@ -406,6 +530,78 @@ public final class SqlService {
         }
     }
 
+    /**
+     * Updates the database from version 6 to version 7.
+     *
+     * @param jdbcUrl the url of the database.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void updateToSqlV7(@Nonnull final String jdbcUrl) throws SQLException {
+        final int sqlVersion = getSqlVersion(jdbcUrl);
+        if (sqlVersion == 6) {
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            // sd_products table
+            sqlConnection.prepareStatement("ALTER TABLE `sd_products` ADD `row_version` BIGINT NOT NULL DEFAULT '0' AFTER `decay_type`;").execute();
+            // Update sql version
+            final PreparedStatement updateStatement = sqlConnection.prepareStatement("UPDATE `sd_constants` SET `value`=? WHERE `kkey`=?;");
+            updateStatement.setString(1, String.valueOf(7));
+            updateStatement.setString(2, SQL_VERSION_CONSTANT);
+            updateStatement.executeUpdate();
+            updateStatement.close();
+            // Close objects
+            sqlConnection.close();
+        }
+    }
+
+    /**
+     * Updates the database from version 7 to version 8.
+     *
+     * @param jdbcUrl the url of the database.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void updateToSqlV8(@Nonnull final String jdbcUrl) throws SQLException {
+        final int sqlVersion = getSqlVersion(jdbcUrl);
+        if (sqlVersion == 7) {
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            // sd_products table
+            sqlConnection.prepareStatement("ALTER TABLE `sd_products` ADD `pricing_model` TINYINT NOT NULL DEFAULT '0' AFTER `row_version`;").execute();
+            // Update sql version
+            final PreparedStatement updateStatement = sqlConnection.prepareStatement("UPDATE `sd_constants` SET `value`=? WHERE `kkey`=?;");
+            updateStatement.setString(1, String.valueOf(8));
+            updateStatement.setString(2, SQL_VERSION_CONSTANT);
+            updateStatement.executeUpdate();
+            updateStatement.close();
+            // Close objects
+            sqlConnection.close();
+        }
+    }
+
+    /**
+     * Updates the database from version 8 to version 9.
+     *
+     * @param jdbcUrl the url of the database.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void updateToSqlV9(@Nonnull final String jdbcUrl) throws SQLException {
+        final int sqlVersion = getSqlVersion(jdbcUrl);
+        if (sqlVersion == 8) {
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            // sd_products table
+            sqlConnection.prepareStatement("ALTER TABLE `sd_products` ADD `liquidity` FLOAT NOT NULL DEFAULT '1000' AFTER `mod_factor`;").execute();
+            // Update sql version
+            final PreparedStatement updateStatement = sqlConnection.prepareStatement("UPDATE `sd_constants` SET `value`=? WHERE `kkey`=?;");
+            updateStatement.setString(1, String.valueOf(9));
+            updateStatement.setString(2, SQL_VERSION_CONSTANT);
+            updateStatement.executeUpdate();
+            updateStatement.close();
+            // Close objects
+            sqlConnection.close();
+        }
+    }
+
     /**
      * Gets the sql version of the database.
      *
@@ -546,91 +742,352 @@ public final class SqlService {
     }
 
     /**
-     * Attempt to update the {@link DefaultProduct default product} table with the current list of {@link DefaultProduct
-     * products} from memory.
+     * Claims the decay periods of a decay interval up to a period for this server. Every server sharing the database
+     * runs the decay task, only the server which claims a period first decays it. Periods are only claimed in
+     * increasing order so a server with a late clock can not decay a period twice. Periods which no server claimed, for
+     * example because every server lagged, are claimed along with the passed period so their decay is not lost.
+     *
+     * @param jdbcUrl       the url of the database.
+     * @param decayInterval the decay interval of the products.
+     * @param period        the last decay period to claim, the current time divided by the interval.
+     * @return the amount of periods this server claimed and should decay, 0 if the period was already claimed. The
+     * first claim of an interval claims only the passed period.
      *
-     * @param jdbcUrl    the url of the database.
-     * @param productMap the list of {@link DefaultProduct products} which live in memory.
      * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
      *                      argument is supplied to this method. If a database access error occurs or the url is null.
      */
-    public static void updateDefaultProductTable(@Nonnull final String jdbcUrl, @Nonnull final ConcurrentMap<String, DefaultProduct> productMap)
+    public static long claimDecayPeriods(@Nonnull final String jdbcUrl, final long decayInterval, final long period)
             throws SQLException {
-        // Connect to database
+        final String key = DECAY_PERIOD_CONSTANT + decayInterval;
+        final Object event = EconomyEvents.beginSql();
+        final long startTime = System.nanoTime();
+        // Connect to table
         final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
-        sqlConnection.setAutoCommit(false);
-        final PreparedStatement updateStatement = sqlConnection.prepareStatement(INSERT_UPDATE_DEFAULT_PRODUCT_TABLE_SQL);
-        // Traverse product map
-        for (final Map.Entry<String, DefaultProduct> kvp : productMap.entrySet()) {
-            // Setup prepared statement
-            updateStatement.setString(1, kvp.getValue().alias);
-            updateStatement.setString(2, kvp.getValue().type);
-            updateStatement.setByte(3, kvp.getValue().unsafeData);
-            updateStatement.setFloat(4, kvp.getValue().getModFactor());
-            updateStatement.setFloat(5, kvp.getValue().getPrice());
-            updateStatement.setInt(6, kvp.getValue().supply);
-            updateStatement.setInt(7, kvp.getValue().demand);
-            updateStatement.setInt(8, kvp.getValue().decayAmount);
-            updateStatement.setLong(9, kvp.getValue().decayInterval);
-            updateStatement.setByte(10, kvp.getValue().decayType);
-            // update
-            updateStatement.setString(11, kvp.getValue().type);
-            updateStatement.setByte(12, kvp.getValue().unsafeData);
-            updateStatement.setFloat(13, kvp.getValue().getModFactor());
-            updateStatement.setFloat(14, kvp.getValue().getPrice());
-            updateStatement.setInt(15, kvp.getValue().supply);
-            updateStatement.setInt(16, kvp.getValue().demand);
-            updateStatement.setInt(17, kvp.getValue().decayAmount);
-            updateStatement.setLong(18, kvp.getValue().decayInterval);
-            updateStatement.setByte(19, kvp.getValue().decayType);
-            updateStatement.addBatch();
+        try {
+            final PreparedStatement insertStatement = sqlConnection.prepareStatement(INSERT_MISSING_CONSTANT);
+            insertStatement.setString(1, key);
+            insertStatement.setString(2, "-1");
+            insertStatement.executeUpdate();
+            insertStatement.close();
+            final PreparedStatement selectStatement = sqlConnection.prepareStatement(SELECT_DECAY_PERIOD);
+            selectStatement.setString(1, key);
+            final PreparedStatement claimStatement = sqlConnection.prepareStatement(CLAIM_DECAY_PERIOD);
+            claimStatement.setString(1, String.valueOf(period));
+            claimStatement.setString(2, key);
+            long claimed = 0;
+            while (true) {
+                final ResultSet results = selectStatement.executeQuery();
+                final String lastValue = results.next() ? results.getString(1) : "-1";
+                results.close();
+                final long lastPeriod = Long.parseLong(lastValue);
+                if (lastPeriod >= period) {
+                    break;
+                }
+                // Only moves the period if no other server moved it since it was read, otherwise read it again
+                claimStatement.setString(3, lastValue);
+                if (claimStatement.executeUpdate() == 1) {
+                    claimed = lastPeriod < 0 ? 1 : period - lastPeriod;
+                    break;
+                }
+            }
+            selectStatement.close();
+            claimStatement.close();
+            recordSql("sql.claimDecayPeriods", startTime, event, claimed > 0 ? 1 : 0);
+            return claimed;
+        } finally {
+            // Close objects
+            sqlConnection.close();
         }
-        updateStatement.executeBatch();
-        sqlConnection.commit();
-        // Close objects
-        updateStatement.close();
-        sqlConnection.close();
     }
 
     /**
-     * Attempt to update the {@link DefaultProduct product} table with the current {@link DefaultProduct products} from
-     * memory.
+     * Attempt to write the supply and demand of a {@link ProductDeltas snapshot} to the {@link DefaultProduct product}
+     * table. Every row is only updated if its version did not change since it was read. On a conflict the row is read
+     * again, the deltas of the snapshot are rebased onto it and the update is retried. Missing rows are inserted with
+     * the settings from memory.
      *
-     * @param jdbcUrl        the url of the database.
-     * @param defaultProduct the {@link DefaultProduct products} which live in memory.
+     * @param jdbcUrl       the url of the database.
+     * @param productDeltas the snapshot to write. Its merged values are filled in by this call.
      * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
      *                      argument is supplied to this method. If a database access error occurs or the url is null.
      */
-    public static void updateDefaultProduct(@Nonnull final String jdbcUrl, @Nonnull final DefaultProduct defaultProduct) throws SQLException {
+    public static void updateDefaultProductTable(@Nonnull final String jdbcUrl, @Nonnull final ProductDeltas productDeltas)
+            throws SQLException {
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        int rowsWritten = 0;
+        try {
+            rowsWritten = updateVersionedProducts(jdbcUrl, productDeltas, false);
+        } finally {
+            recordSql("sql.updateDefaultProductTable", startTime, event, rowsWritten);
+        }
+    }
+
+    /**
+     * Attempt to write the settings, supply and demand of a {@link ProductDeltas snapshot} to the {@link
+     * DefaultProduct product} table. Conflicts are handled like {@link #updateDefaultProductTable(String,
+     * ProductDeltas)}; the settings from memory always win.
+     *
+     * @param jdbcUrl       the url of the database.
+     * @param productDeltas the snapshot to write. Its merged values are filled in by this call.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void updateDefaultProduct(@Nonnull final String jdbcUrl, @Nonnull final ProductDeltas productDeltas)
+            throws SQLException {
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        int rowsWritten = 0;
+        try {
+            rowsWritten = updateVersionedProducts(jdbcUrl, productDeltas, true);
+        } finally {
+            recordSql("sql.updateDefaultProduct", startTime, event, rowsWritten);
+        }
+    }
+
+    /**
+     * Writes a {@link ProductDeltas snapshot} with versioned updates over one connection.
+     *
+     * @param jdbcUrl       the url of the database.
+     * @param productDeltas the snapshot to write.
+     * @param writeSettings true if the settings of the products should be written as well.
+     * @return the amount of rows written.
+     *
+     * @throws SQLException if a database access error occurs or a row kept conflicting.
+     */
+    private static int updateVersionedProducts(@Nonnull final String jdbcUrl, @Nonnull final ProductDeltas productDeltas,
+                                               final boolean writeSettings) throws SQLException {
+        final int length = productDeltas.products.length;
+        // The values the deltas of each row are added to
+        final long[] baseSupplies = new long[length];
+        final long[] baseDemands = new long[length];
+        final long[] expectedVersions = productDeltas.rowVersions.clone();
+        for (int i = 0; i < length; i++) {
+            baseSupplies[i] = productDeltas.supplySnapshots[i] - productDeltas.supplyDeltas[i];
+            baseDemands[i] = productDeltas.demandSnapshots[i] - productDeltas.demandDeltas[i];
+        }
+        int rowsWritten = 0;
         // Connect to database
         final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
-        final PreparedStatement updateStatement = sqlConnection.prepareStatement(INSERT_UPDATE_DEFAULT_PRODUCT_TABLE_SQL);
-        // Traverse defaultProduct map
-        // Setup prepared statement
-        updateStatement.setString(1, defaultProduct.alias);
-        updateStatement.setString(2, defaultProduct.type);
-        updateStatement.setByte(3, defaultProduct.unsafeData);
-        updateStatement.setFloat(4, defaultProduct.getModFactor());
-        updateStatement.setFloat(5, defaultProduct.getPrice());
-        updateStatement.setInt(6, defaultProduct.supply);
-        updateStatement.setInt(7, defaultProduct.demand);
-        updateStatement.setInt(8, defaultProduct.decayAmount);
-        updateStatement.setLong(9, defaultProduct.decayInterval);
-        updateStatement.setByte(10, defaultProduct.decayType);
-        // update
-        updateStatement.setString(11, defaultProduct.type);
-        updateStatement.setByte(12, defaultProduct.unsafeData);
-        updateStatement.setFloat(13, defaultProduct.getModFactor());
-        updateStatement.setFloat(14, defaultProduct.getPrice());
-        updateStatement.setInt(15, defaultProduct.supply);
-        updateStatement.setInt(16, defaultProduct.demand);
-        updateStatement.setInt(17, defaultProduct.decayAmount);
-        updateStatement.setLong(18, defaultProduct.decayInterval);
-        updateStatement.setByte(19, defaultProduct.decayType);
-        updateStatement.executeUpdate();
-        // Close objects
-        updateStatement.close();
-        sqlConnection.close();
+        try {
+            final PreparedStatement updateStatement = sqlConnection.prepareStatement(writeSettings ?
+                    VERSIONED_UPDATE_DEFAULT_PRODUCT_SQL : VERSIONED_UPDATE_DEFAULT_PRODUCT_MARKET_SQL);
+            final PreparedStatement readStatement = sqlConnection.prepareStatement(READ_DEFAULT_PRODUCT_VERSION_SQL);
+            final PreparedStatement insertStatement = sqlConnection.prepareStatement(INSERT_DEFAULT_PRODUCT_SQL);
+            for (int i = 0; i < length; i++) {
+                // Batches may not report the update count of each row, so rows are updated one by one
+                setVersionedUpdate(updateStatement, productDeltas, i, baseSupplies[i], baseDemands[i], expectedVersions[i],
+                        writeSettings);
+                int attempt = 1;
+                boolean written = updateStatement.executeUpdate() == 1;
+                while (!written) {
+                    final DefaultProduct defaultProduct = productDeltas.products[i];
+                    // Read the row again and rebase the deltas onto it
+                    readStatement.setString(1, defaultProduct.alias);
+                    final ResultSet result = readStatement.executeQuery();
+                    final boolean rowExists = result.next();
+                    if (rowExists) {
+                        baseSupplies[i] = result.getInt("supply");
+                        baseDemands[i] = result.getInt("demand");
+                        expectedVersions[i] = result.getLong("row_version");
+                    }
+                    result.close();
+                    if (rowExists) {
+                        // Another server changed the row since it was read
+                        Metrics.increment("sql.versionConflict");
+                        setVersionedUpdate(updateStatement, productDeltas, i, baseSupplies[i], baseDemands[i],
+                                expectedVersions[i], writeSettings);
+                        written = updateStatement.executeUpdate() == 1;
+                    } else {
+                        written = insertProduct(insertStatement, productDeltas, i, baseSupplies[i], baseDemands[i]);
+                        expectedVersions[i] = -1;
+                        if (!written) {
+                            // Another server inserted the row first
+                            Metrics.increment("sql.versionConflict");
+                        }
+                    }
+                    if (!written && ++attempt > MAX_VERSIONED_UPDATE_ATTEMPTS) {
+                        throw new SQLException("Too many version conflicts writing product " + defaultProduct.alias);
+                    }
+                }
+                productDeltas.mergedSupplies[i] = DefaultEconomy.clampMarketValue(baseSupplies[i] + productDeltas.supplyDeltas[i]);
+                productDeltas.mergedDemands[i] = DefaultEconomy.clampMarketValue(baseDemands[i] + productDeltas.demandDeltas[i]);
+                productDeltas.mergedRowVersions[i] = expectedVersions[i] + 1;
+                productDeltas.written[i] = true;
+                rowsWritten++;
+                Metrics.increment("sql.versionedWrite");
+            }
+            // Close objects
+            updateStatement.close();
+            readStatement.close();
+            insertStatement.close();
+        } finally {
+            sqlConnection.close();
+        }
+        return rowsWritten;
+    }
+
+    /**
+     * Sets the parameters of a versioned {@link DefaultProduct product} update.
+     *
+     * @param updateStatement the versioned update statement.
+     * @param productDeltas   the snapshot to write.
+     * @param index           the index of the product in the snapshot.
+     * @param baseSupply      the supply the supply delta is added to.
+     * @param baseDemand      the demand the demand delta is added to.
+     * @param expectedVersion the row version the row must still have.
+     * @param writeSettings   true if the settings of the product should be written as well.
+     * @throws SQLException if a parameter could not be set.
+     */
+    private static void setVersionedUpdate(@Nonnull final PreparedStatement updateStatement,
+                                           @Nonnull final ProductDeltas productDeltas, final int index,
+                                           final long baseSupply, final long baseDemand, final long expectedVersion,
+                                           final boolean writeSettings) throws SQLException {
+        final DefaultProduct defaultProduct = productDeltas.products[index];
+        final int supply = DefaultEconomy.clampMarketValue(baseSupply + productDeltas.supplyDeltas[index]);
+        final int demand = DefaultEconomy.clampMarketValue(baseDemand + productDeltas.demandDeltas[index]);
+        if (writeSettings) {
+            updateStatement.setString(1, defaultProduct.type);
+            updateStatement.setByte(2, defaultProduct.unsafeData);
+            updateStatement.setFloat(3, defaultProduct.getModFactor());
+            updateStatement.setFloat(4, defaultProduct.getPrice());
+            updateStatement.setInt(5, supply);
+            updateStatement.setInt(6, demand);
+            updateStatement.setInt(7, defaultProduct.decayAmount);
+            updateStatement.setLong(8, defaultProduct.decayInterval);
+            updateStatement.setByte(9, defaultProduct.decayType);
+            updateStatement.setByte(10, defaultProduct.pricingModel.getType());
+            updateStatement.setFloat(11, defaultProduct.liquidity);
+            updateStatement.setString(12, defaultProduct.alias);
+            updateStatement.setLong(13, expectedVersion);
+        } else {
+            updateStatement.setInt(1, supply);
+            updateStatement.setInt(2, demand);
+            updateStatement.setString(3, defaultProduct.alias);
+            updateStatement.setLong(4, expectedVersion);
+        }
+    }
+
+    /**
+     * Inserts a {@link DefaultProduct product} which has no row yet.
+     *
+     * @param insertStatement the insert statement.
+     * @param productDeltas   the snapshot to write.
+     * @param index           the index of the product in the snapshot.
+     * @param baseSupply      the supply the supply delta is added to.
+     * @param baseDemand      the demand the demand delta is added to.
+     * @return false if another server inserted the row first.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    private static boolean insertProduct(@Nonnull final PreparedStatement insertStatement,
+                                         @Nonnull final ProductDeltas productDeltas, final int index,
+                                         final long baseSupply, final long baseDemand) throws SQLException {
+        final DefaultProduct defaultProduct = productDeltas.products[index];
+        insertStatement.setString(1, defaultProduct.alias);
+        insertStatement.setString(2, defaultProduct.type);
+        insertStatement.setByte(3, defaultProduct.unsafeData);
+        insertStatement.setFloat(4, defaultProduct.getModFactor());
+        insertStatement.setFloat(5, defaultProduct.getPrice());
+        insertStatement.setInt(6, DefaultEconomy.clampMarketValue(baseSupply + productDeltas.supplyDeltas[index]));
+        insertStatement.setInt(7, DefaultEconomy.clampMarketValue(baseDemand + productDeltas.demandDeltas[index]));
+        insertStatement.setInt(8, defaultProduct.decayAmount);
+        insertStatement.setLong(9, defaultProduct.decayInterval);
+        insertStatement.setByte(10, defaultProduct.decayType);
+        insertStatement.setByte(11, defaultProduct.pricingModel.getType());
+        insertStatement.setFloat(12, defaultProduct.liquidity);
+        try {
+            insertStatement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            // Integrity constraint violations share the sql state class 23
+            if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Attempt to add the supply and demand deltas of a {@link ProductDeltas snapshot} to the {@link DefaultProduct
+     * product} table and read back the merged values in the same transaction. Servers sharing one database only ever
+     * add their own changes, so no update is lost when they save at the same time.
+     *
+     * @param jdbcUrl       the url of the database.
+     * @param productDeltas the snapshot to write. Its merged values are filled in by this call.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void updateDefaultProductDeltas(@Nonnull final String jdbcUrl, @Nonnull final ProductDeltas productDeltas)
+            throws SQLException {
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        int rowsWritten = 0;
+        try {
+            // Connect to database
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            try {
+                sqlConnection.setAutoCommit(false);
+                final PreparedStatement updateStatement = sqlConnection.prepareStatement(INSERT_UPDATE_DEFAULT_PRODUCT_DELTA_SQL);
+                final Map<String, Integer> indexMap = new HashMap<>();
+                for (int i = 0; i < productDeltas.products.length; i++) {
+                    final DefaultProduct defaultProduct = productDeltas.products[i];
+                    indexMap.put(defaultProduct.alias, i);
+                    // Setup prepared statement
+                    updateStatement.setString(1, defaultProduct.alias);
+                    updateStatement.setString(2, defaultProduct.type);
+                    updateStatement.setByte(3, defaultProduct.unsafeData);
+                    updateStatement.setFloat(4, defaultProduct.getModFactor());
+                    updateStatement.setFloat(5, defaultProduct.getPrice());
+                    updateStatement.setInt(6, productDeltas.supplySnapshots[i]);
+                    updateStatement.setInt(7, productDeltas.demandSnapshots[i]);
+                    updateStatement.setInt(8, defaultProduct.decayAmount);
+                    updateStatement.setLong(9, defaultProduct.decayInterval);
+                    updateStatement.setByte(10, defaultProduct.decayType);
+                    updateStatement.setByte(11, defaultProduct.pricingModel.getType());
+                    updateStatement.setFloat(12, defaultProduct.liquidity);
+                    // update
+                    updateStatement.setString(13, defaultProduct.type);
+                    updateStatement.setByte(14, defaultProduct.unsafeData);
+                    updateStatement.setFloat(15, defaultProduct.getModFactor());
+                    updateStatement.setFloat(16, defaultProduct.getPrice());
+                    updateStatement.setInt(17, defaultProduct.decayAmount);
+                    updateStatement.setLong(18, defaultProduct.decayInterval);
+                    updateStatement.setByte(19, defaultProduct.decayType);
+                    updateStatement.setByte(20, defaultProduct.pricingModel.getType());
+                    updateStatement.setFloat(21, defaultProduct.liquidity);
+                    updateStatement.setInt(22, productDeltas.supplyDeltas[i]);
+                    updateStatement.setInt(23, productDeltas.demandDeltas[i]);
+                    updateStatement.addBatch();
+                }
+                rowsWritten = updateStatement.executeBatch().length;
+                updateStatement.close();
+                // Read back the values merged with the changes of every other server
+                final PreparedStatement readStatement = sqlConnection.prepareStatement(READ_DEFAULT_PRODUCT_MARKET_SQL);
+                final ResultSet result = readStatement.executeQuery();
+                while (result.next()) {
+                    final Integer index = indexMap.get(result.getString("alias").toLowerCase());
+                    if (index != null) {
+                        productDeltas.mergedSupplies[index] = result.getInt("supply");
+                        productDeltas.mergedDemands[index] = result.getInt("demand");
+                        productDeltas.mergedRowVersions[index] = result.getLong("row_version");
+                    }
+                }
+                sqlConnection.commit();
+                Arrays.fill(productDeltas.written, true);
+                // Close objects
+                result.close();
+                readStatement.close();
+            } catch (SQLException e) {
+                // A failed write must not apply part of the deltas or keep its row locks
+                sqlConnection.rollback();
+                throw e;
+            } finally {
+                sqlConnection.close();
+            }
+        } finally {
+            recordSql("sql.updateDefaultProductDeltas", startTime, event, rowsWritten);
+        }
     }
 
     /**
@@ -642,15 +1099,22 @@ public final class SqlService {
      *                      argument is supplied to this method. If a database access error occurs or the url is null.
      */
     public static void deleteItemFromSdPrices(@Nonnull final String jdbcUrl, @Nonnull final String item) throws SQLException {
-        // Connect to table
-        final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
-        // Create table if it does not exist
-        final PreparedStatement deleteStatement = sqlConnection.prepareStatement(DELETE_DEFAULT_PRODUCT_TABLE_SQL);
-        deleteStatement.setString(1, item);
-        deleteStatement.executeUpdate();
-        // Close objects
-        deleteStatement.close();
-        sqlConnection.close();
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        int rowsWritten = 0;
+        try {
+            // Connect to table
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            // Create table if it does not exist
+            final PreparedStatement deleteStatement = sqlConnection.prepareStatement(DELETE_DEFAULT_PRODUCT_TABLE_SQL);
+            deleteStatement.setString(1, item);
+            rowsWritten = deleteStatement.executeUpdate();
+            // Close objects
+            deleteStatement.close();
+            sqlConnection.close();
+        } finally {
+            recordSql("sql.deleteItemFromSdPrices", startTime, event, rowsWritten);
+        }
     }
 
     /**
@@ -663,27 +1127,24 @@ public final class SqlService {
      */
     public static void readDefaultProductTable(@Nonnull final String jdbcUrl,
                                                @Nonnull final ConcurrentMap<String, DefaultProduct> productMap) throws SQLException {
-        // Connect to database
-        final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
-        // Read the whole table
-        final ResultSet result = sqlConnection.prepareStatement(READ_DEFAULT_PRODUCT_TABLE_SQL).executeQuery();
-        // Add products to productMap if the do not exist
-        while (result.next()) {
-            final String alias = result.getString("alias").toLowerCase();
-            productMap.putIfAbsent(alias, new DefaultProduct(alias,
-                    result.getString("type"),
-                    result.getByte("unsafe_data"),
-                    result.getFloat("mod_factor"),
-                    result.getFloat("price"),
-                    result.getInt("supply"),
-                    result.getInt("demand"),
-                    result.getInt("decay_amount"),
-                    result.getLong("decay_interval"),
-                    result.getByte("decay_type")));
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        try {
+            // Connect to database
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            // Read the whole table
+            final ResultSet result = sqlConnection.prepareStatement(READ_DEFAULT_PRODUCT_TABLE_SQL).executeQuery();
+            // Add products to productMap if the do not exist
+            while (result.next()) {
+                final DefaultProduct defaultProduct = readDefaultProduct(result);
+                productMap.putIfAbsent(defaultProduct.alias, defaultProduct);
+            }
+            // Close objects
+            result.close();
+            sqlConnection.close();
+        } finally {
+            recordSql("sql.readDefaultProductTable", startTime, event, 0);
         }
-        // Close objects
-        result.close();
-        sqlConnection.close();
     }
 
     /**
@@ -694,14 +1155,155 @@ public final class SqlService {
      * @param action  the action preformed.
      * @param alias   the {@link DefaultProduct product} name.
      * @param amount  the amount set, bought, or sold.
+     * @param moneyExchanged the money in micros exchanged for the transaction.
      * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
      *                      argument is supplied to this method. If a database access error occurs or the url is null.
      */
     public static void insertDefaultTransaction(@Nonnull final String jdbcUrl, @Nonnull final String uuid, final byte action,
-                                                @Nonnull final String alias, final float amount, final double moneyExchanged) throws SQLException {
-        // Connect to database
-        final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
-        // Check to see if user exists
+                                                @Nonnull final String alias, final float amount, final long moneyExchanged) throws SQLException {
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        int rowsWritten = 0;
+        try {
+            // Connect to database
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            // Check to see if user exists
+            insertUuidIfAbsent(sqlConnection, uuid);
+            // Setup prepared statement
+            final PreparedStatement insertStatement = sqlConnection.prepareStatement(INSERT_DEFAULT_TRANSACTION_TABLE_SQL);
+            insertStatement.setString(1, uuid);
+            insertStatement.setByte(2, action);
+            insertStatement.setString(3, alias);
+            insertStatement.setFloat(4, amount);
+            insertStatement.setDouble(5, Money.toDouble(moneyExchanged));
+            // Execute query
+            insertStatement.executeUpdate();
+            rowsWritten = 1;
+            // Close objects
+            insertStatement.close();
+            insertStatement.close();
+            sqlConnection.close();
+        } finally {
+            recordSql("sql.insertDefaultTransaction", startTime, event, rowsWritten);
+        }
+    }
+
+    /**
+     * Attempt to insert a batch of {@link DefaultProduct default product} transactions into the table using a single
+     * connection.
+     *
+     * @param jdbcUrl        the url of the database.
+     * @param uuid           the uuid of the player.
+     * @param action         the action preformed.
+     * @param aliases        the {@link DefaultProduct product} names.
+     * @param amounts        the amounts set, bought, or sold.
+     * @param moneyExchanged the money in micros exchanged for each transaction.
+     * @param length         the amount of transactions to read from the arrays.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void insertDefaultTransactions(@Nonnull final String jdbcUrl, @Nonnull final String uuid, final byte action,
+                                                 @Nonnull final String[] aliases, @Nonnull final float[] amounts,
+                                                 @Nonnull final long[] moneyExchanged, final int length) throws SQLException {
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        int rowsWritten = 0;
+        try {
+            // Nothing to log
+            if (length == 0) {
+                return;
+            }
+            // Connect to database
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            sqlConnection.setAutoCommit(false);
+            // Check to see if user exists
+            insertUuidIfAbsent(sqlConnection, uuid);
+            final PreparedStatement insertStatement = sqlConnection.prepareStatement(INSERT_DEFAULT_TRANSACTION_TABLE_SQL);
+            for (int i = 0; i < length; i++) {
+                // Setup prepared statement
+                insertStatement.setString(1, uuid);
+                insertStatement.setByte(2, action);
+                insertStatement.setString(3, aliases[i]);
+                insertStatement.setFloat(4, amounts[i]);
+                insertStatement.setDouble(5, Money.toDouble(moneyExchanged[i]));
+                insertStatement.addBatch();
+            }
+            // Execute query
+            rowsWritten = insertStatement.executeBatch().length;
+            sqlConnection.commit();
+            // Close objects
+            insertStatement.close();
+            sqlConnection.close();
+        } finally {
+            recordSql("sql.insertDefaultTransactions", startTime, event, rowsWritten);
+        }
+    }
+
+    /**
+     * Inserts transactions of several players into the transaction table in a single batch.
+     *
+     * @param jdbcUrl        the url of the database.
+     * @param uuids          the uuid of the player of each transaction.
+     * @param actions        the action of each transaction.
+     * @param aliases        the name of the product of each transaction.
+     * @param amounts        the amount of products exchanged in each transaction.
+     * @param moneyExchanged the amount of money in micros exchanged in each transaction.
+     * @param length         the amount of transactions to read from the arrays.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void insertDefaultTransactions(@Nonnull final String jdbcUrl, @Nonnull final String[] uuids,
+                                                 @Nonnull final byte[] actions, @Nonnull final String[] aliases,
+                                                 @Nonnull final float[] amounts, @Nonnull final long[] moneyExchanged,
+                                                 final int length) throws SQLException {
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        int rowsWritten = 0;
+        try {
+            // Nothing to log
+            if (length == 0) {
+                return;
+            }
+            // Connect to database
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            sqlConnection.setAutoCommit(false);
+            // Check to see if the users exist, once per user
+            final Set<String> knownUuids = new HashSet<>();
+            for (int i = 0; i < length; i++) {
+                if (knownUuids.add(uuids[i])) {
+                    insertUuidIfAbsent(sqlConnection, uuids[i]);
+                }
+            }
+            final PreparedStatement insertStatement = sqlConnection.prepareStatement(INSERT_DEFAULT_TRANSACTION_TABLE_SQL);
+            for (int i = 0; i < length; i++) {
+                // Setup prepared statement
+                insertStatement.setString(1, uuids[i]);
+                insertStatement.setByte(2, actions[i]);
+                insertStatement.setString(3, aliases[i]);
+                insertStatement.setFloat(4, amounts[i]);
+                insertStatement.setDouble(5, Money.toDouble(moneyExchanged[i]));
+                insertStatement.addBatch();
+            }
+            // Execute query
+            rowsWritten = insertStatement.executeBatch().length;
+            sqlConnection.commit();
+            // Close objects
+            insertStatement.close();
+            sqlConnection.close();
+        } finally {
+            recordSql("sql.insertDefaultTransactions", startTime, event, rowsWritten);
+        }
+    }
+
+    /**
+     * Inserts a uuid into the uuid table if it does not exist yet.
+     *
+     * @param sqlConnection the open database connection.
+     * @param uuid          the uuid of the player.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method.
+     */
+    private static void insertUuidIfAbsent(@Nonnull final Connection sqlConnection, @Nonnull final String uuid) throws SQLException {
         final PreparedStatement searchUser = sqlConnection.prepareStatement("SELECT EXISTS(SELECT `id` FROM `sd_uuid` WHERE `uuid`=?);");
         searchUser.setString(1, uuid);
         final ResultSet resultSet = searchUser.executeQuery();
@@ -714,49 +1316,220 @@ public final class SqlService {
         }
         resultSet.close();
         searchUser.close();
-        // Setup prepared statement
-        final PreparedStatement insertStatement = sqlConnection.prepareStatement(INSERT_DEFAULT_TRANSACTION_TABLE_SQL);
-        insertStatement.setString(1, uuid);
-        insertStatement.setByte(2, action);
-        insertStatement.setString(3, alias);
-        insertStatement.setFloat(4, amount);
-        insertStatement.setDouble(5, moneyExchanged);
-        // Execute query
-        insertStatement.executeUpdate();
+    }
+
+    /**
+     * Attempt to read one {@link DefaultProduct product} from the database.
+     *
+     * @param jdbcUrl the url of the database.
+     * @param alias   the alias of the {@link DefaultProduct product}.
+     * @return the stored {@link DefaultProduct product} or null if it does not exist.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    @Nullable
+    public static DefaultProduct readDefaultProduct(@Nonnull final String jdbcUrl, @Nonnull final String alias) throws SQLException {
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        try {
+            // Connect to database
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            final PreparedStatement readStatement = sqlConnection.prepareStatement(READ_DEFAULT_PRODUCT_SQL);
+            readStatement.setString(1, alias);
+            final ResultSet result = readStatement.executeQuery();
+            final DefaultProduct defaultProduct = result.next() ? readDefaultProduct(result) : null;
+            // Close objects
+            result.close();
+            readStatement.close();
+            sqlConnection.close();
+            return defaultProduct;
+        } finally {
+            recordSql("sql.readDefaultProduct", startTime, event, 0);
+        }
+    }
+
+    /**
+     * Creates a {@link DefaultProduct product} from the current row of a product table result.
+     *
+     * @param result the result positioned on a product row.
+     * @return the {@link DefaultProduct product} of the row.
+     *
+     * @throws SQLException if a column is missing or the result set is closed.
+     */
+    private static DefaultProduct readDefaultProduct(@Nonnull final ResultSet result) throws SQLException {
+        final DefaultProduct defaultProduct = new DefaultProduct(result.getString("alias").toLowerCase(),
+                result.getString("type"),
+                result.getByte("unsafe_data"),
+                result.getFloat("mod_factor"),
+                result.getFloat("price"),
+                result.getInt("supply"),
+                result.getInt("demand"),
+                result.getInt("decay_amount"),
+                result.getLong("decay_interval"),
+                result.getByte("decay_type"));
+        defaultProduct.rowVersion = result.getLong("row_version");
+        defaultProduct.liquidity = result.getFloat("liquidity");
+        // Products of a model which is not registered on this server fall back to the default model
+        final PricingModel pricingModel = Economies.getPricingModel(result.getByte("pricing_model"));
+        if (pricingModel != null) {
+            defaultProduct.pricingModel = pricingModel;
+        }
+        return defaultProduct;
+    }
+
+    /**
+     * Attempts to create the product change feed table.
+     *
+     * @param jdbcUrl the url of the database.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static void createProductChangeTable(@Nonnull final String jdbcUrl) throws SQLException {
+        // Connect to table
+        final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+        // Create table if it does not exist
+        sqlConnection.prepareStatement(PRODUCT_CHANGE_TABLE_SQL).execute();
         // Close objects
-        insertStatement.close();
-        insertStatement.close();
         sqlConnection.close();
     }
 
     /**
-     * Searches for constants in the constant table.
+     * Attempts to append a {@link DefaultProduct product} change to the change feed table.
      *
      * @param jdbcUrl the url of the database.
-     * @param keyList the list of keys to search for.
+     * @param nodeId  the id of the server which made the change.
+     * @param action  the kind of change.
+     * @param alias   the alias of the changed {@link DefaultProduct product}.
      * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
      *                      argument is supplied to this method. If a database access error occurs or the url is null.
      */
-    public static Map<String, String> searchConstants(@Nonnull final String jdbcUrl, @Nonnull final List<String> keyList) throws SQLException {
+    public static void insertProductChange(@Nonnull final String jdbcUrl, @Nonnull final String nodeId, final byte action,
+                                           @Nonnull final String alias) throws SQLException {
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        int rowsWritten = 0;
+        try {
+            // Connect to database
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            final PreparedStatement insertStatement = sqlConnection.prepareStatement(INSERT_PRODUCT_CHANGE_SQL);
+            insertStatement.setString(1, nodeId);
+            insertStatement.setByte(2, action);
+            insertStatement.setString(3, alias);
+            rowsWritten = insertStatement.executeUpdate();
+            // Close objects
+            insertStatement.close();
+            sqlConnection.close();
+        } finally {
+            recordSql("sql.insertProductChange", startTime, event, rowsWritten);
+        }
+    }
+
+    /**
+     * Attempts to read the changes after a sequence number from the change feed table.
+     *
+     * @param jdbcUrl       the url of the database.
+     * @param afterSequence the sequence number of the last change already read.
+     * @param limit         the maximum amount of changes to read.
+     * @return the changes in sequence order.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static List<ProductChange> readProductChanges(@Nonnull final String jdbcUrl, final long afterSequence,
+                                                         final int limit) throws SQLException {
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        try {
+            // Connect to database
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            final PreparedStatement readStatement = sqlConnection.prepareStatement(READ_PRODUCT_CHANGES_SQL);
+            readStatement.setLong(1, afterSequence);
+            readStatement.setInt(2, limit);
+            final ResultSet result = readStatement.executeQuery();
+            final List<ProductChange> changes = new ArrayList<>();
+            while (result.next()) {
+                changes.add(new ProductChange(result.getLong("seq"), result.getString("node_id"),
+                        result.getByte("action"), result.getString("alias").toLowerCase()));
+            }
+            // Close objects
+            result.close();
+            readStatement.close();
+            sqlConnection.close();
+            return changes;
+        } finally {
+            recordSql("sql.readProductChanges", startTime, event, 0);
+        }
+    }
+
+    /**
+     * Attempts to read the sequence number of the last change in the change feed table.
+     *
+     * @param jdbcUrl the url of the database.
+     * @return the last sequence number or 0 if the feed is empty.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static long readLastProductChange(@Nonnull final String jdbcUrl) throws SQLException {
         // Connect to database
         final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
-        final StringBuilder builder = new StringBuilder(SEARCH_KEYS_IN_CONSTANTS);
-        builder.append('(');
-        keyList.forEach(key->builder.append('\'').append(key).append('\'').append(','));
-        builder.deleteCharAt(builder.length() - 1);
-        builder.append(");");
-        // Setup prepared statement
-        final PreparedStatement searchStatement = sqlConnection.prepareStatement(builder.toString());
-        // Execute query
-        final ResultSet resultSet = searchStatement.executeQuery();
-        final Map<String, String> returnMap = new HashMap<>();
-        while (resultSet.next()) {
-            returnMap.put(resultSet.getString("kkey"), resultSet.getString("value"));
-        }
+        final ResultSet result = sqlConnection.prepareStatement(READ_LAST_PRODUCT_CHANGE_SQL).executeQuery();
+        final long lastSequence = result.next() ? result.getLong(1) : 0;
         // Close objects
-        resultSet.close();
-        searchStatement.close();
+        result.close();
         sqlConnection.close();
-        return returnMap;
+        return lastSequence;
+    }
+
+    /**
+     * Records the latency metric and flight recorder event of a database call.
+     *
+     * @param name        the name of the database call.
+     * @param startTime   the start time from {@link System#nanoTime()}.
+     * @param event       the flight recorder event returned by {@link EconomyEvents#beginSql()}.
+     * @param rowsWritten the amount of rows written by the call.
+     */
+    private static void recordSql(@Nonnull final String name, final long startTime, @Nullable final Object event,
+                                  final int rowsWritten) {
+        Metrics.record(name, startTime);
+        EconomyEvents.commitSql(event, name, rowsWritten);
+    }
+
+    /**
+     * Searches for constants in the constant table.
+     *
+     * @param jdbcUrl the url of the database.
+     * @param keyList the list of keys to search for.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public static Map<String, String> searchConstants(@Nonnull final String jdbcUrl, @Nonnull final List<String> keyList) throws SQLException {
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSql();
+        try {
+            // Connect to database
+            final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+            final StringBuilder builder = new StringBuilder(SEARCH_KEYS_IN_CONSTANTS);
+            builder.append('(');
+            keyList.forEach(key->builder.append('\'').append(key).append('\'').append(','));
+            builder.deleteCharAt(builder.length() - 1);
+            builder.append(");");
+            // Setup prepared statement
+            final PreparedStatement searchStatement = sqlConnection.prepareStatement(builder.toString());
+            // Execute query
+            final ResultSet resultSet = searchStatement.executeQuery();
+            final Map<String, String> returnMap = new HashMap<>();
+            while (resultSet.next()) {
+                returnMap.put(resultSet.getString("kkey"), resultSet.getString("value"));
+            }
+            // Close objects
+            resultSet.close();
+            searchStatement.close();
+            sqlConnection.close();
+            return returnMap;
+        } finally {
+            recordSql("sql.searchConstants", startTime, event, 0);
+        }
     }
 }
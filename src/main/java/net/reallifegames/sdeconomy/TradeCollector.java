@@ -0,0 +1,499 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import net.reallifegames.sdeconomy.jfr.EconomyEvents;
+import net.reallifegames.sdeconomy.metrics.Metrics;
+import net.reallifegames.sdeconomy.pipeline.MarketPipeline;
+
+import javax.annotation.Nonnull;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Collects the buy and sell intents made during a server tick and settles them together at the end of the tick. The
+ * intents of each {@link DefaultProduct product} are applied in arrival order in one pass, all settled trades are
+ * logged in a single journal batch and every intent is then notified in a single pass. Only the thread which trades may
+ * use a collector.
+ *
+ * @author Tyler Bucher
+ */
+public class TradeCollector {
+
+    /**
+     * The trade was applied to the market and logged.
+     */
+    public static final byte SETTLED = 0;
+
+    /**
+     * The trade cost more than its limit or the market could not make it when it was settled, the market was not
+     * changed.
+     */
+    public static final byte REJECTED = 1;
+
+    /**
+     * The trade could not be logged and its change to the market was reverted.
+     */
+    public static final byte FAILED = 2;
+
+    /**
+     * The initial amount of intents the collector can hold before growing.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Receives the outcome of a collected trade.
+     */
+    @FunctionalInterface
+    public interface Settlement {
+
+        /**
+         * Called once the trade was settled.
+         *
+         * @param status {@link #SETTLED}, {@link #REJECTED} or {@link #FAILED}.
+         * @param money  the money in micros to give to or take from the player, 0 unless the trade was settled.
+         * @return false if the money of a settled trade could not be given to or taken from the player, in which case
+         * the trade is reverted.
+         */
+        boolean settled(byte status, long money);
+    }
+
+    /**
+     * The last intent of every {@link DefaultProduct product} collected this tick.
+     */
+    @Nonnull
+    private final IdentityHashMap<DefaultProduct, Integer> lastIntents = new IdentityHashMap<>();
+
+    /**
+     * The {@link DefaultProduct product} of each intent.
+     */
+    @Nonnull
+    private DefaultProduct[] products = new DefaultProduct[INITIAL_CAPACITY];
+
+    /**
+     * The {@link SqlService#BUY_ACTION} or {@link SqlService#SELL_ACTION} of each intent.
+     */
+    @Nonnull
+    private byte[] actions = new byte[INITIAL_CAPACITY];
+
+    /**
+     * The uuid of the player of each intent.
+     */
+    @Nonnull
+    private String[] uuids = new String[INITIAL_CAPACITY];
+
+    /**
+     * The amount traded by each intent.
+     */
+    @Nonnull
+    private int[] amounts = new int[INITIAL_CAPACITY];
+
+    /**
+     * The most money in micros each buy intent may cost.
+     */
+    @Nonnull
+    private long[] limits = new long[INITIAL_CAPACITY];
+
+    /**
+     * The {@link Settlement} of each intent.
+     */
+    @Nonnull
+    private Settlement[] settlements = new Settlement[INITIAL_CAPACITY];
+
+    /**
+     * The next intent of the same {@link DefaultProduct product} or -1.
+     */
+    @Nonnull
+    private int[] nextIntents = new int[INITIAL_CAPACITY];
+
+    /**
+     * States if an intent is the first of its {@link DefaultProduct product}.
+     */
+    @Nonnull
+    private boolean[] firstIntents = new boolean[INITIAL_CAPACITY];
+
+    /**
+     * The supply change of the whole product, stored at its first intent.
+     */
+    @Nonnull
+    private int[] supplyChanges = new int[INITIAL_CAPACITY];
+
+    /**
+     * The demand change of the whole product, stored at its first intent.
+     */
+    @Nonnull
+    private int[] demandChanges = new int[INITIAL_CAPACITY];
+
+    /**
+     * The supply change of each intent once settled.
+     */
+    @Nonnull
+    private int[] intentSupplyChanges = new int[INITIAL_CAPACITY];
+
+    /**
+     * The demand change of each intent once settled.
+     */
+    @Nonnull
+    private int[] intentDemandChanges = new int[INITIAL_CAPACITY];
+
+    /**
+     * The status of each intent once settled.
+     */
+    @Nonnull
+    private byte[] statuses = new byte[INITIAL_CAPACITY];
+
+    /**
+     * The money in micros exchanged by each intent once settled.
+     */
+    @Nonnull
+    private long[] money = new long[INITIAL_CAPACITY];
+
+    /**
+     * The trade event of each intent.
+     */
+    @Nonnull
+    private Object[] events = new Object[INITIAL_CAPACITY];
+
+    /**
+     * The journal uuids of the settled trades.
+     */
+    @Nonnull
+    private String[] journalUuids = new String[INITIAL_CAPACITY];
+
+    /**
+     * The journal actions of the settled trades.
+     */
+    @Nonnull
+    private byte[] journalActions = new byte[INITIAL_CAPACITY];
+
+    /**
+     * The journal aliases of the settled trades.
+     */
+    @Nonnull
+    private String[] journalAliases = new String[INITIAL_CAPACITY];
+
+    /**
+     * The journal amounts of the settled trades.
+     */
+    @Nonnull
+    private float[] journalAmounts = new float[INITIAL_CAPACITY];
+
+    /**
+     * The journal money of the settled trades.
+     */
+    @Nonnull
+    private long[] journalMoney = new long[INITIAL_CAPACITY];
+
+    /**
+     * The money in micros each player may still spend while the intents are settled.
+     */
+    @Nonnull
+    private final HashMap<String, Long> remainingLimits = new HashMap<>();
+
+    /**
+     * The amount of intents collected this tick.
+     */
+    private int size;
+
+    /**
+     * Collects a sell intent.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to sell.
+     * @param uuid           the uuid of the player selling.
+     * @param amount         the amount sold.
+     * @param settlement     receives the money to give to the player.
+     */
+    public void sell(@Nonnull final DefaultProduct defaultProduct, @Nonnull final String uuid, final int amount,
+                     @Nonnull final Settlement settlement) {
+        add(defaultProduct, SqlService.SELL_ACTION, uuid, amount, Money.INFINITE, settlement);
+    }
+
+    /**
+     * Collects a buy intent. The buy is rejected if the market moved so far during the tick that it costs more than the
+     * limit. The buys of one player share the smallest of their limits, so every settled buy lowers the limit of the
+     * player's later buys by its cost.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} to buy.
+     * @param uuid           the uuid of the player buying.
+     * @param amount         the amount bought.
+     * @param limit          the most money in micros the buy may cost.
+     * @param settlement     receives the money to take from the player.
+     */
+    public void buy(@Nonnull final DefaultProduct defaultProduct, @Nonnull final String uuid, final int amount,
+                    final long limit, @Nonnull final Settlement settlement) {
+        add(defaultProduct, SqlService.BUY_ACTION, uuid, amount, limit, settlement);
+    }
+
+    /**
+     * @return the amount of intents waiting to be settled.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Settles every collected intent. The market is changed per {@link DefaultProduct product} in arrival order, the
+     * settled trades are logged in one batch and every {@link Settlement} is notified afterwards. If the journal can not
+     * be written the change of every product is reverted and the trades fail. Settled trades the player could not pay
+     * for or be paid for are reverted one by one. A {@link Settlement} may not collect new intents.
+     *
+     * @param jdbcUrl the url of the database.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    public void settle(@Nonnull final String jdbcUrl) throws SQLException {
+        if (size == 0) {
+            return;
+        }
+        final long startTime = System.nanoTime();
+        final int length = size;
+        try {
+            int journalLength = 0;
+            for (int i = 0; i < length; i++) {
+                if (firstIntents[i]) {
+                    journalLength = applyProduct(i, journalLength);
+                }
+            }
+            final MarketPipeline pipeline = DefaultEconomy.getMarketPipeline();
+            if (pipeline != null) {
+                // The journal stage retries until the rows are written, nothing has to be reverted
+                for (int i = 0; i < length; i++) {
+                    if (statuses[i] == SETTLED) {
+                        pipeline.publish(actions[i], products[i], uuids[i], amounts[i], money[i]);
+                    }
+                }
+            } else {
+                try {
+                    SqlService.insertDefaultTransactions(jdbcUrl, journalUuids, journalActions, journalAliases,
+                            journalAmounts, journalMoney, journalLength);
+                } catch (SQLException e) {
+                    revert(length);
+                    throw e;
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                if (statuses[i] == SETTLED) {
+                    EconomyEvents.commitTrade(events[i], actions[i] == SqlService.BUY_ACTION ? "buy" : "sell",
+                            products[i].alias, amounts[i], money[i]);
+                }
+            }
+            Metrics.counter("trade.batched").add(journalLength);
+        } finally {
+            // Notify every intent even if the journal failed
+            for (int i = 0; i < length; i++) {
+                if (!settlements[i].settled(statuses[i], money[i]) && statuses[i] == SETTLED) {
+                    statuses[i] = FAILED;
+                }
+            }
+            try {
+                revertUnpaid(jdbcUrl, length);
+            } finally {
+                clear(length);
+                Metrics.record("trade.batch", startTime);
+            }
+        }
+    }
+
+    /**
+     * Reverts the settled trades which failed after their {@link Settlement} was notified.
+     *
+     * @param jdbcUrl the url of the database.
+     * @param length  the amount of intents collected.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or an
+     *                      argument is supplied to this method. If a database access error occurs or the url is null.
+     */
+    private void revertUnpaid(@Nonnull final String jdbcUrl, final int length) throws SQLException {
+        for (int i = 0; i < length; i++) {
+            // Only settled trades have money, failed batches were already reverted
+            if (statuses[i] == FAILED && money[i] != 0) {
+                Metrics.increment("trade.unpaid");
+                DefaultEconomy.revertTrade(products[i], jdbcUrl, uuids[i], actions[i], amounts[i], money[i],
+                        intentSupplyChanges[i], intentDemandChanges[i]);
+            }
+        }
+    }
+
+    /**
+     * Applies every intent of one {@link DefaultProduct product} to the market and adds the settled ones to the
+     * journal.
+     *
+     * @param first         the first intent of the product.
+     * @param journalLength the amount of trades already in the journal.
+     * @return the new amount of trades in the journal.
+     */
+    private int applyProduct(final int first, int journalLength) {
+        final DefaultProduct defaultProduct = products[first];
+        final MarketRegion region = DefaultEconomy.beginRegionUpdate(defaultProduct);
+        try {
+            final int supply = defaultProduct.supply;
+            final int demand = defaultProduct.demand;
+            for (int i = first; i != -1; i = nextIntents[i]) {
+                events[i] = EconomyEvents.beginTrade();
+                final int intentSupply = defaultProduct.supply;
+                final int intentDemand = defaultProduct.demand;
+                if (actions[i] == SqlService.SELL_ACTION) {
+                    // A sell the market can not pay for leaves the product unchanged
+                    final long returns = DefaultEconomy.sellLocked(defaultProduct, amounts[i]);
+                    if (returns == Money.INFINITE) {
+                        statuses[i] = REJECTED;
+                        Metrics.increment("trade.rejected");
+                        continue;
+                    }
+                    money[i] = returns;
+                } else {
+                    // A buy the market can not fill is rejected whatever its limit
+                    final long cost = DefaultEconomy.checkBuyCost(defaultProduct, amounts[i]);
+                    final Long remainingLimit = remainingLimits.get(uuids[i]);
+                    final long limit = remainingLimit == null ? limits[i] : Math.min(limits[i], remainingLimit);
+                    if (cost == Money.INFINITE || cost > limit) {
+                        statuses[i] = REJECTED;
+                        Metrics.increment("trade.rejected");
+                        continue;
+                    }
+                    money[i] = DefaultEconomy.buyLocked(defaultProduct, amounts[i]);
+                    remainingLimits.put(uuids[i], limit - money[i]);
+                }
+                intentSupplyChanges[i] = defaultProduct.supply - intentSupply;
+                intentDemandChanges[i] = defaultProduct.demand - intentDemand;
+                statuses[i] = SETTLED;
+                journalUuids[journalLength] = uuids[i];
+                journalActions[journalLength] = actions[i];
+                journalAliases[journalLength] = defaultProduct.alias;
+                journalAmounts[journalLength] = amounts[i];
+                journalMoney[journalLength] = money[i];
+                journalLength++;
+            }
+            supplyChanges[first] = defaultProduct.supply - supply;
+            demandChanges[first] = defaultProduct.demand - demand;
+        } finally {
+            DefaultEconomy.endRegionUpdate(region, defaultProduct);
+        }
+        return journalLength;
+    }
+
+    /**
+     * Reverts the market change of every {@link DefaultProduct product} and fails its settled trades. Only the change
+     * of this batch is reverted so trades made by other servers in the meantime are kept.
+     *
+     * @param length the amount of intents collected.
+     */
+    private void revert(final int length) {
+        for (int i = 0; i < length; i++) {
+            if (firstIntents[i]) {
+                final DefaultProduct defaultProduct = products[i];
+                final MarketRegion region = DefaultEconomy.beginRegionUpdate(defaultProduct);
+                try {
+                    defaultProduct.supply = DefaultEconomy.clampMarketValue((long) defaultProduct.supply - supplyChanges[i]);
+                    defaultProduct.demand = DefaultEconomy.clampMarketValue((long) defaultProduct.demand - demandChanges[i]);
+                    defaultProduct.version++;
+                } finally {
+                    DefaultEconomy.endRegionUpdate(region, defaultProduct);
+                }
+            }
+            if (statuses[i] == SETTLED) {
+                statuses[i] = FAILED;
+                money[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Adds an intent to this collector.
+     *
+     * @param defaultProduct the {@link DefaultProduct product} traded.
+     * @param action         {@link SqlService#BUY_ACTION} or {@link SqlService#SELL_ACTION}.
+     * @param uuid           the uuid of the player trading.
+     * @param amount         the amount traded.
+     * @param limit          the most money in micros the trade may cost.
+     * @param settlement     receives the outcome of the trade.
+     */
+    private void add(@Nonnull final DefaultProduct defaultProduct, final byte action, @Nonnull final String uuid,
+                     final int amount, final long limit, @Nonnull final Settlement settlement) {
+        if (size == products.length) {
+            grow();
+        }
+        final int index = size++;
+        products[index] = defaultProduct;
+        actions[index] = action;
+        uuids[index] = uuid;
+        amounts[index] = amount;
+        limits[index] = limit;
+        settlements[index] = settlement;
+        statuses[index] = FAILED;
+        nextIntents[index] = -1;
+        // Chain the intent behind the last one of the same product
+        final Integer last = lastIntents.put(defaultProduct, index);
+        firstIntents[index] = last == null;
+        if (last != null) {
+            nextIntents[last] = index;
+        }
+    }
+
+    /**
+     * Doubles the capacity of this collector. The arrays are kept between ticks so a steady load allocates nothing.
+     */
+    private void grow() {
+        final int capacity = products.length * 2;
+        products = Arrays.copyOf(products, capacity);
+        actions = Arrays.copyOf(actions, capacity);
+        uuids = Arrays.copyOf(uuids, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        limits = Arrays.copyOf(limits, capacity);
+        settlements = Arrays.copyOf(settlements, capacity);
+        nextIntents = Arrays.copyOf(nextIntents, capacity);
+        firstIntents = Arrays.copyOf(firstIntents, capacity);
+        supplyChanges = Arrays.copyOf(supplyChanges, capacity);
+        demandChanges = Arrays.copyOf(demandChanges, capacity);
+        intentSupplyChanges = Arrays.copyOf(intentSupplyChanges, capacity);
+        intentDemandChanges = Arrays.copyOf(intentDemandChanges, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        money = Arrays.copyOf(money, capacity);
+        events = Arrays.copyOf(events, capacity);
+        journalUuids = Arrays.copyOf(journalUuids, capacity);
+        journalActions = Arrays.copyOf(journalActions, capacity);
+        journalAliases = Arrays.copyOf(journalAliases, capacity);
+        journalAmounts = Arrays.copyOf(journalAmounts, capacity);
+        journalMoney = Arrays.copyOf(journalMoney, capacity);
+    }
+
+    /**
+     * Removes the settled intents so their objects can be collected.
+     *
+     * @param length the amount of intents collected.
+     */
+    private void clear(final int length) {
+        Arrays.fill(products, 0, length, null);
+        Arrays.fill(uuids, 0, length, null);
+        Arrays.fill(settlements, 0, length, null);
+        Arrays.fill(events, 0, length, null);
+        Arrays.fill(journalUuids, 0, length, null);
+        Arrays.fill(journalAliases, 0, length, null);
+        Arrays.fill(money, 0, length, 0);
+        lastIntents.clear();
+        remainingLimits.clear();
+        size = 0;
+    }
+}
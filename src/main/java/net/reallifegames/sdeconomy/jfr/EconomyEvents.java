@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.jfr;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Emits Java Flight Recorder events for trades, database calls, saves and decay runs. Every begin function returns null
+ * when the flight recorder api or the jfr classes are missing from the running jvm or the event is not being
+ * recorded, in which case the matching commit function does nothing. The recorder is loaded by name and the returned
+ * events are typed as {@link Object}, so the main classes never reference the jdk.jfr api.
+ *
+ * @author Tyler Bucher
+ */
+public final class EconomyEvents {
+
+    /**
+     * The name of the flight recorder implementation in the jfr source set.
+     */
+    private static final String RECORDER_CLASS = "net.reallifegames.sdeconomy.jfr.JfrEvents";
+
+    /**
+     * The flight recorder or null if it is not available in the running jvm.
+     */
+    @Nullable
+    private static final EventRecorder RECORDER = loadRecorder();
+
+    /**
+     * Loads the flight recorder implementation if the jdk.jfr api and the jfr classes are available.
+     *
+     * @return the flight recorder or null.
+     */
+    @Nullable
+    private static EventRecorder loadRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return Class.forName(RECORDER_CLASS).asSubclass(EventRecorder.class).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return a started trade event or null if the event is not being recorded.
+     */
+    @Nullable
+    public static Object beginTrade() {
+        return RECORDER != null ? RECORDER.beginTrade() : null;
+    }
+
+    /**
+     * Commits a trade event.
+     *
+     * @param event          the event returned by {@link #beginTrade()}.
+     * @param action         the action preformed.
+     * @param alias          the name of the product.
+     * @param amount         the amount bought or sold.
+     * @param moneyExchanged the money in micros exchanged for the items.
+     */
+    public static void commitTrade(@Nullable final Object event, @Nonnull final String action, @Nonnull final String alias,
+                                   final int amount, final long moneyExchanged) {
+        if (event != null && RECORDER != null) {
+            RECORDER.commitTrade(event, action, alias, amount, moneyExchanged);
+        }
+    }
+
+    /**
+     * @return a started database event or null if the event is not being recorded.
+     */
+    @Nullable
+    public static Object beginSql() {
+        return RECORDER != null ? RECORDER.beginSql() : null;
+    }
+
+    /**
+     * Commits a database event.
+     *
+     * @param event       the event returned by {@link #beginSql()}.
+     * @param operation   the name of the database operation.
+     * @param rowsWritten the amount of rows written by the operation.
+     */
+    public static void commitSql(@Nullable final Object event, @Nonnull final String operation, final int rowsWritten) {
+        if (event != null && RECORDER != null) {
+            RECORDER.commitSql(event, operation, rowsWritten);
+        }
+    }
+
+    /**
+     * @return a started save event or null if the event is not being recorded.
+     */
+    @Nullable
+    public static Object beginSave() {
+        return RECORDER != null ? RECORDER.beginSave() : null;
+    }
+
+    /**
+     * Commits a save event.
+     *
+     * @param event    the event returned by {@link #beginSave()}.
+     * @param products the amount of products saved.
+     */
+    public static void commitSave(@Nullable final Object event, final int products) {
+        if (event != null && RECORDER != null) {
+            RECORDER.commitSave(event, products);
+        }
+    }
+
+    /**
+     * @return a started decay event or null if the event is not being recorded.
+     */
+    @Nullable
+    public static Object beginDecay() {
+        return RECORDER != null ? RECORDER.beginDecay() : null;
+    }
+
+    /**
+     * Commits a decay event.
+     *
+     * @param event         the event returned by {@link #beginDecay()}.
+     * @param products      the amount of products in the decay group.
+     * @param demandRemoved the total demand removed from all products.
+     * @param rowsWritten   the amount of transaction rows written.
+     */
+    public static void commitDecay(@Nullable final Object event, final int products, final long demandRemoved,
+                                   final int rowsWritten) {
+        if (event != null && RECORDER != null) {
+            RECORDER.commitDecay(event, products, demandRemoved, rowsWritten);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.jfr;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Records the events emitted through {@link EconomyEvents}. The flight recorder implementation lives in its own source
+ * set so the main classes compile and run without the jdk.jfr api.
+ *
+ * @author Tyler Bucher
+ */
+public interface EventRecorder {
+
+    /**
+     * @return a started trade event or null if the event is not being recorded.
+     */
+    @Nullable
+    Object beginTrade();
+
+    /**
+     * Commits a trade event.
+     *
+     * @param event          the event returned by {@link #beginTrade()}.
+     * @param action         the action preformed.
+     * @param alias          the name of the product.
+     * @param amount         the amount bought or sold.
+     * @param moneyExchanged the money in micros exchanged for the items.
+     */
+    void commitTrade(@Nonnull Object event, @Nonnull String action, @Nonnull String alias, int amount, long moneyExchanged);
+
+    /**
+     * @return a started database event or null if the event is not being recorded.
+     */
+    @Nullable
+    Object beginSql();
+
+    /**
+     * Commits a database event.
+     *
+     * @param event       the event returned by {@link #beginSql()}.
+     * @param operation   the name of the database operation.
+     * @param rowsWritten the amount of rows written by the operation.
+     */
+    void commitSql(@Nonnull Object event, @Nonnull String operation, int rowsWritten);
+
+    /**
+     * @return a started save event or null if the event is not being recorded.
+     */
+    @Nullable
+    Object beginSave();
+
+    /**
+     * Commits a save event.
+     *
+     * @param event    the event returned by {@link #beginSave()}.
+     * @param products the amount of products saved.
+     */
+    void commitSave(@Nonnull Object event, int products);
+
+    /**
+     * @return a started decay event or null if the event is not being recorded.
+     */
+    @Nullable
+    Object beginDecay();
+
+    /**
+     * Commits a decay event.
+     *
+     * @param event         the event returned by {@link #beginDecay()}.
+     * @param products      the amount of products in the decay group.
+     * @param demandRemoved the total demand removed from all products.
+     * @param rowsWritten   the amount of transaction rows written.
+     */
+    void commitDecay(@Nonnull Object event, int products, long demandRemoved, int rowsWritten);
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free log-linear latency histogram. Every power of two is split into {@link #SUB_BUCKETS} linear buckets which
+ * keeps the relative error of any percentile below 12.5% while recording without allocating.
+ *
+ * @author Tyler Bucher
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The amount of bits used to split a power of two into linear buckets.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * The amount of linear buckets in every power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The total amount of buckets needed to cover every positive long.
+     */
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    /**
+     * The amount of samples in each bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * The amount of recorded samples.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The sum of all recorded samples in nanoseconds.
+     */
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * The largest recorded sample in nanoseconds.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency sample.
+     *
+     * @param nanos the latency in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final long value = nanos < 0 ? 0 : nanos;
+        buckets.incrementAndGet(getBucketIndex(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @param value the value to get a bucket for.
+     * @return the index of the bucket which holds the value.
+     */
+    private static int getBucketIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param index the index of a bucket.
+     * @return the smallest value which is stored in the bucket.
+     */
+    private static long getBucketLowerBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Gets the latency at a given percentile.
+     *
+     * @param percentile the percentile between 0 and 100.
+     * @return the lower bound in nanoseconds of the bucket which holds the percentile or 0 if nothing was recorded.
+     */
+    public long getPercentile(final double percentile) {
+        final long samples = count.get();
+        if (samples == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * samples));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(getBucketLowerBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return the amount of recorded samples.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of all recorded samples in nanoseconds.
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * @return the largest recorded sample in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Removes all recorded samples.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
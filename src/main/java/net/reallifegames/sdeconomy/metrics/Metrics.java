@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.metrics;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the named {@link LatencyHistogram latency histograms} and counters of the economy.
+ *
+ * @author Tyler Bucher
+ */
+public final class Metrics {
+
+    /**
+     * The list of {@link LatencyHistogram latency histograms} by name.
+     */
+    @Nonnull
+    private static final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * The list of counters by name.
+     */
+    @Nonnull
+    private static final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Gets a {@link LatencyHistogram} by name. If one does not exist yet it is created.
+     *
+     * @param name the name of the histogram.
+     * @return the found or created {@link LatencyHistogram}.
+     */
+    @Nonnull
+    public static LatencyHistogram histogram(@Nonnull final String name) {
+        // Avoid locking the map when the histogram already exists
+        final LatencyHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, k->new LatencyHistogram());
+    }
+
+    /**
+     * Gets a counter by name. If one does not exist yet it is created.
+     *
+     * @param name the name of the counter.
+     * @return the found or created counter.
+     */
+    @Nonnull
+    public static LongAdder counter(@Nonnull final String name) {
+        final LongAdder counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, k->new LongAdder());
+    }
+
+    /**
+     * Records the time since a start time in the named {@link LatencyHistogram}.
+     *
+     * @param name      the name of the histogram.
+     * @param startTime the start time from {@link System#nanoTime()}.
+     */
+    public static void record(@Nonnull final String name, final long startTime) {
+        histogram(name).record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Increments the named counter by one.
+     *
+     * @param name the name of the counter.
+     */
+    public static void increment(@Nonnull final String name) {
+        counter(name).increment();
+    }
+
+    /**
+     * Removes all recorded samples and counts.
+     */
+    public static void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+        counters.values().forEach(LongAdder::reset);
+    }
+
+    /**
+     * @return a human readable line for every histogram and counter sorted by name.
+     */
+    @Nonnull
+    public static List<String> report() {
+        final List<String> lines = new ArrayList<>();
+        for (final Map.Entry<String, LatencyHistogram> kvp : new TreeMap<>(histograms).entrySet()) {
+            final LatencyHistogram histogram = kvp.getValue();
+            final long count = histogram.getCount();
+            lines.add(String.format("%s count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus", kvp.getKey(), count,
+                    count == 0 ? 0 : histogram.getTotal() / (double) count / 1000.0, histogram.getPercentile(50) / 1000.0,
+                    histogram.getPercentile(99) / 1000.0, histogram.getMax() / 1000.0));
+        }
+        for (final Map.Entry<String, LongAdder> kvp : new TreeMap<>(counters).entrySet()) {
+            lines.add(kvp.getKey() + " count=" + kvp.getValue().sum());
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.pipeline;
+
+import net.reallifegames.sdeconomy.SqlService;
+
+import javax.annotation.Nonnull;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the transaction journal from the {@link MarketEvent events} of the pipeline. Events are collected into
+ * batches which are written when full or when no further event is available. A batch which can not be written is
+ * retried until it succeeds or the pipeline is closed, which holds back the producer once the ring is full instead of
+ * losing journal rows.
+ *
+ * @author Tyler Bucher
+ */
+public class JournalStage implements MarketEventHandler {
+
+    /**
+     * How long to wait before retrying a failed batch.
+     */
+    private static final long RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * The logger write errors are reported to.
+     */
+    @Nonnull
+    private final Logger logger;
+
+    /**
+     * The url of the database.
+     */
+    @Nonnull
+    private final String jdbcUrl;
+
+    /**
+     * The uuids of the batch.
+     */
+    @Nonnull
+    private final String[] uuids;
+
+    /**
+     * The actions of the batch.
+     */
+    @Nonnull
+    private final byte[] actions;
+
+    /**
+     * The aliases of the batch.
+     */
+    @Nonnull
+    private final String[] aliases;
+
+    /**
+     * The amounts of the batch.
+     */
+    @Nonnull
+    private final float[] amounts;
+
+    /**
+     * The money in micros exchanged of the batch.
+     */
+    @Nonnull
+    private final long[] money;
+
+    /**
+     * The amount of rows in the batch.
+     */
+    private int length;
+
+    /**
+     * Creates a new journal stage.
+     *
+     * @param logger    the logger write errors are reported to.
+     * @param jdbcUrl   the url of the database.
+     * @param batchSize the maximum amount of rows written at once.
+     */
+    public JournalStage(@Nonnull final Logger logger, @Nonnull final String jdbcUrl, final int batchSize) {
+        this.logger = logger;
+        this.jdbcUrl = jdbcUrl;
+        this.uuids = new String[batchSize];
+        this.actions = new byte[batchSize];
+        this.aliases = new String[batchSize];
+        this.amounts = new float[batchSize];
+        this.money = new long[batchSize];
+    }
+
+    /**
+     * Adds an event to the batch and writes the batch if needed.
+     *
+     * @param event      the event, only valid until this call returns.
+     * @param sequence   the sequence number of the event.
+     * @param endOfBatch true if no further event is available right now, stages should flush their work.
+     */
+    @Override
+    public void onEvent(@Nonnull final MarketEvent event, final long sequence, final boolean endOfBatch) {
+        // Removed products have no journal row
+        if (event.action != MarketEvent.REMOVE_ACTION) {
+            uuids[length] = event.uuid;
+            actions[length] = event.action;
+            aliases[length] = event.alias;
+            amounts[length] = event.amount;
+            money[length] = event.money;
+            length++;
+        }
+        if (length > 0 && (endOfBatch || length == uuids.length)) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the batch, retrying until it succeeds or the stage thread is interrupted.
+     */
+    private void flush() {
+        while (true) {
+            try {
+                SqlService.insertDefaultTransactions(jdbcUrl, uuids, actions, aliases, amounts, money, length);
+                break;
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Unable to write the transaction journal, retrying", e);
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException ie) {
+                    logger.log(Level.SEVERE, "Dropped " + length + " transaction journal rows");
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        length = 0;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.pipeline;
+
+import net.reallifegames.sdeconomy.DefaultProduct;
+import net.reallifegames.sdeconomy.SqlService;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A market mutation held in a slot of the {@link MarketPipeline} ring. Slots are reused once every stage has consumed
+ * them, so stages and listeners must copy any value they keep.
+ *
+ * @author Tyler Bucher
+ */
+public final class MarketEvent {
+
+    /**
+     * The remove action, products are never journaled once removed.
+     */
+    public static final byte REMOVE_ACTION = 5;
+
+    /**
+     * The {@link SqlService} transaction action or {@link #REMOVE_ACTION}.
+     */
+    public byte action;
+
+    /**
+     * The alias of the changed {@link DefaultProduct product}.
+     */
+    public String alias;
+
+    /**
+     * The uuid of the player who made the change.
+     */
+    public String uuid;
+
+    /**
+     * The amount journaled for the change, the amount traded or decayed or the price or mod factor set.
+     */
+    public float amount;
+
+    /**
+     * The money in micros exchanged by the change.
+     */
+    public long money;
+
+    /**
+     * The supply of the product after the change.
+     */
+    public int supply;
+
+    /**
+     * The demand of the product after the change.
+     */
+    public int demand;
+
+    /**
+     * The price of the product after the change.
+     */
+    public float price;
+
+    /**
+     * The mod factor of the product after the change.
+     */
+    public float modFactor;
+
+    /**
+     * The wall clock time of the change in milliseconds.
+     */
+    public long time;
+
+    /**
+     * The time the change was published from {@link System#nanoTime()}.
+     */
+    public long publishTime;
+
+    /**
+     * Fills this slot with a change of a {@link DefaultProduct product}.
+     *
+     * @param action         the {@link SqlService} transaction action or {@link #REMOVE_ACTION}.
+     * @param defaultProduct the changed {@link DefaultProduct product}.
+     * @param uuid           the uuid of the player who made the change.
+     * @param amount         the amount journaled for the change.
+     * @param money          the money in micros exchanged by the change.
+     */
+    void set(final byte action, @Nonnull final DefaultProduct defaultProduct, @Nonnull final String uuid,
+             final float amount, final long money) {
+        this.action = action;
+        this.alias = defaultProduct.alias;
+        this.uuid = uuid;
+        this.amount = amount;
+        this.money = money;
+        this.supply = defaultProduct.supply;
+        this.demand = defaultProduct.demand;
+        this.price = defaultProduct.getPrice();
+        this.modFactor = defaultProduct.getModFactor();
+        this.time = System.currentTimeMillis();
+        this.publishTime = System.nanoTime();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.pipeline;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A consumer stage of the {@link MarketPipeline}. Every stage runs on its own thread and sees every event in sequence
+ * order.
+ *
+ * @author Tyler Bucher
+ */
+@FunctionalInterface
+public interface MarketEventHandler {
+
+    /**
+     * Called for every published {@link MarketEvent}.
+     *
+     * @param event      the event, only valid until this call returns.
+     * @param sequence   the sequence number of the event.
+     * @param endOfBatch true if no further event is available right now, stages should flush their work.
+     * @throws Exception if the stage failed, the event is skipped by this stage.
+     */
+    void onEvent(@Nonnull MarketEvent event, long sequence, boolean endOfBatch) throws Exception;
+}
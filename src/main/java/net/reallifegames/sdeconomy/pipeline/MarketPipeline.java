@@ -0,0 +1,311 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.pipeline;
+
+import net.reallifegames.sdeconomy.DefaultProduct;
+import net.reallifegames.sdeconomy.metrics.Metrics;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Carries every market mutation from the thread which trades to a set of consumer stages. Events are written into a
+ * preallocated ring of {@link MarketEvent slots} by a single producer, so publishing allocates nothing. Every stage
+ * runs on its own thread and tracks its own sequence, so a slow stage only delays itself. The producer only waits once
+ * the slowest stage is a whole ring behind.
+ *
+ * @author Tyler Bucher
+ */
+public class MarketPipeline {
+
+    /**
+     * How long a stage sleeps when no event is available.
+     */
+    private static final long STAGE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * How long the producer sleeps when the ring is full.
+     */
+    private static final long PRODUCER_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * The logger stage errors are reported to.
+     */
+    @Nonnull
+    private final Logger logger;
+
+    /**
+     * The preallocated event slots.
+     */
+    @Nonnull
+    private final MarketEvent[] slots;
+
+    /**
+     * The mask which maps a sequence number onto a slot.
+     */
+    private final int mask;
+
+    /**
+     * The sequence number of the last published event.
+     */
+    @Nonnull
+    private final Sequence cursor = new Sequence();
+
+    /**
+     * The names of the consumer stages.
+     */
+    @Nonnull
+    private final List<String> stageNames = new ArrayList<>();
+
+    /**
+     * The consumer stages.
+     */
+    @Nonnull
+    private final List<MarketEventHandler> stageHandlers = new ArrayList<>();
+
+    /**
+     * The sequence of every consumer stage, set once the pipeline is started.
+     */
+    @Nonnull
+    private Sequence[] stageSequences = new Sequence[0];
+
+    /**
+     * The thread of every consumer stage.
+     */
+    @Nonnull
+    private final List<Thread> stageThreads = new ArrayList<>();
+
+    /**
+     * The {@link MarketListener listeners} called by the listener stage.
+     */
+    @Nonnull
+    private final CopyOnWriteArrayList<MarketListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The lowest stage sequence seen by the producer. Only accessed by the producer.
+     */
+    private long cachedGatingSequence = -1;
+
+    /**
+     * States if the stages should keep waiting for events.
+     */
+    private volatile boolean running;
+
+    /**
+     * Creates a new market pipeline.
+     *
+     * @param logger   the logger stage errors are reported to.
+     * @param capacity the amount of events the ring holds, rounded up to a power of two.
+     */
+    public MarketPipeline(@Nonnull final Logger logger, final int capacity) {
+        this.logger = logger;
+        final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new MarketEvent[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new MarketEvent();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds a consumer stage. Must be called before {@link #start()}.
+     *
+     * @param name    the name of the stage.
+     * @param handler the stage.
+     */
+    public void addStage(@Nonnull final String name, @Nonnull final MarketEventHandler handler) {
+        if (running) {
+            throw new IllegalStateException("Stages can not be added to a running pipeline");
+        }
+        stageNames.add(name);
+        stageHandlers.add(handler);
+    }
+
+    /**
+     * Adds a {@link MarketListener} which is called for every later event.
+     *
+     * @param listener the listener to add.
+     */
+    public void addListener(@Nonnull final MarketListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a {@link MarketListener}.
+     *
+     * @param listener the listener to remove.
+     */
+    public void removeListener(@Nonnull final MarketListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts a thread for every stage, followed by the listener stage.
+     */
+    public void start() {
+        addStage("listeners", (event, sequence, endOfBatch)->{
+            for (final MarketListener listener : listeners) {
+                listener.onMarketEvent(event);
+            }
+        });
+        running = true;
+        stageSequences = new Sequence[stageHandlers.size()];
+        for (int i = 0; i < stageSequences.length; i++) {
+            final Sequence sequence = new Sequence();
+            stageSequences[i] = sequence;
+            final String name = stageNames.get(i);
+            final MarketEventHandler handler = stageHandlers.get(i);
+            final Thread thread = new Thread(()->runStage(name, handler, sequence), "SdEconomy-pipeline-" + name);
+            thread.setDaemon(true);
+            stageThreads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Publishes a change of a {@link DefaultProduct product}. Only one thread may publish. Waits while the slowest
+     * stage is a whole ring behind.
+     *
+     * @param action         the {@link net.reallifegames.sdeconomy.SqlService} transaction action or {@link
+     *                       MarketEvent#REMOVE_ACTION}.
+     * @param defaultProduct the changed {@link DefaultProduct product}.
+     * @param uuid           the uuid of the player who made the change.
+     * @param amount         the amount journaled for the change.
+     * @param money          the money in micros exchanged by the change.
+     */
+    public void publish(final byte action, @Nonnull final DefaultProduct defaultProduct, @Nonnull final String uuid,
+                        final float amount, final long money) {
+        if (!running) {
+            throw new IllegalStateException("The market pipeline is not running");
+        }
+        final long sequence = cursor.get() + 1;
+        final long wrapPoint = sequence - slots.length;
+        if (wrapPoint > cachedGatingSequence) {
+            long gatingSequence = minimumStageSequence();
+            if (wrapPoint > gatingSequence) {
+                Metrics.increment("pipeline.full");
+                do {
+                    LockSupport.parkNanos(PRODUCER_WAIT_NANOS);
+                    gatingSequence = minimumStageSequence();
+                } while (wrapPoint > gatingSequence);
+            }
+            cachedGatingSequence = gatingSequence;
+        }
+        slots[(int) sequence & mask].set(action, defaultProduct, uuid, amount, money);
+        // The volatile write makes the slot visible to the stages
+        cursor.set(sequence);
+    }
+
+    /**
+     * Stops the stages once they consumed every published event.
+     *
+     * @param timeoutMillis how long to wait for each stage before interrupting it.
+     * @throws InterruptedException if the calling thread was interrupted while waiting.
+     */
+    public void close(final long timeoutMillis) throws InterruptedException {
+        running = false;
+        for (final Thread thread : stageThreads) {
+            thread.join(timeoutMillis);
+            if (thread.isAlive()) {
+                thread.interrupt();
+                thread.join(timeoutMillis);
+            }
+        }
+    }
+
+    /**
+     * @return the sequence number of the last published event.
+     */
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    /**
+     * @return the lowest sequence number consumed by every stage.
+     */
+    public long getConsumedSequence() {
+        return minimumStageSequence();
+    }
+
+    /**
+     * @return the amount of events the ring holds.
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return the lowest sequence number consumed by every stage.
+     */
+    private long minimumStageSequence() {
+        long minimum = Long.MAX_VALUE;
+        for (final Sequence sequence : stageSequences) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+
+    /**
+     * Consumes events until the pipeline is closed and every published event was handled.
+     *
+     * @param name     the name of the stage.
+     * @param handler  the stage.
+     * @param sequence the sequence of the stage.
+     */
+    private void runStage(@Nonnull final String name, @Nonnull final MarketEventHandler handler,
+                          @Nonnull final Sequence sequence) {
+        final String errorName = "pipeline." + name + ".error";
+        long next = sequence.get() + 1;
+        try {
+            while (true) {
+                final long available = cursor.get();
+                if (available >= next) {
+                    for (; next <= available; next++) {
+                        try {
+                            handler.onEvent(slots[(int) next & mask], next, next == available);
+                        } catch (Exception e) {
+                            Metrics.increment(errorName);
+                            logger.log(Level.SEVERE, "Market pipeline stage " + name + " failed", e);
+                        }
+                    }
+                    // Hand the consumed slots back to the producer
+                    sequence.set(available);
+                } else if (!running) {
+                    break;
+                } else {
+                    LockSupport.parkNanos(STAGE_WAIT_NANOS);
+                }
+            }
+        } finally {
+            // A stopped stage must never hold back the producer
+            sequence.set(Long.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.pipeline;
+
+import net.reallifegames.sdeconomy.metrics.LatencyHistogram;
+import net.reallifegames.sdeconomy.metrics.Metrics;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the {@link MarketEvent events} of the pipeline by action and records how long they waited in the ring.
+ *
+ * @author Tyler Bucher
+ */
+public class MetricsStage implements MarketEventHandler {
+
+    /**
+     * The counter of every action.
+     */
+    @Nonnull
+    private final LongAdder[] actionCounters = new LongAdder[MarketEvent.REMOVE_ACTION + 1];
+
+    /**
+     * The time between publishing and consuming an event.
+     */
+    @Nonnull
+    private final LatencyHistogram lagHistogram = Metrics.histogram("pipeline.lag");
+
+    /**
+     * Creates a new metrics stage.
+     */
+    public MetricsStage() {
+        for (int i = 0; i < actionCounters.length; i++) {
+            actionCounters[i] = Metrics.counter("pipeline.action." + i);
+        }
+    }
+
+    /**
+     * Counts an event.
+     *
+     * @param event      the event, only valid until this call returns.
+     * @param sequence   the sequence number of the event.
+     * @param endOfBatch true if no further event is available right now, stages should flush their work.
+     */
+    @Override
+    public void onEvent(@Nonnull final MarketEvent event, final long sequence, final boolean endOfBatch) {
+        if (event.action >= 0 && event.action < actionCounters.length) {
+            actionCounters[event.action].increment();
+        }
+        lagHistogram.record(System.nanoTime() - event.publishTime);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.pipeline;
+
+/**
+ * Left padding of a {@link Sequence}.
+ */
+class SequenceLeftPadding {
+
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * The value of a {@link Sequence}.
+ */
+class SequenceValue extends SequenceLeftPadding {
+
+    /**
+     * The last sequence number published or consumed.
+     */
+    protected volatile long value = -1;
+}
+
+/**
+ * A sequence number padded to its own cache line, so the producer and every stage can update their sequence without
+ * slowing down each other.
+ *
+ * @author Tyler Bucher
+ */
+final class Sequence extends SequenceValue {
+
+    protected long p9, p10, p11, p12, p13, p14, p15;
+
+    /**
+     * @return the last sequence number published or consumed.
+     */
+    long get() {
+        return value;
+    }
+
+    /**
+     * @param value the last sequence number published or consumed.
+     */
+    void set(final long value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.pipeline;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Appends every {@link MarketEvent} to a write ahead log file, one comma separated line per event with the money in
+ * exact micros. The file is forced to disk at the end of every batch, so the log holds every change made before a crash
+ * even if the journal and the product table were not written yet.
+ *
+ * @author Tyler Bucher
+ */
+public class WalStage implements MarketEventHandler, Closeable {
+
+    /**
+     * The stream of the log file.
+     */
+    @Nonnull
+    private final FileOutputStream outputStream;
+
+    /**
+     * The writer of the log file.
+     */
+    @Nonnull
+    private final Writer writer;
+
+    /**
+     * Builds the line of an event.
+     */
+    @Nonnull
+    private final StringBuilder line = new StringBuilder(128);
+
+    /**
+     * Receives the characters of a line.
+     */
+    @Nonnull
+    private char[] lineChars = new char[128];
+
+    /**
+     * Opens a log file for appending.
+     *
+     * @param file the log file.
+     * @throws IOException if the file could not be opened.
+     */
+    public WalStage(@Nonnull final File file) throws IOException {
+        this.outputStream = new FileOutputStream(file, true);
+        this.writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends an event to the log file.
+     *
+     * @param event      the event, only valid until this call returns.
+     * @param sequence   the sequence number of the event.
+     * @param endOfBatch true if no further event is available right now, stages should flush their work.
+     * @throws IOException if the log file could not be written.
+     */
+    @Override
+    public void onEvent(@Nonnull final MarketEvent event, final long sequence, final boolean endOfBatch) throws IOException {
+        line.setLength(0);
+        line.append(sequence).append(',').append(event.time).append(',').append(event.action).append(',')
+                .append(event.alias).append(',').append(event.uuid).append(',').append(event.amount).append(',')
+                .append(event.money).append(',').append(event.supply).append(',').append(event.demand).append(',')
+                .append(event.price).append(',').append(event.modFactor).append('\n');
+        final int length = line.length();
+        if (length > lineChars.length) {
+            lineChars = new char[length];
+        }
+        line.getChars(0, length, lineChars, 0);
+        writer.write(lineChars, 0, length);
+        if (endOfBatch) {
+            writer.flush();
+            outputStream.getChannel().force(false);
+        }
+    }
+
+    /**
+     * Closes the log file. Call once the pipeline is closed.
+     *
+     * @throws IOException if the log file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
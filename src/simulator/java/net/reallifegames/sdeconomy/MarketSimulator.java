@@ -0,0 +1,461 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A headless load simulator which drives synthetic players against the {@link DefaultEconomy} and optionally the
+ * {@link SqlService} without a Minecraft server. All operations are issued from a single thread to mirror the server
+ * main thread, and decay and save tasks are ticked by a virtual clock.
+ *
+ * @author Tyler Bucher
+ */
+public class MarketSimulator {
+
+    /**
+     * The amount of real nanoseconds in one server tick.
+     */
+    private static final long NANOS_PER_TICK = 50_000_000L;
+
+    /**
+     * The {@link SimulationConfiguration} for this simulation.
+     */
+    @Nonnull
+    private final SimulationConfiguration configuration;
+
+    /**
+     * The random number generator used to pick players, products, operations and amounts.
+     */
+    @Nonnull
+    private final Random random;
+
+    /**
+     * The uuid of each synthetic player.
+     */
+    @Nonnull
+    private final String[] playerUuids;
+
+    /**
+     * The list of {@link DefaultProduct products} being traded, sorted by alias.
+     */
+    private DefaultProduct[] products;
+
+    /**
+     * The buy price in micros of a single item of each product when the simulation started.
+     */
+    private long[] initialPrices;
+
+    /**
+     * The amount of items each player holds indexed by player and then product.
+     */
+    private int[][] holdings;
+
+    /**
+     * The {@link DefaultProduct product} lists grouped by decay interval.
+     */
+    @Nonnull
+    private final List<List<DefaultProduct>> decayGroups = new ArrayList<>();
+
+    /**
+     * The decay interval in virtual ticks of each decay group.
+     */
+    private long[] decayIntervals;
+
+    /**
+     * The virtual tick at which each decay group is run next.
+     */
+    private long[] nextDecayTicks;
+
+    /**
+     * The service time of each operation indexed by operation.
+     */
+    @Nonnull
+    private final LatencyRecorder[] serviceTimes = new LatencyRecorder[SimulationConfiguration.OPERATION_NAMES.length];
+
+    /**
+     * The time from when an operation was scheduled until it completed, including queueing behind slow operations.
+     */
+    @Nonnull
+    private final LatencyRecorder responseTimes = new LatencyRecorder();
+
+    /**
+     * The service time of each decay run.
+     */
+    @Nonnull
+    private final LatencyRecorder decayTimes = new LatencyRecorder();
+
+    /**
+     * The service time of each save run.
+     */
+    @Nonnull
+    private final LatencyRecorder saveTimes = new LatencyRecorder();
+
+    /**
+     * The amount of operations which failed with a database error.
+     */
+    private long errors = 0;
+
+    /**
+     * The amount of sell operations which were turned into quotes because the player held nothing to sell.
+     */
+    private long emptySells = 0;
+
+    /**
+     * The total money in micros players paid for items.
+     */
+    private long moneySpent = 0;
+
+    /**
+     * The total money in micros players received for items.
+     */
+    private long moneyEarned = 0;
+
+    /**
+     * The real time the operation loop took in nanoseconds.
+     */
+    private long elapsedNanos = 0;
+
+    /**
+     * The last virtual tick reached by the simulation.
+     */
+    private long virtualTick = 0;
+
+    /**
+     * Creates a new market simulator.
+     *
+     * @param configuration the {@link SimulationConfiguration} for this simulation.
+     */
+    public MarketSimulator(@Nonnull final SimulationConfiguration configuration) {
+        this.configuration = configuration;
+        this.random = new Random(configuration.getSeed());
+        this.playerUuids = new String[configuration.getPlayers()];
+        for (int i = 0; i < playerUuids.length; i++) {
+            playerUuids[i] = new UUID(configuration.getSeed(), i + 1).toString();
+        }
+        for (int i = 0; i < serviceTimes.length; i++) {
+            serviceTimes[i] = new LatencyRecorder();
+        }
+    }
+
+    /**
+     * Runs a simulation using the passed program arguments.
+     *
+     * @param args the program arguments in the form <code>--key=value</code>.
+     * @throws SQLException if a database access error occurs while setting up the simulation.
+     */
+    public static void main(final String[] args) throws SQLException {
+        final MarketSimulator marketSimulator = new MarketSimulator(new SimulationConfiguration(args));
+        marketSimulator.setup();
+        marketSimulator.run();
+        marketSimulator.printReport(System.out);
+    }
+
+    /**
+     * Loads or creates the products, player holdings and decay groups for this simulation.
+     *
+     * @throws SQLException          if a database access error occurs.
+     * @throws IllegalStateException if there are no products to trade.
+     */
+    public void setup() throws SQLException {
+        final String jdbcUrl = configuration.getJdbcUrl();
+        // Setup sql data
+        if (jdbcUrl != null) {
+            SqlService.createConstantsTable(jdbcUrl);
+            SqlService.createDefaultProductTable(jdbcUrl);
+            SqlService.createUuidTable(jdbcUrl);
+            SqlService.createDefaultTransactionTable(jdbcUrl);
+            SqlService.setSqlVersion(jdbcUrl);
+            SqlService.readDefaultProductTable(jdbcUrl, DefaultEconomy.stockPrices);
+        }
+        // Create synthetic products if there are none
+        if (DefaultEconomy.stockPrices.isEmpty()) {
+            final long[] intervals = {6000, 12000, 24000};
+            for (int i = 0; i < configuration.getProducts(); i++) {
+                final String alias = "product" + i;
+                DefaultEconomy.stockPrices.put(alias, new DefaultProduct(alias, "STONE", (byte) 0, 0.1f,
+                        0.5f + random.nextInt(100) / 10.0f, 1 + random.nextInt(1000), 1 + random.nextInt(1000), 64,
+                        intervals[i % intervals.length], (i % 2 == 0) ? SqlService.DECAY_CONST_TYPE : SqlService.DECAY_PERCENTAGE_TYPE));
+            }
+            if (jdbcUrl != null) {
+                DefaultEconomy.saveProducts(DefaultEconomy.stockPrices.values(), jdbcUrl);
+            }
+        }
+        // Snapshot products
+        final List<DefaultProduct> productList = new ArrayList<>(DefaultEconomy.stockPrices.values());
+        productList.sort(Comparator.comparing(o->o.alias));
+        products = productList.toArray(new DefaultProduct[0]);
+        // The report averages over the products so at least one is needed
+        if (products.length == 0) {
+            throw new IllegalStateException("The simulation needs at least one product, none were loaded or created.");
+        }
+        initialPrices = new long[products.length];
+        for (int i = 0; i < products.length; i++) {
+            initialPrices[i] = DefaultEconomy.checkBuyCost(products[i], 1);
+        }
+        // Give every player a random starting inventory
+        holdings = new int[playerUuids.length][products.length];
+        for (final int[] playerHoldings : holdings) {
+            for (int i = 0; i < playerHoldings.length; i++) {
+                playerHoldings[i] = random.nextInt(configuration.getMaxAmount() * 2);
+            }
+        }
+        // Setup decay groups
+        final Map<Long, List<DefaultProduct>> productDecayMap = DefaultEconomy.getProductDecayMap();
+        productDecayMap.keySet().removeIf(interval->interval <= 0);
+        decayIntervals = new long[productDecayMap.size()];
+        nextDecayTicks = new long[productDecayMap.size()];
+        for (final Map.Entry<Long, List<DefaultProduct>> kvp : productDecayMap.entrySet()) {
+            decayIntervals[decayGroups.size()] = kvp.getKey();
+            nextDecayTicks[decayGroups.size()] = kvp.getKey();
+            decayGroups.add(kvp.getValue());
+        }
+    }
+
+    /**
+     * Runs the operation loop at the configured rate for the configured duration.
+     */
+    public void run() {
+        final long totalOperations = (long) configuration.getRate() * configuration.getDuration();
+        long nextSaveTick = configuration.getSaveInterval();
+        final long startTime = System.nanoTime();
+        for (long i = 0; i < totalOperations; i++) {
+            // Wait until this operation is due
+            final long scheduledTime = startTime + i * 1_000_000_000L / configuration.getRate();
+            long now;
+            while ((now = System.nanoTime()) < scheduledTime) {
+                LockSupport.parkNanos(scheduledTime - now);
+            }
+            // Advance the virtual clock and run any due tasks
+            virtualTick = (scheduledTime - startTime) / NANOS_PER_TICK * configuration.getTimeScale();
+            runDecayTasks();
+            if (configuration.getSaveInterval() > 0) {
+                while (nextSaveTick <= virtualTick) {
+                    runSaveTask();
+                    nextSaveTick += configuration.getSaveInterval();
+                }
+            }
+            // Run a random operation for a random player
+            final int operation = configuration.pickOperation(random.nextInt(configuration.getTotalWeight()));
+            final long operationStart = System.nanoTime();
+            try {
+                runOperation(operation, random.nextInt(playerUuids.length), random.nextInt(products.length));
+            } catch (SQLException e) {
+                errors++;
+            }
+            final long operationEnd = System.nanoTime();
+            serviceTimes[operation].record(operationEnd - operationStart);
+            responseTimes.record(operationEnd - scheduledTime);
+        }
+        elapsedNanos = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Runs every decay group which is due at the current virtual tick.
+     */
+    private void runDecayTasks() {
+        for (int i = 0; i < decayGroups.size(); i++) {
+            while (nextDecayTicks[i] <= virtualTick) {
+                final long decayStart = System.nanoTime();
+                try {
+                    if (configuration.getJdbcUrl() != null) {
+                        DefaultEconomy.decayProducts(decayGroups.get(i), configuration.getJdbcUrl());
+                    } else {
+                        for (final DefaultProduct defaultProduct : decayGroups.get(i)) {
+                            DefaultEconomy.decayProduct(defaultProduct);
+                        }
+                    }
+                } catch (SQLException e) {
+                    errors++;
+                }
+                decayTimes.record(System.nanoTime() - decayStart);
+                nextDecayTicks[i] += decayIntervals[i];
+            }
+        }
+    }
+
+    /**
+     * Saves every product to the database if one is configured.
+     */
+    private void runSaveTask() {
+        final long saveStart = System.nanoTime();
+        try {
+            if (configuration.getJdbcUrl() != null) {
+                DefaultEconomy.saveProducts(DefaultEconomy.stockPrices.values(), configuration.getJdbcUrl());
+            }
+        } catch (SQLException e) {
+            errors++;
+        }
+        saveTimes.record(System.nanoTime() - saveStart);
+    }
+
+    /**
+     * Runs a single operation for a player.
+     *
+     * @param operation    the index of the operation to run.
+     * @param playerIndex  the index of the player running the operation.
+     * @param productIndex the index of the product the operation is run against.
+     * @throws SQLException if a database access error occurs.
+     */
+    private void runOperation(final int operation, final int playerIndex, final int productIndex) throws SQLException {
+        final String jdbcUrl = configuration.getJdbcUrl();
+        final DefaultProduct defaultProduct = products[productIndex];
+        final String uuid = playerUuids[playerIndex];
+        switch (operation) {
+            case SimulationConfiguration.BUY_OPERATION: {
+                final int amount = 1 + random.nextInt(configuration.getMaxAmount());
+                final long cost = jdbcUrl != null ? DefaultEconomy.buy(defaultProduct, jdbcUrl, uuid, amount) :
+                        DefaultEconomy.buyNoSql(defaultProduct, amount);
+                // The market refused the buy and nothing changed
+                if (cost == Money.INFINITE) {
+                    break;
+                }
+                moneySpent += cost;
+                holdings[playerIndex][productIndex] += amount;
+                break;
+            }
+            case SimulationConfiguration.SELL_OPERATION: {
+                final int amount = Math.min(holdings[playerIndex][productIndex], 1 + random.nextInt(configuration.getMaxAmount()));
+                if (amount == 0) {
+                    emptySells++;
+                    DefaultEconomy.checkSellReturns(defaultProduct, 1);
+                    break;
+                }
+                final long returns = jdbcUrl != null ? DefaultEconomy.sell(defaultProduct, jdbcUrl, uuid, amount) :
+                        DefaultEconomy.sellNoSql(defaultProduct, amount);
+                // The market refused the sell and nothing changed
+                if (returns == Money.INFINITE) {
+                    break;
+                }
+                moneyEarned += returns;
+                holdings[playerIndex][productIndex] -= amount;
+                break;
+            }
+            case SimulationConfiguration.CHECK_BUY_OPERATION:
+                DefaultEconomy.checkBuyCost(defaultProduct, 1 + random.nextInt(configuration.getMaxAmount()));
+                break;
+            case SimulationConfiguration.SET_PRICE_OPERATION: {
+                final float price = defaultProduct.getPrice() * (0.9f + random.nextFloat() * 0.2f);
+                if (jdbcUrl != null) {
+                    DefaultEconomy.saveProduct(defaultProduct, jdbcUrl);
+                    DefaultEconomy.setPrice(defaultProduct, jdbcUrl, uuid, price);
+                } else {
+                    DefaultEconomy.setPriceNoSql(defaultProduct, price);
+                }
+                break;
+            }
+            case SimulationConfiguration.TRANSACTIONS_OPERATION:
+                if (jdbcUrl != null) {
+                    readTransactions(jdbcUrl, uuid);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Reads the first page of a players transactions the same way the transactions command does.
+     *
+     * @param jdbcUrl the url of the database.
+     * @param uuid    the uuid of the player.
+     * @throws SQLException if a database access error occurs.
+     */
+    private static void readTransactions(@Nonnull final String jdbcUrl, @Nonnull final String uuid) throws SQLException {
+        final Connection sqlConnection = DriverManager.getConnection(jdbcUrl);
+        final PreparedStatement searchStatement = sqlConnection.prepareStatement(SqlService.SEARCH_DEFAULT_USERS_TRANSACTIONS);
+        searchStatement.setString(1, uuid);
+        searchStatement.setInt(2, 0);
+        final ResultSet resultSet = searchStatement.executeQuery();
+        while (resultSet.next()) {
+            resultSet.getString("alias");
+        }
+        // Close objects
+        resultSet.close();
+        searchStatement.close();
+        sqlConnection.close();
+    }
+
+    /**
+     * Prints the throughput, latency percentiles and market drift of this simulation.
+     *
+     * @param out the stream to print to.
+     */
+    public void printReport(@Nonnull final PrintStream out) {
+        final double seconds = elapsedNanos / 1_000_000_000.0;
+        out.printf("Simulated %d players trading %d products for %.1f s (%d virtual ticks, persistence %s)%n",
+                playerUuids.length, products.length, seconds, virtualTick, configuration.getJdbcUrl() == null ? "off" : "on");
+        out.printf("Throughput: target %d ops/s, achieved %.1f ops/s, %d errors, %d empty sells%n",
+                configuration.getRate(), responseTimes.getCount() / seconds, errors, emptySells);
+        out.printf("%-14s %10s %10s %10s %10s %10s %10s%n", "operation", "count", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for (int i = 0; i < serviceTimes.length; i++) {
+            printLatencyRow(out, SimulationConfiguration.OPERATION_NAMES[i], serviceTimes[i]);
+        }
+        printLatencyRow(out, "decay", decayTimes);
+        printLatencyRow(out, "save", saveTimes);
+        printLatencyRow(out, "response", responseTimes);
+        // Market drift
+        double totalDrift = 0;
+        int maxDriftIndex = 0;
+        double maxDrift = 0;
+        for (int i = 0; i < products.length; i++) {
+            final double drift = (double) (DefaultEconomy.checkBuyCost(products[i], 1) - initialPrices[i]) / initialPrices[i];
+            totalDrift += Math.abs(drift);
+            if (Math.abs(drift) > Math.abs(maxDrift)) {
+                maxDrift = drift;
+                maxDriftIndex = i;
+            }
+        }
+        out.printf("Market drift: mean %.2f%%, max %.2f%% (%s)%n", totalDrift / products.length * 100.0,
+                maxDrift * 100.0, products[maxDriftIndex].alias);
+        out.printf("Money: spent %.2f, earned %.2f, net removed from economy %.2f%n", Money.toDouble(moneySpent),
+                Money.toDouble(moneyEarned), Money.toDouble(moneySpent - moneyEarned));
+    }
+
+    /**
+     * Prints a single latency row of the report.
+     *
+     * @param out      the stream to print to.
+     * @param name     the name of the row.
+     * @param recorder the recorded latencies.
+     */
+    private static void printLatencyRow(@Nonnull final PrintStream out, @Nonnull final String name,
+                                        @Nonnull final LatencyRecorder recorder) {
+        out.printf("%-14s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, recorder.getCount(),
+                recorder.getPercentile(50) / 1000.0, recorder.getPercentile(90) / 1000.0,
+                recorder.getPercentile(99) / 1000.0, recorder.getPercentile(99.9) / 1000.0,
+                recorder.getPercentile(100) / 1000.0);
+    }
+}
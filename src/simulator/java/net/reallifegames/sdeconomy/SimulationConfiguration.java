@@ -0,0 +1,270 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The config object for the {@link MarketSimulator}. Values are read from <code>--key=value</code> program arguments.
+ *
+ * @author Tyler Bucher
+ */
+public class SimulationConfiguration {
+
+    /**
+     * The buy operation index.
+     */
+    public static final int BUY_OPERATION = 0;
+
+    /**
+     * The sell operation index.
+     */
+    public static final int SELL_OPERATION = 1;
+
+    /**
+     * The check buy operation index.
+     */
+    public static final int CHECK_BUY_OPERATION = 2;
+
+    /**
+     * The set price operation index.
+     */
+    public static final int SET_PRICE_OPERATION = 3;
+
+    /**
+     * The transaction history operation index.
+     */
+    public static final int TRANSACTIONS_OPERATION = 4;
+
+    /**
+     * The names of all operations indexed by their operation index.
+     */
+    @Nonnull
+    public static final String[] OPERATION_NAMES = {"buy", "sell", "checkbuy", "setprice", "transactions"};
+
+    /**
+     * The jdbc database url or null if the simulation should not persist anything.
+     */
+    @Nullable
+    private final String jdbcUrl;
+
+    /**
+     * The amount of synthetic players.
+     */
+    private final int players;
+
+    /**
+     * The amount of products to create when the database is not used or empty.
+     */
+    private final int products;
+
+    /**
+     * The target amount of operations per second.
+     */
+    private final int rate;
+
+    /**
+     * How long in seconds the simulation should run.
+     */
+    private final int duration;
+
+    /**
+     * How many virtual server ticks pass for every real server tick.
+     */
+    private final int timeScale;
+
+    /**
+     * The maximum amount of items per buy or sell operation.
+     */
+    private final int maxAmount;
+
+    /**
+     * How long in virtual ticks till the products are saved to the database.
+     */
+    private final long saveInterval;
+
+    /**
+     * The seed of the random number generator.
+     */
+    private final long seed;
+
+    /**
+     * The cumulative operation weights indexed by their operation index.
+     */
+    @Nonnull
+    private final int[] cumulativeWeights;
+
+    /**
+     * Creates a new configuration object from program arguments.
+     *
+     * @param args the program arguments in the form <code>--key=value</code>.
+     */
+    public SimulationConfiguration(@Nonnull final String[] args) {
+        // Parse arguments
+        final Map<String, String> values = new HashMap<>();
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Invalid argument `" + arg + "`, expected --key=value.");
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        //Set config values
+        this.jdbcUrl = values.get("jdbcUrl");
+        this.players = Integer.parseInt(values.getOrDefault("players", "500"));
+        this.products = Integer.parseInt(values.getOrDefault("products", "100"));
+        this.rate = Integer.parseInt(values.getOrDefault("rate", "250"));
+        this.duration = Integer.parseInt(values.getOrDefault("duration", "60"));
+        this.timeScale = Integer.parseInt(values.getOrDefault("timeScale", "1"));
+        this.maxAmount = Integer.parseInt(values.getOrDefault("maxAmount", "64"));
+        this.saveInterval = Long.parseLong(values.getOrDefault("saveInterval", "6000"));
+        this.seed = Long.parseLong(values.getOrDefault("seed", "0"));
+        this.cumulativeWeights = parseMix(values.getOrDefault("mix", "buy:35,sell:30,checkbuy:25,setprice:2,transactions:8"));
+        if (players < 1 || products < 1 || rate < 1 || duration < 1 || timeScale < 1 || maxAmount < 1) {
+            throw new IllegalArgumentException("players, products, rate, duration, timeScale and maxAmount must be positive.");
+        }
+    }
+
+    /**
+     * Parses an operation mix in the form <code>name:weight,name:weight</code>.
+     *
+     * @param mix the operation mix to parse.
+     * @return the cumulative operation weights indexed by their operation index.
+     */
+    @Nonnull
+    private static int[] parseMix(@Nonnull final String mix) {
+        final int[] weights = new int[OPERATION_NAMES.length];
+        for (final String entry : mix.split(",")) {
+            final String[] pair = entry.split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry `" + entry + "`, expected name:weight.");
+            }
+            boolean found = false;
+            for (int i = 0; i < OPERATION_NAMES.length; i++) {
+                if (OPERATION_NAMES[i].equalsIgnoreCase(pair[0].trim())) {
+                    weights[i] = Integer.parseInt(pair[1].trim());
+                    found = true;
+                }
+            }
+            if (!found) {
+                throw new IllegalArgumentException("Unknown operation `" + pair[0] + "` in mix.");
+            }
+        }
+        for (int i = 1; i < weights.length; i++) {
+            weights[i] += weights[i - 1];
+        }
+        if (weights[weights.length - 1] <= 0) {
+            throw new IllegalArgumentException("The operation mix must have at least one positive weight.");
+        }
+        return weights;
+    }
+
+    /**
+     * Picks an operation from the configured mix.
+     *
+     * @param roll a random number between 0 inclusive and {@link #getTotalWeight()} exclusive.
+     * @return the index of the picked operation.
+     */
+    public int pickOperation(final int roll) {
+        int operation = 0;
+        while (roll >= cumulativeWeights[operation]) {
+            operation++;
+        }
+        return operation;
+    }
+
+    /**
+     * @return the sum of all operation weights.
+     */
+    public int getTotalWeight() {
+        return cumulativeWeights[cumulativeWeights.length - 1];
+    }
+
+    /**
+     * @return the jdbc database url or null if the simulation should not persist anything.
+     */
+    @Nullable
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    /**
+     * @return the amount of synthetic players.
+     */
+    public int getPlayers() {
+        return players;
+    }
+
+    /**
+     * @return the amount of products to create when the database is not used or empty.
+     */
+    public int getProducts() {
+        return products;
+    }
+
+    /**
+     * @return the target amount of operations per second.
+     */
+    public int getRate() {
+        return rate;
+    }
+
+    /**
+     * @return how long in seconds the simulation should run.
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return how many virtual server ticks pass for every real server tick.
+     */
+    public int getTimeScale() {
+        return timeScale;
+    }
+
+    /**
+     * @return the maximum amount of items per buy or sell operation.
+     */
+    public int getMaxAmount() {
+        return maxAmount;
+    }
+
+    /**
+     * @return how long in virtual ticks till the products are saved to the database.
+     */
+    public long getSaveInterval() {
+        return saveInterval;
+    }
+
+    /**
+     * @return the seed of the random number generator.
+     */
+    public long getSeed() {
+        return seed;
+    }
+}
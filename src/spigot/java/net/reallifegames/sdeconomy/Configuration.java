@@ -23,9 +23,15 @@
  */
 package net.reallifegames.sdeconomy;
 
+import net.reallifegames.sdeconomy.commands.RateLimitGroup;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.permissions.Permissible;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * The config object for the SdEconomy plugin.
@@ -64,6 +70,116 @@ public class Configuration {
      */
     private boolean allowItemDrop;
 
+    /**
+     * How long in ticks till the metrics are written to the metrics file.
+     */
+    private long metricsDumpInterval;
+
+    /**
+     * How many microseconds the economy may use on the main thread every tick.
+     */
+    private long tickBudgetMicros;
+
+    /**
+     * States if decay and save work should be deferred to later ticks when the tick budget is exhausted.
+     */
+    private boolean deferWorkOverBudget;
+
+    /**
+     * States if saves should run asynchronously instead of being deferred when the tick budget is exhausted.
+     */
+    private boolean asyncDeferredSaves;
+
+    /**
+     * How long in ticks between price updates of open item list pages.
+     */
+    private long guiRefreshInterval;
+
+    /**
+     * How long in milliseconds a /checkbuy quote holds its price for /buy.
+     */
+    private long quoteTokenTtl;
+
+    /**
+     * States if saves should write supply and demand changes as increments so several servers can share one market.
+     */
+    private boolean deltaPersistence;
+
+    /**
+     * The id of this server in the product change feed.
+     */
+    private String nodeId;
+
+    /**
+     * How long in ticks between polls of the product change feed.
+     */
+    private long changeFeedPollInterval;
+
+    /**
+     * The maximum amount of product changes read by one poll.
+     */
+    private int changeFeedBatchSize;
+
+    /**
+     * The path of the market region file shared by the servers of this host or empty to not share the market.
+     */
+    private String marketRegionFile;
+
+    /**
+     * The maximum amount of products a new market region file can hold.
+     */
+    private int marketRegionCapacity;
+
+    /**
+     * How long in ticks between loads of the market changes made by other servers of this host.
+     */
+    private long marketRegionRefreshInterval;
+
+    /**
+     * States if buys and sells should be collected during a tick and settled together at the end of it.
+     */
+    private boolean tradeBatching;
+
+    /**
+     * States if market changes should be published to the market pipeline instead of being written inline.
+     */
+    private boolean marketPipeline;
+
+    /**
+     * The amount of market changes the market pipeline ring holds.
+     */
+    private int marketPipelineCapacity;
+
+    /**
+     * The write ahead log file of the market pipeline in the plugin folder or empty to not write one.
+     */
+    private String marketPipelineWalFile;
+
+    /**
+     * The maximum amount of transaction journal rows the market pipeline writes at once.
+     */
+    private int journalBatchSize;
+
+    /**
+     * The part of the trade value the {@link AmmPricingModel} takes as a fee.
+     */
+    private double ammFeeRate;
+
+    /**
+     * The uuid of the account the {@link AmmPricingModel} fees are paid to or empty to remove them from the economy.
+     */
+    private String ammFeeAccount;
+
+    /**
+     * The command rate limit groups in the order they are checked.
+     */
+    private List<RateLimitGroup> rateLimitGroups;
+
+    /**
+     * The command rate limit for players without a group permission.
+     */
+    private RateLimitGroup defaultRateLimitGroup;
+
     /**
      * Creates a new configuration object.
      *
@@ -81,6 +197,40 @@ public class Configuration {
         this.useMaxItemsPerBuy = config.getBoolean("useMaxItemsPerBuy");
         this.maxItemsPerBuy = config.getInt("maxItemsPerBuy");
         this.allowItemDrop = config.getBoolean("allowItemDrop");
+        this.metricsDumpInterval = config.getLong("metricsDumpInterval");
+        this.tickBudgetMicros = config.getLong("tickBudgetMicros");
+        this.deferWorkOverBudget = config.getBoolean("deferWorkOverBudget");
+        this.asyncDeferredSaves = config.getBoolean("asyncDeferredSaves");
+        this.guiRefreshInterval = config.getLong("guiRefreshInterval");
+        this.quoteTokenTtl = config.getLong("quoteTokenTtl");
+        this.deltaPersistence = config.getBoolean("deltaPersistence");
+        // An empty node id gives this server a new id on every start
+        final String configNodeId = config.getString("nodeId");
+        this.nodeId = configNodeId == null || configNodeId.isEmpty() ? UUID.randomUUID().toString() : configNodeId;
+        this.changeFeedPollInterval = config.getLong("changeFeedPollInterval");
+        this.changeFeedBatchSize = config.getInt("changeFeedBatchSize");
+        this.marketRegionFile = config.getString("marketRegionFile");
+        this.marketRegionCapacity = config.getInt("marketRegionCapacity");
+        this.marketRegionRefreshInterval = config.getLong("marketRegionRefreshInterval");
+        this.tradeBatching = config.getBoolean("tradeBatching");
+        this.marketPipeline = config.getBoolean("marketPipeline");
+        this.marketPipelineCapacity = config.getInt("marketPipelineCapacity");
+        this.marketPipelineWalFile = config.getString("marketPipelineWalFile");
+        this.journalBatchSize = config.getInt("journalBatchSize");
+        this.ammFeeRate = config.getDouble("ammFeeRate");
+        this.ammFeeAccount = config.getString("ammFeeAccount");
+        // Read the rate limit groups
+        this.rateLimitGroups = new ArrayList<>();
+        final ConfigurationSection rateLimits = config.getConfigurationSection("rateLimits");
+        for (String groupName : rateLimits.getKeys(false)) {
+            final RateLimitGroup rateLimitGroup = new RateLimitGroup(groupName,
+                    rateLimits.getDouble(groupName + ".capacity"), rateLimits.getDouble(groupName + ".refillPerSecond"));
+            if (groupName.equals(RateLimitGroup.DEFAULT_GROUP)) {
+                this.defaultRateLimitGroup = rateLimitGroup;
+            } else {
+                this.rateLimitGroups.add(rateLimitGroup);
+            }
+        }
     }
 
     /**
@@ -100,6 +250,28 @@ public class Configuration {
         config.addDefault("useMaxItemsPerBuy", false);
         config.addDefault("maxItemsPerBuy", 64);
         config.addDefault("allowItemDrop", true);
+        config.addDefault("metricsDumpInterval", 6000);
+        config.addDefault("tickBudgetMicros", 5000);
+        config.addDefault("deferWorkOverBudget", false);
+        config.addDefault("asyncDeferredSaves", false);
+        config.addDefault("guiRefreshInterval", 20);
+        config.addDefault("quoteTokenTtl", 10000);
+        config.addDefault("deltaPersistence", false);
+        config.addDefault("nodeId", "");
+        config.addDefault("changeFeedPollInterval", 100);
+        config.addDefault("changeFeedBatchSize", 256);
+        config.addDefault("marketRegionFile", "");
+        config.addDefault("marketRegionCapacity", 4096);
+        config.addDefault("marketRegionRefreshInterval", 1);
+        config.addDefault("tradeBatching", false);
+        config.addDefault("marketPipeline", false);
+        config.addDefault("marketPipelineCapacity", 8192);
+        config.addDefault("marketPipelineWalFile", "market.wal");
+        config.addDefault("journalBatchSize", 256);
+        config.addDefault("ammFeeRate", 0.0);
+        config.addDefault("ammFeeAccount", "");
+        config.addDefault("rateLimits.default.capacity", 20);
+        config.addDefault("rateLimits.default.refillPerSecond", 5);
         config.options().copyDefaults(true);
         pluginInstance.saveConfig();
         pluginInstance.reloadConfig();
@@ -146,4 +318,161 @@ public class Configuration {
     public boolean isAllowItemDrop() {
         return allowItemDrop;
     }
+
+    /**
+     * @return how long in ticks till the metrics are written to the metrics file.
+     */
+    public long getMetricsDumpInterval() {
+        return metricsDumpInterval;
+    }
+
+    /**
+     * @return how many microseconds the economy may use on the main thread every tick.
+     */
+    public long getTickBudgetMicros() {
+        return tickBudgetMicros;
+    }
+
+    /**
+     * @return true if decay and save work should be deferred to later ticks when the tick budget is exhausted.
+     */
+    public boolean isDeferWorkOverBudget() {
+        return deferWorkOverBudget;
+    }
+
+    /**
+     * @return true if saves should run asynchronously instead of being deferred when the tick budget is exhausted.
+     */
+    public boolean isAsyncDeferredSaves() {
+        return asyncDeferredSaves;
+    }
+
+    /**
+     * @return how long in ticks between price updates of open item list pages.
+     */
+    public long getGuiRefreshInterval() {
+        return guiRefreshInterval;
+    }
+
+    /**
+     * @return how long in milliseconds a /checkbuy quote holds its price for /buy.
+     */
+    public long getQuoteTokenTtl() {
+        return quoteTokenTtl;
+    }
+
+    /**
+     * @return true if saves should write supply and demand changes as increments.
+     */
+    public boolean isDeltaPersistence() {
+        return deltaPersistence;
+    }
+
+    /**
+     * @return the id of this server in the product change feed.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return how long in ticks between polls of the product change feed.
+     */
+    public long getChangeFeedPollInterval() {
+        return changeFeedPollInterval;
+    }
+
+    /**
+     * @return the maximum amount of product changes read by one poll.
+     */
+    public int getChangeFeedBatchSize() {
+        return changeFeedBatchSize;
+    }
+
+    /**
+     * @return the path of the market region file or empty to not share the market.
+     */
+    public String getMarketRegionFile() {
+        return marketRegionFile;
+    }
+
+    /**
+     * @return the maximum amount of products a new market region file can hold.
+     */
+    public int getMarketRegionCapacity() {
+        return marketRegionCapacity;
+    }
+
+    /**
+     * @return how long in ticks between loads of the market changes made by other servers of this host.
+     */
+    public long getMarketRegionRefreshInterval() {
+        return marketRegionRefreshInterval;
+    }
+
+    /**
+     * @return true if buys and sells should be collected during a tick and settled together at the end of it.
+     */
+    public boolean isTradeBatching() {
+        return tradeBatching;
+    }
+
+    /**
+     * @return true if market changes should be published to the market pipeline instead of being written inline.
+     */
+    public boolean isMarketPipeline() {
+        return marketPipeline;
+    }
+
+    /**
+     * @return the amount of market changes the market pipeline ring holds.
+     */
+    public int getMarketPipelineCapacity() {
+        return marketPipelineCapacity;
+    }
+
+    /**
+     * @return the write ahead log file of the market pipeline in the plugin folder or empty to not write one.
+     */
+    public String getMarketPipelineWalFile() {
+        return marketPipelineWalFile;
+    }
+
+    /**
+     * @return the maximum amount of transaction journal rows the market pipeline writes at once.
+     */
+    public int getJournalBatchSize() {
+        return journalBatchSize;
+    }
+
+    /**
+     * @return the part of the trade value the {@link AmmPricingModel} takes as a fee.
+     */
+    public double getAmmFeeRate() {
+        return ammFeeRate;
+    }
+
+    /**
+     * @return the uuid of the account the {@link AmmPricingModel} fees are paid to or empty to remove them from the
+     * economy.
+     */
+    public String getAmmFeeAccount() {
+        return ammFeeAccount;
+    }
+
+    /**
+     * Returns the command rate limit of a player. Groups are checked in config order and the first group the player
+     * has the permission of is used.
+     *
+     * @param permissible the player to get the rate limit of.
+     * @return the rate limit group of the player.
+     */
+    public RateLimitGroup getRateLimitGroup(@Nonnull final Permissible permissible) {
+        for (RateLimitGroup rateLimitGroup : rateLimitGroups) {
+            if (permissible.hasPermission(rateLimitGroup.permission)) {
+                return rateLimitGroup;
+            }
+        }
+        return defaultRateLimitGroup;
+    }
 }
@@ -25,14 +25,23 @@ package net.reallifegames.sdeconomy;
 
 import net.milkbowl.vault.economy.Economy;
 import net.reallifegames.sdeconomy.commands.CommandRegistrar;
-import net.reallifegames.sdeconomy.inventory.InventoryUtility;
 import net.reallifegames.sdeconomy.inventory.ItemListInventory;
+import net.reallifegames.sdeconomy.inventory.ItemListRefresher;
+import net.reallifegames.sdeconomy.inventory.ProductItemCache;
 import net.reallifegames.sdeconomy.listeners.InventoryClickListener;
+import net.reallifegames.sdeconomy.listeners.InventoryCloseListener;
+import net.reallifegames.sdeconomy.pipeline.JournalStage;
+import net.reallifegames.sdeconomy.pipeline.MarketPipeline;
+import net.reallifegames.sdeconomy.pipeline.MetricsStage;
+import net.reallifegames.sdeconomy.pipeline.WalStage;
 import org.bukkit.Material;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.RoundingMode;
 import java.sql.SQLException;
 import java.text.DecimalFormat;
@@ -45,6 +54,11 @@ import java.util.logging.Level;
  */
 public class SdEconomy extends JavaPlugin {
 
+    /**
+     * How long in milliseconds each market pipeline stage may take to finish when the plugin is disabled.
+     */
+    private static final long PIPELINE_CLOSE_TIMEOUT = 10000;
+
     /**
      * The {@link Economy} service provided by vault.
      */
@@ -60,6 +74,26 @@ public class SdEconomy extends JavaPlugin {
      */
     private Configuration configuration;
 
+    /**
+     * The {@link ProductChangeFeed} shared with the other servers of the market.
+     */
+    private ProductChangeFeed productChangeFeed;
+
+    /**
+     * The {@link TradeCollector} settled at the end of every tick or null if trades are not batched.
+     */
+    private TradeCollector tradeCollector;
+
+    /**
+     * The write ahead log stage of the market pipeline or null if no log is written.
+     */
+    private WalStage walStage;
+
+    /**
+     * The {@link AmmPricingModel} taking the configured fee.
+     */
+    private AmmPricingModel ammPricingModel;
+
     /**
      * Called when this {@link JavaPlugin plugin} is enabled.
      */
@@ -70,6 +104,7 @@ public class SdEconomy extends JavaPlugin {
         decimalFormat.setRoundingMode(RoundingMode.DOWN);
         // Get the config
         configuration = new Configuration(this);
+        QuoteTokens.setTimeToLive(configuration.getQuoteTokenTtl());
         // Get vault plugin
         if (this.getServer().getPluginManager().getPlugin("Vault") == null) {
             this.getLogger().log(Level.SEVERE, "Vault plugin not found. Plugin not loaded");
@@ -95,6 +130,14 @@ public class SdEconomy extends JavaPlugin {
                 }
             }
         }
+        // Products read from the database must use the model with the configured fee
+        try {
+            ammPricingModel = new AmmPricingModel(configuration.getAmmFeeRate());
+        } catch (IllegalArgumentException e) {
+            getLogger().log(Level.SEVERE, "Invalid amm fee rate. Plugin not loaded", e);
+            return;
+        }
+        Economies.registerPricingModel(ammPricingModel);
         // Setup sql data
         try {
             SqlService.createConstantsTable(configuration.getJdbcUrl());
@@ -105,21 +148,88 @@ public class SdEconomy extends JavaPlugin {
             SqlService.updateToSqlV4(configuration.getJdbcUrl());
             SqlService.updateToSqlV5(configuration.getJdbcUrl());
             SqlService.updateToSqlV6(configuration.getJdbcUrl());
+            SqlService.updateToSqlV7(configuration.getJdbcUrl());
+            SqlService.updateToSqlV8(configuration.getJdbcUrl());
+            SqlService.updateToSqlV9(configuration.getJdbcUrl());
+            SqlService.createProductChangeTable(configuration.getJdbcUrl());
+            // Start the feed before reading the products so no change made in between is missed
+            productChangeFeed = new ProductChangeFeed(configuration.getNodeId(), configuration.getChangeFeedBatchSize());
+            productChangeFeed.seekToEnd(configuration.getJdbcUrl());
             SqlService.readDefaultProductTable(configuration.getJdbcUrl(), DefaultEconomy.stockPrices);
         } catch (SQLException e) {
             getLogger().log(Level.SEVERE, "Error accessing database. Plugin not loaded", e);
             return;
         }
+        // Share the market with the other servers of this host
+        final String marketRegionFile = configuration.getMarketRegionFile();
+        if (marketRegionFile != null && !marketRegionFile.isEmpty()) {
+            try {
+                final MarketRegion marketRegion = MarketRegion.open(new File(marketRegionFile),
+                        configuration.getMarketRegionCapacity());
+                for (final DefaultProduct defaultProduct : DefaultEconomy.stockPrices.values()) {
+                    marketRegion.attach(defaultProduct);
+                }
+                marketRegion.tryLead();
+                DefaultEconomy.setMarketRegion(marketRegion);
+            } catch (IOException | UncheckedIOException e) {
+                getLogger().log(Level.SEVERE, "Error opening market region. Plugin not loaded", e);
+                return;
+            }
+        }
+        // Move the market change side effects off the main thread
+        if (configuration.isMarketPipeline()) {
+            final MarketPipeline marketPipeline = new MarketPipeline(getLogger(), configuration.getMarketPipelineCapacity());
+            final String walFile = configuration.getMarketPipelineWalFile();
+            if (walFile != null && !walFile.isEmpty()) {
+                try {
+                    walStage = new WalStage(new File(getDataFolder(), walFile));
+                } catch (IOException e) {
+                    getLogger().log(Level.SEVERE, "Error opening market write ahead log. Plugin not loaded", e);
+                    return;
+                }
+                marketPipeline.addStage("wal", walStage);
+            }
+            marketPipeline.addStage("journal", new JournalStage(getLogger(), configuration.getJdbcUrl(),
+                    configuration.getJournalBatchSize()));
+            marketPipeline.addStage("metrics", new MetricsStage());
+            marketPipeline.addStage("gui", (event, sequence, endOfBatch)->{
+                if (endOfBatch) {
+                    ItemListRefresher.markChanged();
+                }
+            });
+            ItemListRefresher.trackChanges();
+            marketPipeline.start();
+            DefaultEconomy.setMarketPipeline(marketPipeline);
+        }
         // Register commands
         CommandRegistrar.registerCommands(this);
+        // Start main thread budget accounting
+        TickBudget.start(this);
         // Create repeating save task
         SpigotDefaultEconomy.createSaveTask(this);
         // Create repeating decay tasks
         SpigotDefaultEconomy.createDecayTasks(this);
+        // Create repeating metrics dump task
+        SpigotDefaultEconomy.createMetricsDumpTask(this);
         // Setup Inventory data
-        ItemListInventory.addItemStacks(InventoryUtility.getItemStacksFromProducts(DefaultEconomy.stockPrices.values()));
+        ProductItemCache.setProducts(DefaultEconomy.stockPrices.values());
+        ItemListInventory.setProducts(this, DefaultEconomy.stockPrices.values());
+        // Create repeating market region refresh task
+        SpigotDefaultEconomy.createMarketRegionTask(this);
+        // Create repeating trade settlement task
+        if (configuration.isTradeBatching()) {
+            tradeCollector = new TradeCollector();
+            SpigotDefaultEconomy.createTradeSettleTask(this, tradeCollector);
+        }
+        // Create repeating amm fee payment task
+        SpigotDefaultEconomy.createAmmFeeTask(this, ammPricingModel);
+        // Create repeating product change feed task
+        SpigotDefaultEconomy.createChangeFeedTask(this);
+        // Create repeating item list refresh task
+        ItemListRefresher.start(this);
         // Register event listeners
         this.getServer().getPluginManager().registerEvents(new InventoryClickListener(), this);
+        this.getServer().getPluginManager().registerEvents(new InventoryCloseListener(), this);
     }
 
     /**
@@ -134,11 +244,58 @@ public class SdEconomy extends JavaPlugin {
         if (jdbcUrl == null) {
             return;
         }
-        // Attempt to save item data
-        try {
-            SqlService.updateDefaultProductTable(jdbcUrl, DefaultEconomy.stockPrices);
-        } catch (SQLException e) {
-            getLogger().log(Level.SEVERE, "Error accessing database", e);
+        // Settle the trades of the last tick
+        if (tradeCollector != null) {
+            try {
+                tradeCollector.settle(jdbcUrl);
+            } catch (SQLException e) {
+                getLogger().log(Level.SEVERE, "Error accessing database", e);
+            }
+        }
+        // Pay the remaining fees
+        if (ammPricingModel != null) {
+            SpigotDefaultEconomy.payAmmFees(this, ammPricingModel);
+        }
+        // Write the remaining market changes
+        final MarketPipeline marketPipeline = DefaultEconomy.getMarketPipeline();
+        if (marketPipeline != null) {
+            DefaultEconomy.setMarketPipeline(null);
+            try {
+                marketPipeline.close(PIPELINE_CLOSE_TIMEOUT);
+            } catch (InterruptedException e) {
+                getLogger().log(Level.WARNING, "Interrupted while closing the market pipeline", e);
+                Thread.currentThread().interrupt();
+            }
+            if (walStage != null) {
+                try {
+                    walStage.close();
+                } catch (IOException e) {
+                    getLogger().log(Level.WARNING, "Unable to close market write ahead log", e);
+                }
+            }
+        }
+        // Only the leader of a shared market region persists it
+        final MarketRegion marketRegion = DefaultEconomy.getMarketRegion();
+        if (marketRegion == null || marketRegion.isLeader()) {
+            // Attempt to save item data
+            try {
+                if (config.getBoolean("deltaPersistence")) {
+                    DefaultEconomy.saveDeltas(DefaultEconomy.stockPrices.values(), jdbcUrl);
+                } else {
+                    DefaultEconomy.saveProducts(DefaultEconomy.stockPrices.values(), jdbcUrl);
+                }
+            } catch (SQLException e) {
+                getLogger().log(Level.SEVERE, "Error accessing database", e);
+            }
+        }
+        // Hand the leader lock to another server
+        if (marketRegion != null) {
+            DefaultEconomy.setMarketRegion(null);
+            try {
+                marketRegion.close();
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Unable to close market region", e);
+            }
         }
     }
 
@@ -149,6 +306,20 @@ public class SdEconomy extends JavaPlugin {
         return economyService;
     }
 
+    /**
+     * @return the {@link ProductChangeFeed} shared with the other servers of the market.
+     */
+    public ProductChangeFeed getProductChangeFeed() {
+        return productChangeFeed;
+    }
+
+    /**
+     * @return the {@link TradeCollector} settled at the end of every tick or null if trades are not batched.
+     */
+    public TradeCollector getTradeCollector() {
+        return tradeCollector;
+    }
+
     /**
      * @return the {@link Configuration} for this plugin.
      */
@@ -23,17 +23,28 @@
  */
 package net.reallifegames.sdeconomy;
 
+import net.reallifegames.sdeconomy.inventory.ItemListInventory;
+import net.reallifegames.sdeconomy.inventory.ItemListRefresher;
+import net.reallifegames.sdeconomy.inventory.ProductItemCache;
+import net.reallifegames.sdeconomy.jfr.EconomyEvents;
+import net.reallifegames.sdeconomy.metrics.Metrics;
 import org.bukkit.Bukkit;
 import org.bukkit.inventory.ItemStack;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 
 /**
@@ -43,6 +54,22 @@ import java.util.logging.Level;
  */
 public class SpigotDefaultEconomy extends DefaultEconomy {
 
+    /**
+     * States if an asynchronous save is being written. Only accessed on the main thread.
+     */
+    private static boolean saveInProgress = false;
+
+    /**
+     * States if a product change feed poll is being read or applied.
+     */
+    private static final AtomicBoolean changeFeedPollInProgress = new AtomicBoolean();
+
+    /**
+     * States if the persisted values were rebased onto the database after taking the market region leader lock. Only
+     * accessed on the main thread.
+     */
+    private static boolean persistedValuesRebased = false;
+
     /**
      * Creates decay tasks for all products.
      *
@@ -56,41 +83,46 @@ public class SpigotDefaultEconomy extends DefaultEconomy {
             if (kvp.getKey() > -1) {
                 Bukkit.getScheduler().scheduleSyncRepeatingTask(sdEconomy,
                         new ProductDecayRunnable<DefaultProduct>(kvp.getKey(), kvp.getKey(), kvp.getValue()) {
+
+                            /**
+                             * The decay period of the last run of this task or -1 if it has not run yet.
+                             */
+                            private long lastPeriod = -1;
+
                             @Override
                             public void run() {
-                                try {
-                                    // Connect to database
-                                    final Connection sqlConnection = DriverManager.getConnection(sdEconomy.getConfiguration().getJdbcUrl());
-                                    sqlConnection.setAutoCommit(false);
-                                    final PreparedStatement insertStatement = sqlConnection.prepareStatement(SqlService.INSERT_DEFAULT_TRANSACTION_TABLE_SQL);
-                                    // Attempt decay product demand
-                                    for (DefaultProduct defaultProduct : this.productList) {
-                                        final int amount;
-                                        if (defaultProduct.decayType == SqlService.DECAY_PERCENTAGE_TYPE) {
-                                            amount = DefaultEconomy.decayDemand(defaultProduct,
-                                                    (int) Math.ceil(((double) defaultProduct.demand * (double) defaultProduct.decayAmount) / 100.0));
-                                        } else {
-                                            amount = DefaultEconomy.decayDemand(defaultProduct, defaultProduct.decayAmount);
+                                // Only the leader of a shared market region decays it
+                                final MarketRegion marketRegion = DefaultEconomy.getMarketRegion();
+                                if (marketRegion != null && !marketRegion.isLeader()) {
+                                    return;
+                                }
+                                // Servers sharing a database only agree on the wall clock. The task repeats every
+                                // interval ticks of 50 milliseconds, so a lagging server may see more than one period
+                                final boolean sharedDatabase = sdEconomy.getConfiguration().isDeltaPersistence();
+                                final long period = System.currentTimeMillis() / Math.max(1, this.interval * 50);
+                                final long periodsSinceLastRun = lastPeriod < 0 ? 1 : period - lastPeriod;
+                                lastPeriod = period;
+                                // Every decay run is deferred on its own so no period is lost
+                                TickBudget.runOrDefer(TickBudget.DECAY_SOURCE, ()->{
+                                    final long startTime = System.nanoTime();
+                                    try {
+                                        final String jdbcUrl = sdEconomy.getConfiguration().getJdbcUrl();
+                                        long decays = 1;
+                                        if (sharedDatabase) {
+                                            // Only the first server to claim a period decays it. Periods nobody claimed
+                                            // are caught up, but never more than passed since this task last ran
+                                            decays = Math.min(SqlService.claimDecayPeriods(jdbcUrl, this.interval, period),
+                                                    periodsSinceLastRun);
                                         }
-                                        if (amount > 0) {
-                                            // Setup prepared statement
-                                            insertStatement.setString(1, SqlService.SYSTEM_UUID);
-                                            insertStatement.setByte(2, SqlService.DECAY_ACTION);
-                                            insertStatement.setString(3, defaultProduct.alias);
-                                            insertStatement.setFloat(4, amount);
-                                            insertStatement.setDouble(5, 0);
-                                            // Execute query
-                                            insertStatement.addBatch();
+                                        // Attempt decay product demand
+                                        for (long i = 0; i < decays; i++) {
+                                            DefaultEconomy.decayProducts(this.productList, jdbcUrl);
                                         }
+                                    } catch (SQLException e) {
+                                        sdEconomy.getLogger().log(Level.SEVERE, "Error accessing database", e);
                                     }
-                                    // Close objects
-                                    insertStatement.executeBatch();
-                                    sqlConnection.commit();
-                                    insertStatement.close();
-                                    sqlConnection.close();
-                                } catch (SQLException e) {
-                                    sdEconomy.getLogger().log(Level.SEVERE, "Error accessing database", e);
-                                }
+                                    Metrics.record("task.decay", startTime);
+                                });
                             }
                         }, kvp.getKey(), kvp.getKey());
             }
@@ -105,13 +137,288 @@ public class SpigotDefaultEconomy extends DefaultEconomy {
     public static void createSaveTask(@Nonnull final SdEconomy sdEconomy) {
         // Create repeating save task
         Bukkit.getScheduler().scheduleSyncRepeatingTask(sdEconomy, ()->{
-            // Attempt to save item data
+            if (!isPersistenceLeader(sdEconomy)) {
+                return;
+            }
+            // Delta saves always run asynchronously. Move the save off the main thread if this tick has no budget left
+            if (sdEconomy.getConfiguration().isDeltaPersistence()) {
+                saveProductsAsync(sdEconomy);
+            } else if (sdEconomy.getConfiguration().isAsyncDeferredSaves() && TickBudget.isExhausted()) {
+                Metrics.increment("tick.asyncSave");
+                saveProductsAsync(sdEconomy);
+            } else {
+                TickBudget.runOrDeferMerged(TickBudget.SAVE_SOURCE, ()->saveProducts(sdEconomy));
+            }
+        }, sdEconomy.getConfiguration().getSaveInterval(), sdEconomy.getConfiguration().getSaveInterval());
+    }
+
+    /**
+     * Creates a repeating task which pays the fees collected by the {@link AmmPricingModel} to the fee account every
+     * save interval.
+     *
+     * @param sdEconomy       the {@link SdEconomy} plugin instance.
+     * @param ammPricingModel the model collecting the fees.
+     */
+    public static void createAmmFeeTask(@Nonnull final SdEconomy sdEconomy, @Nonnull final AmmPricingModel ammPricingModel) {
+        // Only create task if there are fees to pay
+        if (ammPricingModel.getFeeRate() > 0) {
+            Bukkit.getScheduler().scheduleSyncRepeatingTask(sdEconomy, ()->payAmmFees(sdEconomy, ammPricingModel),
+                    sdEconomy.getConfiguration().getSaveInterval(), sdEconomy.getConfiguration().getSaveInterval());
+        }
+    }
+
+    /**
+     * Pays the fees collected by the {@link AmmPricingModel} to the fee account. Without an account the fees are kept
+     * out of the economy.
+     *
+     * @param sdEconomy       the {@link SdEconomy} plugin instance.
+     * @param ammPricingModel the model collecting the fees.
+     */
+    public static void payAmmFees(@Nonnull final SdEconomy sdEconomy, @Nonnull final AmmPricingModel ammPricingModel) {
+        final long fees = ammPricingModel.drainFees();
+        final String feeAccount = sdEconomy.getConfiguration().getAmmFeeAccount();
+        if (fees <= 0 || feeAccount == null || feeAccount.isEmpty()) {
+            return;
+        }
+        final UUID uuid;
+        try {
+            uuid = UUID.fromString(feeAccount);
+        } catch (IllegalArgumentException e) {
+            sdEconomy.getLogger().log(Level.WARNING, "Invalid amm fee account " + feeAccount, e);
+            return;
+        }
+        sdEconomy.getEconomyService().depositPlayer(Bukkit.getOfflinePlayer(uuid), Money.toDouble(fees));
+    }
+
+    /**
+     * Checks if this server persists the market. Without a shared {@link MarketRegion} every server persists its own
+     * market, otherwise only the leader does. A server which takes over the leader lock first rebases its persisted
+     * values onto the database, so the changes the previous leader did not save are written exactly once.
+     *
+     * @param sdEconomy the {@link SdEconomy} plugin instance.
+     * @return true if this server should save the market.
+     */
+    private static boolean isPersistenceLeader(@Nonnull final SdEconomy sdEconomy) {
+        final MarketRegion marketRegion = DefaultEconomy.getMarketRegion();
+        if (marketRegion == null || (marketRegion.isLeader() && persistedValuesRebased)) {
+            return true;
+        }
+        if (!marketRegion.tryLead()) {
+            return false;
+        }
+        final ConcurrentHashMap<String, DefaultProduct> storedProducts = new ConcurrentHashMap<>();
+        try {
+            SqlService.readDefaultProductTable(sdEconomy.getConfiguration().getJdbcUrl(), storedProducts);
+        } catch (SQLException e) {
+            sdEconomy.getLogger().log(Level.SEVERE, "Error accessing database", e);
+            return false;
+        }
+        DefaultEconomy.rebasePersistedValues(DefaultEconomy.stockPrices.values(), storedProducts);
+        persistedValuesRebased = true;
+        return true;
+    }
+
+    /**
+     * Creates a repeating task which loads the market changes made by the other servers of a shared {@link
+     * MarketRegion}.
+     *
+     * @param sdEconomy the {@link SdEconomy} plugin instance.
+     */
+    public static void createMarketRegionTask(@Nonnull final SdEconomy sdEconomy) {
+        final MarketRegion marketRegion = DefaultEconomy.getMarketRegion();
+        final long interval = sdEconomy.getConfiguration().getMarketRegionRefreshInterval();
+        // Only create task if the market is shared and the interval is greater than 0
+        if (marketRegion != null && interval > 0) {
+            Bukkit.getScheduler().scheduleSyncRepeatingTask(sdEconomy, ()->{
+                final long startTime = System.nanoTime();
+                boolean changed = false;
+                for (final DefaultProduct defaultProduct : DefaultEconomy.stockPrices.values()) {
+                    changed |= marketRegion.refresh(defaultProduct);
+                }
+                if (changed) {
+                    ItemListRefresher.markChanged();
+                }
+                Metrics.record("task.marketRegion", startTime);
+            }, interval, interval);
+        }
+    }
+
+    /**
+     * Creates a task which settles the collected trades at the end of every tick.
+     *
+     * @param sdEconomy      the {@link SdEconomy} plugin instance.
+     * @param tradeCollector the {@link TradeCollector} to settle.
+     */
+    public static void createTradeSettleTask(@Nonnull final SdEconomy sdEconomy,
+                                             @Nonnull final TradeCollector tradeCollector) {
+        // Trades are collected by commands during the tick and settled by this task once per tick
+        Bukkit.getScheduler().scheduleSyncRepeatingTask(sdEconomy, ()->{
             try {
-                SqlService.updateDefaultProductTable(sdEconomy.getConfiguration().getJdbcUrl(), DefaultEconomy.stockPrices);
+                tradeCollector.settle(sdEconomy.getConfiguration().getJdbcUrl());
             } catch (SQLException e) {
                 sdEconomy.getLogger().log(Level.SEVERE, "Error accessing database", e);
             }
-        }, sdEconomy.getConfiguration().getSaveInterval(), sdEconomy.getConfiguration().getSaveInterval());
+        }, 1, 1);
+    }
+
+    /**
+     * Saves the {@link DefaultProduct} list to the database on the main thread.
+     *
+     * @param sdEconomy the {@link SdEconomy} plugin instance.
+     */
+    private static void saveProducts(@Nonnull final SdEconomy sdEconomy) {
+        // A new snapshot can only be taken once the last one was merged
+        if (saveInProgress) {
+            Metrics.increment("task.save.skipped");
+            return;
+        }
+        final ProductDeltas productDeltas = DefaultEconomy.takeDeltas(DefaultEconomy.stockPrices.values());
+        writeProducts(sdEconomy, sdEconomy.getConfiguration().getJdbcUrl(), productDeltas);
+        DefaultEconomy.applyMergedValues(productDeltas);
+        ItemListRefresher.markChanged();
+    }
+
+    /**
+     * Snapshots the {@link DefaultProduct} list, writes it asynchronously and merges the values of the other servers
+     * back on the main thread.
+     *
+     * @param sdEconomy the {@link SdEconomy} plugin instance.
+     */
+    private static void saveProductsAsync(@Nonnull final SdEconomy sdEconomy) {
+        // A new snapshot can only be taken once the last one was merged
+        if (saveInProgress) {
+            Metrics.increment("task.save.skipped");
+            return;
+        }
+        saveInProgress = true;
+        final ProductDeltas productDeltas = DefaultEconomy.takeDeltas(DefaultEconomy.stockPrices.values());
+        final String jdbcUrl = sdEconomy.getConfiguration().getJdbcUrl();
+        Bukkit.getScheduler().runTaskAsynchronously(sdEconomy, ()->{
+            writeProducts(sdEconomy, jdbcUrl, productDeltas);
+            Bukkit.getScheduler().runTask(sdEconomy, ()->{
+                // Products which failed to save keep their deltas for the next snapshot
+                DefaultEconomy.applyMergedValues(productDeltas);
+                ItemListRefresher.markChanged();
+                saveInProgress = false;
+            });
+        });
+    }
+
+    /**
+     * Writes a snapshot of the {@link DefaultProduct} list to the database as deltas or versioned updates.
+     *
+     * @param sdEconomy     the {@link SdEconomy} plugin instance.
+     * @param jdbcUrl       the url of the database.
+     * @param productDeltas the snapshot to write.
+     */
+    private static void writeProducts(@Nonnull final SdEconomy sdEconomy, @Nonnull final String jdbcUrl,
+                                      @Nonnull final ProductDeltas productDeltas) {
+        final long startTime = System.nanoTime();
+        final Object event = EconomyEvents.beginSave();
+        // Attempt to save item data
+        try {
+            if (sdEconomy.getConfiguration().isDeltaPersistence()) {
+                SqlService.updateDefaultProductDeltas(jdbcUrl, productDeltas);
+            } else {
+                SqlService.updateDefaultProductTable(jdbcUrl, productDeltas);
+            }
+        } catch (SQLException e) {
+            sdEconomy.getLogger().log(Level.SEVERE, "Error accessing database", e);
+        }
+        Metrics.record("task.save", startTime);
+        EconomyEvents.commitSave(event, productDeltas.getLength());
+    }
+
+    /**
+     * Creates a repeating asynchronous task which reads the product changes made by other servers and applies them on
+     * the main thread.
+     *
+     * @param sdEconomy the {@link SdEconomy} plugin instance.
+     */
+    public static void createChangeFeedTask(@Nonnull final SdEconomy sdEconomy) {
+        final long interval = sdEconomy.getConfiguration().getChangeFeedPollInterval();
+        // Only create task if the interval is greater than 0
+        if (interval > 0) {
+            final String jdbcUrl = sdEconomy.getConfiguration().getJdbcUrl();
+            final ProductChangeFeed productChangeFeed = sdEconomy.getProductChangeFeed();
+            Bukkit.getScheduler().runTaskTimerAsynchronously(sdEconomy, ()->{
+                // Polls must not overlap or a batch could be applied twice
+                if (!changeFeedPollInProgress.compareAndSet(false, true)) {
+                    return;
+                }
+                final long startTime = System.nanoTime();
+                final Map<String, DefaultProduct> storedProducts;
+                try {
+                    storedProducts = productChangeFeed.poll(jdbcUrl);
+                } catch (SQLException e) {
+                    sdEconomy.getLogger().log(Level.SEVERE, "Error accessing database", e);
+                    changeFeedPollInProgress.set(false);
+                    return;
+                }
+                Metrics.record("task.changeFeed", startTime);
+                if (storedProducts.isEmpty()) {
+                    changeFeedPollInProgress.set(false);
+                    return;
+                }
+                Bukkit.getScheduler().runTask(sdEconomy, ()->{
+                    for (final Map.Entry<String, DefaultProduct> kvp : storedProducts.entrySet()) {
+                        applyProductChange(sdEconomy, kvp.getKey(), kvp.getValue());
+                        Metrics.increment("changeFeed.applied");
+                    }
+                    ItemListRefresher.markChanged();
+                    changeFeedPollInProgress.set(false);
+                });
+            }, interval, interval);
+        }
+    }
+
+    /**
+     * Applies a product change read from the change feed and updates the item caches and item list pages.
+     *
+     * @param sdEconomy     the {@link SdEconomy} plugin instance.
+     * @param alias         the alias of the changed product.
+     * @param storedProduct the stored product, or null if it was removed.
+     */
+    private static void applyProductChange(@Nonnull final SdEconomy sdEconomy, @Nonnull final String alias,
+                                           @Nullable final DefaultProduct storedProduct) {
+        final DefaultProduct knownProduct = DefaultEconomy.stockPrices.get(alias);
+        final String knownType = knownProduct == null ? null : knownProduct.type;
+        final byte knownUnsafeData = knownProduct == null ? 0 : knownProduct.unsafeData;
+        final DefaultProduct defaultProduct = ProductChangeFeed.apply(DefaultEconomy.stockPrices, alias, storedProduct);
+        if (defaultProduct == null) {
+            if (knownProduct != null) {
+                ProductItemCache.remove(alias);
+                ItemListInventory.removeProduct(sdEconomy, alias);
+            }
+        } else if (knownProduct == null || !defaultProduct.type.equals(knownType) ||
+                defaultProduct.unsafeData != knownUnsafeData) {
+            // Only resolve the product item again if it is new or its item changed
+            ProductItemCache.update(defaultProduct);
+            ItemListInventory.addProduct(sdEconomy, defaultProduct);
+        }
+    }
+
+    /**
+     * Creates a repeating asynchronous task which writes the {@link Metrics} to the metrics file.
+     *
+     * @param sdEconomy the {@link SdEconomy} plugin instance.
+     */
+    public static void createMetricsDumpTask(@Nonnull final SdEconomy sdEconomy) {
+        final long interval = sdEconomy.getConfiguration().getMetricsDumpInterval();
+        // Only create task if the interval is greater than 0
+        if (interval > 0) {
+            final File metricsFile = new File(sdEconomy.getDataFolder(), "metrics.txt");
+            Bukkit.getScheduler().runTaskTimerAsynchronously(sdEconomy, ()->{
+                final List<String> lines = new ArrayList<>();
+                lines.add("# " + new Date());
+                lines.addAll(Metrics.report());
+                try {
+                    Files.write(metricsFile.toPath(), lines, StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    sdEconomy.getLogger().log(Level.WARNING, "Unable to write metrics file", e);
+                }
+            }, interval, interval);
+        }
     }
 
     /**
@@ -122,12 +429,6 @@ public class SpigotDefaultEconomy extends DefaultEconomy {
      */
     @Nullable
     public static DefaultProduct getProductFromItemStack(@Nonnull final ItemStack itemStack) {
-        for (final DefaultProduct defaultProduct : DefaultEconomy.stockPrices.values()) {
-            // if the item stack type and unsafeData equal the products then return it.
-            if (defaultProduct.type.equalsIgnoreCase(itemStack.getType().name()) && defaultProduct.unsafeData == itemStack.getData().getData()) {
-                return defaultProduct;
-            }
-        }
-        return null;
+        return ProductItemCache.getProduct(itemStack);
     }
 }
@@ -0,0 +1,286 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import net.reallifegames.sdeconomy.metrics.Metrics;
+import org.bukkit.Bukkit;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.logging.Level;
+
+/**
+ * Accounts for the time the economy spends on the server main thread every tick. When the configured budget is
+ * exceeded a warning is logged and, if enabled, non urgent work is deferred to later ticks. All functions in this class
+ * must be called from the main thread.
+ *
+ * @author Tyler Bucher
+ */
+public final class TickBudget {
+
+    /**
+     * The command tick source.
+     */
+    public static final int COMMAND_SOURCE = 0;
+
+    /**
+     * The decay tick source.
+     */
+    public static final int DECAY_SOURCE = 1;
+
+    /**
+     * The save tick source.
+     */
+    public static final int SAVE_SOURCE = 2;
+
+    /**
+     * The inventory click tick source.
+     */
+    public static final int INVENTORY_CLICK_SOURCE = 3;
+
+    /**
+     * The item list refresh tick source.
+     */
+    public static final int GUI_REFRESH_SOURCE = 4;
+
+    /**
+     * The names of all tick sources indexed by source.
+     */
+    @Nonnull
+    private static final String[] SOURCE_NAMES = {"commands", "decay", "save", "inventory clicks", "gui refresh"};
+
+    /**
+     * The minimum amount of ticks between two over budget warnings.
+     */
+    private static final long WARNING_INTERVAL = 1200;
+
+    /**
+     * The nanoseconds used by each source during the current tick.
+     */
+    @Nonnull
+    private static final long[] tickNanos = new long[SOURCE_NAMES.length];
+
+    /**
+     * The work which was deferred because the budget was exhausted.
+     */
+    @Nonnull
+    private static final ArrayDeque<DeferredWork> deferredWork = new ArrayDeque<>();
+
+    /**
+     * The pending merged work of each source indexed by source.
+     */
+    @Nonnull
+    private static final DeferredWork[] mergedWork = new DeferredWork[SOURCE_NAMES.length];
+
+    /**
+     * The {@link SdEconomy} plugin instance.
+     */
+    private static SdEconomy pluginInstance;
+
+    /**
+     * The amount of nanoseconds the economy may use every tick.
+     */
+    private static long budgetNanos = Long.MAX_VALUE;
+
+    /**
+     * The amount of ticks since the budget accounting was started.
+     */
+    private static long currentTick = 0;
+
+    /**
+     * The tick of the last over budget warning.
+     */
+    private static long lastWarningTick = -WARNING_INTERVAL;
+
+    /**
+     * Starts the per tick budget accounting.
+     *
+     * @param sdEconomy the {@link SdEconomy} plugin instance.
+     */
+    public static void start(@Nonnull final SdEconomy sdEconomy) {
+        pluginInstance = sdEconomy;
+        budgetNanos = sdEconomy.getConfiguration().getTickBudgetMicros() * 1000L;
+        Bukkit.getScheduler().scheduleSyncRepeatingTask(sdEconomy, TickBudget::endTick, 1, 1);
+    }
+
+    /**
+     * Adds time used by a source to the current tick.
+     *
+     * @param source the tick source which used the time.
+     * @param nanos  the time used in nanoseconds.
+     */
+    public static void add(final int source, final long nanos) {
+        tickNanos[source] += nanos;
+    }
+
+    /**
+     * @return true if the economy used its whole budget for the current tick.
+     */
+    public static boolean isExhausted() {
+        long total = 0;
+        for (final long nanos : tickNanos) {
+            total += nanos;
+        }
+        return total >= budgetNanos;
+    }
+
+    /**
+     * Runs work now and accounts its time or defers it to a later tick if the budget is exhausted and deferring is
+     * enabled. Every deferred call is run once.
+     *
+     * @param source the tick source of the work.
+     * @param work   the work to run.
+     */
+    public static void runOrDefer(final int source, @Nonnull final Runnable work) {
+        if (isDeferring()) {
+            Metrics.increment("tick.deferred");
+            deferredWork.add(new DeferredWork(source, work, false));
+        } else {
+            run(source, work);
+        }
+    }
+
+    /**
+     * Runs work now and accounts its time or defers it to a later tick if the budget is exhausted and deferring is
+     * enabled. If work of the same source is still pending it is replaced by the new work, which keeps its place in the
+     * queue. Only use this for work where the latest call makes the earlier ones redundant, like a full save.
+     *
+     * @param source the tick source of the work.
+     * @param work   the work to run.
+     */
+    public static void runOrDeferMerged(final int source, @Nonnull final Runnable work) {
+        if (isDeferring()) {
+            Metrics.increment("tick.deferred");
+            if (mergedWork[source] != null) {
+                Metrics.increment("tick.deferredMerged");
+                mergedWork[source].work = work;
+            } else {
+                mergedWork[source] = new DeferredWork(source, work, true);
+                deferredWork.add(mergedWork[source]);
+            }
+        } else {
+            run(source, work);
+        }
+    }
+
+    /**
+     * @return true if work should be deferred to a later tick.
+     */
+    private static boolean isDeferring() {
+        return pluginInstance != null && pluginInstance.getConfiguration().isDeferWorkOverBudget() && isExhausted();
+    }
+
+    /**
+     * Runs work and accounts its time to a source.
+     *
+     * @param source the tick source of the work.
+     * @param work   the work to run.
+     */
+    private static void run(final int source, @Nonnull final Runnable work) {
+        final long startTime = System.nanoTime();
+        try {
+            work.run();
+        } finally {
+            tickNanos[source] += System.nanoTime() - startTime;
+        }
+    }
+
+    /**
+     * Ends the current tick by checking the budget, resetting the counters and running deferred work.
+     */
+    private static void endTick() {
+        currentTick++;
+        long total = 0;
+        for (final long nanos : tickNanos) {
+            total += nanos;
+        }
+        if (total > 0) {
+            Metrics.histogram("tick.economy").record(total);
+        }
+        // Warn if the budget was exceeded
+        if (total > budgetNanos) {
+            Metrics.increment("tick.overBudget");
+            if (currentTick - lastWarningTick >= WARNING_INTERVAL) {
+                lastWarningTick = currentTick;
+                final StringBuilder builder = new StringBuilder("SdEconomy used ")
+                        .append(String.format("%.2f", total / 1_000_000.0)).append(" ms of its ")
+                        .append(String.format("%.2f", budgetNanos / 1_000_000.0)).append(" ms tick budget:");
+                for (int i = 0; i < SOURCE_NAMES.length; i++) {
+                    builder.append(' ').append(SOURCE_NAMES[i]).append(' ')
+                            .append(String.format("%.2f", tickNanos[i] / 1_000_000.0)).append(" ms");
+                    builder.append(i < SOURCE_NAMES.length - 1 ? ',' : '.');
+                }
+                pluginInstance.getLogger().log(Level.WARNING, builder.toString());
+            }
+        }
+        // Reset the counters
+        for (int i = 0; i < tickNanos.length; i++) {
+            tickNanos[i] = 0;
+        }
+        // Run deferred work until the new tick's budget is used up
+        while (!deferredWork.isEmpty() && !isExhausted()) {
+            final DeferredWork work = deferredWork.poll();
+            // Later merged work of the source queues a new entry once this one runs
+            if (work.merged) {
+                mergedWork[work.source] = null;
+            }
+            run(work.source, work.work);
+        }
+    }
+
+    /**
+     * Work which was deferred to a later tick.
+     */
+    private static final class DeferredWork {
+
+        /**
+         * The tick source of the work.
+         */
+        private final int source;
+
+        /**
+         * The work to run, replaced by later merged work of the same source.
+         */
+        @Nonnull
+        private Runnable work;
+
+        /**
+         * States if later work of the same source is merged into this work.
+         */
+        private final boolean merged;
+
+        /**
+         * Creates new deferred work.
+         *
+         * @param source the tick source of the work.
+         * @param work   the work to run.
+         * @param merged true if later work of the same source is merged into this work.
+         */
+        private DeferredWork(final int source, @Nonnull final Runnable work, final boolean merged) {
+            this.source = source;
+            this.work = work;
+            this.merged = merged;
+        }
+    }
+}
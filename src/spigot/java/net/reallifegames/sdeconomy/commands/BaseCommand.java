@@ -24,9 +24,18 @@
 package net.reallifegames.sdeconomy.commands;
 
 import net.reallifegames.sdeconomy.SdEconomy;
+import net.reallifegames.sdeconomy.TickBudget;
+import net.reallifegames.sdeconomy.metrics.LatencyHistogram;
+import net.reallifegames.sdeconomy.metrics.Metrics;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 
 import javax.annotation.Nonnull;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A base command listener which all commands should extend.
@@ -40,6 +49,21 @@ public abstract class BaseCommand implements CommandExecutor {
      */
     protected final SdEconomy pluginInstance;
 
+    /**
+     * The {@link LatencyHistogram} for this command. Resolved on first use since the command name is not known before.
+     */
+    private LatencyHistogram latencyHistogram;
+
+    /**
+     * The rate limit buckets of every player for this command.
+     */
+    private final TokenBucketMap tokenBuckets = new TokenBucketMap();
+
+    /**
+     * Counts the uses of this command rejected by the rate limit. Resolved on first use like {@link #latencyHistogram}.
+     */
+    private LongAdder rejectedCounter;
+
     /**
      * Creates a new base command listener.
      *
@@ -48,4 +72,68 @@ public abstract class BaseCommand implements CommandExecutor {
     public BaseCommand(@Nonnull final SdEconomy pluginInstance) {
         this.pluginInstance = pluginInstance;
     }
+
+    /**
+     * Executes the given command and records how long it took.
+     *
+     * @param sender  source of the command.
+     * @param command command which was executed.
+     * @param label   alias of the command which was used.
+     * @param args    passed command arguments.
+     * @return true if a valid command, otherwise false.
+     */
+    @Override
+    public final boolean onCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+        final long startTime = System.nanoTime();
+        if (!tryAcquire(sender, startTime)) {
+            if (rejectedCounter == null) {
+                rejectedCounter = Metrics.counter("ratelimit." + command.getName());
+            }
+            rejectedCounter.increment();
+            sender.sendMessage(ChatColor.RED + "You are using this command too quickly, please wait a moment.");
+            return true;
+        }
+        try {
+            return executeCommand(sender, command, label, args);
+        } finally {
+            final long elapsedTime = System.nanoTime() - startTime;
+            if (latencyHistogram == null) {
+                latencyHistogram = Metrics.histogram("command." + command.getName());
+            }
+            latencyHistogram.record(elapsedTime);
+            TickBudget.add(TickBudget.COMMAND_SOURCE, elapsedTime);
+        }
+    }
+
+    /**
+     * Takes a token from the rate limit bucket of a player for this command. Only players are rate limited.
+     *
+     * @param sender source of the command.
+     * @param now    the current time in nanoseconds.
+     * @return true if the command may run.
+     */
+    private boolean tryAcquire(final CommandSender sender, final long now) {
+        if (!(sender instanceof Player) || sender.hasPermission("sdeconomy.ratelimit.bypass")) {
+            return true;
+        }
+        final RateLimitGroup rateLimitGroup = pluginInstance.getConfiguration().getRateLimitGroup(sender);
+        if (rateLimitGroup.capacity <= 0) {
+            return true;
+        }
+        final UUID uuid = ((Player) sender).getUniqueId();
+        return tokenBuckets.tryAcquire(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(),
+                rateLimitGroup.capacity, rateLimitGroup.refillPerSecond, now);
+    }
+
+    /**
+     * Executes the given command, returning its success.
+     *
+     * @param sender  source of the command.
+     * @param command command which was executed.
+     * @param label   alias of the command which was used.
+     * @param args    passed command arguments.
+     * @return true if a valid command, otherwise false.
+     */
+    protected abstract boolean executeCommand(final CommandSender sender, final Command command, final String label,
+                                              final String[] args);
 }
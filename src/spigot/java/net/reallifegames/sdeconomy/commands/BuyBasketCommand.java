@@ -0,0 +1,183 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.commands;
+
+import net.reallifegames.sdeconomy.DefaultEconomy;
+import net.reallifegames.sdeconomy.DefaultProduct;
+import net.reallifegames.sdeconomy.Money;
+import net.reallifegames.sdeconomy.SdEconomy;
+import net.reallifegames.sdeconomy.SpigotDefaultEconomy;
+import net.reallifegames.sdeconomy.inventory.InventoryUtility;
+import net.reallifegames.sdeconomy.inventory.ProductItem;
+import net.reallifegames.sdeconomy.inventory.ProductItemCache;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import javax.annotation.Nonnull;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Buys several items from the server at once. Either every item is bought or none.
+ *
+ * @author Tyler Bucher
+ */
+final class BuyBasketCommand extends BaseCommand {
+
+    /**
+     * Creates a new base command listener.
+     *
+     * @param pluginInstance the {@link SdEconomy} plugin instance.
+     */
+    public BuyBasketCommand(@Nonnull final SdEconomy pluginInstance) {
+        super(pluginInstance);
+    }
+
+    /**
+     * Executes the given command, returning its success.
+     *
+     * @param sender  source of the command.
+     * @param command command which was executed.
+     * @param label   alias of the command which was used.
+     * @param args    passed command arguments.
+     * @return true if a valid command, otherwise false.
+     */
+    @Override
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+        if (sender instanceof Player) {
+            final Player player = (Player) sender;
+            // Check for arg length
+            if (args.length == 0 || args.length % 2 != 0) {
+                sender.sendMessage(ChatColor.RED + "You need to specify an item name and amount for every item.");
+                return false;
+            }
+            // Parse the basket and merge duplicate items
+            final int maxLength = args.length / 2;
+            final Map<String, Integer> productIndexes = new HashMap<>();
+            final DefaultProduct[] defaultProducts = new DefaultProduct[maxLength];
+            final ProductItem[] productItems = new ProductItem[maxLength];
+            final int[] amounts = new int[maxLength];
+            int length = 0;
+            for (int i = 0; i < args.length; i += 2) {
+                final String alias = args[i].toLowerCase();
+                final int amount;
+                try {
+                    amount = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException | NullPointerException e) {
+                    sender.sendMessage(ChatColor.RED + args[i + 1] + " is not a number.");
+                    return false;
+                }
+                if (amount <= 0) {
+                    sender.sendMessage(ChatColor.RED + "The amount of `" + alias + "` must be greater than 0.");
+                    return false;
+                }
+                Integer productIndex = productIndexes.get(alias);
+                if (productIndex == null) {
+                    final DefaultProduct defaultProduct = SpigotDefaultEconomy.stockPrices.get(alias);
+                    if (defaultProduct == null) {
+                        sender.sendMessage(ChatColor.GOLD + "The price of `" + alias + "` has not been set yet.");
+                        return true;
+                    }
+                    final ProductItem productItem = ProductItemCache.get(defaultProduct);
+                    if (productItem == null) {
+                        sender.sendMessage(ChatColor.RED + "Invalid Item type.");
+                        return true;
+                    }
+                    productIndex = length++;
+                    productIndexes.put(alias, productIndex);
+                    defaultProducts[productIndex] = defaultProduct;
+                    productItems[productIndex] = productItem;
+                }
+                amounts[productIndex] += amount;
+            }
+            // Check if there is a max buy amount
+            if (pluginInstance.getConfiguration().isUseMaxItemsPerBuy()) {
+                final int maxAmount = pluginInstance.getConfiguration().getMaxItemsPerBuy();
+                for (int i = 0; i < length; i++) {
+                    if (amounts[i] > maxAmount) {
+                        sender.sendMessage(ChatColor.RED + "You can only buy a max of `" + maxAmount + "` per item.");
+                        return true;
+                    }
+                }
+            }
+            // Check if the plugin is not allowed to item drop
+            if (!pluginInstance.getConfiguration().isAllowItemDrop()) {
+                if (InventoryUtility.canInventoryHold(player.getInventory(), productItems, amounts, length) > 0) {
+                    sender.sendMessage(ChatColor.RED + "Your inventory can not hold all of these items currently.");
+                    return true;
+                }
+            }
+            // Quote the whole basket once
+            final long[] costs = new long[length];
+            final long quote = DefaultEconomy.checkBasketCost(defaultProducts, amounts, costs, length);
+            if (quote == Money.INFINITE) {
+                sender.sendMessage(ChatColor.RED + "The market can not sell this many of one of these items at once.");
+                return true;
+            }
+            if (Money.floor(pluginInstance.getEconomyService().getBalance(player)) < quote) {
+                // Send player message
+                sender.sendMessage(ChatColor.RED + "You do not have enough funds to buy all of these items. They cost " +
+                        pluginInstance.decimalFormat.format(Money.toDouble(quote)) + ".");
+                return true;
+            }
+            // Withdraw from player
+            final long cost;
+            try {
+                cost = DefaultEconomy.buyBasket(defaultProducts, amounts, costs, length,
+                        pluginInstance.getConfiguration().getJdbcUrl(), player.getUniqueId().toString());
+            } catch (SQLException e) {
+                pluginInstance.getLogger().log(Level.SEVERE, "Unable to access database.", e);
+                sender.sendMessage(ChatColor.RED + "Error buying items.");
+                return true;
+            }
+            // The market changed since the quote and can no longer sell this many
+            if (cost == Money.INFINITE) {
+                sender.sendMessage(ChatColor.RED + "The market can not sell this many of one of these items at once.");
+                return true;
+            }
+            pluginInstance.getEconomyService().withdrawPlayer(player, Money.toDouble(cost));
+            // Give the items
+            final ItemStack[] itemStacks = new ItemStack[length];
+            int totalItems = 0;
+            for (int i = 0; i < length; i++) {
+                itemStacks[i] = productItems[i].createItemStack(amounts[i]);
+                totalItems += amounts[i];
+            }
+            final Map<Integer, ItemStack> leftOverItems = player.getInventory().addItem(itemStacks);
+            leftOverItems.forEach((k, v)->player.getWorld().dropItem(player.getLocation(), v));
+            // Send player message
+            sender.sendMessage(ChatColor.GREEN + "You received " + totalItems + " items for " +
+                    pluginInstance.decimalFormat.format(Money.toDouble(cost)) + " " + pluginInstance.getEconomyService().currencyNamePlural() + ".");
+            return true;
+        } else {
+            sender.sendMessage(ChatColor.RED + "You must be a player to run this command.");
+            return false;
+        }
+    }
+}
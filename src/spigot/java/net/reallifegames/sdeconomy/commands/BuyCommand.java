@@ -25,11 +25,18 @@ package net.reallifegames.sdeconomy.commands;
 
 import net.reallifegames.sdeconomy.DefaultEconomy;
 import net.reallifegames.sdeconomy.DefaultProduct;
+import net.reallifegames.sdeconomy.Money;
+import net.reallifegames.sdeconomy.QuoteCache;
+import net.reallifegames.sdeconomy.QuoteToken;
+import net.reallifegames.sdeconomy.QuoteTokens;
 import net.reallifegames.sdeconomy.SdEconomy;
 import net.reallifegames.sdeconomy.SpigotDefaultEconomy;
+import net.reallifegames.sdeconomy.SqlService;
+import net.reallifegames.sdeconomy.TradeCollector;
 import net.reallifegames.sdeconomy.inventory.InventoryUtility;
+import net.reallifegames.sdeconomy.inventory.ProductItem;
+import net.reallifegames.sdeconomy.inventory.ProductItemCache;
 import org.bukkit.ChatColor;
-import org.bukkit.Material;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -66,7 +73,7 @@ final class BuyCommand extends BaseCommand {
      * @return true if a valid command, otherwise false.
      */
     @Override
-    public boolean onCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
         if (sender instanceof Player) {
             final Player player = (Player) sender;
             sender.sendMessage(ChatColor.GOLD + "" + player.getInventory().getStorageContents().length);
@@ -83,14 +90,18 @@ final class BuyCommand extends BaseCommand {
                 sender.sendMessage(ChatColor.RED + args[1] + " is not a number.");
                 return false;
             }
+            if (amount <= 0) {
+                sender.sendMessage(ChatColor.RED + "The amount must be greater than 0.");
+                return false;
+            }
             // Get defaultProduct and item
             final DefaultProduct defaultProduct = SpigotDefaultEconomy.stockPrices.get(args[0]);
             if (defaultProduct == null) {
                 sender.sendMessage(ChatColor.GOLD + "The price of `" + args[0] + "` has not been set yet.");
                 return true;
             }
-            final Material material = Material.getMaterial(defaultProduct.type);
-            if (material == null) {
+            final ProductItem productItem = ProductItemCache.get(defaultProduct);
+            if (productItem == null) {
                 // Send player message
                 sender.sendMessage(ChatColor.RED + "Invalid Item type.");
                 return true;
@@ -105,35 +116,89 @@ final class BuyCommand extends BaseCommand {
             }
             // Check if the plugin is not allowed to item drop
             if (!pluginInstance.getConfiguration().isAllowItemDrop()) {
-                final int itemsLeft = InventoryUtility.canInventoryHold(player.getInventory(), amount);
+                final int itemsLeft = InventoryUtility.canInventoryHold(player.getInventory(), productItem, amount);
                 if (itemsLeft > 0) {
                     sender.sendMessage(ChatColor.RED + "Your inventory can only hold a max of `" + (amount - itemsLeft) + "` items currently.");
                     return true;
                 }
             }
             // Get player returns and add to player account
-            double cost = DefaultEconomy.checkBuyCost(defaultProduct, amount);
-            final double playerBalance = pluginInstance.getEconomyService().getBalance(player);
-            if (playerBalance >= cost) {
+            // Use the price held by a matching quote if there is one
+            final String uuid = player.getUniqueId().toString();
+            final QuoteToken quoteToken = QuoteTokens.peek(uuid, defaultProduct.alias, amount);
+            long cost = quoteToken != null ? quoteToken.cost : QuoteCache.checkBuyCost(defaultProduct, amount);
+            if (cost == Money.INFINITE) {
+                sender.sendMessage(ChatColor.RED + "The market can not sell " + amount + " " + args[0] + " at once.");
+                return true;
+            }
+            final long playerBalance = Money.floor(pluginInstance.getEconomyService().getBalance(player));
+            final TradeCollector tradeCollector = pluginInstance.getTradeCollector();
+            if (quoteToken == null && tradeCollector != null && playerBalance >= cost) {
+                // Settle the buy with the other trades of this tick, the player can not pay more than their balance
+                tradeCollector.buy(defaultProduct, uuid, amount, playerBalance, (status, settledCost)->{
+                    if (status == TradeCollector.SETTLED) {
+                        // The collector reverts the buy if the player can not be charged
+                        if (!pluginInstance.getEconomyService().withdrawPlayer(player, Money.toDouble(settledCost))
+                                .transactionSuccess()) {
+                            sender.sendMessage(ChatColor.RED + "You do not have enough funds to buy this much.");
+                            return false;
+                        }
+                        sender.sendMessage(ChatColor.GREEN + "You received " + pluginInstance.decimalFormat.format(amount)
+                                + " " + args[0] + ".");
+                        final Map<Integer, ItemStack> leftOverItems = player.getInventory()
+                                .addItem(productItem.createItemStack(amount));
+                        leftOverItems.forEach((k, v)->player.getWorld().dropItem(player.getLocation(), v));
+                    } else if (status == TradeCollector.REJECTED) {
+                        sender.sendMessage(ChatColor.RED + "You do not have enough funds to buy this much.");
+                    } else {
+                        sender.sendMessage(ChatColor.RED + "Error buying item.");
+                    }
+                    return true;
+                });
+                return true;
+            } else if (playerBalance >= cost) {
+                // The quote is only used up by a buy which is about to be made
+                if (quoteToken != null && !QuoteTokens.redeem(quoteToken)) {
+                    sender.sendMessage(ChatColor.RED + "Your quote for " + args[0] + " is no longer held.");
+                    return true;
+                }
                 // Withdraw from player
+                final String jdbcUrl = pluginInstance.getConfiguration().getJdbcUrl();
+                final int[] changes = new int[2];
                 try {
-                    cost = DefaultEconomy.buy(defaultProduct, pluginInstance.getConfiguration().getJdbcUrl(),
-                            player.getUniqueId().toString(), amount);
+                    // The cost is checked again once the shared market state is loaded
+                    cost = quoteToken != null ? DefaultEconomy.buy(defaultProduct, jdbcUrl, uuid, quoteToken, changes) :
+                            DefaultEconomy.buy(defaultProduct, jdbcUrl, uuid, amount, playerBalance, changes);
                 } catch (SQLException e) {
                     pluginInstance.getLogger().log(Level.SEVERE, "Unable to access database.", e);
                     sender.sendMessage(ChatColor.RED + "Error buying item.");
                     return true;
                 }
-                pluginInstance.getEconomyService().withdrawPlayer(player, cost);
+                // The market changed since the quote and can no longer sell this many
+                if (cost == Money.INFINITE) {
+                    sender.sendMessage(ChatColor.RED + "The market can not sell " + amount + " " + args[0] + " at once.");
+                    return true;
+                }
+                // Another server raised the price past what the player can pay
+                if (cost > playerBalance) {
+                    sender.sendMessage(ChatColor.RED + "You do not have enough funds to buy this much.");
+                    return true;
+                }
+                // Undo the buy if the player can not be charged
+                if (!pluginInstance.getEconomyService().withdrawPlayer(player, Money.toDouble(cost)).transactionSuccess()) {
+                    try {
+                        DefaultEconomy.revertTrade(defaultProduct, jdbcUrl, uuid, SqlService.BUY_ACTION, amount, cost,
+                                changes[0], changes[1]);
+                    } catch (SQLException e) {
+                        pluginInstance.getLogger().log(Level.SEVERE, "Unable to access database.", e);
+                    }
+                    sender.sendMessage(ChatColor.RED + "You do not have enough funds to buy this much.");
+                    return true;
+                }
                 // Send player message
                 sender.sendMessage(ChatColor.GREEN + "You received " + pluginInstance.decimalFormat.format(amount) + " " + args[0] + ".");
-                // A note to all future and current maintainers; As of 7/27/2018 the bukkit / spigot api
-                // seems to be in a tentative state for creating items stacks with specific meta data.
-                // This could be because of the current state of the minecraft server 'api' which spigot
-                // is built on. Once a safer and non deprecated method becomes available this constructor
-                // should be removed in favor of said method.
                 final Map<Integer, ItemStack> leftOverItems = player.getInventory()
-                        .addItem(new ItemStack(material, amount, (short) 0, defaultProduct.unsafeData));
+                        .addItem(productItem.createItemStack(amount));
                 leftOverItems.forEach((k, v)->player.getWorld().dropItem(player.getLocation(), v));
                 return true;
             } else {
@@ -25,11 +25,16 @@ package net.reallifegames.sdeconomy.commands;
 
 import net.reallifegames.sdeconomy.DefaultEconomy;
 import net.reallifegames.sdeconomy.DefaultProduct;
+import net.reallifegames.sdeconomy.Money;
+import net.reallifegames.sdeconomy.QuoteCache;
+import net.reallifegames.sdeconomy.QuoteToken;
+import net.reallifegames.sdeconomy.QuoteTokens;
 import net.reallifegames.sdeconomy.SdEconomy;
 import net.reallifegames.sdeconomy.SpigotDefaultEconomy;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 
 import javax.annotation.Nonnull;
 
@@ -59,7 +64,7 @@ final class CheckBuyCommand extends BaseCommand {
      * @return true if a valid command, otherwise false.
      */
     @Override
-    public boolean onCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
         // Check item in hand if no arguments
         if (args.length < 2) {
             sender.sendMessage(ChatColor.RED + "You need to specify the item name and amount.");
@@ -72,13 +77,31 @@ final class CheckBuyCommand extends BaseCommand {
                 sender.sendMessage(ChatColor.RED + args[1] + " is not a number.");
                 return false;
             }
+            if (amount <= 0) {
+                sender.sendMessage(ChatColor.RED + "The amount must be greater than 0.");
+                return false;
+            }
             final DefaultProduct defaultProduct = SpigotDefaultEconomy.stockPrices.get(args[0]);
             if (defaultProduct == null) {
                 sender.sendMessage(ChatColor.GOLD + "The price of `" + args[0] + "` has not been set yet.");
                 return true;
             }
-            sender.sendMessage(ChatColor.GOLD + "It will cost " + pluginInstance.decimalFormat.format(DefaultEconomy.checkBuyCost(defaultProduct, amount)) + " "
+            final long cost = QuoteCache.checkBuyCost(defaultProduct, amount);
+            if (cost == Money.INFINITE) {
+                sender.sendMessage(ChatColor.GOLD + "The market can not sell " + amount + " '" + args[0] + "' at once.");
+                return true;
+            }
+            sender.sendMessage(ChatColor.GOLD + "It will cost " + pluginInstance.decimalFormat.format(Money.toDouble(cost)) + " "
                     + pluginInstance.getEconomyService().currencyNamePlural() + " to buy '" + args[0] + "'");
+            // Hold the quoted price for the player
+            if (sender instanceof Player && amount > 0) {
+                final QuoteToken quoteToken = QuoteTokens.issue(((Player) sender).getUniqueId().toString(),
+                        defaultProduct.alias, amount, cost);
+                if (quoteToken != null) {
+                    sender.sendMessage(ChatColor.GOLD + "This price is held for " + (QuoteTokens.getTimeToLive() / 1000) +
+                            " seconds if you buy the same amount.");
+                }
+            }
             return true;
         }
     }
@@ -59,7 +59,7 @@ final class CheckSellCommand extends BaseCommand {
      * @return true if a valid command, otherwise false.
      */
     @Override
-    public boolean onCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
         // Check item in hand if no arguments
         if (args.length == 0) {
             if (sender instanceof Player) {
@@ -74,9 +74,14 @@ final class CheckSellCommand extends BaseCommand {
                     sender.sendMessage(ChatColor.GOLD + "The price of `" + itemInHand.getType().name() + "` has not been set yet.");
                     return true;
                 }
+                final long returns = QuoteCache.checkSellReturns(defaultProduct, itemInHand.getAmount());
+                if (returns == Money.INFINITE) {
+                    sender.sendMessage(ChatColor.GOLD + "The market can not buy " + itemInHand.getAmount() + " '" +
+                            itemInHand.getType().name() + "' at once.");
+                    return true;
+                }
                 sender.sendMessage(ChatColor.GOLD + "You will receive " + pluginInstance.decimalFormat.format(
-                        DefaultEconomy.checkSellReturns(defaultProduct, itemInHand.getAmount())) + " " +
-                        pluginInstance.getEconomyService().currencyNamePlural() + ".");
+                        Money.toDouble(returns)) + " " + pluginInstance.getEconomyService().currencyNamePlural() + ".");
                 return true;
             } else {
                 sender.sendMessage(ChatColor.RED + "You must be a player to run this command with out any arguments.");
@@ -94,13 +99,22 @@ final class CheckSellCommand extends BaseCommand {
                 sender.sendMessage(ChatColor.RED + args[1] + " is not a number.");
                 return false;
             }
+            if (amount <= 0) {
+                sender.sendMessage(ChatColor.RED + "The amount must be greater than 0.");
+                return false;
+            }
             final DefaultProduct defaultProduct = SpigotDefaultEconomy.stockPrices.get(args[0]);
             if (defaultProduct == null) {
                 sender.sendMessage(ChatColor.GOLD + "The price of `" + args[0] + "` has not been set yet.");
                 return true;
             }
+            final long returns = QuoteCache.checkSellReturns(defaultProduct, amount);
+            if (returns == Money.INFINITE) {
+                sender.sendMessage(ChatColor.GOLD + "The market can not buy " + amount + " '" + args[0] + "' at once.");
+                return true;
+            }
             sender.sendMessage(ChatColor.GOLD + "You will receive " + pluginInstance.decimalFormat.format(
-                    DefaultEconomy.checkSellReturns(defaultProduct, amount)) + " " + pluginInstance.getEconomyService().currencyNamePlural() + ".");
+                    Money.toDouble(returns)) + " " + pluginInstance.getEconomyService().currencyNamePlural() + ".");
             return true;
         }
     }
@@ -42,6 +42,8 @@ public final class CommandRegistrar {
     public static void registerCommands(@Nonnull final SdEconomy sdEconomy) {
         // Set price command
         sdEconomy.getCommand("setprice").setExecutor(new SetPriceCommand(sdEconomy));
+        // Set model command
+        sdEconomy.getCommand("setmodel").setExecutor(new SetModelCommand(sdEconomy));
         // Remove price command
         sdEconomy.getCommand("removeprice").setExecutor(new RemovePriceCommand(sdEconomy));
         // Get price command
@@ -52,13 +54,19 @@ public final class CommandRegistrar {
         sdEconomy.getCommand("checkbuy").setExecutor(new CheckBuyCommand(sdEconomy));
         // Sell command
         sdEconomy.getCommand("sell").setExecutor(new SellCommand(sdEconomy));
+        // Sell all command
+        sdEconomy.getCommand("sellall").setExecutor(new SellAllCommand(sdEconomy));
         // Buy command
         sdEconomy.getCommand("buy").setExecutor(new BuyCommand(sdEconomy));
+        // Buy basket command
+        sdEconomy.getCommand("buybasket").setExecutor(new BuyBasketCommand(sdEconomy));
         // Transaction command
         sdEconomy.getCommand("transactions").setExecutor(new TransactionCommand(sdEconomy));
         // Version command
         sdEconomy.getCommand("sdversion").setExecutor(new GetVersionCommand(sdEconomy));
         // Sd items command
         sdEconomy.getCommand("sditems").setExecutor(new SdItemsCommand(sdEconomy));
+        // Sd metrics command
+        sdEconomy.getCommand("sdmetrics").setExecutor(new SdMetricsCommand(sdEconomy));
     }
 }
@@ -58,7 +58,7 @@ final class GetInfoCommand extends BaseCommand {
      * @return true if a valid command, otherwise false.
      */
     @Override
-    public boolean onCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
         // Check for arg length
         if (args.length != 1) {
             sender.sendMessage(ChatColor.RED + "You need to specify the item name.");
@@ -73,6 +73,8 @@ final class GetInfoCommand extends BaseCommand {
             sender.sendMessage(ChatColor.GOLD + "    alias: " + defaultProduct.alias);
             sender.sendMessage(ChatColor.GOLD + "    type: " + defaultProduct.type);
             sender.sendMessage(ChatColor.GOLD + "    unsafe data: " + defaultProduct.unsafeData);
+            sender.sendMessage(ChatColor.GOLD + "    pricing model: " + defaultProduct.pricingModel.getName());
+            sender.sendMessage(ChatColor.GOLD + "    liquidity: " + defaultProduct.liquidity);
             sender.sendMessage(ChatColor.GOLD + "    price: " + pluginInstance.decimalFormat.format(defaultProduct.getPrice()));
             sender.sendMessage(ChatColor.GOLD + "    calculated price: " + pluginInstance.decimalFormat.format(defaultProduct.getPrice() *
                     ((double) defaultProduct.demand / (double) defaultProduct.supply)));
@@ -56,7 +56,7 @@ final class GetVersionCommand extends BaseCommand {
      * @return true if a valid command, otherwise false.
      */
     @Override
-    public boolean onCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
         sender.sendMessage(ChatColor.GOLD + pluginInstance.getDescription().getVersion());
         return true;
     }
@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.commands;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The command rate limit of a permission group.
+ *
+ * @author Tyler Bucher
+ */
+public final class RateLimitGroup {
+
+    /**
+     * The name of the default group which applies to players without any group permission.
+     */
+    @Nonnull
+    public static final String DEFAULT_GROUP = "default";
+
+    /**
+     * The permission a player needs to be part of this group.
+     */
+    @Nonnull
+    public final String permission;
+
+    /**
+     * The maximum amount of commands a player can run in a burst. 0 or less disables the limit.
+     */
+    public final double capacity;
+
+    /**
+     * The amount of commands a player regains every second.
+     */
+    public final double refillPerSecond;
+
+    /**
+     * Creates a new rate limit group.
+     *
+     * @param name            the name of the group.
+     * @param capacity        the maximum amount of commands a player can run in a burst.
+     * @param refillPerSecond the amount of commands a player regains every second.
+     */
+    public RateLimitGroup(@Nonnull final String name, final double capacity, final double refillPerSecond) {
+        this.permission = "sdeconomy.ratelimit." + name;
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+    }
+}
@@ -23,13 +23,18 @@
  */
 package net.reallifegames.sdeconomy.commands;
 
+import net.reallifegames.sdeconomy.DefaultEconomy;
 import net.reallifegames.sdeconomy.DefaultProduct;
 import net.reallifegames.sdeconomy.SdEconomy;
 import net.reallifegames.sdeconomy.SpigotDefaultEconomy;
 import net.reallifegames.sdeconomy.SqlService;
+import net.reallifegames.sdeconomy.inventory.ItemListInventory;
+import net.reallifegames.sdeconomy.inventory.ProductItemCache;
+import net.reallifegames.sdeconomy.pipeline.MarketEvent;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 
 import javax.annotation.Nonnull;
 import java.sql.SQLException;
@@ -61,7 +66,7 @@ final class RemovePriceCommand extends BaseCommand {
      * @return true if a valid command, otherwise false.
      */
     @Override
-    public boolean onCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
         // Check for arg length
         if (args.length != 1) {
             sender.sendMessage(ChatColor.RED + "You need to specify the item name.");
@@ -74,13 +79,21 @@ final class RemovePriceCommand extends BaseCommand {
             sender.sendMessage(ChatColor.GOLD + "The price of `" + args[0] + "` has not been set yet.");
         } else {
             try {
-                SqlService.deleteItemFromSdPrices(pluginInstance.getConfiguration().getJdbcUrl(), args[0]);
+                final String jdbcUrl = pluginInstance.getConfiguration().getJdbcUrl();
+                SqlService.deleteItemFromSdPrices(jdbcUrl, args[0]);
+                pluginInstance.getProductChangeFeed().publish(jdbcUrl, SqlService.PRODUCT_REMOVED_ACTION, args[0]);
+                DefaultEconomy.logTransaction(jdbcUrl, sender instanceof Player ?
+                                ((Player) sender).getUniqueId().toString() : SqlService.SYSTEM_UUID,
+                        MarketEvent.REMOVE_ACTION, defaultProduct, 0, 0);
             } catch (SQLException e) {
                 pluginInstance.getLogger().log(Level.SEVERE, "Unable to access database.", e);
                 sender.sendMessage(ChatColor.RED + "Error removing item.");
                 return true;
             }
             SpigotDefaultEconomy.stockPrices.remove(args[0]);
+            // Update the item list pages
+            ProductItemCache.remove(args[0]);
+            ItemListInventory.removeProduct(pluginInstance, args[0]);
             sender.sendMessage(ChatColor.GOLD + "The item `" + args[0] + "` has been removed.");
         }
         return true;
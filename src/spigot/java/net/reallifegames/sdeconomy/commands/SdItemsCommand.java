@@ -24,7 +24,9 @@
 package net.reallifegames.sdeconomy.commands;
 
 import net.reallifegames.sdeconomy.SdEconomy;
+import net.reallifegames.sdeconomy.inventory.ItemListHolder;
 import net.reallifegames.sdeconomy.inventory.ItemListInventory;
+import net.reallifegames.sdeconomy.inventory.ItemListRefresher;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
@@ -58,12 +60,14 @@ final class SdItemsCommand extends BaseCommand {
      * @return true if a valid command, otherwise false.
      */
     @Override
-    public boolean onCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
         // Checks to see if the sender is a player
         if (sender instanceof Player) {
             final Player player = (Player) sender;
             // Opens the sd economy inventory
-            player.openInventory(ItemListInventory.createInventory());
+            final ItemListHolder holder = ItemListInventory.createHolder();
+            player.openInventory(holder.getInventory());
+            ItemListRefresher.showPage(holder, 0);
             return true;
         } else {
             sender.sendMessage(ChatColor.RED + "You must be a player to run this command.");
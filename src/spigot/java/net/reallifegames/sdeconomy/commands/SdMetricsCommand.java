@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.commands;
+
+import net.reallifegames.sdeconomy.SdEconomy;
+import net.reallifegames.sdeconomy.metrics.Metrics;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Shows the latency histograms and counters of the plugin.
+ *
+ * @author Tyler Bucher
+ */
+final class SdMetricsCommand extends BaseCommand {
+
+    /**
+     * Creates a new base command listener.
+     *
+     * @param pluginInstance the {@link SdEconomy} plugin instance.
+     */
+    public SdMetricsCommand(@Nonnull final SdEconomy pluginInstance) {
+        super(pluginInstance);
+    }
+
+    /**
+     * Executes the given command, returning its success.
+     *
+     * @param sender  source of the command.
+     * @param command command which was executed.
+     * @param label   alias of the command which was used.
+     * @param args    passed command arguments.
+     * @return true if a valid command, otherwise false.
+     */
+    @Override
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+        // Reset all metrics if requested
+        if (args.length == 1 && args[0].equalsIgnoreCase("reset")) {
+            Metrics.reset();
+            sender.sendMessage(ChatColor.GOLD + "Metrics have been reset.");
+            return true;
+        }
+        // Filter metrics by name prefix if one was passed
+        final String prefix = args.length == 0 ? "" : args[0].toLowerCase();
+        for (final String line : Metrics.report()) {
+            if (line.toLowerCase().startsWith(prefix)) {
+                sender.sendMessage(ChatColor.GOLD + line);
+            }
+        }
+        return true;
+    }
+}
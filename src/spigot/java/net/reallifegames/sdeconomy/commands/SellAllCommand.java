@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.commands;
+
+import net.reallifegames.sdeconomy.DefaultEconomy;
+import net.reallifegames.sdeconomy.DefaultProduct;
+import net.reallifegames.sdeconomy.Money;
+import net.reallifegames.sdeconomy.SdEconomy;
+import net.reallifegames.sdeconomy.SpigotDefaultEconomy;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+import javax.annotation.Nonnull;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Sells every sellable item in the inventory of a player to the server.
+ *
+ * @author Tyler Bucher
+ */
+final class SellAllCommand extends BaseCommand {
+
+    /**
+     * Creates a new base command listener.
+     *
+     * @param pluginInstance the {@link SdEconomy} plugin instance.
+     */
+    public SellAllCommand(@Nonnull final SdEconomy pluginInstance) {
+        super(pluginInstance);
+    }
+
+    /**
+     * Executes the given command, returning its success.
+     *
+     * @param sender  source of the command.
+     * @param command command which was executed.
+     * @param label   alias of the command which was used.
+     * @param args    passed command arguments.
+     * @return true if a valid command, otherwise false.
+     */
+    @Override
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+        if (sender instanceof Player) {
+            final Player player = (Player) sender;
+            // Check for arg length
+            if (args.length > 1) {
+                sender.sendMessage(ChatColor.RED + "You can only specify one item type.");
+                return false;
+            }
+            // Get the optional material filter
+            final Material filter;
+            if (args.length == 1) {
+                filter = Material.matchMaterial(args[0]);
+                if (filter == null) {
+                    sender.sendMessage(ChatColor.RED + "Invalid Item type.");
+                    return false;
+                }
+            } else {
+                filter = null;
+            }
+            // Group the inventory by product in one pass
+            final PlayerInventory playerInventory = player.getInventory();
+            final ItemStack[] storageContents = playerInventory.getStorageContents();
+            final Map<DefaultProduct, Integer> productIndexes = new IdentityHashMap<>();
+            final DefaultProduct[] defaultProducts = new DefaultProduct[storageContents.length];
+            final int[] amounts = new int[storageContents.length];
+            int productCount = 0;
+            int totalItems = 0;
+            for (int slot = 0; slot < storageContents.length; slot++) {
+                final ItemStack itemStack = storageContents[slot];
+                if (itemStack == null || itemStack.getType() == Material.AIR || (filter != null && itemStack.getType() != filter)) {
+                    continue;
+                }
+                final DefaultProduct defaultProduct = SpigotDefaultEconomy.getProductFromItemStack(itemStack);
+                if (defaultProduct == null) {
+                    continue;
+                }
+                Integer productIndex = productIndexes.get(defaultProduct);
+                if (productIndex == null) {
+                    productIndex = productCount++;
+                    productIndexes.put(defaultProduct, productIndex);
+                    defaultProducts[productIndex] = defaultProduct;
+                }
+                amounts[productIndex] += itemStack.getAmount();
+                totalItems += itemStack.getAmount();
+                // Remove the stack from the copy which is written back after the sale
+                storageContents[slot] = null;
+            }
+            if (productCount == 0) {
+                sender.sendMessage(ChatColor.RED + "You do not have any items which can be sold.");
+                return true;
+            }
+            // Get player returns and add to player account
+            final long returns;
+            try {
+                returns = DefaultEconomy.sellAll(defaultProducts, amounts, new long[productCount], productCount,
+                        pluginInstance.getConfiguration().getJdbcUrl(), player.getUniqueId().toString());
+            } catch (SQLException e) {
+                pluginInstance.getLogger().log(Level.SEVERE, "Unable to access database.", e);
+                sender.sendMessage(ChatColor.RED + "Error selling items.");
+                return true;
+            }
+            // The player keeps the items of a sale the market can not pay for
+            if (returns == Money.INFINITE) {
+                sender.sendMessage(ChatColor.RED + "The market can not buy this many of one of these items at once.");
+                return true;
+            }
+            pluginInstance.getEconomyService().depositPlayer(player, Money.toDouble(returns));
+            playerInventory.setStorageContents(storageContents);
+            // Send player message
+            sender.sendMessage(ChatColor.GREEN + "You sold " + totalItems + " items and received " +
+                    pluginInstance.decimalFormat.format(Money.toDouble(returns)) + " " + pluginInstance.getEconomyService().currencyNamePlural() + ".");
+            return true;
+        } else {
+            sender.sendMessage(ChatColor.RED + "You must be a player to run this command.");
+            return false;
+        }
+    }
+}
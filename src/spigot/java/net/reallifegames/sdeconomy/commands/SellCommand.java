@@ -25,8 +25,10 @@ package net.reallifegames.sdeconomy.commands;
 
 import net.reallifegames.sdeconomy.DefaultEconomy;
 import net.reallifegames.sdeconomy.DefaultProduct;
+import net.reallifegames.sdeconomy.Money;
 import net.reallifegames.sdeconomy.SdEconomy;
 import net.reallifegames.sdeconomy.SpigotDefaultEconomy;
+import net.reallifegames.sdeconomy.TradeCollector;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.command.Command;
@@ -36,6 +38,7 @@ import org.bukkit.inventory.ItemStack;
 
 import javax.annotation.Nonnull;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.logging.Level;
 
 /**
@@ -64,7 +67,7 @@ final class SellCommand extends BaseCommand {
      * @return true if a valid command, otherwise false.
      */
     @Override
-    public boolean onCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
         if (sender instanceof Player) {
             final Player player = (Player) sender;
             // Get defaultProduct and item
@@ -78,8 +81,34 @@ final class SellCommand extends BaseCommand {
                 sender.sendMessage(ChatColor.RED + "Error selling item.");
                 return true;
             }
+            // Settle the sale with the other trades of this tick if trades are batched
+            final TradeCollector tradeCollector = pluginInstance.getTradeCollector();
+            if (tradeCollector != null) {
+                final ItemStack soldItems = itemInHand.clone();
+                player.getInventory().getItemInMainHand().setAmount(0);
+                tradeCollector.sell(defaultProduct, player.getUniqueId().toString(), soldItems.getAmount(),
+                        (status, returns)->{
+                            // The collector reverts the sale if the player can not be paid
+                            if (status == TradeCollector.SETTLED && pluginInstance.getEconomyService()
+                                    .depositPlayer(player, Money.toDouble(returns)).transactionSuccess()) {
+                                sender.sendMessage(ChatColor.GREEN + "You received " +
+                                        pluginInstance.decimalFormat.format(Money.toDouble(returns)) + " " +
+                                        pluginInstance.getEconomyService().currencyNamePlural() + ".");
+                                return true;
+                            } else {
+                                // Give the items back
+                                final Map<Integer, ItemStack> leftOverItems = player.getInventory().addItem(soldItems);
+                                leftOverItems.forEach((k, v)->player.getWorld().dropItem(player.getLocation(), v));
+                                sender.sendMessage(ChatColor.RED + (status == TradeCollector.REJECTED ?
+                                        "The market can not buy " + soldItems.getAmount() + " of this item at once." :
+                                        "Error selling item."));
+                                return status != TradeCollector.SETTLED;
+                            }
+                        });
+                return true;
+            }
             // Get player returns and add to player account
-            final double returns;
+            final long returns;
             try {
                 returns = DefaultEconomy.sell(defaultProduct, pluginInstance.getConfiguration().getJdbcUrl(),
                         player.getUniqueId().toString(), itemInHand.getAmount());
@@ -88,9 +117,15 @@ final class SellCommand extends BaseCommand {
                 sender.sendMessage(ChatColor.RED + "Error selling item.");
                 return true;
             }
-            pluginInstance.getEconomyService().depositPlayer(player, returns);
+            // The player keeps the items of a sale the market can not pay for
+            if (returns == Money.INFINITE) {
+                sender.sendMessage(ChatColor.RED + "The market can not buy " + itemInHand.getAmount() +
+                        " of this item at once.");
+                return true;
+            }
+            pluginInstance.getEconomyService().depositPlayer(player, Money.toDouble(returns));
             // Send player message
-            sender.sendMessage(ChatColor.GREEN + "You received " + pluginInstance.decimalFormat.format(returns) + " "
+            sender.sendMessage(ChatColor.GREEN + "You received " + pluginInstance.decimalFormat.format(Money.toDouble(returns)) + " "
                     + pluginInstance.getEconomyService().currencyNamePlural() + ".");
             player.getInventory().getItemInMainHand().setAmount(0);
             return true;
@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.commands;
+
+import net.reallifegames.sdeconomy.*;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import javax.annotation.Nonnull;
+import java.sql.SQLException;
+import java.util.logging.Level;
+
+/**
+ * Attempts to set the pricing model and optionally the liquidity of an item.
+ *
+ * @author Tyler Bucher
+ */
+final class SetModelCommand extends BaseCommand {
+
+    /**
+     * Creates a new base command listener.
+     *
+     * @param pluginInstance the {@link SdEconomy} plugin instance.
+     */
+    public SetModelCommand(@Nonnull final SdEconomy pluginInstance) {
+        super(pluginInstance);
+    }
+
+    /**
+     * Executes the command, returning its success.
+     *
+     * @param sender       source object which is executing this command.
+     * @param commandLabel the alias of the command used.
+     * @param args         all arguments passed to the command, split via ' '.
+     * @return true if the command was successful, otherwise false.
+     */
+    @Override
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String commandLabel, final String[] args) {
+        // Check for arg length
+        if (args.length != 2 && args.length != 3) {
+            sender.sendMessage(ChatColor.RED + "You need to specify the product name and pricing model.");
+            return false;
+        }
+        // Get liquidity
+        final float liquidity;
+        try {
+            liquidity = args.length == 3 ? Float.parseFloat(args[2]) : Float.NaN;
+        } catch (NumberFormatException e) {
+            sender.sendMessage(ChatColor.RED + args[2] + " is not a number.");
+            return false;
+        }
+        if (liquidity <= 0) {
+            sender.sendMessage(ChatColor.RED + "The liquidity must be greater than 0.");
+            return false;
+        }
+        final DefaultProduct defaultProduct = SpigotDefaultEconomy.stockPrices.get(args[0].toLowerCase());
+        if (defaultProduct == null) {
+            sender.sendMessage(ChatColor.RED + "The product `" + args[0] + "` does not exist.");
+            return true;
+        }
+        final PricingModel pricingModel = Economies.getPricingModel(args[1].toLowerCase());
+        if (pricingModel == null) {
+            sender.sendMessage(ChatColor.RED + "The pricing model `" + args[1] + "` does not exist.");
+            return false;
+        }
+        final String jdbcUrl = pluginInstance.getConfiguration().getJdbcUrl();
+        try {
+            // The stored row must hold the new model before the change is published
+            DefaultEconomy.setPricingModelNoSql(defaultProduct, pricingModel);
+            if (!Float.isNaN(liquidity)) {
+                DefaultEconomy.setLiquidityNoSql(defaultProduct, liquidity);
+            }
+            DefaultEconomy.saveProduct(defaultProduct, jdbcUrl);
+            pluginInstance.getProductChangeFeed().publish(jdbcUrl, SqlService.PRODUCT_CHANGED_ACTION, defaultProduct.alias);
+        } catch (SQLException e) {
+            pluginInstance.getLogger().log(Level.SEVERE, "Unable to access database.", e);
+            sender.sendMessage(ChatColor.RED + "Error setting item pricing model.");
+            return true;
+        }
+        sender.sendMessage(ChatColor.GREEN + "The pricing model of `" + defaultProduct.alias + "` has been set to " +
+                pricingModel.getName());
+        return true;
+    }
+}
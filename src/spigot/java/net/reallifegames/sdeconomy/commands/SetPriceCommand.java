@@ -24,6 +24,8 @@
 package net.reallifegames.sdeconomy.commands;
 
 import net.reallifegames.sdeconomy.*;
+import net.reallifegames.sdeconomy.inventory.ItemListInventory;
+import net.reallifegames.sdeconomy.inventory.ProductItemCache;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.command.Command;
@@ -59,7 +61,7 @@ final class SetPriceCommand extends BaseCommand {
      * @return true if the command was successful, otherwise false.
      */
     @Override
-    public boolean onCommand(final CommandSender sender, final Command command, final String commandLabel, final String[] args) {
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String commandLabel, final String[] args) {
         if (sender instanceof Player) {
             final Player player = (Player) sender;
             // Check for arg length
@@ -94,16 +96,30 @@ final class SetPriceCommand extends BaseCommand {
             final String jdbcUrl = pluginInstance.getConfiguration().getJdbcUrl();
             final DefaultProduct defaultProduct = SpigotDefaultEconomy.stockPrices.computeIfAbsent(args[0],
                     k->new DefaultProduct(args[0], itemTypeInfo[0]));
+            // Only resolve the product item again if it is new or its item changed
+            final boolean itemChanged = ProductItemCache.get(defaultProduct) == null ||
+                    !defaultProduct.type.equals(itemTypeInfo[0]) || defaultProduct.unsafeData != unsafeData;
             defaultProduct.type = itemTypeInfo[0];
             defaultProduct.unsafeData = unsafeData;
+            if (itemChanged) {
+                ProductItemCache.update(defaultProduct);
+            }
             try {
-                SqlService.updateDefaultProduct(jdbcUrl, defaultProduct);
-                DefaultEconomy.setPrice(defaultProduct, jdbcUrl, player.getUniqueId().toString(), price);
+                // The stored row must hold the new price before the change is published
+                DefaultEconomy.setPriceNoSql(defaultProduct, price);
+                DefaultEconomy.saveProduct(defaultProduct, jdbcUrl);
+                DefaultEconomy.logTransaction(jdbcUrl, player.getUniqueId().toString(), SqlService.SET_PRICE_ACTION,
+                        defaultProduct, price, 0);
+                pluginInstance.getProductChangeFeed().publish(jdbcUrl, SqlService.PRODUCT_CHANGED_ACTION, defaultProduct.alias);
             } catch (SQLException e) {
                 pluginInstance.getLogger().log(Level.SEVERE, "Unable to access database.", e);
                 sender.sendMessage(ChatColor.RED + "Error setting item price.");
                 return true;
             }
+            // Update the item list pages
+            if (itemChanged) {
+                ItemListInventory.addProduct(pluginInstance, defaultProduct);
+            }
             sender.sendMessage(ChatColor.GREEN + "The price of `" + args[0] + "` has been set to " +
                     pluginInstance.decimalFormat.format(defaultProduct.getPrice()));
             return true;
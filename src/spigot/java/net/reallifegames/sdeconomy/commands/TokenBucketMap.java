@@ -0,0 +1,172 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.commands;
+
+/**
+ * An open addressing map from player uuid to a token bucket, stored in parallel primitive arrays. Buckets which have
+ * refilled completely are equivalent to missing buckets and are dropped whenever the map grows. Not thread safe.
+ *
+ * @author Tyler Bucher
+ */
+final class TokenBucketMap {
+
+    /**
+     * The initial amount of slots, must be a power of two.
+     */
+    private static final int INITIAL_SLOTS = 64;
+
+    /**
+     * The most significant bits of the uuid in each slot.
+     */
+    private long[] mostSigBits = new long[INITIAL_SLOTS];
+
+    /**
+     * The least significant bits of the uuid in each slot.
+     */
+    private long[] leastSigBits = new long[INITIAL_SLOTS];
+
+    /**
+     * The tokens left in each slot.
+     */
+    private double[] tokens = new double[INITIAL_SLOTS];
+
+    /**
+     * The time in nanoseconds each slot was last refilled.
+     */
+    private long[] lastRefill = new long[INITIAL_SLOTS];
+
+    /**
+     * The time in nanoseconds at which each slot is completely refilled.
+     */
+    private long[] fullAt = new long[INITIAL_SLOTS];
+
+    /**
+     * States if each slot is in use.
+     */
+    private boolean[] used = new boolean[INITIAL_SLOTS];
+
+    /**
+     * The amount of slots in use.
+     */
+    private int size = 0;
+
+    /**
+     * Takes one token from the bucket of a player.
+     *
+     * @param mostSig         the most significant bits of the player uuid.
+     * @param leastSig        the least significant bits of the player uuid.
+     * @param capacity        the maximum amount of tokens in the bucket.
+     * @param refillPerSecond the amount of tokens added to the bucket every second.
+     * @param now             the current time in nanoseconds.
+     * @return true if a token was taken, false if the bucket is empty.
+     */
+    boolean tryAcquire(final long mostSig, final long leastSig, final double capacity, final double refillPerSecond,
+                       final long now) {
+        int slot = findSlot(mostSig, leastSig);
+        if (!used[slot]) {
+            // Keep the load factor at or below one half
+            if ((size + 1) * 2 > used.length) {
+                resize(now);
+                slot = findSlot(mostSig, leastSig);
+            }
+            used[slot] = true;
+            mostSigBits[slot] = mostSig;
+            leastSigBits[slot] = leastSig;
+            tokens[slot] = capacity;
+            lastRefill[slot] = now;
+            size++;
+        }
+        // Refill the bucket for the time passed
+        double currentTokens = Math.min(capacity, tokens[slot] + (now - lastRefill[slot]) * refillPerSecond / 1e9);
+        lastRefill[slot] = now;
+        final boolean acquired = currentTokens >= 1;
+        if (acquired) {
+            currentTokens -= 1;
+        }
+        tokens[slot] = currentTokens;
+        final double nanosUntilFull = refillPerSecond > 0 ? (capacity - currentTokens) / refillPerSecond * 1e9 : Double.MAX_VALUE;
+        fullAt[slot] = nanosUntilFull < Long.MAX_VALUE - now ? now + (long) nanosUntilFull : Long.MAX_VALUE;
+        return acquired;
+    }
+
+    /**
+     * Finds the slot of a uuid or the empty slot where it would be inserted.
+     *
+     * @param mostSig  the most significant bits of the uuid.
+     * @param leastSig the least significant bits of the uuid.
+     * @return the slot index.
+     */
+    private int findSlot(final long mostSig, final long leastSig) {
+        final int mask = used.length - 1;
+        final long hash = (mostSig ^ leastSig) * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (used[slot] && (mostSigBits[slot] != mostSig || leastSigBits[slot] != leastSig)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Rebuilds the arrays without the buckets which are full again, doubling their size if needed.
+     *
+     * @param now the current time in nanoseconds.
+     */
+    private void resize(final long now) {
+        final long[] oldMostSigBits = mostSigBits;
+        final long[] oldLeastSigBits = leastSigBits;
+        final double[] oldTokens = tokens;
+        final long[] oldLastRefill = lastRefill;
+        final long[] oldFullAt = fullAt;
+        final boolean[] oldUsed = used;
+        int liveBuckets = 0;
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i] && oldFullAt[i] - now > 0) {
+                liveBuckets++;
+            }
+        }
+        int slots = oldUsed.length;
+        while ((liveBuckets + 1) * 2 > slots / 2 && slots < (1 << 30)) {
+            slots <<= 1;
+        }
+        mostSigBits = new long[slots];
+        leastSigBits = new long[slots];
+        tokens = new double[slots];
+        lastRefill = new long[slots];
+        fullAt = new long[slots];
+        used = new boolean[slots];
+        size = 0;
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i] && oldFullAt[i] - now > 0) {
+                final int slot = findSlot(oldMostSigBits[i], oldLeastSigBits[i]);
+                used[slot] = true;
+                mostSigBits[slot] = oldMostSigBits[i];
+                leastSigBits[slot] = oldLeastSigBits[i];
+                tokens[slot] = oldTokens[i];
+                lastRefill[slot] = oldLastRefill[i];
+                fullAt[slot] = oldFullAt[i];
+                size++;
+            }
+        }
+    }
+}
@@ -65,7 +65,7 @@ final class TransactionCommand extends BaseCommand {
      * @return true if a valid command, otherwise false.
      */
     @Override
-    public boolean onCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+    protected boolean executeCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
         // Check for arg length
         if (args.length < 1) {
             sender.sendMessage(ChatColor.RED + "You need to specify the player name or and the page number.");
@@ -23,13 +23,18 @@
  */
 package net.reallifegames.sdeconomy.inventory;
 
+import net.reallifegames.sdeconomy.DefaultEconomy;
+import net.reallifegames.sdeconomy.DefaultProduct;
+import net.reallifegames.sdeconomy.Money;
+import net.reallifegames.sdeconomy.QuoteCache;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 import javax.annotation.Nonnull;
-import java.util.Collections;
+import java.text.DecimalFormat;
+import java.util.Arrays;
 
 /**
  * Represents a page in an inventory.
@@ -38,6 +43,41 @@ import java.util.Collections;
  */
 public class InventoryPage {
 
+    /**
+     * The amount of product slots on every page. The last row is reserved for the page books.
+     */
+    public static final int PRODUCT_SLOTS = 45;
+
+    /**
+     * The slot of the back page book.
+     */
+    public static final int BACK_SLOT = 45;
+
+    /**
+     * The slot of the next page book.
+     */
+    public static final int NEXT_SLOT = 53;
+
+    /**
+     * The slot action of slots which do nothing when clicked.
+     */
+    public static final byte NO_ACTION = 0;
+
+    /**
+     * The slot action of slots holding a product.
+     */
+    public static final byte PRODUCT_ACTION = 1;
+
+    /**
+     * The slot action of the next page book.
+     */
+    public static final byte NEXT_PAGE_ACTION = 2;
+
+    /**
+     * The slot action of the back page book.
+     */
+    public static final byte BACK_PAGE_ACTION = 3;
+
     /**
      * The item to go to the next page.
      */
@@ -68,91 +108,141 @@ public class InventoryPage {
     private final ItemStack[] items = new ItemStack[54];
 
     /**
-     * The current insert index.
+     * The action of each slot on this page.
      */
-    private int currentIndex = 0;
+    private final byte[] slotActions = new byte[54];
 
     /**
-     * States if this page is the root node.
+     * The product alias shown in each product slot.
      */
-    private final boolean rootNode;
+    private final String[] productAliases = new String[PRODUCT_SLOTS];
 
     /**
-     * The index of this page node.
+     * The product item without price lore for each product slot.
      */
-    private final int pageIndex;
+    private final ItemStack[] productTemplates = new ItemStack[PRODUCT_SLOTS];
+
+    /**
+     * The buy price last rendered into each product slot.
+     */
+    private final long[] renderedBuyPrices = new long[PRODUCT_SLOTS];
 
     /**
-     * The next page node if available.
+     * The sell price last rendered into each product slot.
      */
-    public InventoryPage nextPageNode;
+    private final long[] renderedSellPrices = new long[PRODUCT_SLOTS];
 
     /**
-     * Creates a new inventory page node.
+     * The index of this page.
+     */
+    private final int pageIndex;
+
+    /**
+     * Creates a new inventory page.
      *
-     * @param rootNode  states if this page is the root node.
-     * @param pageIndex the index of this page node.
+     * @param pageIndex   the index of this page.
+     * @param hasNextPage states if there is a page after this one.
      */
-    public InventoryPage(final boolean rootNode, final int pageIndex) {
-        // Sets default variables
-        this.rootNode = rootNode;
+    public InventoryPage(final int pageIndex, final boolean hasNextPage) {
         this.pageIndex = pageIndex;
-        // Add back book if this node is not the root node
-        if (!rootNode) {
-            // Create a clone of the book
-            final ItemStack backBookClone = backBook.clone();
-            // Setup item meta
-            final ItemMeta backBookCloneMeta = backBookClone.getItemMeta();
-            backBookCloneMeta.setLore(Collections.singletonList("index:" + (pageIndex - 1)));
-            backBookClone.setItemMeta(backBookCloneMeta);
-            // Sets the item in the inventory
-            items[45] = backBookClone;
+        // Nothing has been rendered yet
+        Arrays.fill(renderedBuyPrices, DefaultEconomy.NO_QUOTE);
+        Arrays.fill(renderedSellPrices, DefaultEconomy.NO_QUOTE);
+        // Add back book if this page is not the first page
+        if (pageIndex > 0) {
+            items[BACK_SLOT] = backBook;
+            slotActions[BACK_SLOT] = BACK_PAGE_ACTION;
+        }
+        // Add next book if there is another page
+        if (hasNextPage) {
+            items[NEXT_SLOT] = nextBook;
+            slotActions[NEXT_SLOT] = NEXT_PAGE_ACTION;
         }
     }
 
     /**
-     * Adds an item the this node. If this node is full it will create a new node and add it to that node.
+     * Sets a product item on this page.
      *
-     * @param item the item to add to a node.
-     */
-    public void addItem(@Nonnull final ItemStack item) {
-        // Add item to this node if current index is null
-        if (items[currentIndex] == null) {
-            items[currentIndex] = item;
-            // Add bounds checking to prevent ArrayIndexOutOfBoundsException
-            if (currentIndex < 53) {
-                currentIndex++;
-                // Increase the index again if there is a back book item and the current index is 43
-                if (!rootNode && currentIndex == 45) {
-                    currentIndex++;
-                }
+     * @param slot  the product slot between 0 and {@link #PRODUCT_SLOTS} exclusive.
+     * @param alias the alias of the product.
+     * @param item  the product item without price lore.
+     */
+    void setProductItem(final int slot, @Nonnull final String alias, @Nonnull final ItemStack item) {
+        items[slot] = item;
+        slotActions[slot] = PRODUCT_ACTION;
+        productAliases[slot] = alias;
+        productTemplates[slot] = item;
+    }
+
+    /**
+     * Updates the price lore of every product whose buy or sell price for one item changed since it was last
+     * rendered. Must be called from the main thread.
+     *
+     * @param decimalFormat the format to display prices with.
+     * @param changedSlots  receives the slots which were updated, must hold at least {@link #PRODUCT_SLOTS} entries.
+     * @return the amount of slots written to changedSlots.
+     */
+    int renderPrices(@Nonnull final DecimalFormat decimalFormat, @Nonnull final int[] changedSlots) {
+        int changedCount = 0;
+        for (int slot = 0; slot < PRODUCT_SLOTS; slot++) {
+            if (productAliases[slot] == null) {
+                continue;
             }
-        } else {
-            // If there the next node does not exist create it
-            if (nextPageNode == null) {
-                // Create the next node
-                nextPageNode = new InventoryPage(false, pageIndex + 1);
-                // Add item where next page book will go
-                nextPageNode.addItem(items[53]);
-                // Create a clone of the book
-                final ItemStack nextBookClone = nextBook.clone();
-                // Setup item meta
-                final ItemMeta nextBookCloneMeta = nextBookClone.getItemMeta();
-                nextBookCloneMeta.setLore(Collections.singletonList("index:" + (pageIndex + 1)));
-                nextBookClone.setItemMeta(nextBookCloneMeta);
-                // Sets the item in the inventory
-                items[53] = nextBookClone;
-                // Add item to new node
-                nextPageNode.addItem(item);
-            } else {
-                // Add item to the next node
-                this.nextPageNode.addItem(item);
+            // The product may have been removed before this page was rebuilt
+            final DefaultProduct defaultProduct = DefaultEconomy.stockPrices.get(productAliases[slot]);
+            if (defaultProduct == null) {
+                continue;
             }
+            final long buyPrice = QuoteCache.checkBuyCost(defaultProduct, 1);
+            final long sellPrice = QuoteCache.checkSellReturns(defaultProduct, 1);
+            if (buyPrice == renderedBuyPrices[slot] && sellPrice == renderedSellPrices[slot]) {
+                continue;
+            }
+            renderedBuyPrices[slot] = buyPrice;
+            renderedSellPrices[slot] = sellPrice;
+            // Create a new item so item stacks already sent to players are never modified
+            final ItemStack item = productTemplates[slot].clone();
+            final ItemMeta itemMeta = item.getItemMeta();
+            itemMeta.setLore(Arrays.asList(
+                    ChatColor.GREEN + "Buy price: " + decimalFormat.format(Money.toDouble(buyPrice)),
+                    ChatColor.GOLD + "Sell price: " + decimalFormat.format(Money.toDouble(sellPrice))));
+            item.setItemMeta(itemMeta);
+            items[slot] = item;
+            changedSlots[changedCount++] = slot;
         }
+        return changedCount;
+    }
+
+    /**
+     * @return the index of this page.
+     */
+    public int getPageIndex() {
+        return pageIndex;
+    }
+
+    /**
+     * Returns the action of a slot.
+     *
+     * @param slot the slot to get the action of.
+     * @return one of {@link #NO_ACTION}, {@link #PRODUCT_ACTION}, {@link #NEXT_PAGE_ACTION} or {@link
+     * #BACK_PAGE_ACTION}.
+     */
+    public byte getSlotAction(final int slot) {
+        return slotActions[slot];
+    }
+
+    /**
+     * Returns the alias of the product in a slot.
+     *
+     * @param slot a slot with the {@link #PRODUCT_ACTION} action.
+     * @return the alias of the product.
+     */
+    public String getProductAlias(final int slot) {
+        return productAliases[slot];
     }
 
     /**
-     * @return the items of this node.
+     * @return the items of this page.
      */
     public ItemStack[] getItems() {
         return items;
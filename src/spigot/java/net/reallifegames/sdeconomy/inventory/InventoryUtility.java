@@ -27,13 +27,9 @@ import net.reallifegames.sdeconomy.DefaultProduct;
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
-import org.bukkit.inventory.meta.ItemMeta;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Comparator;
-import java.util.List;
+import javax.annotation.Nullable;
 
 /**
  * Contains utility functions for spigot inventorys.
@@ -43,59 +39,90 @@ import java.util.List;
 public class InventoryUtility {
 
     /**
-     * Checks to see if a inventory can hold the total amount of items.
+     * Checks to see if a inventory can hold the total amount of items of a product. Empty slots and partial stacks of
+     * the same item are both counted using the real max stack size of the product.
      *
      * @param playerInventory the inventory to check.
+     * @param productItem     the item to add.
      * @param totalItems      the amount of items to add.
-     * @return true if there are less then 0 items left.
+     * @return the amount of items which would not fit, 0 or less if all items fit.
      */
-    public static int canInventoryHold(@Nonnull final PlayerInventory playerInventory, final int totalItems) {
-        // Current list of items to remove
+    public static int canInventoryHold(@Nonnull final PlayerInventory playerInventory, @Nonnull final ProductItem productItem,
+                                       final int totalItems) {
+        // Current list of items to add
         int itemsLeft = totalItems;
-        final int maxStackSize = playerInventory.getMaxStackSize();
-        // Check to see if all itemsLeft can be removed
+        final int maxStackSize = getMaxStackSize(playerInventory, productItem);
         for (ItemStack itemStack : playerInventory.getStorageContents()) {
-            if (itemStack == null) {
+            if (itemsLeft <= 0) {
+                break;
+            }
+            if (itemStack == null || itemStack.getType() == Material.AIR) {
                 itemsLeft -= maxStackSize;
+            } else if (productItem.isSimilar(itemStack)) {
+                itemsLeft -= Math.max(0, maxStackSize - itemStack.getAmount());
             }
         }
-        // If there are less then 0 left than return true
         return itemsLeft;
     }
 
     /**
-     * Creates a item stack array with item meta from a list of defaultProducts.
+     * Checks to see if a inventory can hold all items of several products at once. Partial stacks are filled first and
+     * the remaining items of every product share the empty slots.
      *
-     * @param defaultProducts the list of defaultProducts to create a item stack array from.
-     * @return the create item stack array.
+     * @param playerInventory the inventory to check.
+     * @param productItems    the items to add, each item may only be listed once.
+     * @param amounts         the amount to add of each item.
+     * @param length          the amount of items to check.
+     * @return the amount of slots missing, 0 or less if all items fit.
      */
-    public static ItemStack[] getItemStacksFromProducts(@Nonnull final Collection<DefaultProduct> defaultProducts) {
-        final List<DefaultProduct> sortedDefaultProducts = new ArrayList<>(defaultProducts);
-        sortedDefaultProducts.sort(Comparator.comparing(o->o.alias));
-        // Create item stack array
-        final ItemStack[] itemStacks = new ItemStack[sortedDefaultProducts.size()];
-        // item stack index counter
-        int itemStackIndex = 0;
-        for (DefaultProduct defaultProduct : sortedDefaultProducts) {
-            // Get defaultProduct material type
-            final Material material = Material.getMaterial(defaultProduct.type);
-            if (material != null) {
-                // Create item stack
-                // A note to all future and current maintainers; As of 7/27/2018 the bukkit / spigot api
-                // seems to be in a tentative state for creating items stacks with specific meta data.
-                // This could be because of the current state of the minecraft server 'api' which spigot
-                // is built on. Once a safer and non deprecated method becomes available this constructor
-                // should be removed in favor of said method.
-                final ItemStack itemStack = new ItemStack(material, 1, (short) 0, defaultProduct.unsafeData);
-                // Get item stack meta
-                final ItemMeta itemStackMeta = itemStack.getItemMeta();
-                // Set item meta information
-                itemStackMeta.setDisplayName(defaultProduct.alias);
-                itemStack.setItemMeta(itemStackMeta);
-                // Add item to item stack array
-                itemStacks[itemStackIndex++] = itemStack;
+    public static int canInventoryHold(@Nonnull final PlayerInventory playerInventory, @Nonnull final ProductItem[] productItems,
+                                       @Nonnull final int[] amounts, final int length) {
+        final int[] itemsLeft = new int[length];
+        System.arraycopy(amounts, 0, itemsLeft, 0, length);
+        int emptySlots = 0;
+        for (ItemStack itemStack : playerInventory.getStorageContents()) {
+            if (itemStack == null || itemStack.getType() == Material.AIR) {
+                emptySlots++;
+                continue;
+            }
+            for (int i = 0; i < length; i++) {
+                if (itemsLeft[i] > 0 && productItems[i].isSimilar(itemStack)) {
+                    itemsLeft[i] -= Math.max(0, getMaxStackSize(playerInventory, productItems[i]) - itemStack.getAmount());
+                    break;
+                }
             }
         }
-        return itemStacks;
+        // Count the empty slots needed for the items which did not fit into partial stacks
+        int slotsNeeded = 0;
+        for (int i = 0; i < length; i++) {
+            if (itemsLeft[i] > 0) {
+                final int maxStackSize = getMaxStackSize(playerInventory, productItems[i]);
+                slotsNeeded += (itemsLeft[i] + maxStackSize - 1) / maxStackSize;
+            }
+        }
+        return slotsNeeded - emptySlots;
+    }
+
+    /**
+     * Returns the amount of a product a single slot of an inventory can hold.
+     *
+     * @param playerInventory the inventory to check.
+     * @param productItem     the item to check.
+     * @return the max stack size of the item in the inventory.
+     */
+    private static int getMaxStackSize(@Nonnull final PlayerInventory playerInventory, @Nonnull final ProductItem productItem) {
+        return Math.max(1, Math.min(productItem.getMaxStackSize(), playerInventory.getMaxStackSize()));
+    }
+
+    /**
+     * Creates a item stack with item meta from a defaultProduct.
+     *
+     * @param defaultProduct the defaultProduct to create a item stack from.
+     * @return the created item stack or null if the product material does not exist.
+     */
+    @Nullable
+    public static ItemStack getItemStackFromProduct(@Nonnull final DefaultProduct defaultProduct) {
+        final ProductItem productItem = ProductItemCache.get(defaultProduct);
+        return productItem == null ? null : productItem.createDisplayItemStack();
     }
 }
@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.inventory;
+
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+
+/**
+ * Identifies an item list inventory and tracks the page shown in it.
+ *
+ * @author Tyler Bucher
+ */
+public final class ItemListHolder implements InventoryHolder {
+
+    /**
+     * The item list inventory.
+     */
+    private Inventory inventory;
+
+    /**
+     * The page shown in the inventory.
+     */
+    private InventoryPage page;
+
+    /**
+     * Sets the inventory held by this holder.
+     *
+     * @param inventory the item list inventory.
+     */
+    void setInventory(final Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    /**
+     * @return the item list inventory.
+     */
+    @Override
+    public Inventory getInventory() {
+        return inventory;
+    }
+
+    /**
+     * Sets the page shown in the inventory.
+     *
+     * @param page the shown page.
+     */
+    void setPage(final InventoryPage page) {
+        this.page = page;
+    }
+
+    /**
+     * @return the page shown in the inventory.
+     */
+    public InventoryPage getPage() {
+        return page;
+    }
+}
@@ -23,68 +23,214 @@
  */
 package net.reallifegames.sdeconomy.inventory;
 
+import net.reallifegames.sdeconomy.DefaultProduct;
 import org.bukkit.Bukkit;
-import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * Holds data and functions related to the item list inventory.
+ * <p>
+ * Products are kept in a catalog sorted by alias and laid out on fixed pages of {@link InventoryPage#PRODUCT_SLOTS}
+ * products each, so the product at catalog position {@code i} is always on page {@code i / PRODUCT_SLOTS}. Catalog
+ * changes are applied in order on the calling thread, while the affected pages are rebuilt asynchronously and
+ * published by swapping the page array. Pages before the first changed position are reused as is.
  *
  * @author Tyler Bucher
  */
 public final class ItemListInventory {
 
     /**
-     * The root inventory page node.
+     * The name of SdEconomy inventory's.
      */
     @Nonnull
-    private static final InventoryPage rootPageNode = new InventoryPage(true, 0);
+    public static final String INVENTORY_NAME = "SdEconomy Item List";
 
     /**
-     * The name of SdEconomy inventory's.
+     * Marks that no catalog position has changed since the last page rebuild.
+     */
+    private static final int NOT_DIRTY = Integer.MAX_VALUE;
+
+    /**
+     * Guards the catalog lists and {@link #dirtyFromIndex}.
+     */
+    private static final Object catalogLock = new Object();
+
+    /**
+     * The product aliases of the catalog in sorted order.
      */
     @Nonnull
-    public static final String INVENTORY_NAME = "SdEconomy Item List";
+    private static final List<String> catalogAliases = new ArrayList<>();
+
+    /**
+     * The product item stacks of the catalog, parallel to {@link #catalogAliases}.
+     */
+    @Nonnull
+    private static final List<ItemStack> catalogItemStacks = new ArrayList<>();
 
     /**
-     * Adds item stacks to the page nodes.
+     * The first catalog position which changed since the last page rebuild.
+     */
+    private static int dirtyFromIndex = NOT_DIRTY;
+
+    /**
+     * The current inventory pages. The array is never modified after it has been published.
+     */
+    @Nonnull
+    private static volatile InventoryPage[] pages = {new InventoryPage(0, false)};
+
+    /**
+     * Replaces the catalog with the given products and rebuilds every page.
      *
-     * @param itemStacks the item stacks to add.
+     * @param plugin          the plugin to schedule the page rebuild with.
+     * @param defaultProducts the products to display.
      */
-    public static void addItemStacks(@Nonnull final ItemStack... itemStacks) {
-        for (ItemStack itemStack : itemStacks) {
-            rootPageNode.addItem(itemStack);
+    public static void setProducts(@Nonnull final Plugin plugin, @Nonnull final Collection<DefaultProduct> defaultProducts) {
+        final List<DefaultProduct> sortedDefaultProducts = new ArrayList<>(defaultProducts);
+        sortedDefaultProducts.sort(Comparator.comparing(o->o.alias));
+        synchronized (catalogLock) {
+            catalogAliases.clear();
+            catalogItemStacks.clear();
+            for (DefaultProduct defaultProduct : sortedDefaultProducts) {
+                final ItemStack itemStack = InventoryUtility.getItemStackFromProduct(defaultProduct);
+                if (itemStack != null) {
+                    catalogAliases.add(defaultProduct.alias);
+                    catalogItemStacks.add(itemStack);
+                }
+            }
+            dirtyFromIndex = 0;
         }
+        scheduleRebuild(plugin);
     }
 
     /**
-     * Creates a new inventory.
+     * Adds a product to the catalog or replaces its item if it is already listed.
      *
-     * @return the newly created inventory on page 0.
+     * @param plugin         the plugin to schedule the page rebuild with.
+     * @param defaultProduct the product to add.
      */
-    public static Inventory createInventory() {
-        final Inventory itemListInventory = Bukkit.createInventory(null, 54, INVENTORY_NAME);
-        itemListInventory.setContents(ItemListInventory.rootPageNode.getItems());
-        return itemListInventory;
+    public static void addProduct(@Nonnull final Plugin plugin, @Nonnull final DefaultProduct defaultProduct) {
+        final ItemStack itemStack = InventoryUtility.getItemStackFromProduct(defaultProduct);
+        if (itemStack == null) {
+            // A product without a valid material can not be displayed
+            removeProduct(plugin, defaultProduct.alias);
+            return;
+        }
+        synchronized (catalogLock) {
+            final int position = Collections.binarySearch(catalogAliases, defaultProduct.alias);
+            if (position >= 0) {
+                catalogItemStacks.set(position, itemStack);
+                markDirty(position);
+            } else {
+                final int insertPosition = -(position + 1);
+                catalogAliases.add(insertPosition, defaultProduct.alias);
+                catalogItemStacks.add(insertPosition, itemStack);
+                markDirty(insertPosition);
+            }
+        }
+        scheduleRebuild(plugin);
     }
 
     /**
-     * Returns a page node at the given index.
+     * Removes a product from the catalog.
      *
-     * @param index the index to fetch a node for.
-     * @return the fetched node at the given index.
+     * @param plugin the plugin to schedule the page rebuild with.
+     * @param alias  the alias of the product to remove.
      */
-    public static InventoryPage getPageNode(final int index) {
-        InventoryPage pageNode = null;
-        for (int i = 0; i <= index; i++) {
-            if (pageNode == null) {
-                pageNode = rootPageNode;
-            } else {
-                pageNode = pageNode.nextPageNode;
+    public static void removeProduct(@Nonnull final Plugin plugin, @Nonnull final String alias) {
+        synchronized (catalogLock) {
+            final int position = Collections.binarySearch(catalogAliases, alias);
+            if (position < 0) {
+                return;
             }
+            catalogAliases.remove(position);
+            catalogItemStacks.remove(position);
+            markDirty(position);
         }
-        return pageNode;
+        scheduleRebuild(plugin);
+    }
+
+    /**
+     * Records that the catalog changed at the given position. Must be called while holding {@link #catalogLock}.
+     *
+     * @param position the changed catalog position.
+     */
+    private static void markDirty(final int position) {
+        dirtyFromIndex = Math.min(dirtyFromIndex, position);
+    }
+
+    /**
+     * Schedules an asynchronous rebuild of the changed pages.
+     *
+     * @param plugin the plugin to schedule the task with.
+     */
+    private static void scheduleRebuild(@Nonnull final Plugin plugin) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, ItemListInventory::rebuildPages);
+    }
+
+    /**
+     * Rebuilds every page from the first changed catalog position onward and publishes the new page array. Multiple
+     * catalog changes made before this runs are folded into one rebuild.
+     */
+    private static void rebuildPages() {
+        synchronized (catalogLock) {
+            if (dirtyFromIndex == NOT_DIRTY) {
+                return;
+            }
+            final InventoryPage[] oldPages = pages;
+            final int productCount = catalogAliases.size();
+            final int pageCount = Math.max(1, (productCount + InventoryPage.PRODUCT_SLOTS - 1) / InventoryPage.PRODUCT_SLOTS);
+            int firstPage = Math.min(dirtyFromIndex / InventoryPage.PRODUCT_SLOTS, pageCount - 1);
+            // The old last page gains or loses its next book when the page count changes
+            if (pageCount != oldPages.length) {
+                firstPage = Math.min(firstPage, Math.min(pageCount, oldPages.length) - 1);
+            }
+            final InventoryPage[] newPages = Arrays.copyOf(oldPages, pageCount);
+            for (int pageIndex = firstPage; pageIndex < pageCount; pageIndex++) {
+                final InventoryPage page = new InventoryPage(pageIndex, pageIndex + 1 < pageCount);
+                final int firstProduct = pageIndex * InventoryPage.PRODUCT_SLOTS;
+                final int lastProduct = Math.min(firstProduct + InventoryPage.PRODUCT_SLOTS, productCount);
+                for (int i = firstProduct; i < lastProduct; i++) {
+                    page.setProductItem(i - firstProduct, catalogAliases.get(i), catalogItemStacks.get(i));
+                }
+                newPages[pageIndex] = page;
+            }
+            dirtyFromIndex = NOT_DIRTY;
+            pages = newPages;
+        }
+        // Viewers of a replaced page must be moved onto the new one
+        ItemListRefresher.markChanged();
+    }
+
+    /**
+     * Creates a new empty item list inventory. Use {@link ItemListRefresher#showPage} to fill it.
+     *
+     * @return the holder of the newly created inventory.
+     */
+    public static ItemListHolder createHolder() {
+        final ItemListHolder holder = new ItemListHolder();
+        holder.setInventory(Bukkit.createInventory(holder, 54, INVENTORY_NAME));
+        return holder;
+    }
+
+    /**
+     * Returns a page at the given index.
+     *
+     * @param index the index to fetch a page for.
+     * @return the fetched page at the given index or null if there is no such page.
+     */
+    @Nullable
+    public static InventoryPage getPage(final int index) {
+        final InventoryPage[] currentPages = pages;
+        return index >= 0 && index < currentPages.length ? currentPages[index] : null;
     }
 }
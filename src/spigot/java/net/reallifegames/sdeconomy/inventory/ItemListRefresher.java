@@ -0,0 +1,184 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.inventory;
+
+import net.reallifegames.sdeconomy.SdEconomy;
+import net.reallifegames.sdeconomy.TickBudget;
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import javax.annotation.Nonnull;
+import java.text.DecimalFormat;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the prices shown in open item list inventories up to date. Only pages with at least one viewer are checked,
+ * and at most once per refresh interval, so a busy market does not send an inventory update for every trade. All
+ * functions in this class must be called from the main thread.
+ *
+ * @author Tyler Bucher
+ */
+public final class ItemListRefresher {
+
+    /**
+     * The holders of all open item list inventories.
+     */
+    @Nonnull
+    private static final Set<ItemListHolder> openHolders = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Receives the changed slots of a page.
+     */
+    @Nonnull
+    private static final int[] changedSlots = new int[InventoryPage.PRODUCT_SLOTS];
+
+    /**
+     * States if a product changed since the last refresh.
+     */
+    @Nonnull
+    private static final AtomicBoolean changed = new AtomicBoolean(true);
+
+    /**
+     * States if refreshes only run after a change was reported through {@link #markChanged()}.
+     */
+    private static volatile boolean changeTracking = false;
+
+    /**
+     * The format to display prices with.
+     */
+    private static DecimalFormat decimalFormat;
+
+    /**
+     * Starts the repeating refresh task.
+     *
+     * @param sdEconomy the {@link SdEconomy} plugin instance.
+     */
+    public static void start(@Nonnull final SdEconomy sdEconomy) {
+        decimalFormat = sdEconomy.decimalFormat;
+        final long interval = Math.max(1, sdEconomy.getConfiguration().getGuiRefreshInterval());
+        Bukkit.getScheduler().scheduleSyncRepeatingTask(sdEconomy, ()->{
+            final long startTime = System.nanoTime();
+            try {
+                refresh();
+            } finally {
+                TickBudget.add(TickBudget.GUI_REFRESH_SOURCE, System.nanoTime() - startTime);
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * Makes refreshes skip rendering until a change is reported through {@link #markChanged()}. Only call once every
+     * source of product changes reports them.
+     */
+    public static void trackChanges() {
+        changeTracking = true;
+    }
+
+    /**
+     * Reports that a product or page changed so the next refresh renders the open pages. May be called from any
+     * thread.
+     */
+    public static void markChanged() {
+        changed.set(true);
+    }
+
+    /**
+     * Shows a page in an item list inventory and tracks the inventory for price updates. If the page no longer exists
+     * the first page is shown instead.
+     *
+     * @param holder    the holder of the item list inventory.
+     * @param pageIndex the index of the page to show.
+     */
+    public static void showPage(@Nonnull final ItemListHolder holder, final int pageIndex) {
+        InventoryPage page = ItemListInventory.getPage(pageIndex);
+        if (page == null) {
+            page = ItemListInventory.getPage(0);
+        }
+        page.renderPrices(decimalFormat, changedSlots);
+        holder.getInventory().setContents(page.getItems());
+        holder.setPage(page);
+        openHolders.add(holder);
+    }
+
+    /**
+     * Stops tracking an item list inventory.
+     *
+     * @param holder the holder of the closed inventory.
+     */
+    public static void removeHolder(@Nonnull final ItemListHolder holder) {
+        openHolders.remove(holder);
+    }
+
+    /**
+     * Renders every viewed page once and sends the changed slots to its viewers. Viewers of a page which has been
+     * replaced by a page rebuild receive the whole new page.
+     */
+    private static void refresh() {
+        if (openHolders.isEmpty()) {
+            return;
+        }
+        // Nothing to render if no product changed
+        if (changeTracking && !changed.getAndSet(false)) {
+            return;
+        }
+        // The changed slots of every page rendered during this refresh
+        final Map<InventoryPage, int[]> renderedPages = new IdentityHashMap<>();
+        final Iterator<ItemListHolder> iterator = openHolders.iterator();
+        while (iterator.hasNext()) {
+            final ItemListHolder holder = iterator.next();
+            final Inventory inventory = holder.getInventory();
+            if (inventory.getViewers().isEmpty()) {
+                // The close event was missed, stop tracking the inventory
+                iterator.remove();
+                continue;
+            }
+            InventoryPage currentPage = ItemListInventory.getPage(holder.getPage().getPageIndex());
+            if (currentPage == null) {
+                currentPage = ItemListInventory.getPage(0);
+            }
+            int[] pageChangedSlots = renderedPages.get(currentPage);
+            if (pageChangedSlots == null) {
+                final int changedCount = currentPage.renderPrices(decimalFormat, changedSlots);
+                pageChangedSlots = new int[changedCount];
+                System.arraycopy(changedSlots, 0, pageChangedSlots, 0, changedCount);
+                renderedPages.put(currentPage, pageChangedSlots);
+            }
+            final ItemStack[] items = currentPage.getItems();
+            if (currentPage != holder.getPage()) {
+                holder.setPage(currentPage);
+                inventory.setContents(items);
+            } else {
+                for (int slot : pageChangedSlots) {
+                    inventory.setItem(slot, items[slot]);
+                }
+            }
+        }
+    }
+}
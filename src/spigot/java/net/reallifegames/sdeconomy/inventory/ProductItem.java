@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.inventory;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The resolved material and template item stacks of a product. The templates are never handed out, only clones of
+ * them, so they can be shared between threads.
+ *
+ * @author Tyler Bucher
+ */
+public final class ProductItem {
+
+    /**
+     * The material of the product.
+     */
+    @Nonnull
+    private final Material material;
+
+    /**
+     * The item stack given to players when buying the product.
+     */
+    @Nonnull
+    private final ItemStack template;
+
+    /**
+     * The item stack shown for the product in the item list inventory.
+     */
+    @Nonnull
+    private final ItemStack displayTemplate;
+
+    /**
+     * Creates a new product item.
+     *
+     * @param alias      the alias of the product.
+     * @param material   the material of the product.
+     * @param unsafeData the unsafe data of the product.
+     */
+    ProductItem(@Nonnull final String alias, @Nonnull final Material material, final byte unsafeData) {
+        this.material = material;
+        // A note to all future and current maintainers; As of 7/27/2018 the bukkit / spigot api
+        // seems to be in a tentative state for creating items stacks with specific meta data.
+        // This could be because of the current state of the minecraft server 'api' which spigot
+        // is built on. Once a safer and non deprecated method becomes available this constructor
+        // should be removed in favor of said method.
+        this.template = new ItemStack(material, 1, (short) 0, unsafeData);
+        this.displayTemplate = template.clone();
+        // Set item meta information
+        final ItemMeta displayMeta = displayTemplate.getItemMeta();
+        displayMeta.setDisplayName(alias);
+        displayTemplate.setItemMeta(displayMeta);
+    }
+
+    /**
+     * @return the material of the product.
+     */
+    @Nonnull
+    public Material getMaterial() {
+        return material;
+    }
+
+    /**
+     * @return the maximum amount of the product a single slot can hold.
+     */
+    public int getMaxStackSize() {
+        return template.getMaxStackSize();
+    }
+
+    /**
+     * Checks if an item stack is the same item as this product, ignoring the amount.
+     *
+     * @param itemStack the item stack to check.
+     * @return true if the item stack stacks with this product.
+     */
+    public boolean isSimilar(@Nonnull final ItemStack itemStack) {
+        return template.isSimilar(itemStack);
+    }
+
+    /**
+     * Creates an item stack of this product.
+     *
+     * @param amount the amount of the new item stack.
+     * @return the new item stack.
+     */
+    @Nonnull
+    public ItemStack createItemStack(final int amount) {
+        final ItemStack itemStack = template.clone();
+        itemStack.setAmount(amount);
+        return itemStack;
+    }
+
+    /**
+     * @return a new item stack showing this product in the item list inventory.
+     */
+    @Nonnull
+    public ItemStack createDisplayItemStack() {
+        return displayTemplate.clone();
+    }
+}
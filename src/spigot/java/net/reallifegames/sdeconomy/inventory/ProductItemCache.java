@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.inventory;
+
+import net.reallifegames.sdeconomy.DefaultEconomy;
+import net.reallifegames.sdeconomy.DefaultProduct;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the resolved {@link ProductItem} of every product and maps item stacks back to their product. Entries must be
+ * updated through {@link #update(DefaultProduct)} whenever the type or unsafe data of a product changes.
+ *
+ * @author Tyler Bucher
+ */
+public final class ProductItemCache {
+
+    /**
+     * The product items by product alias.
+     */
+    @Nonnull
+    private static final ConcurrentHashMap<String, ProductItem> productItems = new ConcurrentHashMap<>();
+
+    /**
+     * The product aliases by material and unsafe data key.
+     */
+    @Nonnull
+    private static final ConcurrentHashMap<Integer, String> aliasesByItem = new ConcurrentHashMap<>();
+
+    /**
+     * Replaces the cache contents with the given products.
+     *
+     * @param defaultProducts the products to cache.
+     */
+    public static void setProducts(@Nonnull final Collection<DefaultProduct> defaultProducts) {
+        productItems.clear();
+        aliasesByItem.clear();
+        for (DefaultProduct defaultProduct : defaultProducts) {
+            update(defaultProduct);
+        }
+    }
+
+    /**
+     * Resolves the material of a product again and replaces its cached item.
+     *
+     * @param defaultProduct the product which was added or changed.
+     */
+    public static void update(@Nonnull final DefaultProduct defaultProduct) {
+        remove(defaultProduct.alias);
+        final Material material = Material.getMaterial(defaultProduct.type);
+        if (material != null) {
+            productItems.put(defaultProduct.alias, new ProductItem(defaultProduct.alias, material, defaultProduct.unsafeData));
+            aliasesByItem.put(getItemKey(material, defaultProduct.unsafeData), defaultProduct.alias);
+        }
+    }
+
+    /**
+     * Removes the cached item of a product.
+     *
+     * @param alias the alias of the product.
+     */
+    public static void remove(@Nonnull final String alias) {
+        final ProductItem productItem = productItems.remove(alias);
+        if (productItem == null) {
+            return;
+        }
+        final ItemStack itemStack = productItem.createItemStack(1);
+        final Integer itemKey = getItemKey(itemStack);
+        if (aliasesByItem.remove(itemKey, alias)) {
+            // Another product may be sold as the same item
+            for (DefaultProduct defaultProduct : DefaultEconomy.stockPrices.values()) {
+                final ProductItem otherItem = productItems.get(defaultProduct.alias);
+                if (otherItem != null && otherItem.isSimilar(itemStack)) {
+                    aliasesByItem.put(itemKey, defaultProduct.alias);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cached item of a product.
+     *
+     * @param defaultProduct the product to get the item of.
+     * @return the product item or null if the product type is not a valid material.
+     */
+    @Nullable
+    public static ProductItem get(@Nonnull final DefaultProduct defaultProduct) {
+        return productItems.get(defaultProduct.alias);
+    }
+
+    /**
+     * Returns the product sold as the given item stack.
+     *
+     * @param itemStack the item stack to find the product of.
+     * @return the product or null if the item stack is not sold.
+     */
+    @Nullable
+    public static DefaultProduct getProduct(@Nonnull final ItemStack itemStack) {
+        final String alias = aliasesByItem.get(getItemKey(itemStack));
+        return alias == null ? null : DefaultEconomy.stockPrices.get(alias);
+    }
+
+    /**
+     * Creates the reverse lookup key of an item stack.
+     *
+     * @param itemStack the item stack to create the key for.
+     * @return the material and unsafe data key.
+     */
+    private static Integer getItemKey(@Nonnull final ItemStack itemStack) {
+        return getItemKey(itemStack.getType(), itemStack.getData().getData());
+    }
+
+    /**
+     * Creates the reverse lookup key of a material and unsafe data pair.
+     *
+     * @param material   the item material.
+     * @param unsafeData the item unsafe data.
+     * @return the material and unsafe data key.
+     */
+    private static Integer getItemKey(@Nonnull final Material material, final byte unsafeData) {
+        return (material.ordinal() << 8) | (unsafeData & 0xFF);
+    }
+}
@@ -25,7 +25,10 @@ package net.reallifegames.sdeconomy.listeners;
 
 import net.md_5.bungee.api.chat.ClickEvent;
 import net.md_5.bungee.api.chat.TextComponent;
-import net.reallifegames.sdeconomy.inventory.ItemListInventory;
+import net.reallifegames.sdeconomy.TickBudget;
+import net.reallifegames.sdeconomy.inventory.InventoryPage;
+import net.reallifegames.sdeconomy.inventory.ItemListHolder;
+import net.reallifegames.sdeconomy.inventory.ItemListRefresher;
 import org.bukkit.ChatColor;
 import org.bukkit.entity.HumanEntity;
 import org.bukkit.entity.Player;
@@ -33,8 +36,7 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.inventory.Inventory;
-import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.inventory.InventoryHolder;
 
 /**
  * Handles click events for the SdEconomy items inventory.
@@ -50,48 +52,68 @@ public class InventoryClickListener implements Listener {
      */
     @EventHandler
     public void onInventoryClick(final InventoryClickEvent event) {
+        final long startTime = System.nanoTime();
+        try {
+            handleInventoryClick(event);
+        } finally {
+            TickBudget.add(TickBudget.INVENTORY_CLICK_SOURCE, System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Handles click events for the SdEconomy items inventory.
+     *
+     * @param event the click event fired for inventory's.
+     */
+    private static void handleInventoryClick(final InventoryClickEvent event) {
         // get the inventory clicked
         final Inventory clickedInventory = event.getClickedInventory();
         // Get the slot clicked
         final int slot = event.getSlot();
         // Check to make sure the inventory is not null
         if (clickedInventory != null) {
+            final InventoryHolder holder = clickedInventory.getHolder();
             // Check to make sure the clicked inventory is the sd economy one and the slots are inside the inventory
-            if (clickedInventory.getTitle().equalsIgnoreCase(ItemListInventory.INVENTORY_NAME) && slot >= 0 && slot <= 53) {
-                // Get the clicked item
-                final ItemStack clickedItem = event.getCurrentItem();
-                // Make sure the clicked item is not null and has item meta
-                if (clickedItem != null && clickedItem.hasItemMeta()) {
-                    final ItemMeta clickedItemMeta = clickedItem.getItemMeta();
-                    boolean indexItem = false;
-                    // Check to see if the item meta has lore
-                    if (clickedItemMeta.hasLore()) {
-                        for (String lore : clickedItemMeta.getLore()) {
-                            // Checks to see if the item stack is a page movement item.
-                            if (lore.startsWith("index:")) {
-                                indexItem = true;
-                                final int pageIndex = Integer.parseInt(lore.substring(6));
-                                // Change pages and sets the inventory contents
-                                clickedInventory.setContents(ItemListInventory.getPageNode(pageIndex).getItems());
-                                // Update inventory contents for all viewers
-                                for (HumanEntity humanEntity : event.getViewers()) {
-                                    ((Player) humanEntity).updateInventory();
-                                }
-                            }
-                        }
-                    }
-                    // Send client a message on how to buy the item
-                    if (!indexItem) {
-                        TextComponent message = new TextComponent("The command to buy this item is: " + ChatColor.GOLD +
-                                "/buy " + clickedItemMeta.getDisplayName() + " <amount>");
-                        message.setClickEvent(new ClickEvent(ClickEvent.Action.SUGGEST_COMMAND, "/buy " +
-                                clickedItemMeta.getDisplayName() + " "));
+            if (holder instanceof ItemListHolder && slot >= 0 && slot <= 53) {
+                final ItemListHolder itemListHolder = (ItemListHolder) holder;
+                final InventoryPage page = itemListHolder.getPage();
+                switch (page.getSlotAction(slot)) {
+                    case InventoryPage.PRODUCT_ACTION:
+                        // Send client a message on how to buy the item
+                        final String alias = page.getProductAlias(slot);
+                        final TextComponent message = new TextComponent("The command to buy this item is: " +
+                                ChatColor.GOLD + "/buy " + alias + " <amount>");
+                        message.setClickEvent(new ClickEvent(ClickEvent.Action.SUGGEST_COMMAND, "/buy " + alias + " "));
                         event.getWhoClicked().spigot().sendMessage(message);
-                    }
+                        break;
+                    case InventoryPage.NEXT_PAGE_ACTION:
+                        changePage(event, itemListHolder, page.getPageIndex() + 1);
+                        break;
+                    case InventoryPage.BACK_PAGE_ACTION:
+                        changePage(event, itemListHolder, page.getPageIndex() - 1);
+                        break;
+                    default:
+                        break;
                 }
                 // Cancel the event
                 event.setCancelled(true);
             }
         }
     }
+
+    /**
+     * Changes the page of an item list inventory.
+     *
+     * @param event     the click event fired for inventory's.
+     * @param holder    the holder of the item list inventory.
+     * @param pageIndex the index of the page to show.
+     */
+    private static void changePage(final InventoryClickEvent event, final ItemListHolder holder, final int pageIndex) {
+        // Change pages and sets the inventory contents
+        ItemListRefresher.showPage(holder, pageIndex);
+        // Update inventory contents for all viewers
+        for (HumanEntity humanEntity : event.getViewers()) {
+            ((Player) humanEntity).updateInventory();
+        }
+    }
 }
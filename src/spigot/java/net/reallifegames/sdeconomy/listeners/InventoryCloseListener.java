@@ -0,0 +1,52 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.listeners;
+
+import net.reallifegames.sdeconomy.inventory.ItemListHolder;
+import net.reallifegames.sdeconomy.inventory.ItemListRefresher;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.inventory.InventoryHolder;
+
+/**
+ * Handles close events for the SdEconomy items inventory.
+ *
+ * @author Tyler Bucher
+ */
+public class InventoryCloseListener implements Listener {
+
+    /**
+     * Stops price updates for the closed inventory.
+     *
+     * @param event the close event fired for inventory's.
+     */
+    @EventHandler
+    public void onInventoryClose(final InventoryCloseEvent event) {
+        final InventoryHolder holder = event.getInventory().getHolder();
+        if (holder instanceof ItemListHolder) {
+            ItemListRefresher.removeHolder((ItemListHolder) holder);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+
+/**
+ * Tests the reserves of a product priced by the {@link AmmPricingModel}.
+ *
+ * @author Tyler Bucher
+ */
+public class AmmPricingModelTest {
+
+    /**
+     * The product to test.
+     */
+    private DefaultProduct testDefaultProduct;
+
+    /**
+     * Initial setup for the test product.
+     */
+    @Before
+    public void setUp() {
+        testDefaultProduct = new DefaultProduct("test", "test");
+        testDefaultProduct.pricingModel = new AmmPricingModel(0);
+    }
+
+    /**
+     * Tests buying and then selling the same amount for a range of values.
+     */
+    @Test
+    public void testProductMoneyExchange() {
+        // Price loop
+        for (int i = 1; i <= 20; i++) {
+            // Demand loop
+            for (int j = 1; j <= 100; j++) {
+                // Supply loop
+                for (int k = 2; k <= 100; k++) {
+                    // Buy/Sell amount
+                    for (int l = 1; l < k; l++) {
+                        DefaultEconomy.setPriceNoSql(testDefaultProduct, (float) i / 5.0f);
+                        testDefaultProduct.demand = j;
+                        testDefaultProduct.supply = k;
+                        long cost = DefaultEconomy.buyNoSql(testDefaultProduct, l);
+                        long returns = DefaultEconomy.sellNoSql(testDefaultProduct, l);
+                        Assert.assertTrue("A product can print money and cause inflation.", returns <= cost);
+                        // The money reserve never falls below where it started
+                        Assert.assertTrue(testDefaultProduct.demand >= j);
+                        Assert.assertEquals(k, testDefaultProduct.supply);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that every trade keeps the product of the reserves at least where it was.
+     */
+    @Test
+    public void testInvariantNeverShrinks() {
+        testDefaultProduct.supply = 100000;
+        testDefaultProduct.demand = 50000;
+        long invariant = (long) testDefaultProduct.supply * testDefaultProduct.demand;
+        final int[] amounts = {1, 17, 64, 5000, 99999, 3};
+        for (final int amount : amounts) {
+            DefaultEconomy.sellNoSql(testDefaultProduct, amount);
+            Assert.assertTrue((long) testDefaultProduct.supply * testDefaultProduct.demand >= invariant);
+            invariant = (long) testDefaultProduct.supply * testDefaultProduct.demand;
+            DefaultEconomy.buyNoSql(testDefaultProduct, amount);
+            Assert.assertTrue((long) testDefaultProduct.supply * testDefaultProduct.demand >= invariant);
+            invariant = (long) testDefaultProduct.supply * testDefaultProduct.demand;
+        }
+    }
+
+    /**
+     * Tests that a buy the reserve can not fill is refused without changing the product.
+     */
+    @Test
+    public void testBuyingTheReserveIsRefused() {
+        testDefaultProduct.supply = 10;
+        testDefaultProduct.demand = 10;
+        Assert.assertEquals(Money.INFINITE, DefaultEconomy.checkBuyCost(testDefaultProduct, 10));
+        Assert.assertEquals(Money.INFINITE, DefaultEconomy.buyNoSql(testDefaultProduct, 11));
+        Assert.assertEquals(10, testDefaultProduct.supply);
+        Assert.assertEquals(10, testDefaultProduct.demand);
+        // 10 * 10 / 1 = 100, the last items cost nine times the money reserve
+        Assert.assertEquals(90 * Money.MICROS_PER_UNIT / AmmPricingModel.DEMAND_SCALE,
+                DefaultEconomy.buyNoSql(testDefaultProduct, 9));
+        Assert.assertEquals(1, testDefaultProduct.supply);
+        // A buy which would overflow the money reserve is refused as well
+        testDefaultProduct.supply = 10;
+        testDefaultProduct.demand = Integer.MAX_VALUE / 2;
+        Assert.assertEquals(Money.INFINITE, DefaultEconomy.checkBuyCost(testDefaultProduct, 6));
+    }
+
+    /**
+     * Tests that a quoted buy the reserve can no longer fill is refused without changing or logging the product.
+     *
+     * @throws SQLException if the refused buy was logged.
+     */
+    @Test
+    public void testQuotedBuyOfDrainedReserveIsRefused() throws SQLException {
+        testDefaultProduct.supply = 20;
+        testDefaultProduct.demand = 10;
+        final QuoteToken quoteToken = new QuoteToken(1, "00000000-0000-0000-0000-000000000001", "test", 15,
+                DefaultEconomy.checkBuyCost(testDefaultProduct, 15), Long.MAX_VALUE);
+        // Another player drains the reserve before the quote is redeemed
+        DefaultEconomy.buyNoSql(testDefaultProduct, 10);
+        final long version = testDefaultProduct.version;
+        Assert.assertFalse(DefaultEconomy.applyBuyNoSql(testDefaultProduct, 15));
+        Assert.assertEquals(Money.INFINITE, DefaultEconomy.buy(testDefaultProduct, "jdbc:invalid:",
+                quoteToken.uuid, quoteToken, new int[2]));
+        Assert.assertEquals(10, testDefaultProduct.supply);
+        Assert.assertEquals(version, testDefaultProduct.version);
+    }
+
+    /**
+     * Tests that fees are added to buys, taken from sells and collected by the model.
+     */
+    @Test
+    public void testFeesAreCollected() {
+        final AmmPricingModel ammPricingModel = new AmmPricingModel(0.1);
+        testDefaultProduct.pricingModel = ammPricingModel;
+        testDefaultProduct.supply = 100;
+        testDefaultProduct.demand = 100;
+        // 100 * 100 / 80 = 125
+        final long value = 25 * Money.MICROS_PER_UNIT / AmmPricingModel.DEMAND_SCALE;
+        // The fee is rounded up
+        final long fee = (value + 9) / 10;
+        Assert.assertEquals(value + fee, DefaultEconomy.buyNoSql(testDefaultProduct, 20));
+        // 125 * 80 / 100 = 100
+        Assert.assertEquals(value - fee, DefaultEconomy.sellNoSql(testDefaultProduct, 20));
+        Assert.assertEquals(2 * fee, ammPricingModel.drainFees());
+        Assert.assertEquals(0, ammPricingModel.drainFees());
+    }
+
+    /**
+     * Tests that switching a product to the model keeps the price of its next unit.
+     */
+    @Test
+    public void testAdoptKeepsUnitPrice() {
+        testDefaultProduct.pricingModel = DefaultPricingModel.INSTANCE;
+        DefaultEconomy.setPriceNoSql(testDefaultProduct, 2);
+        testDefaultProduct.supply = 400;
+        testDefaultProduct.demand = 1200;
+        final long unitPrice = DefaultEconomy.checkBuyCost(testDefaultProduct, 1);
+        DefaultEconomy.setPricingModelNoSql(testDefaultProduct, Economies.getPricingModel(Economies.AMM_TYPE));
+        Assert.assertEquals(400, testDefaultProduct.supply);
+        Assert.assertEquals(Math.ceil((double) unitPrice * 400 * AmmPricingModel.DEMAND_SCALE / Money.round(2)),
+                testDefaultProduct.demand, 0);
+        // Rounding moves the price by at most two demand steps
+        Assert.assertEquals(unitPrice, DefaultEconomy.checkBuyCost(testDefaultProduct, 1),
+                2 * Money.round(2) / AmmPricingModel.DEMAND_SCALE);
+    }
+}
@@ -63,8 +63,8 @@ public class DefaultProductTest {
                         DefaultEconomy.setPriceNoSql(testDefaultProduct, (float) i / 5.0f);
                         testDefaultProduct.demand = j;
                         testDefaultProduct.supply = k;
-                        double cost = DefaultEconomy.buyNoSql(testDefaultProduct, l);
-                        double returns = DefaultEconomy.sellNoSql(testDefaultProduct, l);
+                        long cost = DefaultEconomy.buyNoSql(testDefaultProduct, l);
+                        long returns = DefaultEconomy.sellNoSql(testDefaultProduct, l);
                         Assert.assertTrue("A product can print money and cause inflation.", returns <= cost);
                     }
                 }
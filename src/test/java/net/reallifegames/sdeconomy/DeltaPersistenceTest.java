@@ -0,0 +1,274 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests to see if several servers sharing one database lose any supply or demand updates when saving deltas.
+ *
+ * @author Tyler Bucher
+ */
+public class DeltaPersistenceTest {
+
+    /**
+     * The url of the in memory database shared by all test servers.
+     */
+    private static final String JDBC_URL = "jdbc:h2:mem:delta;MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+
+    /**
+     * The aliases of the products to trade.
+     */
+    private static final String[] ALIASES = {"stone", "dirt", "wood"};
+
+    /**
+     * The initial supply and demand of every product. Large enough that no trade is clamped.
+     */
+    private static final int INITIAL_AMOUNT = 1000000;
+
+    /**
+     * The amount of servers sharing the database.
+     */
+    private static final int NODE_COUNT = 3;
+
+    /**
+     * The net supply change made by every server.
+     */
+    private final AtomicInteger[] supplyChanges = new AtomicInteger[ALIASES.length];
+
+    /**
+     * The net demand change made by every server.
+     */
+    private final AtomicInteger[] demandChanges = new AtomicInteger[ALIASES.length];
+
+    /**
+     * The in memory product maps of the test servers.
+     */
+    private final List<ConcurrentHashMap<String, DefaultProduct>> nodes = new ArrayList<>();
+
+    /**
+     * Creates the shared product table and loads it into every test server.
+     *
+     * @throws SQLException if the database could not be set up.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        final Connection sqlConnection = DriverManager.getConnection(JDBC_URL);
+        sqlConnection.prepareStatement("DROP TABLE IF EXISTS `sd_products`;").execute();
+        sqlConnection.close();
+        SqlService.createDefaultProductTable(JDBC_URL);
+        final ConcurrentHashMap<String, DefaultProduct> seed = new ConcurrentHashMap<>();
+        for (String alias : ALIASES) {
+            seed.put(alias, new DefaultProduct(alias, alias, (byte) 0, 0.1f, 1, INITIAL_AMOUNT, INITIAL_AMOUNT, 64,
+                    43200000, SqlService.DECAY_CONST_TYPE));
+        }
+        DefaultEconomy.saveProducts(seed.values(), JDBC_URL);
+        for (int i = 0; i < NODE_COUNT; i++) {
+            final ConcurrentHashMap<String, DefaultProduct> productMap = new ConcurrentHashMap<>();
+            SqlService.readDefaultProductTable(JDBC_URL, productMap);
+            nodes.add(productMap);
+        }
+        for (int i = 0; i < ALIASES.length; i++) {
+            supplyChanges[i] = new AtomicInteger();
+            demandChanges[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Tests interleaved saves from several servers on one thread.
+     *
+     * @throws SQLException if a save failed.
+     */
+    @Test
+    public void testInterleavedSaves() throws SQLException {
+        final Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            for (ConcurrentHashMap<String, DefaultProduct> productMap : nodes) {
+                trade(productMap, random, 10);
+                DefaultEconomy.saveDeltas(productMap.values(), JDBC_URL);
+            }
+        }
+        assertNoLostUpdates();
+    }
+
+    /**
+     * Tests several servers saving at the same time from their own threads.
+     *
+     * @throws Exception if a save failed or a server thread was interrupted.
+     */
+    @Test
+    public void testConcurrentSaves() throws Exception {
+        final List<Thread> threads = new ArrayList<>();
+        final List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            final ConcurrentHashMap<String, DefaultProduct> productMap = nodes.get(i);
+            final Random random = new Random(i);
+            threads.add(new Thread(()->{
+                try {
+                    for (int round = 0; round < 50; round++) {
+                        trade(productMap, random, 10);
+                        saveUntilWritten(productMap);
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue("A server failed to save: " + failures, failures.isEmpty());
+        assertNoLostUpdates();
+    }
+
+    /**
+     * Tests that every decay period is claimed by one server only, even by servers running at the same time.
+     *
+     * @throws Exception if a claim failed or a server thread was interrupted.
+     */
+    @Test
+    public void testDecayPeriodIsClaimedOnce() throws Exception {
+        final Connection sqlConnection = DriverManager.getConnection(JDBC_URL);
+        sqlConnection.prepareStatement("DROP TABLE IF EXISTS `sd_constants`;").execute();
+        sqlConnection.close();
+        SqlService.createConstantsTable(JDBC_URL);
+        Assert.assertEquals(1, SqlService.claimDecayPeriods(JDBC_URL, 24000, 10));
+        Assert.assertEquals(0, SqlService.claimDecayPeriods(JDBC_URL, 24000, 10));
+        // A server with a late clock can not claim an older period
+        Assert.assertEquals(0, SqlService.claimDecayPeriods(JDBC_URL, 24000, 9));
+        // Every interval has its own periods
+        Assert.assertEquals(1, SqlService.claimDecayPeriods(JDBC_URL, 1200, 10));
+        // A period nobody claimed is claimed with the next one
+        Assert.assertEquals(2, SqlService.claimDecayPeriods(JDBC_URL, 24000, 12));
+        // Several servers racing for the next periods, a server which falls behind claims the periods it skipped
+        final AtomicLong claims = new AtomicLong();
+        final List<Thread> threads = new ArrayList<>();
+        final List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            threads.add(new Thread(()->{
+                try {
+                    for (long period = 13; period <= 30; period++) {
+                        claims.addAndGet(SqlService.claimDecayPeriods(JDBC_URL, 24000, period));
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue("A server failed to claim: " + failures, failures.isEmpty());
+        // Every period was decayed exactly once
+        Assert.assertEquals(18, claims.get());
+    }
+
+    /**
+     * Makes random trades on a test server and records their net change.
+     *
+     * @param productMap the products of the test server.
+     * @param random     the random source of the trades.
+     * @param trades     the amount of trades to make.
+     */
+    private void trade(final ConcurrentHashMap<String, DefaultProduct> productMap, final Random random, final int trades) {
+        for (int i = 0; i < trades; i++) {
+            final int index = random.nextInt(ALIASES.length);
+            final DefaultProduct defaultProduct = productMap.get(ALIASES[index]);
+            final int supply = defaultProduct.supply;
+            final int demand = defaultProduct.demand;
+            if (random.nextBoolean()) {
+                DefaultEconomy.buyNoSql(defaultProduct, 1 + random.nextInt(64));
+            } else {
+                DefaultEconomy.sellNoSql(defaultProduct, 1 + random.nextInt(64));
+            }
+            supplyChanges[index].addAndGet(defaultProduct.supply - supply);
+            demandChanges[index].addAndGet(defaultProduct.demand - demand);
+        }
+    }
+
+    /**
+     * Saves the deltas of a test server, taking a new snapshot after every failed write like the save task does.
+     *
+     * @param productMap the products of the test server.
+     * @throws SQLException if no save succeeded.
+     */
+    private static void saveUntilWritten(final ConcurrentHashMap<String, DefaultProduct> productMap) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                DefaultEconomy.saveDeltas(productMap.values(), JDBC_URL);
+                return;
+            } catch (SQLException e) {
+                if (attempt == 10) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the database holds every change and every server matches the database after a final save.
+     *
+     * @throws SQLException if a save failed.
+     */
+    private void assertNoLostUpdates() throws SQLException {
+        for (ConcurrentHashMap<String, DefaultProduct> productMap : nodes) {
+            DefaultEconomy.saveDeltas(productMap.values(), JDBC_URL);
+        }
+        final ConcurrentHashMap<String, DefaultProduct> stored = new ConcurrentHashMap<>();
+        SqlService.readDefaultProductTable(JDBC_URL, stored);
+        for (int i = 0; i < ALIASES.length; i++) {
+            final DefaultProduct defaultProduct = stored.get(ALIASES[i]);
+            Assert.assertEquals("A supply update was lost.", INITIAL_AMOUNT + supplyChanges[i].get(), defaultProduct.supply);
+            Assert.assertEquals("A demand update was lost.", INITIAL_AMOUNT + demandChanges[i].get(), defaultProduct.demand);
+        }
+        // The last server to save sees every change
+        final ConcurrentHashMap<String, DefaultProduct> lastNode = nodes.get(NODE_COUNT - 1);
+        for (String alias : ALIASES) {
+            Assert.assertEquals(stored.get(alias).supply, lastNode.get(alias).supply);
+            Assert.assertEquals(stored.get(alias).demand, lastNode.get(alias).demand);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests to see if a product priced by the {@link LmsrPricingModel} can print money.
+ *
+ * @author Tyler Bucher
+ */
+public class LmsrPricingModelTest {
+
+    /**
+     * The liquidities to test.
+     */
+    private static final float[] LIQUIDITIES = {0.5f, 10, 1000, 1000000};
+
+    /**
+     * The product to test.
+     */
+    private DefaultProduct testDefaultProduct;
+
+    /**
+     * Initial setup for the test product.
+     */
+    @Before
+    public void setUp() {
+        testDefaultProduct = new DefaultProduct("test", "test");
+        testDefaultProduct.pricingModel = LmsrPricingModel.INSTANCE;
+    }
+
+    /**
+     * Tests buying and then selling the same amount for a range of values.
+     */
+    @Test
+    public void testProductMoneyExchange() {
+        for (final float liquidity : LIQUIDITIES) {
+            testDefaultProduct.liquidity = liquidity;
+            // Price loop
+            for (int i = 1; i <= 20; i++) {
+                // Demand loop
+                for (int j = 1; j <= 100; j++) {
+                    // Buy/Sell amount
+                    for (int l = 1; l <= 100; l++) {
+                        DefaultEconomy.setPriceNoSql(testDefaultProduct, (float) i / 5.0f);
+                        testDefaultProduct.demand = j;
+                        testDefaultProduct.supply = 50;
+                        long cost = DefaultEconomy.buyNoSql(testDefaultProduct, l);
+                        long returns = DefaultEconomy.sellNoSql(testDefaultProduct, l);
+                        Assert.assertTrue("A product can print money and cause inflation.", returns <= cost);
+                        // Selling first and buying back must not pay either
+                        returns = DefaultEconomy.sellNoSql(testDefaultProduct, l);
+                        cost = DefaultEconomy.buyNoSql(testDefaultProduct, l);
+                        Assert.assertTrue("A product can print money and cause inflation.", returns <= cost);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests round trips where demand stops at its bounds.
+     */
+    @Test
+    public void testBoundedMoneyExchange() {
+        final int[] demands = {Integer.MIN_VALUE, -5, 0, 1, 2, Integer.MAX_VALUE - 50, Integer.MAX_VALUE - 1, Integer.MAX_VALUE};
+        final int[] amounts = {1, 7, 100, 1000000};
+        for (final float liquidity : LIQUIDITIES) {
+            testDefaultProduct.liquidity = liquidity;
+            for (final int demand : demands) {
+                for (final int amount : amounts) {
+                    testDefaultProduct.demand = demand;
+                    long cost = DefaultEconomy.buyNoSql(testDefaultProduct, amount);
+                    long returns = DefaultEconomy.sellNoSql(testDefaultProduct, amount);
+                    Assert.assertTrue("A product can print money at demand " + demand, returns <= cost);
+                    testDefaultProduct.demand = demand;
+                    returns = DefaultEconomy.sellNoSql(testDefaultProduct, amount);
+                    cost = DefaultEconomy.buyNoSql(testDefaultProduct, amount);
+                    Assert.assertTrue("A product can print money at demand " + demand, returns <= cost);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that a buy costs the same in one trade as in two and that unit prices stay in their range.
+     */
+    @Test
+    public void testCostIsPathIndependent() {
+        testDefaultProduct.liquidity = 100;
+        DefaultEconomy.setPriceNoSql(testDefaultProduct, 4);
+        testDefaultProduct.demand = 20;
+        final long whole = DefaultEconomy.checkBuyCost(testDefaultProduct, 300);
+        final long first = DefaultEconomy.buyNoSql(testDefaultProduct, 120);
+        final long second = DefaultEconomy.buyNoSql(testDefaultProduct, 180);
+        // Each trade is rounded up to the next micro on its own
+        Assert.assertEquals(whole, first + second, 1);
+        Assert.assertEquals(320, testDefaultProduct.demand);
+        // Unit prices lie between the price and the price raised by the mod factor
+        Assert.assertTrue(whole > Money.round(300 * 4));
+        Assert.assertTrue(whole < Money.round(300 * 4 * (1 + testDefaultProduct.getModFactor())));
+        Assert.assertTrue(DefaultEconomy.checkBuyCost(testDefaultProduct, Integer.MAX_VALUE) < Money.INFINITE);
+    }
+}
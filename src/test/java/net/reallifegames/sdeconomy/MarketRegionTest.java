@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests to see if servers sharing a market region see each others changes and lose no update.
+ *
+ * @author Tyler Bucher
+ */
+public class MarketRegionTest {
+
+    /**
+     * The initial supply and demand of the test product. Large enough that no trade is clamped.
+     */
+    private static final int INITIAL_AMOUNT = 1000000;
+
+    /**
+     * The amount of sells made by every test process.
+     */
+    private static final int SELLS_PER_PROCESS = 2000;
+
+    /**
+     * The shared region file.
+     */
+    private File regionFile;
+
+    /**
+     * Creates an empty region file.
+     *
+     * @throws IOException if the file could not be created.
+     */
+    @Before
+    public void setUp() throws IOException {
+        regionFile = File.createTempFile("sdeconomy", ".region");
+        Assert.assertTrue(regionFile.delete());
+    }
+
+    /**
+     * Deletes the region file.
+     */
+    @After
+    public void tearDown() {
+        DefaultEconomy.setMarketRegion(null);
+        regionFile.delete();
+    }
+
+    /**
+     * Tests that a change made through one region is loaded by another.
+     *
+     * @throws IOException if the region could not be mapped.
+     */
+    @Test
+    public void testChangesAreShared() throws IOException {
+        final MarketRegion first = MarketRegion.open(regionFile, 16);
+        final MarketRegion second = MarketRegion.open(regionFile, 16);
+        final DefaultProduct firstProduct = createProduct();
+        final DefaultProduct secondProduct = createProduct();
+        first.attach(firstProduct);
+        // The second server loads the record created by the first
+        secondProduct.supply = 5;
+        second.attach(secondProduct);
+        Assert.assertEquals(INITIAL_AMOUNT, secondProduct.supply);
+        Assert.assertFalse(first.refresh(firstProduct));
+        // A trade through the second region reaches the first
+        DefaultEconomy.setMarketRegion(second);
+        DefaultEconomy.sellNoSql(secondProduct, 10);
+        DefaultEconomy.setPriceNoSql(secondProduct, 3);
+        final long version = firstProduct.version;
+        Assert.assertTrue(first.refresh(firstProduct));
+        Assert.assertEquals(INITIAL_AMOUNT + 10, firstProduct.supply);
+        Assert.assertEquals(3, firstProduct.getPrice(), 0);
+        Assert.assertNotEquals(version, firstProduct.version);
+        // A trade through the first region starts from the shared state
+        DefaultEconomy.setMarketRegion(first);
+        DefaultEconomy.sellNoSql(firstProduct, 5);
+        Assert.assertTrue(second.refresh(secondProduct));
+        Assert.assertEquals(INITIAL_AMOUNT + 15, secondProduct.supply);
+        // Only one server can lead
+        Assert.assertTrue(first.tryLead());
+        Assert.assertTrue(first.isLeader());
+        first.close();
+        second.close();
+    }
+
+    /**
+     * Tests that a buy checks its limit against the shared state and not the state last loaded by its server.
+     *
+     * @throws IOException  if the region could not be mapped.
+     * @throws SQLException if the refused buy was logged.
+     */
+    @Test
+    public void testBuyLimitUsesSharedState() throws IOException, SQLException {
+        final MarketRegion first = MarketRegion.open(regionFile, 16);
+        final MarketRegion second = MarketRegion.open(regionFile, 16);
+        final DefaultProduct firstProduct = createProduct();
+        final DefaultProduct secondProduct = createProduct();
+        first.attach(firstProduct);
+        second.attach(secondProduct);
+        // The first server approves a buy at the price it knows
+        final long approvedCost = DefaultEconomy.checkBuyCost(firstProduct, 10);
+        // The second server raises the price before the buy is made
+        DefaultEconomy.setMarketRegion(second);
+        DefaultEconomy.buyNoSql(secondProduct, INITIAL_AMOUNT / 2);
+        DefaultEconomy.setMarketRegion(first);
+        Assert.assertTrue(DefaultEconomy.buy(firstProduct, "jdbc:invalid:", "00000000-0000-0000-0000-000000000001", 10,
+                approvedCost, new int[2]) > approvedCost);
+        Assert.assertEquals(secondProduct.supply, firstProduct.supply);
+        Assert.assertEquals(secondProduct.demand, firstProduct.demand);
+        first.close();
+        second.close();
+    }
+
+    /**
+     * Tests several processes trading the same product at the same time.
+     *
+     * @throws Exception if a test process failed.
+     */
+    @Test
+    public void testConcurrentProcesses() throws Exception {
+        final MarketRegion marketRegion = MarketRegion.open(regionFile, 16);
+        final DefaultProduct defaultProduct = createProduct();
+        marketRegion.attach(defaultProduct);
+        marketRegion.close();
+        final List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            processes.add(new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(), "-cp",
+                    System.getProperty("java.class.path"), TradeProcess.class.getName(), regionFile.getPath())
+                    .inheritIO().start());
+        }
+        for (Process process : processes) {
+            Assert.assertEquals(0, process.waitFor());
+        }
+        final MarketRegion reader = MarketRegion.open(regionFile, 16);
+        final DefaultProduct result = createProduct();
+        reader.attach(result);
+        reader.close();
+        Assert.assertEquals("A supply update was lost.", INITIAL_AMOUNT + 3 * SELLS_PER_PROCESS, result.supply);
+        Assert.assertEquals("A demand update was lost.", INITIAL_AMOUNT - 3 * SELLS_PER_PROCESS, result.demand);
+    }
+
+    /**
+     * @return a new test product.
+     */
+    private static DefaultProduct createProduct() {
+        return new DefaultProduct("stone", "STONE", (byte) 0, 0.1f, 1, INITIAL_AMOUNT, INITIAL_AMOUNT, 64, 43200000,
+                SqlService.DECAY_CONST_TYPE);
+    }
+
+    /**
+     * A server process which sells one item at a time through a shared region.
+     */
+    public static final class TradeProcess {
+
+        /**
+         * Sells the test product through the region file passed as the first argument.
+         *
+         * @param args the region file path.
+         * @throws IOException if the region could not be mapped.
+         */
+        public static void main(final String[] args) throws IOException {
+            final MarketRegion marketRegion = MarketRegion.open(new File(args[0]), 16);
+            DefaultEconomy.setMarketRegion(marketRegion);
+            final DefaultProduct defaultProduct = createProduct();
+            marketRegion.attach(defaultProduct);
+            for (int i = 0; i < SELLS_PER_PROCESS; i++) {
+                DefaultEconomy.sellNoSql(defaultProduct, 1);
+            }
+            marketRegion.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the fixed point {@link Money} arithmetic.
+ *
+ * @author Tyler Bucher
+ */
+public class MoneyTest {
+
+    /**
+     * Tests that currency units convert to micros in the requested direction and back to the same double.
+     */
+    @Test
+    public void testConversions() {
+        Assert.assertEquals(1500000, Money.round(1.5));
+        Assert.assertEquals(100000, Money.round(0.1f));
+        Assert.assertEquals(1, Money.ceil(0.0000001));
+        Assert.assertEquals(0, Money.floor(0.0000009));
+        Assert.assertEquals(-1, Money.floor(-0.0000001));
+        Assert.assertEquals(123456789, Money.round(Money.toDouble(123456789)));
+        Assert.assertEquals(Double.POSITIVE_INFINITY, Money.toDouble(Money.INFINITE), 0);
+    }
+
+    /**
+     * Tests that amounts which do not fit into micros are refused.
+     */
+    @Test
+    public void testOverflowIsRefused() {
+        for (final double units : new double[]{Double.NaN, Double.POSITIVE_INFINITY, 1e13}) {
+            try {
+                Money.round(units);
+                Assert.fail("Converted " + units);
+            } catch (ArithmeticException e) {
+                // Expected
+            }
+        }
+        try {
+            Money.add(Long.MAX_VALUE - 1, 2);
+            Assert.fail("Added past the largest amount");
+        } catch (ArithmeticException e) {
+            // Expected
+        }
+        Assert.assertEquals(Money.INFINITE, Money.addCost(Long.MAX_VALUE - 1, 2));
+        Assert.assertEquals(Money.INFINITE, Money.addCost(Money.INFINITE, -5));
+        Assert.assertEquals(7, Money.addCost(3, 4));
+    }
+
+    /**
+     * Tests that the saturating conversions return {@link Money#INFINITE} where the exact ones throw.
+     */
+    @Test
+    public void testOverflowSaturates() {
+        for (final double units : new double[]{Double.NaN, Double.POSITIVE_INFINITY, 1e13}) {
+            Assert.assertEquals(Money.INFINITE, Money.roundOrInfinite(units));
+            Assert.assertEquals(Money.INFINITE, Money.floorOrInfinite(units));
+            Assert.assertEquals(Money.INFINITE, Money.ceilOrInfinite(units));
+        }
+        Assert.assertEquals(1500000, Money.roundOrInfinite(1.5));
+        Assert.assertEquals(Money.INFINITE, Money.mulDivCeilOrInfinite(Long.MAX_VALUE / 2, 3, 4));
+        Assert.assertEquals(Money.INFINITE, Money.mulDivFloorOrInfinite(10, 1, 0));
+        Assert.assertEquals(4, Money.mulDivCeilOrInfinite(10, 1, 3));
+        Assert.assertEquals(3, Money.mulDivFloorOrInfinite(10, 1, 3));
+    }
+
+    /**
+     * Tests that scaled amounts are rounded in the requested direction for both signs.
+     */
+    @Test
+    public void testMulDivRounding() {
+        Assert.assertEquals(3, Money.mulDivFloor(10, 1, 3));
+        Assert.assertEquals(4, Money.mulDivCeil(10, 1, 3));
+        Assert.assertEquals(-4, Money.mulDivFloor(-10, 1, 3));
+        Assert.assertEquals(-3, Money.mulDivCeil(-10, 1, 3));
+        Assert.assertEquals(5, Money.mulDivCeil(10, 2, 4));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.SQLException;
+
+/**
+ * Tests the {@link PricingModel} registry and the {@link DefaultPricingModel default model}.
+ *
+ * @author Tyler Bucher
+ */
+public class PricingModelTest {
+
+    /**
+     * Tests that the default model is registered under the default economy type and its name.
+     */
+    @Test
+    public void testDefaultModelIsRegistered() {
+        Assert.assertSame(DefaultPricingModel.INSTANCE, Economies.getPricingModel(Economies.DEFAULT_TYPE));
+        Assert.assertSame(DefaultPricingModel.INSTANCE, Economies.getPricingModel("DEFAULT"));
+        Assert.assertNull(Economies.getPricingModel((byte) 120));
+        Assert.assertNull(Economies.getPricingModel("missing"));
+        Assert.assertSame(DefaultPricingModel.INSTANCE, new DefaultProduct("test", "test").pricingModel);
+    }
+
+    /**
+     * Tests that trading through the default model matches its quotes and moves the market like it always has.
+     */
+    @Test
+    public void testDefaultModelMatchesQuotes() {
+        final DefaultProduct defaultProduct = new DefaultProduct("test", "test", (byte) 0, 0.1f, 5, 40, 20, 64,
+                43200000, SqlService.DECAY_CONST_TYPE);
+        final long buyQuote = DefaultEconomy.checkBuyCost(defaultProduct, 10);
+        Assert.assertEquals(DefaultEconomy.checkBuyCost(0.1f, 5, 40, 20, 10), buyQuote);
+        Assert.assertEquals(buyQuote, DefaultEconomy.buyNoSql(defaultProduct, 10));
+        Assert.assertEquals(30, defaultProduct.supply);
+        Assert.assertEquals(30, defaultProduct.demand);
+        final long sellQuote = DefaultEconomy.checkSellReturns(defaultProduct, 10);
+        Assert.assertEquals(DefaultEconomy.checkSellReturns(0.1f, 5, 30, 30, 10), sellQuote);
+        Assert.assertEquals(sellQuote, DefaultEconomy.sellNoSql(defaultProduct, 10));
+        Assert.assertEquals(40, defaultProduct.supply);
+        Assert.assertEquals(20, defaultProduct.demand);
+    }
+
+    /**
+     * Tests that every model trades for exactly what it quoted on a product in the same state.
+     */
+    @Test
+    public void testEveryModelTradesAtItsQuote() {
+        final PricingModel[] models = {DefaultPricingModel.INSTANCE, LmsrPricingModel.INSTANCE,
+                new AmmPricingModel(0.003)};
+        for (final PricingModel model : models) {
+            // Supply and demand loop
+            for (int i = 1; i <= 64; i *= 4) {
+                for (int j = 1; j <= 64; j *= 4) {
+                    // Trade amount
+                    for (int amount = 1; amount <= 40; amount += 13) {
+                        final long sellQuote = model.quoteSell(newProduct(model, i, j), amount);
+                        Assert.assertEquals(model.getClass().getSimpleName(), sellQuote,
+                                model.sell(newProduct(model, i, j), amount));
+                        final long buyQuote = model.quoteBuy(newProduct(model, i, j), amount);
+                        Assert.assertEquals(model.getClass().getSimpleName(), buyQuote,
+                                model.buy(newProduct(model, i, j), amount));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that trades too large to pay for are quoted as {@link Money#INFINITE} and refused without changing the
+     * product.
+     *
+     * @throws SQLException if a refused sale was logged.
+     */
+    @Test
+    public void testOverflowingTradesAreRefused() throws SQLException {
+        // A check of a huge stack must not throw
+        Assert.assertEquals(Money.INFINITE, DefaultEconomy.checkBuyCost(0.1f, 1, 64, 20, 20000000));
+        final DefaultProduct stone = newProduct(DefaultPricingModel.INSTANCE, 64, 20);
+        Assert.assertEquals(Money.INFINITE, DefaultEconomy.buyNoSql(stone, 20000000));
+        Assert.assertEquals(64, stone.supply);
+        Assert.assertEquals(20, stone.demand);
+        final PricingModel[] models = {DefaultPricingModel.INSTANCE, LmsrPricingModel.INSTANCE,
+                new AmmPricingModel(0.003)};
+        for (final PricingModel model : models) {
+            final DefaultProduct defaultProduct = newProduct(model, 64, 20);
+            DefaultEconomy.setPriceNoSql(defaultProduct, 1e12f);
+            final long version = defaultProduct.version;
+            final String name = model.getClass().getSimpleName();
+            Assert.assertEquals(name, Money.INFINITE, model.quoteBuy(defaultProduct, 20));
+            Assert.assertEquals(name, Money.INFINITE, model.quoteSell(defaultProduct, 20));
+            Assert.assertEquals(name, Money.INFINITE, DefaultEconomy.buyNoSql(defaultProduct, 20));
+            Assert.assertEquals(name, Money.INFINITE, DefaultEconomy.sellNoSql(defaultProduct, 20));
+            Assert.assertEquals(name, 64, defaultProduct.supply);
+            Assert.assertEquals(name, 20, defaultProduct.demand);
+            Assert.assertEquals(name, version, defaultProduct.version);
+        }
+        // A sale of several products is refused as a whole
+        final DefaultProduct dirt = newProduct(DefaultPricingModel.INSTANCE, 64, 20);
+        DefaultEconomy.setPriceNoSql(dirt, 1e12f);
+        Assert.assertEquals(Money.INFINITE, DefaultEconomy.sellAll(new DefaultProduct[]{stone, dirt}, new int[]{5, 20},
+                new long[2], 2, "jdbc:invalid:", "00000000-0000-0000-0000-000000000001"));
+        Assert.assertEquals(64, stone.supply);
+        Assert.assertEquals(20, stone.demand);
+        Assert.assertEquals(64, dirt.supply);
+        Assert.assertEquals(20, dirt.demand);
+    }
+
+    /**
+     * Tests that a sale of several products which can not be logged reverts every product.
+     */
+    @Test
+    public void testFailedSellAllRevertsMarket() {
+        final DefaultProduct stone = newProduct(DefaultPricingModel.INSTANCE, 64, 20);
+        final DefaultProduct dirt = newProduct(LmsrPricingModel.INSTANCE, 64, 20);
+        try {
+            DefaultEconomy.sellAll(new DefaultProduct[]{stone, dirt}, new int[]{5, 7}, new long[2], 2, "jdbc:invalid:",
+                    "00000000-0000-0000-0000-000000000001");
+            Assert.fail();
+        } catch (SQLException e) {
+            // Expected
+        }
+        Assert.assertEquals(64, stone.supply);
+        Assert.assertEquals(20, stone.demand);
+        Assert.assertEquals(64, dirt.supply);
+        Assert.assertEquals(20, dirt.demand);
+    }
+
+    /**
+     * Creates a product priced by a model with the given market state.
+     *
+     * @param model  the {@link PricingModel model} to price the product.
+     * @param supply the supply of the product.
+     * @param demand the demand of the product.
+     * @return the new {@link DefaultProduct product}.
+     */
+    private static DefaultProduct newProduct(final PricingModel model, final int supply, final int demand) {
+        final DefaultProduct defaultProduct = new DefaultProduct("test", "test", (byte) 0, 0.1f, 5, supply, demand,
+                64, 43200000, SqlService.DECAY_CONST_TYPE);
+        defaultProduct.pricingModel = model;
+        return defaultProduct;
+    }
+}
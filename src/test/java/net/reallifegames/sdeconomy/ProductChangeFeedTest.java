@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tests to see if product changes made by one server reach the other servers through the change feed.
+ *
+ * @author Tyler Bucher
+ */
+public class ProductChangeFeedTest {
+
+    /**
+     * The url of the in memory database shared by both test servers.
+     */
+    private static final String JDBC_URL = "jdbc:h2:mem:feed;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    /**
+     * The change feed of the server making changes.
+     */
+    private ProductChangeFeed writerFeed;
+
+    /**
+     * The change feed of the server reading changes.
+     */
+    private ProductChangeFeed readerFeed;
+
+    /**
+     * The products in memory of the server making changes.
+     */
+    private ConcurrentHashMap<String, DefaultProduct> writerProducts;
+
+    /**
+     * The products in memory of the server reading changes.
+     */
+    private ConcurrentHashMap<String, DefaultProduct> readerProducts;
+
+    /**
+     * Creates empty tables and starts both test servers.
+     *
+     * @throws SQLException if the database could not be set up.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        final Connection sqlConnection = DriverManager.getConnection(JDBC_URL);
+        sqlConnection.prepareStatement("DROP TABLE IF EXISTS `sd_products`;").execute();
+        sqlConnection.prepareStatement("DROP TABLE IF EXISTS `sd_product_changes`;").execute();
+        sqlConnection.close();
+        SqlService.createDefaultProductTable(JDBC_URL);
+        SqlService.createProductChangeTable(JDBC_URL);
+        writerFeed = new ProductChangeFeed("writer", 2);
+        readerFeed = new ProductChangeFeed("reader", 2);
+        writerFeed.seekToEnd(JDBC_URL);
+        readerFeed.seekToEnd(JDBC_URL);
+        writerProducts = new ConcurrentHashMap<>();
+        readerProducts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Tests that added, changed and removed products reach the reading server.
+     *
+     * @throws SQLException if the database could not be accessed.
+     */
+    @Test
+    public void testChangesReachOtherServer() throws SQLException {
+        final DefaultProduct stone = setPrice("stone", 2);
+        pollAll(readerFeed, readerProducts);
+        Assert.assertEquals(2, readerProducts.get("stone").getPrice(), 0);
+        // Supply and demand of a known product are not part of a change
+        readerProducts.get("stone").supply = 50;
+        setPrice("stone", 3);
+        pollAll(readerFeed, readerProducts);
+        Assert.assertEquals(3, readerProducts.get("stone").getPrice(), 0);
+        Assert.assertEquals(50, readerProducts.get("stone").supply);
+        // Removed products are removed
+        SqlService.deleteItemFromSdPrices(JDBC_URL, stone.alias);
+        writerFeed.publish(JDBC_URL, SqlService.PRODUCT_REMOVED_ACTION, stone.alias);
+        pollAll(readerFeed, readerProducts);
+        Assert.assertNull(readerProducts.get("stone"));
+    }
+
+    /**
+     * Tests that a model change converts the supply and demand of the reading server and invalidates its quotes.
+     *
+     * @throws SQLException if the database could not be accessed.
+     */
+    @Test
+    public void testModelChangeReachesOtherServer() throws SQLException {
+        setPrice("stone", 2);
+        pollAll(readerFeed, readerProducts);
+        final DefaultProduct readerStone = readerProducts.get("stone");
+        readerStone.supply = 400;
+        readerStone.demand = 1200;
+        final long unitPrice = QuoteCache.checkBuyCost(readerStone, 1);
+        final long version = readerStone.version;
+        // The writing server switches the product to the amm model the way /setmodel does
+        final DefaultProduct writerStone = writerProducts.get("stone");
+        DefaultEconomy.setPricingModelNoSql(writerStone, Economies.getPricingModel(Economies.AMM_TYPE));
+        DefaultEconomy.saveProduct(writerStone, JDBC_URL);
+        writerFeed.publish(JDBC_URL, SqlService.PRODUCT_CHANGED_ACTION, "stone");
+        pollAll(readerFeed, readerProducts);
+        Assert.assertSame(Economies.getPricingModel(Economies.AMM_TYPE), readerStone.pricingModel);
+        Assert.assertNotEquals(version, readerStone.version);
+        // The local market state was converted, so the next unit costs about the same
+        Assert.assertEquals(400, readerStone.supply);
+        Assert.assertEquals(unitPrice, QuoteCache.checkBuyCost(readerStone, 1),
+                2 * Money.round(2) / AmmPricingModel.DEMAND_SCALE);
+    }
+
+    /**
+     * Tests that a liquidity change invalidates the quotes of the reading server.
+     *
+     * @throws SQLException if the database could not be accessed.
+     */
+    @Test
+    public void testLiquidityChangeBumpsVersion() throws SQLException {
+        setPrice("stone", 2);
+        pollAll(readerFeed, readerProducts);
+        final DefaultProduct readerStone = readerProducts.get("stone");
+        final long version = readerStone.version;
+        final DefaultProduct writerStone = writerProducts.get("stone");
+        DefaultEconomy.setLiquidityNoSql(writerStone, writerStone.liquidity * 2);
+        DefaultEconomy.saveProduct(writerStone, JDBC_URL);
+        writerFeed.publish(JDBC_URL, SqlService.PRODUCT_CHANGED_ACTION, "stone");
+        pollAll(readerFeed, readerProducts);
+        Assert.assertEquals(writerStone.liquidity, readerStone.liquidity, 0);
+        Assert.assertNotEquals(version, readerStone.version);
+    }
+
+    /**
+     * Tests that a server skips its own changes and reads large feeds in batches.
+     *
+     * @throws SQLException if the database could not be accessed.
+     */
+    @Test
+    public void testBatchesAndOwnChanges() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            setPrice("item" + i, i + 1);
+        }
+        Assert.assertTrue(writerFeed.poll(JDBC_URL).isEmpty());
+        // The batch size of two needs three polls to read five changes
+        Assert.assertEquals(2, readerFeed.poll(JDBC_URL).size());
+        Assert.assertEquals(2, readerFeed.poll(JDBC_URL).size());
+        Assert.assertEquals(1, readerFeed.poll(JDBC_URL).size());
+        Assert.assertTrue(readerFeed.poll(JDBC_URL).isEmpty());
+        Assert.assertEquals(SqlService.readLastProductChange(JDBC_URL), readerFeed.getLastSequence());
+    }
+
+    /**
+     * Sets the price of a product on the writing server the way /setprice does.
+     *
+     * @param alias the alias of the product.
+     * @param price the price to set.
+     * @return the product in memory of the writing server.
+     *
+     * @throws SQLException if the database could not be accessed.
+     */
+    private DefaultProduct setPrice(final String alias, final float price) throws SQLException {
+        final DefaultProduct defaultProduct = writerProducts.computeIfAbsent(alias, k->new DefaultProduct(alias, "STONE"));
+        DefaultEconomy.setPriceNoSql(defaultProduct, price);
+        DefaultEconomy.saveProduct(defaultProduct, JDBC_URL);
+        writerFeed.publish(JDBC_URL, SqlService.PRODUCT_CHANGED_ACTION, alias);
+        return defaultProduct;
+    }
+
+    /**
+     * Polls a feed until it is empty and applies every change.
+     *
+     * @param productChangeFeed the feed to poll.
+     * @param productMap        the products in memory to apply the changes to.
+     * @throws SQLException if the database could not be accessed.
+     */
+    private static void pollAll(final ProductChangeFeed productChangeFeed,
+                                final ConcurrentHashMap<String, DefaultProduct> productMap) throws SQLException {
+        Map<String, DefaultProduct> storedProducts;
+        while (!(storedProducts = productChangeFeed.poll(JDBC_URL)).isEmpty()) {
+            for (Map.Entry<String, DefaultProduct> kvp : storedProducts.entrySet()) {
+                ProductChangeFeed.apply(productMap, kvp.getKey(), kvp.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link QuoteCache}.
+ *
+ * @author Tyler Bucher
+ */
+public class QuoteCacheTest {
+
+    /**
+     * Tests that a product created again under the same alias and version is not quoted from the old product.
+     */
+    @Test
+    public void testRecreatedProductIsQuotedAgain() {
+        final DefaultProduct oldStone = new DefaultProduct("stone", "STONE", (byte) 0, 0.1f, 5, 64, 20, 64, 43200000,
+                SqlService.DECAY_CONST_TYPE);
+        final DefaultProduct newStone = new DefaultProduct("stone", "STONE", (byte) 0, 0.1f, 5, 64, 400, 64, 43200000,
+                SqlService.DECAY_CONST_TYPE);
+        Assert.assertEquals(oldStone.version, newStone.version);
+        Assert.assertEquals(DefaultEconomy.checkBuyCost(oldStone, 10), QuoteCache.checkBuyCost(oldStone, 10));
+        Assert.assertEquals(DefaultEconomy.checkSellReturns(oldStone, 10), QuoteCache.checkSellReturns(oldStone, 10));
+        Assert.assertEquals(DefaultEconomy.checkBuyCost(newStone, 10), QuoteCache.checkBuyCost(newStone, 10));
+        Assert.assertEquals(DefaultEconomy.checkSellReturns(newStone, 10), QuoteCache.checkSellReturns(newStone, 10));
+        Assert.assertNotEquals(QuoteCache.checkBuyCost(oldStone, 10), QuoteCache.checkBuyCost(newStone, 10));
+    }
+
+    /**
+     * Tests that a change to a product is quoted at the new state.
+     */
+    @Test
+    public void testChangedProductIsQuotedAgain() {
+        final DefaultProduct stone = new DefaultProduct("stone", "STONE", (byte) 0, 0.1f, 5, 64, 20, 64, 43200000,
+                SqlService.DECAY_CONST_TYPE);
+        final long cost = QuoteCache.checkBuyCost(stone, 10);
+        DefaultEconomy.buyNoSql(stone, 10);
+        Assert.assertNotEquals(cost, QuoteCache.checkBuyCost(stone, 10));
+        Assert.assertEquals(DefaultEconomy.checkBuyCost(stone, 10), QuoteCache.checkBuyCost(stone, 10));
+    }
+}
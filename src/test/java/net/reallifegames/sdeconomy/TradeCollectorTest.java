@@ -0,0 +1,338 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Tests to see if trades collected during a tick settle to the same market state as trades applied one by one.
+ *
+ * @author Tyler Bucher
+ */
+public class TradeCollectorTest {
+
+    /**
+     * The url of the in memory database.
+     */
+    private static final String JDBC_URL = "jdbc:h2:mem:tradeCollector;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    /**
+     * The transaction table of {@link SqlService} with its foreign keys but without its secondary indexes.
+     */
+    private static final String TRANSACTION_TABLE_SQL = "CREATE TABLE `sd_transaction` (`uuid_id` INT NOT NULL, " +
+            "`action` tinyint(4) NOT NULL, `price_id` int(11) NOT NULL, `date` timestamp NOT NULL DEFAULT " +
+            "CURRENT_TIMESTAMP, `amount` float NOT NULL, `money_exchanged` double NOT NULL DEFAULT '0', CONSTRAINT " +
+            "`fk_price_id` FOREIGN KEY (`price_id`) REFERENCES `sd_products` (`id`) ON DELETE CASCADE, CONSTRAINT " +
+            "`fk_uuid_id` FOREIGN KEY (`uuid_id`) REFERENCES `sd_uuid` (`id`) ON DELETE CASCADE);";
+
+    /**
+     * The uuid of the first test player.
+     */
+    private static final String FIRST_UUID = "00000000-0000-0000-0000-000000000001";
+
+    /**
+     * The uuid of the second test player.
+     */
+    private static final String SECOND_UUID = "00000000-0000-0000-0000-000000000002";
+
+    /**
+     * The statuses received by the settlements.
+     */
+    private final byte[] statuses = new byte[4];
+
+    /**
+     * The money received by the settlements.
+     */
+    private final long[] money = new long[4];
+
+    /**
+     * Creates the constants, product, uuid and transaction tables in the same order as the plugin does.
+     *
+     * @throws SQLException if the database could not be set up.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        final Connection sqlConnection = DriverManager.getConnection(JDBC_URL);
+        sqlConnection.prepareStatement("DROP TABLE IF EXISTS `sd_transaction`;").execute();
+        sqlConnection.prepareStatement("DROP TABLE IF EXISTS `sd_uuid`;").execute();
+        sqlConnection.prepareStatement("DROP TABLE IF EXISTS `sd_products`;").execute();
+        sqlConnection.prepareStatement("DROP TABLE IF EXISTS `sd_constants`;").execute();
+        sqlConnection.close();
+        SqlService.createConstantsTable(JDBC_URL);
+        SqlService.createDefaultProductTable(JDBC_URL);
+        SqlService.createUuidTable(JDBC_URL);
+        // H2 can not parse the index named `date` of the MySQL table definition
+        final Connection transactionConnection = DriverManager.getConnection(JDBC_URL);
+        transactionConnection.prepareStatement(TRANSACTION_TABLE_SQL).execute();
+        transactionConnection.close();
+        SqlService.setSqlVersion(JDBC_URL);
+        DefaultEconomy.saveProduct(createProduct("stone"), JDBC_URL);
+        DefaultEconomy.saveProduct(createProduct("dirt"), JDBC_URL);
+    }
+
+    /**
+     * Disables the shared market region.
+     */
+    @After
+    public void tearDown() {
+        DefaultEconomy.setMarketRegion(null);
+    }
+
+    /**
+     * Checks if a batch applies the intents of each product in arrival order and logs every trade.
+     *
+     * @throws SQLException if the journal could not be written.
+     */
+    @Test
+    public void testBatchMatchesSequentialTrades() throws SQLException {
+        final DefaultProduct stone = createProduct("stone");
+        final DefaultProduct dirt = createProduct("dirt");
+        final TradeCollector tradeCollector = new TradeCollector();
+        tradeCollector.sell(stone, FIRST_UUID, 10, settlement(0));
+        tradeCollector.buy(dirt, SECOND_UUID, 7, Money.INFINITE, settlement(1));
+        tradeCollector.buy(stone, SECOND_UUID, 5, Money.INFINITE, settlement(2));
+        tradeCollector.sell(stone, FIRST_UUID, 3, settlement(3));
+        Assert.assertEquals(4, tradeCollector.getSize());
+        tradeCollector.settle(JDBC_URL);
+        Assert.assertEquals(0, tradeCollector.getSize());
+        // Apply the same trades one by one
+        final DefaultProduct expectedStone = createProduct("stone");
+        final DefaultProduct expectedDirt = createProduct("dirt");
+        final long[] expectedMoney = {
+                DefaultEconomy.sellNoSql(expectedStone, 10),
+                DefaultEconomy.buyNoSql(expectedDirt, 7),
+                DefaultEconomy.buyNoSql(expectedStone, 5),
+                DefaultEconomy.sellNoSql(expectedStone, 3)
+        };
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(TradeCollector.SETTLED, statuses[i]);
+            Assert.assertEquals(expectedMoney[i], money[i]);
+        }
+        Assert.assertEquals(expectedStone.supply, stone.supply);
+        Assert.assertEquals(expectedStone.demand, stone.demand);
+        Assert.assertEquals(expectedDirt.supply, dirt.supply);
+        Assert.assertEquals(expectedDirt.demand, dirt.demand);
+        Assert.assertEquals(4, countTransactions());
+    }
+
+    /**
+     * Checks if a buy which costs more than its limit leaves the market unchanged.
+     *
+     * @throws SQLException if the journal could not be written.
+     */
+    @Test
+    public void testBuyOverLimitIsRejected() throws SQLException {
+        final DefaultProduct stone = createProduct("stone");
+        final TradeCollector tradeCollector = new TradeCollector();
+        tradeCollector.buy(stone, FIRST_UUID, 5, DefaultEconomy.checkBuyCost(stone, 5), settlement(0));
+        // The first buy raises the price so the second costs more than its quote
+        tradeCollector.buy(stone, SECOND_UUID, 5, DefaultEconomy.checkBuyCost(stone, 5), settlement(1));
+        tradeCollector.settle(JDBC_URL);
+        Assert.assertEquals(TradeCollector.SETTLED, statuses[0]);
+        Assert.assertEquals(TradeCollector.REJECTED, statuses[1]);
+        Assert.assertEquals(0, money[1]);
+        final DefaultProduct expectedStone = createProduct("stone");
+        DefaultEconomy.buyNoSql(expectedStone, 5);
+        Assert.assertEquals(expectedStone.supply, stone.supply);
+        Assert.assertEquals(expectedStone.demand, stone.demand);
+        Assert.assertEquals(1, countTransactions());
+    }
+
+    /**
+     * Checks if the buys of one player can not spend more than the player's limit together.
+     *
+     * @throws SQLException if the journal could not be written.
+     */
+    @Test
+    public void testBuysOfOnePlayerShareTheirLimit() throws SQLException {
+        final DefaultProduct stone = createProduct("stone");
+        final DefaultProduct dirt = createProduct("dirt");
+        final long balance = DefaultEconomy.checkBuyCost(stone, 5);
+        final TradeCollector tradeCollector = new TradeCollector();
+        // Both buys fit the balance on their own
+        tradeCollector.buy(stone, FIRST_UUID, 5, balance, settlement(0));
+        tradeCollector.buy(dirt, FIRST_UUID, 5, balance, settlement(1));
+        tradeCollector.buy(dirt, SECOND_UUID, 5, balance, settlement(2));
+        tradeCollector.settle(JDBC_URL);
+        Assert.assertEquals(TradeCollector.SETTLED, statuses[0]);
+        Assert.assertEquals(balance, money[0]);
+        Assert.assertEquals(TradeCollector.REJECTED, statuses[1]);
+        Assert.assertEquals(TradeCollector.SETTLED, statuses[2]);
+        Assert.assertEquals(2, countTransactions());
+    }
+
+    /**
+     * Checks if a settled trade the player can not pay for is reverted and logged again as negated.
+     *
+     * @throws SQLException if the journal could not be written.
+     */
+    @Test
+    public void testUnpaidTradeIsReverted() throws SQLException {
+        final DefaultProduct stone = createProduct("stone");
+        final TradeCollector tradeCollector = new TradeCollector();
+        tradeCollector.buy(stone, FIRST_UUID, 5, Money.INFINITE, (status, settledMoney)->{
+            statuses[0] = status;
+            money[0] = settledMoney;
+            return false;
+        });
+        tradeCollector.sell(stone, SECOND_UUID, 3, settlement(1));
+        tradeCollector.settle(JDBC_URL);
+        Assert.assertEquals(TradeCollector.SETTLED, statuses[0]);
+        Assert.assertEquals(TradeCollector.SETTLED, statuses[1]);
+        // Only the sale is left in the market
+        final DefaultProduct expectedStone = createProduct("stone");
+        DefaultEconomy.buyNoSql(expectedStone, 5);
+        final int supply = expectedStone.supply;
+        final int demand = expectedStone.demand;
+        DefaultEconomy.sellNoSql(expectedStone, 3);
+        Assert.assertEquals(expectedStone.supply - supply + 1000, stone.supply);
+        Assert.assertEquals(expectedStone.demand - demand + 1000, stone.demand);
+        Assert.assertEquals(3, countTransactions());
+    }
+
+    /**
+     * Checks if a batch which can not be logged reverts the market and fails every trade.
+     */
+    @Test
+    public void testFailedJournalRevertsMarket() {
+        final DefaultProduct stone = createProduct("stone");
+        final TradeCollector tradeCollector = new TradeCollector();
+        tradeCollector.sell(stone, FIRST_UUID, 10, settlement(0));
+        tradeCollector.buy(stone, SECOND_UUID, 4, Money.INFINITE, settlement(1));
+        try {
+            tradeCollector.settle("jdbc:invalid:");
+            Assert.fail();
+        } catch (SQLException e) {
+            // Expected
+        }
+        Assert.assertEquals(TradeCollector.FAILED, statuses[0]);
+        Assert.assertEquals(TradeCollector.FAILED, statuses[1]);
+        final DefaultProduct expectedStone = createProduct("stone");
+        Assert.assertEquals(expectedStone.supply, stone.supply);
+        Assert.assertEquals(expectedStone.demand, stone.demand);
+        Assert.assertEquals(0, tradeCollector.getSize());
+    }
+
+    /**
+     * Checks if a batch and a basket take the region lock of each product once and publish their changes.
+     *
+     * @throws IOException  if the region could not be mapped.
+     * @throws SQLException if the journal could not be written.
+     */
+    @Test
+    public void testTradesThroughMarketRegion() throws IOException, SQLException {
+        final File regionFile = File.createTempFile("sdeconomy", ".region");
+        Assert.assertTrue(regionFile.delete());
+        try {
+            final MarketRegion marketRegion = MarketRegion.open(regionFile, 16);
+            final DefaultProduct stone = createProduct("stone");
+            final DefaultProduct dirt = createProduct("dirt");
+            marketRegion.attach(stone);
+            marketRegion.attach(dirt);
+            DefaultEconomy.setMarketRegion(marketRegion);
+            final TradeCollector tradeCollector = new TradeCollector();
+            tradeCollector.sell(stone, FIRST_UUID, 10, settlement(0));
+            tradeCollector.buy(stone, SECOND_UUID, 5, Money.INFINITE, settlement(1));
+            tradeCollector.settle(JDBC_URL);
+            Assert.assertEquals(TradeCollector.SETTLED, statuses[0]);
+            Assert.assertEquals(TradeCollector.SETTLED, statuses[1]);
+            final long[] costs = new long[2];
+            final long totalCost = DefaultEconomy.buyBasket(new DefaultProduct[]{stone, dirt}, new int[]{3, 7}, costs,
+                    2, JDBC_URL, FIRST_UUID);
+            Assert.assertEquals(Money.add(costs[0], costs[1]), totalCost);
+            // Apply the same trades without a region
+            DefaultEconomy.setMarketRegion(null);
+            final DefaultProduct expectedStone = createProduct("stone");
+            final DefaultProduct expectedDirt = createProduct("dirt");
+            DefaultEconomy.sellNoSql(expectedStone, 10);
+            DefaultEconomy.buyNoSql(expectedStone, 5);
+            Assert.assertEquals(DefaultEconomy.buyNoSql(expectedStone, 3), costs[0]);
+            Assert.assertEquals(DefaultEconomy.buyNoSql(expectedDirt, 7), costs[1]);
+            // Another server sees every change
+            final MarketRegion reader = MarketRegion.open(regionFile, 16);
+            final DefaultProduct sharedStone = createProduct("stone");
+            final DefaultProduct sharedDirt = createProduct("dirt");
+            reader.attach(sharedStone);
+            reader.attach(sharedDirt);
+            reader.close();
+            marketRegion.close();
+            Assert.assertEquals(expectedStone.supply, sharedStone.supply);
+            Assert.assertEquals(expectedStone.demand, sharedStone.demand);
+            Assert.assertEquals(expectedDirt.supply, sharedDirt.supply);
+            Assert.assertEquals(expectedDirt.demand, sharedDirt.demand);
+            Assert.assertEquals(4, countTransactions());
+        } finally {
+            regionFile.delete();
+        }
+    }
+
+    /**
+     * Creates a settlement which stores its outcome.
+     *
+     * @param index the index to store the outcome at.
+     * @return the new settlement.
+     */
+    private TradeCollector.Settlement settlement(final int index) {
+        return (status, settledMoney)->{
+            statuses[index] = status;
+            money[index] = settledMoney;
+            return true;
+        };
+    }
+
+    /**
+     * Creates a test product.
+     *
+     * @param alias the alias of the product.
+     * @return the new product.
+     */
+    private static DefaultProduct createProduct(final String alias) {
+        return new DefaultProduct(alias, alias.toUpperCase(), (byte) 0, 0.1f, 1, 1000, 1000, 64, 43200000,
+                SqlService.DECAY_CONST_TYPE);
+    }
+
+    /**
+     * @return the amount of rows in the transaction table.
+     *
+     * @throws SQLException if the table could not be read.
+     */
+    private static int countTransactions() throws SQLException {
+        final Connection sqlConnection = DriverManager.getConnection(JDBC_URL);
+        final ResultSet resultSet = sqlConnection.prepareStatement("SELECT COUNT(*) FROM `sd_transaction`;").executeQuery();
+        resultSet.next();
+        final int count = resultSet.getInt(1);
+        sqlConnection.close();
+        return count;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy;
+
+import net.reallifegames.sdeconomy.metrics.Metrics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tests to see if versioned product updates from several servers rebase on conflicts instead of overwriting each
+ * other.
+ *
+ * @author Tyler Bucher
+ */
+public class VersionedProductTest {
+
+    /**
+     * The url of the in memory database shared by all test servers.
+     */
+    private static final String JDBC_URL = "jdbc:h2:mem:versioned;MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+
+    /**
+     * The alias of the product to trade.
+     */
+    private static final String ALIAS = "stone";
+
+    /**
+     * The initial supply and demand of the product. Large enough that no trade is clamped.
+     */
+    private static final int INITIAL_AMOUNT = 1000000;
+
+    /**
+     * The in memory products of the test servers.
+     */
+    private final List<ConcurrentHashMap<String, DefaultProduct>> nodes = new ArrayList<>();
+
+    /**
+     * The net supply change made by every server.
+     */
+    private long supplyChange;
+
+    /**
+     * The net demand change made by every server.
+     */
+    private long demandChange;
+
+    /**
+     * Creates the shared product table and loads it into two test servers.
+     *
+     * @throws SQLException if the database could not be set up.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        final Connection sqlConnection = DriverManager.getConnection(JDBC_URL);
+        sqlConnection.prepareStatement("DROP TABLE IF EXISTS `sd_products`;").execute();
+        sqlConnection.close();
+        SqlService.createDefaultProductTable(JDBC_URL);
+        DefaultEconomy.saveProduct(new DefaultProduct(ALIAS, "STONE", (byte) 0, 0.1f, 1, INITIAL_AMOUNT, INITIAL_AMOUNT,
+                64, 43200000, SqlService.DECAY_CONST_TYPE), JDBC_URL);
+        for (int i = 0; i < 2; i++) {
+            final ConcurrentHashMap<String, DefaultProduct> productMap = new ConcurrentHashMap<>();
+            SqlService.readDefaultProductTable(JDBC_URL, productMap);
+            nodes.add(productMap);
+        }
+    }
+
+    /**
+     * Tests that interleaved saves conflict, rebase and lose no update.
+     *
+     * @throws SQLException if a save failed.
+     */
+    @Test
+    public void testConflictingSaves() throws SQLException {
+        final long conflicts = Metrics.counter("sql.versionConflict").sum();
+        final Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            for (ConcurrentHashMap<String, DefaultProduct> productMap : nodes) {
+                final DefaultProduct defaultProduct = productMap.get(ALIAS);
+                final int supply = defaultProduct.supply;
+                final int demand = defaultProduct.demand;
+                if (random.nextBoolean()) {
+                    DefaultEconomy.buyNoSql(defaultProduct, 1 + random.nextInt(64));
+                } else {
+                    DefaultEconomy.sellNoSql(defaultProduct, 1 + random.nextInt(64));
+                }
+                supplyChange += defaultProduct.supply - supply;
+                demandChange += defaultProduct.demand - demand;
+                DefaultEconomy.saveProducts(productMap.values(), JDBC_URL);
+            }
+        }
+        Assert.assertTrue("Interleaved saves did not conflict.", Metrics.counter("sql.versionConflict").sum() > conflicts);
+        final DefaultProduct stored = SqlService.readDefaultProduct(JDBC_URL, ALIAS);
+        Assert.assertNotNull(stored);
+        Assert.assertEquals("A supply update was lost.", INITIAL_AMOUNT + supplyChange, stored.supply);
+        Assert.assertEquals("A demand update was lost.", INITIAL_AMOUNT + demandChange, stored.demand);
+        // The last server to save holds the stored row
+        Assert.assertEquals(stored.supply, nodes.get(1).get(ALIAS).supply);
+        Assert.assertEquals(stored.rowVersion, nodes.get(1).get(ALIAS).rowVersion);
+    }
+
+    /**
+     * Tests that a price set on one server is not overwritten by a stale save of another server.
+     *
+     * @throws SQLException if a save failed.
+     */
+    @Test
+    public void testStaleSaveKeepsPrice() throws SQLException {
+        final DefaultProduct adminProduct = nodes.get(0).get(ALIAS);
+        DefaultEconomy.setPriceNoSql(adminProduct, 5);
+        DefaultEconomy.saveProduct(adminProduct, JDBC_URL);
+        // The other server still has the old price and version in memory
+        final DefaultProduct staleProduct = nodes.get(1).get(ALIAS);
+        DefaultEconomy.sellNoSql(staleProduct, 10);
+        DefaultEconomy.saveProducts(nodes.get(1).values(), JDBC_URL);
+        final DefaultProduct stored = SqlService.readDefaultProduct(JDBC_URL, ALIAS);
+        Assert.assertNotNull(stored);
+        Assert.assertEquals(5, stored.getPrice(), 0);
+        Assert.assertEquals(INITIAL_AMOUNT + 10, stored.supply);
+    }
+}
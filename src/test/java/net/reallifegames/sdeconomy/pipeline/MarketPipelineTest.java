@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.sdeconomy.pipeline;
+
+import net.reallifegames.sdeconomy.DefaultProduct;
+import net.reallifegames.sdeconomy.SqlService;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Tests to see if every stage of the market pipeline sees every event in order, even when a slow stage makes the
+ * producer wait.
+ *
+ * @author Tyler Bucher
+ */
+public class MarketPipelineTest {
+
+    /**
+     * The amount of events to publish.
+     */
+    private static final int EVENT_COUNT = 2000;
+
+    /**
+     * Checks if a fast and a slow stage both consume every event in publish order through a ring much smaller than the
+     * amount of events.
+     *
+     * @throws InterruptedException if the test was interrupted.
+     */
+    @Test
+    public void testStagesSeeEveryEventInOrder() throws InterruptedException {
+        final MarketPipeline pipeline = new MarketPipeline(Logger.getLogger("test"), 10);
+        Assert.assertEquals(16, pipeline.getCapacity());
+        final long[] fastState = {-1, 0};
+        final long[] slowState = {-1, 0};
+        pipeline.addStage("fast", (event, sequence, endOfBatch)->checkEvent(fastState, event, sequence));
+        pipeline.addStage("slow", (event, sequence, endOfBatch)->{
+            checkEvent(slowState, event, sequence);
+            if (sequence % 100 == 0) {
+                Thread.sleep(1);
+            }
+        });
+        final AtomicLong listenerCount = new AtomicLong();
+        pipeline.addListener(event->listenerCount.incrementAndGet());
+        pipeline.start();
+        final DefaultProduct defaultProduct = createProduct();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            defaultProduct.supply = i;
+            pipeline.publish(SqlService.SELL_ACTION, defaultProduct, SqlService.SYSTEM_UUID, 1, i);
+        }
+        Assert.assertEquals(EVENT_COUNT - 1, pipeline.getCursor());
+        pipeline.close(10000);
+        Assert.assertEquals(EVENT_COUNT, fastState[1]);
+        Assert.assertEquals(EVENT_COUNT, slowState[1]);
+        Assert.assertEquals(EVENT_COUNT, listenerCount.get());
+    }
+
+    /**
+     * Checks if the write ahead log holds a line for every event.
+     *
+     * @throws IOException          if the log file could not be written or read.
+     * @throws InterruptedException if the test was interrupted.
+     */
+    @Test
+    public void testWalStageWritesEveryEvent() throws IOException, InterruptedException {
+        final File file = File.createTempFile("market", ".wal");
+        file.deleteOnExit();
+        final WalStage walStage = new WalStage(file);
+        final MarketPipeline pipeline = new MarketPipeline(Logger.getLogger("test"), 64);
+        pipeline.addStage("wal", walStage);
+        pipeline.start();
+        final DefaultProduct defaultProduct = createProduct();
+        for (int i = 0; i < 100; i++) {
+            pipeline.publish(SqlService.BUY_ACTION, defaultProduct, SqlService.SYSTEM_UUID, 2, i);
+        }
+        pipeline.publish(MarketEvent.REMOVE_ACTION, defaultProduct, SqlService.SYSTEM_UUID, 0, 0);
+        pipeline.close(10000);
+        walStage.close();
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(101, lines.size());
+        Assert.assertTrue(lines.get(0).startsWith("0,"));
+        Assert.assertTrue(lines.get(100).startsWith("100,"));
+        Assert.assertEquals(String.valueOf(MarketEvent.REMOVE_ACTION), lines.get(100).split(",")[2]);
+    }
+
+    /**
+     * Checks if an event follows the last event seen by a stage.
+     *
+     * @param state    the last sequence and the amount of events seen by the stage.
+     * @param event    the event.
+     * @param sequence the sequence number of the event.
+     */
+    private static void checkEvent(final long[] state, final MarketEvent event, final long sequence) {
+        // Failed checks are counted as missing events by the test
+        if (sequence == state[0] + 1 && event.supply == sequence && event.money == sequence) {
+            state[1]++;
+        }
+        state[0] = sequence;
+    }
+
+    /**
+     * @return a new test product.
+     */
+    private static DefaultProduct createProduct() {
+        return new DefaultProduct("stone", "STONE", (byte) 0, 0.1f, 1, 1000, 1000, 64, 43200000,
+                SqlService.DECAY_CONST_TYPE);
+    }
+}